@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpacksuite.config.ConfigLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading the client configuration and reading every setting a sync looks up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigBenchmark {
+    private static final String CONFIG = String.join("\n",
+        "# Where to sync from",
+        "serverHostname = \"play.example.com\"",
+        "serverPort = 25112",
+        "serverPath = \"modpack\"",
+        "minecraftInstanceRoot = \"C:\\\\Users\\\\player\\\\AppData\\\\Roaming\\\\.minecraft\"",
+        "protocol = \"native\"",
+        "chunkStoreSize = 512M",
+        "downloadConnections = 4",
+        "maxConcurrentTransfers = 3",
+        "");
+
+    private Path mConfigFile;
+    private ClientConfig mClientConfig;
+
+    @Setup
+    public void setUp() throws IOException {
+        mConfigFile = Files.createTempFile("application", ".conf");
+        Files.write(mConfigFile, CONFIG.getBytes(StandardCharsets.UTF_8));
+        mClientConfig = new ClientConfig(ConfigLoader.loadConfig(new String[] {mConfigFile.toString()}, false));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(mConfigFile);
+    }
+
+    @Benchmark
+    public ClientConfig loadConfig() {
+        return new ClientConfig(ConfigLoader.loadConfig(new String[] {mConfigFile.toString()}, false));
+    }
+
+    @Benchmark
+    public void readSettings(final Blackhole blackhole) {
+        blackhole.consume(mClientConfig.getMinecraftPath());
+        blackhole.consume(mClientConfig.getRsyncAddress());
+        blackhole.consume(mClientConfig.getProtocol());
+        blackhole.consume(mClientConfig.getChunkStoreSize());
+        blackhole.consume(mClientConfig.getDownloadConnections());
+        blackhole.consume(mClientConfig.getMaxConcurrentTransfers());
+    }
+}
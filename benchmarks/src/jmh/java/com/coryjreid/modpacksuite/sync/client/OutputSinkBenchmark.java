@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the sinks which consume the output of an rsync transfer, fed with the itemized output of a sync which
+ * touches a few hundred files followed by the {@code --stats} summary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OutputSinkBenchmark {
+    private static final int ITEMIZED_LINES = 500;
+    private static final String[] STATISTICS = {
+        "",
+        "Number of files: 3,301 (reg: 3,000, dir: 301)",
+        "Number of created files: 25 (reg: 25)",
+        "Number of deleted files: 12 (reg: 12)",
+        "Number of regular files transferred: 150",
+        "Total file size: 412,345,678 bytes",
+        "Total transferred file size: 20,617,283 bytes",
+        "Literal data: 4,123,456 bytes",
+        "Matched data: 16,493,827 bytes",
+        "File list size: 65,432",
+        "File list generation time: 0.001 seconds",
+        "File list transfer time: 0.000 seconds",
+        "Total bytes sent: 123,456",
+        "Total bytes received: 4,321,098",
+        "",
+        "sent 123,456 bytes  received 4,321,098 bytes  1,234,567.89 bytes/sec",
+        "total size is 412,345,678  speedup is 92.78"
+    };
+
+    private List<String> mLines;
+
+    @Setup
+    public void setUp() {
+        mLines = new ArrayList<>(ITEMIZED_LINES + STATISTICS.length);
+        for (int i = 0; i < ITEMIZED_LINES; i++) {
+            mLines.add(i % 10 == 0
+                ? "*deleting   mods/mod" + i + "-1.16.5-1.0.jar"
+                : ">f.st...... config/mod" + i % 300 + "/settings-" + i + ".toml");
+        }
+        for (final String statistic : STATISTICS) {
+            mLines.add(statistic);
+        }
+    }
+
+    @Benchmark
+    public OutputMultiplexer multiplexer() {
+        final OutputMultiplexer multiplexer = new OutputMultiplexer()
+            .register(new ConsoleLogger("mods"))
+            .register(new RsyncStatisticsParser());
+        for (final String line : mLines) {
+            multiplexer.processOutput(line, true);
+        }
+        return multiplexer;
+    }
+
+    @Benchmark
+    public ConsoleLogger consoleLogger() {
+        final ConsoleLogger logger = new ConsoleLogger("mods");
+        for (final String line : mLines) {
+            logger.processOutput(line, true);
+        }
+        return logger;
+    }
+
+    @Benchmark
+    public RsyncStatisticsParser statisticsParser() {
+        final RsyncStatisticsParser parser = new RsyncStatisticsParser();
+        for (final String line : mLines) {
+            parser.processOutput(line, true);
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpacksuite.loadtest.SyntheticInstance;
+import com.coryjreid.modpacksuite.sync.common.bundle.ReleaseBundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures comparing two releases of a pack, either file by file as a release bundle is built or by descending only
+ * into the directories whose hashes differ as a client compares its trees with the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManifestDiffBenchmark {
+    @Param({"0.01", "0.05", "0.25"})
+    private double mChangedFraction;
+
+    private PackManifest mFrom;
+    private PackManifest mTo;
+    private MerkleTree mFromTree;
+    private MerkleTree mToTree;
+
+    @Setup
+    public void setUp() {
+        mFrom = SyntheticInstance.createManifest(
+            SyntheticInstance.DEFAULT_JAR_COUNT,
+            SyntheticInstance.DEFAULT_CONFIG_COUNT,
+            1L);
+        mTo = SyntheticInstance.createUpdate(mFrom, mChangedFraction, 2L);
+        mFromTree = MerkleTree.build(mFrom.getTree("config").get());
+        mToTree = MerkleTree.build(mTo.getTree("config").get());
+    }
+
+    @Benchmark
+    public ReleaseBundle diffReleases() {
+        return ReleaseBundle.diff(mFrom, mTo);
+    }
+
+    @Benchmark
+    public int descendMerkleTree() {
+        int changedFiles = 0;
+        final Deque<String> directories = new ArrayDeque<>();
+        directories.push(mToTree.getName());
+        while (!directories.isEmpty()) {
+            final String directory = directories.pop();
+            if (mToTree.getHash(directory).equals(mFromTree.getHash(directory))) {
+                continue;
+            }
+
+            final List<MerkleNode> fromChildren = mFromTree.getChildren(directory).orElse(null);
+            for (final MerkleNode child : mToTree.getChildren(directory).get()) {
+                if (fromChildren != null && fromChildren.contains(child)) {
+                    continue;
+                }
+                if (child.isDirectory()) {
+                    directories.push(directory + "/" + child.getName());
+                } else {
+                    changedFiles++;
+                }
+            }
+        }
+        return changedFiles;
+    }
+}
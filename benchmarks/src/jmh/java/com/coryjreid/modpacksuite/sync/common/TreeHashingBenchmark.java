@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpacksuite.loadtest.SyntheticInstance;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures turning a tree on disk into a manifest: hashing every file, updating an index which has nothing or
+ * everything cached, and building the directory hashes of the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TreeHashingBenchmark {
+    @Param({"mods", "config"})
+    private String mTree;
+
+    private Path mInstanceRoot;
+    private FileStateIndex mWarmIndex;
+    private TreeManifest mManifest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mInstanceRoot = SyntheticInstance.create(
+            Files.createTempDirectory("synthetic-instance"),
+            SyntheticInstance.DEFAULT_JAR_COUNT,
+            SyntheticInstance.DEFAULT_CONFIG_COUNT,
+            1L);
+        mWarmIndex = new FileStateIndex();
+        mWarmIndex.update(mInstanceRoot, mTree);
+        mManifest = TreeManifest.build(mInstanceRoot, mTree);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticInstance.delete(mInstanceRoot);
+    }
+
+    @Benchmark
+    public TreeManifest buildManifest() throws IOException {
+        return TreeManifest.build(mInstanceRoot, mTree);
+    }
+
+    @Benchmark
+    public int updateColdIndex() throws IOException {
+        return new FileStateIndex().update(mInstanceRoot, mTree);
+    }
+
+    @Benchmark
+    public int updateWarmIndex() throws IOException {
+        return mWarmIndex.update(mInstanceRoot, mTree);
+    }
+
+    @Benchmark
+    public MerkleTree buildMerkleTree() {
+        return MerkleTree.build(mManifest);
+    }
+}
@@ -73,9 +73,7 @@ public final class ConfigLoader {
 
         Preconditions.checkNotNull(programArgs, "programArgs cannot be null");
 
-        final Path configFile = Paths.get(programArgs.length == 0
-            ? DEFAULT_CONFIG_FILE_NAME
-            : parseArguments(programArgs).getString(CONFIG_FILE_ARGUMENT_KEY));
+        final Path configFile = getConfigFile(programArgs);
 
         if (Files.exists(configFile)) {
             return ConfigFactory.parseFile(configFile.toFile());
@@ -93,6 +91,21 @@ public final class ConfigLoader {
         }
     }
 
+    /**
+     * Resolves which configuration file {@link #loadConfig(String[], boolean)} would load. Other files which belong
+     * to the configuration (such as caches) should be stored next to it.
+     *
+     * @param programArgs the string array of program arguments to parse (never {@code null})
+     * @return the {@link Path} to the configuration file, which may not exist
+     */
+    public static Path getConfigFile(final String[] programArgs) {
+        Preconditions.checkNotNull(programArgs, "programArgs cannot be null");
+
+        return Paths.get(programArgs.length == 0
+            ? DEFAULT_CONFIG_FILE_NAME
+            : parseArguments(programArgs).getString(CONFIG_FILE_ARGUMENT_KEY));
+    }
+
     private static JSAPResult parseArguments(final String[] args) {
         final JSAPResult parseResult = sArgumentParser.parse(args);
         if (parseResult.success()) {
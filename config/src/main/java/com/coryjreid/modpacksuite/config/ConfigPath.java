@@ -36,6 +36,42 @@ public final class ConfigPath {
         return createPathExpression(PathComponent.MINECRAFT_INSTANCE_ROOT);
     }
 
+    public static String serverPort() {
+        return createPathExpression(PathComponent.SERVER_PORT);
+    }
+
+    public static String ioThreads() {
+        return createPathExpression(PathComponent.IO_THREADS);
+    }
+
+    public static String maxActiveClients() {
+        return createPathExpression(PathComponent.MAX_ACTIVE_CLIENTS);
+    }
+
+    public static String maxEgressRate() {
+        return createPathExpression(PathComponent.MAX_EGRESS_RATE);
+    }
+
+    public static String deltaBlockSize() {
+        return createPathExpression(PathComponent.DELTA_BLOCK_SIZE);
+    }
+
+    public static String archiveDeltaBlockSize() {
+        return createPathExpression(PathComponent.ARCHIVE_DELTA_BLOCK_SIZE);
+    }
+
+    public static String cacheDirectory() {
+        return createPathExpression(PathComponent.CACHE_DIRECTORY);
+    }
+
+    public static String watchSettleTime() {
+        return createPathExpression(PathComponent.WATCH_SETTLE_TIME);
+    }
+
+    public static String bundleVersions() {
+        return createPathExpression(PathComponent.BUNDLE_VERSIONS);
+    }
+
     public static String serverOnlyModIds() {
         return createPathExpression(
             PathComponent.MOD_EXCEPTIONS,
@@ -69,6 +105,15 @@ public final class ConfigPath {
      */
     private enum PathComponent {
         MINECRAFT_INSTANCE_ROOT("minecraftInstanceRoot"),
+        SERVER_PORT("serverPort"),
+        IO_THREADS("ioThreads"),
+        MAX_ACTIVE_CLIENTS("maxActiveClients"),
+        MAX_EGRESS_RATE("maxEgressRate"),
+        DELTA_BLOCK_SIZE("deltaBlockSize"),
+        ARCHIVE_DELTA_BLOCK_SIZE("archiveDeltaBlockSize"),
+        CACHE_DIRECTORY("cacheDirectory"),
+        WATCH_SETTLE_TIME("watchSettleTime"),
+        BUNDLE_VERSIONS("bundleVersions"),
         MOD_EXCEPTIONS("modExceptions"),
         CLIENT_ONLY_MOD_IDS("clientOnly"),
         SERVER_ONLY_MOD_IDS("serverOnly"),
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.coryjreid.modpacksuite.config.ConfigLoader;
+import com.coryjreid.modpacksuite.sync.client.ClientConfig;
+import com.coryjreid.modpacksuite.sync.client.OutputMultiplexer;
+import com.coryjreid.modpacksuite.sync.client.SyncReport;
+import com.coryjreid.modpacksuite.sync.client.Synchronizer;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures how many clients a server can bring up to date at once. For every generated pack size a server is started
+ * in a process of its own, then for every outdated fraction and client count that many clients synchronize outdated
+ * copies of the pack at the same time, all from this process. Throughput, completion time percentiles and the CPU and
+ * heap used by the server are logged per scenario and written to {@value #REPORT_FILE_NAME}.
+ * <br><br>
+ * Everything runs on the local machine: packs and client instances are written to the work directory and removed
+ * again afterwards. The configuration file is optional (see {@link LoadTestConfig}). As every client connects from the
+ * same address the server schedules them as one client, so the scenarios measure the server without its admission
+ * queue or per-client egress shares.
+ */
+public final class LoadTest {
+    static final String REPORT_FILE_NAME = "loadTestReport.json";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final ObjectMapper sObjectMapper = new ObjectMapper();
+
+    /**
+     * Prevent instantiation.
+     */
+    private LoadTest() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final LoadTestConfig config = new LoadTestConfig(args.length == 0
+            ? ConfigFactory.empty()
+            : ConfigLoader.loadConfig(args, true));
+        final Path workDirectory = config.getWorkDirectory().toAbsolutePath();
+
+        final List<ScenarioResult> results = new ArrayList<>();
+        for (final int jarCount : config.getJarCounts()) {
+            final Path packRoot = workDirectory.resolve("pack");
+            deleteIfExists(packRoot);
+            sLogger.info("Generating a pack of {} jars", jarCount);
+            SyntheticInstance.create(packRoot, jarCount, jarCount * config.getConfigsPerJar(), jarCount);
+
+            try (ServerProcess server = ServerProcess.start(
+                packRoot,
+                config.getIoThreads(),
+                config.getServerJvmOptions())) {
+
+                for (final double outdatedFraction : config.getOutdatedFractions()) {
+                    for (final int clientCount : config.getClientCounts()) {
+                        final ScenarioResult result = runScenario(
+                            config,
+                            server,
+                            packRoot,
+                            workDirectory.resolve("clients"),
+                            jarCount,
+                            outdatedFraction,
+                            clientCount);
+                        sLogger.info(result.describe());
+                        results.add(result);
+                    }
+                }
+            } finally {
+                deleteIfExists(packRoot);
+            }
+        }
+
+        final List<Map<String, Object>> scenarios = new ArrayList<>();
+        for (final ScenarioResult result : results) {
+            scenarios.add(result.toMap());
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("scenarios", scenarios);
+        final Path reportFile = workDirectory.resolve(REPORT_FILE_NAME);
+        sObjectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+        sLogger.info("Wrote {}", reportFile);
+    }
+
+    private static ScenarioResult runScenario(
+        final LoadTestConfig config,
+        final ServerProcess server,
+        final Path packRoot,
+        final Path clientsDirectory,
+        final int jarCount,
+        final double outdatedFraction,
+        final int clientCount) throws IOException {
+
+        deleteIfExists(clientsDirectory);
+        final List<Path> clientDirectories = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            final Path clientDirectory = clientsDirectory.resolve(Integer.toString(i));
+            SyntheticInstance.copyOutdated(packRoot, clientDirectory.resolve("instance"), outdatedFraction, i);
+            clientDirectories.add(clientDirectory);
+        }
+
+        // Every client waits for the others so they all hit the server together
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(clientCount);
+        final List<Future<Duration>> completionTimes = new ArrayList<>();
+        for (final Path clientDirectory : clientDirectories) {
+            final Synchronizer synchronizer = createSynchronizer(config.getClientConfig(), server, clientDirectory);
+            completionTimes.add(executor.submit(() -> {
+                startSignal.await();
+                final Stopwatch stopwatch = Stopwatch.createStarted();
+                if (!synchronizer.run()) {
+                    failures.incrementAndGet();
+                }
+                return stopwatch.elapsed();
+            }));
+        }
+
+        server.resetPeakHeapUsed();
+        final long cpuTimeBefore = server.getCpuTimeNanos();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        startSignal.countDown();
+        final List<Duration> durations = new ArrayList<>();
+        try {
+            for (final Future<Duration> completionTime : completionTimes) {
+                durations.add(completionTime.get());
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the clients", exception);
+        } catch (final ExecutionException exception) {
+            throw new IOException("A client failed unexpectedly", exception.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        final Duration elapsed = stopwatch.elapsed();
+
+        // Let the server report the CPU time of the last requests before reading it
+        sleepQuietly(2 * MonitoredServer.SAMPLE_INTERVAL_MILLIS);
+        final long serverCpuTimeNanos = server.getCpuTimeNanos() - cpuTimeBefore;
+
+        long bytesReceived = 0;
+        for (final Path clientDirectory : clientDirectories) {
+            final Path reportFile = clientDirectory.resolve(SyncReport.DEFAULT_REPORT_FILE_NAME);
+            if (Files.exists(reportFile)) {
+                bytesReceived += sObjectMapper.readTree(reportFile.toFile()).path("bytesReceived").asLong();
+            }
+        }
+        deleteIfExists(clientsDirectory);
+
+        return new ScenarioResult(
+            jarCount,
+            outdatedFraction,
+            failures.get(),
+            elapsed,
+            durations,
+            bytesReceived,
+            serverCpuTimeNanos,
+            server.getPeakHeapUsed());
+    }
+
+    private static Synchronizer createSynchronizer(
+        final Config clientConfig,
+        final ServerProcess server,
+        final Path clientDirectory) {
+
+        // The simulated clients share a machine, so the content cache is off to make every client hit the server
+        final Config config = clientConfig.withFallback(ConfigFactory.parseMap(ImmutableMap.<String, Object>builder()
+            .put("serverHostname", "localhost")
+            .put("serverPort", server.getPort())
+            .put("serverPath", "pack")
+            .put("protocol", "native")
+            .put("contentCacheSize", 0)
+            .put("minecraftInstanceRoot", clientDirectory.resolve("instance").toString())
+            .build()));
+        return new Synchronizer(
+            new ClientConfig(config),
+            clientDirectory.resolve(FileStateIndex.DEFAULT_INDEX_FILE_NAME),
+            clientDirectory.resolve(SyncReport.DEFAULT_REPORT_FILE_NAME),
+            transferName -> new OutputMultiplexer());
+    }
+
+    private static void deleteIfExists(final Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            SyntheticInstance.delete(directory);
+        }
+    }
+
+    private static void sleepQuietly(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Represents the optional {@code application.conf} file of a load test. Every scenario combines one pack size, one
+ * outdated fraction and one client count, so the lists below multiply into the number of scenarios which run.
+ */
+public class LoadTestConfig {
+    private static final List<Integer> DEFAULT_JAR_COUNTS = ImmutableList.of(50, 200);
+    private static final int DEFAULT_CONFIGS_PER_JAR = 10;
+    private static final List<Double> DEFAULT_OUTDATED_FRACTIONS = ImmutableList.of(0.05, 1.0);
+    private static final List<Integer> DEFAULT_CLIENT_COUNTS = ImmutableList.of(1, 10, 25);
+    private static final int DEFAULT_IO_THREADS = 2;
+
+    private final Config mConfig;
+
+    public LoadTestConfig(final Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * @return the directory generated packs, client instances and the report are written to (defaults to the working
+     *     directory when not configured)
+     */
+    public Path getWorkDirectory() {
+        return Paths.get(mConfig.hasPath("workDirectory") ? mConfig.getString("workDirectory") : "");
+    }
+
+    /**
+     * @return the number of jars in each generated pack (defaults to {@code [50, 200]} when not configured)
+     * @throws IllegalStateException if a configured value is not positive
+     */
+    public List<Integer> getJarCounts() {
+        return getPositiveIntegers("jarCounts", DEFAULT_JAR_COUNTS);
+    }
+
+    /**
+     * @return the number of config files generated per jar (defaults to {@value #DEFAULT_CONFIGS_PER_JAR} when not
+     *     configured)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public int getConfigsPerJar() {
+        final int configsPerJar = mConfig.hasPath("configsPerJar")
+            ? mConfig.getInt("configsPerJar")
+            : DEFAULT_CONFIGS_PER_JAR;
+        Preconditions.checkState(configsPerJar >= 0, "configsPerJar cannot be negative");
+        return configsPerJar;
+    }
+
+    /**
+     * @return the fractions of files which differ or are missing on each client, {@code 1} being a fresh install
+     *     (defaults to {@code [0.05, 1.0]} when not configured)
+     * @throws IllegalStateException if a configured value is not between {@code 0} and {@code 1}
+     */
+    public List<Double> getOutdatedFractions() {
+        final List<Double> outdatedFractions = mConfig.hasPath("outdatedFractions")
+            ? ImmutableList.copyOf(mConfig.getDoubleList("outdatedFractions"))
+            : DEFAULT_OUTDATED_FRACTIONS;
+        for (final double outdatedFraction : outdatedFractions) {
+            Preconditions.checkState(
+                outdatedFraction >= 0 && outdatedFraction <= 1,
+                "outdatedFractions must be between 0 and 1");
+        }
+        return outdatedFractions;
+    }
+
+    /**
+     * @return the numbers of clients which synchronize at the same time (defaults to {@code [1, 10, 25]} when not
+     *     configured)
+     * @throws IllegalStateException if a configured value is not positive
+     */
+    public List<Integer> getClientCounts() {
+        return getPositiveIntegers("clientCounts", DEFAULT_CLIENT_COUNTS);
+    }
+
+    /**
+     * @return the number of event loops of the server (defaults to {@value #DEFAULT_IO_THREADS} when not configured)
+     * @throws IllegalStateException if the configured value is not positive
+     */
+    public int getIoThreads() {
+        final int ioThreads = mConfig.hasPath("ioThreads") ? mConfig.getInt("ioThreads") : DEFAULT_IO_THREADS;
+        Preconditions.checkState(ioThreads > 0, "ioThreads must be positive");
+        return ioThreads;
+    }
+
+    /**
+     * @return extra options of the server JVM, e.g. {@code ["-Xmx512m"]} (defaults to none when not configured)
+     */
+    public List<String> getServerJvmOptions() {
+        return mConfig.hasPath("serverJvmOptions")
+            ? ImmutableList.copyOf(mConfig.getStringList("serverJvmOptions"))
+            : ImmutableList.of();
+    }
+
+    /**
+     * @return the config every simulated client is created from, e.g. to set {@code downloadConnections} (defaults
+     *     to the client defaults when not configured)
+     */
+    public Config getClientConfig() {
+        return mConfig.hasPath("client") ? mConfig.getConfig("client") : ConfigFactory.empty();
+    }
+
+    private List<Integer> getPositiveIntegers(final String path, final List<Integer> defaultValues) {
+        final List<Integer> values = mConfig.hasPath(path)
+            ? ImmutableList.copyOf(mConfig.getIntList(path))
+            : defaultValues;
+        for (final int value : values) {
+            Preconditions.checkState(value > 0, path + " must be positive");
+        }
+        return values;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpacksuite.sync.common.PackFingerprint;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.server.ServerConfig;
+import com.coryjreid.modpacksuite.sync.server.SyncServer;
+import com.google.common.collect.ImmutableMap;
+import com.sun.management.OperatingSystemMXBean;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * The entry point of the server process of a load test. It serves a pack on any free port and reports on standard
+ * output when it is ready and, periodically, how much CPU time and heap it uses, so the load test measures the server
+ * alone rather than the clients running next to it. The server stops once standard input is closed.
+ * <br><br>
+ * Lines meant for the load test start with {@value #READY_PREFIX} or {@value #SAMPLE_PREFIX}; anything else is log
+ * output.
+ */
+public final class MonitoredServer {
+    static final String READY_PREFIX = "loadTest.ready ";
+    static final String SAMPLE_PREFIX = "loadTest.sample ";
+    static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    /**
+     * Prevent instantiation.
+     */
+    private MonitoredServer() {
+        // Nothing to do.
+    }
+
+    /**
+     * @param args the pack root and the number of event loops
+     * @throws IOException if the pack could not be published or served
+     */
+    public static void main(final String[] args) throws IOException {
+        final Path packRoot = Paths.get(args[0]);
+        final ServerConfig config = new ServerConfig(ConfigFactory.parseMap(ImmutableMap.of(
+            "minecraftInstanceRoot", packRoot.toString(),
+            "serverPort", 0,
+            "ioThreads", Integer.parseInt(args[1]))));
+
+        try (SyncServer server = new SyncServer(config)) {
+            server.publish(PackManifest.build(packRoot, PackFingerprint.SERVED_TREES));
+            server.start();
+
+            final OperatingSystemMXBean operatingSystem =
+                (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(
+                () -> System.out.println(SAMPLE_PREFIX
+                    + operatingSystem.getProcessCpuTime()
+                    + " "
+                    + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()),
+                0,
+                SAMPLE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+            System.out.println(READY_PREFIX + server.getPort());
+
+            while (System.in.read() != -1) {
+                // Wait for the load test to close standard input
+            }
+            sampler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * What happened when a number of clients synchronized the same outdated instance against a server at the same time.
+ */
+final class ScenarioResult {
+    private static final double BYTES_PER_MIB = 1024 * 1024;
+    private static final double NANOS_PER_SECOND = 1_000_000_000;
+
+    private final int mJarCount;
+    private final double mOutdatedFraction;
+    private final int mClients;
+    private final int mFailures;
+    private final Duration mElapsed;
+    private final List<Duration> mCompletionTimes;
+    private final long mBytesReceived;
+    private final long mServerCpuTimeNanos;
+    private final long mServerPeakHeapUsed;
+
+    /**
+     * @param jarCount the number of jars in the pack
+     * @param outdatedFraction the fraction of files which were outdated on each client
+     * @param failures the number of clients which failed to synchronize
+     * @param elapsed the time from starting the clients until the last one finished (never {@code null})
+     * @param completionTimes how long each client took (never {@code null} or empty)
+     * @param bytesReceived the bytes all clients received from the server together
+     * @param serverCpuTimeNanos the CPU time the server used while the clients ran
+     * @param serverPeakHeapUsed the most heap the server used while the clients ran
+     */
+    ScenarioResult(
+        final int jarCount,
+        final double outdatedFraction,
+        final int failures,
+        final Duration elapsed,
+        final List<Duration> completionTimes,
+        final long bytesReceived,
+        final long serverCpuTimeNanos,
+        final long serverPeakHeapUsed) {
+
+        Preconditions.checkArgument(!completionTimes.isEmpty(), "completionTimes cannot be empty");
+
+        final List<Duration> sortedCompletionTimes = new ArrayList<>(completionTimes);
+        Collections.sort(sortedCompletionTimes);
+        mJarCount = jarCount;
+        mOutdatedFraction = outdatedFraction;
+        mClients = completionTimes.size();
+        mFailures = failures;
+        mElapsed = Preconditions.checkNotNull(elapsed, "elapsed cannot be null");
+        mCompletionTimes = sortedCompletionTimes;
+        mBytesReceived = bytesReceived;
+        mServerCpuTimeNanos = serverCpuTimeNanos;
+        mServerPeakHeapUsed = serverPeakHeapUsed;
+    }
+
+    /**
+     * @return a one-line summary for the log
+     */
+    String describe() {
+        return String.format(
+            "jars=%d outdated=%.2f clients=%d failures=%d syncs/s=%.2f MiB/s=%.1f p50=%dms p99=%dms"
+                + " serverCpu=%.2f cores serverHeap=%.0f MiB",
+            mJarCount,
+            mOutdatedFraction,
+            mClients,
+            mFailures,
+            getSyncsPerSecond(),
+            getMibPerSecond(),
+            getPercentile(0.5).toMillis(),
+            getPercentile(0.99).toMillis(),
+            getServerCpuCores(),
+            mServerPeakHeapUsed / BYTES_PER_MIB);
+    }
+
+    /**
+     * @return the fields of this result keyed by the names used in the JSON report
+     */
+    Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("jarCount", mJarCount);
+        map.put("outdatedFraction", mOutdatedFraction);
+        map.put("clients", mClients);
+        map.put("failures", mFailures);
+        map.put("elapsedMillis", mElapsed.toMillis());
+        map.put("syncsPerSecond", getSyncsPerSecond());
+        map.put("bytesReceived", mBytesReceived);
+        map.put("mibPerSecond", getMibPerSecond());
+        map.put("p50Millis", getPercentile(0.5).toMillis());
+        map.put("p99Millis", getPercentile(0.99).toMillis());
+        map.put("maxMillis", mCompletionTimes.get(mCompletionTimes.size() - 1).toMillis());
+        map.put("serverCpuMillis", mServerCpuTimeNanos / 1_000_000);
+        map.put("serverCpuCores", getServerCpuCores());
+        map.put("serverPeakHeapUsed", mServerPeakHeapUsed);
+        return map;
+    }
+
+    /**
+     * @return the completion time below which the given fraction of clients finished, using the nearest rank
+     */
+    private Duration getPercentile(final double fraction) {
+        final int rank = (int) Math.ceil(fraction * mCompletionTimes.size());
+        return mCompletionTimes.get(Math.max(rank, 1) - 1);
+    }
+
+    private double getSyncsPerSecond() {
+        return (mClients - mFailures) / getElapsedSeconds();
+    }
+
+    private double getMibPerSecond() {
+        return mBytesReceived / BYTES_PER_MIB / getElapsedSeconds();
+    }
+
+    /**
+     * @return how many cores the server kept busy on average
+     */
+    private double getServerCpuCores() {
+        return mServerCpuTimeNanos / NANOS_PER_SECOND / getElapsedSeconds();
+    }
+
+    private double getElapsedSeconds() {
+        return Math.max(mElapsed.toNanos(), 1) / NANOS_PER_SECOND;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link MonitoredServer} running in a process of its own, along with the CPU time and heap it last reported.
+ */
+final class ServerProcess implements Closeable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final long STARTUP_TIMEOUT_MINUTES = 10;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Process mProcess;
+    private final CompletableFuture<Integer> mPort = new CompletableFuture<>();
+    private long mCpuTimeNanos;
+    private long mHeapUsed;
+    private long mPeakHeapUsed;
+
+    private ServerProcess(final Process process) {
+        mProcess = process;
+    }
+
+    /**
+     * Starts a server and waits until it accepts connections. Publishing hashes and compresses the whole pack, so this
+     * may take a while for large packs.
+     *
+     * @param packRoot the pack to serve (never {@code null})
+     * @param ioThreads the number of event loops of the server
+     * @param jvmOptions extra options of the server JVM (never {@code null})
+     * @return the started {@link ServerProcess}
+     * @throws IOException if the server could not be started
+     */
+    static ServerProcess start(final Path packRoot, final int ioThreads, final List<String> jvmOptions)
+        throws IOException {
+
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(jvmOptions, "jvmOptions cannot be null");
+
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MonitoredServer.class.getName());
+        command.add(packRoot.toString());
+        command.add(Integer.toString(ioThreads));
+
+        final ServerProcess serverProcess = new ServerProcess(new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start());
+        final Thread outputReader = new Thread(serverProcess::readOutput, "server-output");
+        outputReader.setDaemon(true);
+        outputReader.start();
+
+        try {
+            serverProcess.mPort.get(STARTUP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            return serverProcess;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            serverProcess.close();
+            throw new IOException("Interrupted while starting the server", exception);
+        } catch (final ExecutionException | TimeoutException exception) {
+            serverProcess.close();
+            throw new IOException("The server failed to start", exception);
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return mPort.join();
+    }
+
+    /**
+     * @return the CPU time the server process has used so far, as of its last sample
+     */
+    synchronized long getCpuTimeNanos() {
+        return mCpuTimeNanos;
+    }
+
+    /**
+     * @return the most heap the server used since the last {@link #resetPeakHeapUsed()}
+     */
+    synchronized long getPeakHeapUsed() {
+        return mPeakHeapUsed;
+    }
+
+    /**
+     * Starts tracking the peak heap usage from the current usage.
+     */
+    synchronized void resetPeakHeapUsed() {
+        mPeakHeapUsed = mHeapUsed;
+    }
+
+    /**
+     * Closes the standard input of the server, which makes it stop, and waits for it to exit.
+     */
+    @Override
+    public void close() {
+        try {
+            mProcess.getOutputStream().close();
+            if (!mProcess.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                sLogger.warn("The server did not stop within {} seconds, killing it", SHUTDOWN_TIMEOUT_SECONDS);
+                mProcess.destroyForcibly();
+            }
+        } catch (final IOException exception) {
+            mProcess.destroyForcibly();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            mProcess.destroyForcibly();
+        }
+    }
+
+    private void readOutput() {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(mProcess.getInputStream(), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(MonitoredServer.SAMPLE_PREFIX)) {
+                    final String[] values = line.substring(MonitoredServer.SAMPLE_PREFIX.length()).split(" ");
+                    recordSample(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                } else if (line.startsWith(MonitoredServer.READY_PREFIX)) {
+                    mPort.complete(Integer.parseInt(line.substring(MonitoredServer.READY_PREFIX.length())));
+                } else {
+                    sLogger.info("[server] {}", line);
+                }
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to read the output of the server", exception);
+        }
+        mPort.completeExceptionally(new IOException("The server exited"));
+    }
+
+    private synchronized void recordSample(final long cpuTimeNanos, final long heapUsed) {
+        mCpuTimeNanos = cpuTimeNanos;
+        mHeapUsed = heapUsed;
+        mPeakHeapUsed = Math.max(mPeakHeapUsed, heapUsed);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+/**
+ * Generates Minecraft instances shaped like a real modpack: a mods/ tree of jars between 16 KiB and 2 MiB (most of
+ * them small) and a config/ tree of small text files spread over one directory per mod. Everything is derived from a
+ * seed, so every fork of a benchmark and every run of a load test sees the same instance.
+ */
+public final class SyntheticInstance {
+    public static final int DEFAULT_JAR_COUNT = 300;
+    public static final int DEFAULT_CONFIG_COUNT = 3000;
+    public static final List<String> TREES = ImmutableList.of("mods", "config");
+
+    private static final int MIN_JAR_SIZE = 16 * 1024;
+    private static final int MAX_JAR_SIZE = 2 * 1024 * 1024;
+    private static final int MIN_CONFIG_SIZE = 128;
+    private static final int MAX_CONFIG_SIZE = 8 * 1024;
+
+    /**
+     * Prevent instantiation.
+     */
+    private SyntheticInstance() {
+    }
+
+    /**
+     * Writes an instance.
+     *
+     * @param instanceRoot the directory to write the instance to, which is created if needed (never {@code null})
+     * @param jarCount the number of jars in mods/
+     * @param configCount the number of files in config/
+     * @param seed the seed of the contents
+     * @return the instance root, to be removed with {@link #delete(Path)}
+     * @throws IOException if the instance could not be written
+     */
+    public static Path create(final Path instanceRoot, final int jarCount, final int configCount, final long seed)
+        throws IOException {
+
+        Files.createDirectories(instanceRoot);
+        final Random random = new Random(seed);
+
+        final Path mods = Files.createDirectories(instanceRoot.resolve("mods"));
+        for (int i = 0; i < jarCount; i++) {
+            final byte[] contents = new byte[nextJarSize(random)];
+            random.nextBytes(contents);
+            Files.write(mods.resolve(getJarName(i)), contents);
+        }
+
+        for (int i = 0; i < configCount; i++) {
+            final Path file = instanceRoot.resolve(getConfigPath(i, jarCount));
+            Files.createDirectories(file.getParent());
+            Files.write(file, nextConfig(random));
+        }
+        return instanceRoot;
+    }
+
+    /**
+     * Builds the manifest of an instance like {@link #create(Path, int, int, long)} would write without touching the
+     * disk. The hashes are random, which makes no difference to code comparing manifests.
+     *
+     * @param jarCount the number of jars in mods/
+     * @param configCount the number of files in config/
+     * @param seed the seed of the sizes and hashes
+     * @return the new {@link PackManifest}
+     */
+    public static PackManifest createManifest(final int jarCount, final int configCount, final long seed) {
+        final Random random = new Random(seed);
+
+        final List<ManifestEntry> mods = new ArrayList<>(jarCount);
+        for (int i = 0; i < jarCount; i++) {
+            mods.add(new ManifestEntry("mods/" + getJarName(i), nextJarSize(random), nextHash(random)));
+        }
+
+        final List<ManifestEntry> configs = new ArrayList<>(configCount);
+        for (int i = 0; i < configCount; i++) {
+            configs.add(new ManifestEntry(
+                getConfigPath(i, jarCount),
+                MIN_CONFIG_SIZE + random.nextInt(MAX_CONFIG_SIZE - MIN_CONFIG_SIZE),
+                nextHash(random)));
+        }
+        return new PackManifest(ImmutableList.of(new TreeManifest("mods", mods), new TreeManifest("config", configs)));
+    }
+
+    /**
+     * Derives the next release of a pack: a fraction of the files change and as many jars are renamed, like mods
+     * updated to a new version.
+     *
+     * @param manifest the manifest of the current release (never {@code null})
+     * @param changedFraction the fraction of files to change, e.g. {@code 0.05}
+     * @param seed the seed of the changes
+     * @return the manifest of the next release
+     */
+    public static PackManifest createUpdate(
+        final PackManifest manifest,
+        final double changedFraction,
+        final long seed) {
+
+        final Random random = new Random(seed);
+        final List<TreeManifest> trees = new ArrayList<>();
+        for (final TreeManifest tree : manifest.getTrees().values()) {
+            final List<ManifestEntry> entries = new ArrayList<>(tree.getEntries().size());
+            for (final ManifestEntry entry : tree.getEntries()) {
+                if (random.nextDouble() >= changedFraction) {
+                    entries.add(entry);
+                } else if (entry.getPath().endsWith(".jar")) {
+                    final String path = entry.getPath().replace(".jar", "-updated.jar");
+                    entries.add(new ManifestEntry(path, entry.getSize(), nextHash(random)));
+                } else {
+                    entries.add(new ManifestEntry(entry.getPath(), entry.getSize(), nextHash(random)));
+                }
+            }
+            trees.add(new TreeManifest(tree.getName(), entries));
+        }
+        return new PackManifest(trees);
+    }
+
+    /**
+     * Copies an instance as a client which missed some updates would have it: a fraction of the files differ from the
+     * source or are missing altogether. A fraction of {@code 1} leaves nothing usable, like a fresh install.
+     *
+     * @param source the instance to copy (never {@code null})
+     * @param instanceRoot the directory to copy the instance to, which is created if needed (never {@code null})
+     * @param outdatedFraction the fraction of files which differ or are missing, e.g. {@code 0.05}
+     * @param seed the seed of which files are outdated
+     * @throws IOException if the instance could not be copied
+     */
+    public static void copyOutdated(
+        final Path source,
+        final Path instanceRoot,
+        final double outdatedFraction,
+        final long seed) throws IOException {
+
+        final Random random = new Random(seed);
+        for (final String tree : TREES) {
+            final List<Path> files;
+            try (Stream<Path> paths = Files.walk(source.resolve(tree))) {
+                files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+
+            for (final Path file : files) {
+                final Path target = instanceRoot.resolve(source.relativize(file).toString());
+                if (random.nextDouble() >= outdatedFraction) {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                } else if (random.nextBoolean()) {
+                    // An older version of the file: same size, different contents
+                    final byte[] contents = new byte[(int) Files.size(file)];
+                    random.nextBytes(contents);
+                    Files.createDirectories(target.getParent());
+                    Files.write(target, contents);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an instance written by {@link #create(Path, int, int, long)}.
+     *
+     * @param instanceRoot the instance root (never {@code null})
+     * @throws IOException if the instance could not be removed
+     */
+    public static void delete(final Path instanceRoot) throws IOException {
+        MoreFiles.deleteRecursively(instanceRoot, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    private static String getJarName(final int index) {
+        return String.format("mod%03d-1.16.5-%d.%d.jar", index, index % 7, index % 13);
+    }
+
+    private static String getConfigPath(final int index, final int jarCount) {
+        return String.format("config/mod%03d/settings-%d.toml", index % Math.max(jarCount, 1), index);
+    }
+
+    /**
+     * @return a size which is log-uniformly distributed, so small jars are far more common than large ones
+     */
+    private static int nextJarSize(final Random random) {
+        final double logMin = Math.log(MIN_JAR_SIZE);
+        final double logMax = Math.log(MAX_JAR_SIZE);
+        return (int) Math.exp(logMin + random.nextDouble() * (logMax - logMin));
+    }
+
+    private static byte[] nextConfig(final Random random) {
+        final int size = MIN_CONFIG_SIZE + random.nextInt(MAX_CONFIG_SIZE - MIN_CONFIG_SIZE);
+        final StringBuilder config = new StringBuilder(size + 64);
+        while (config.length() < size) {
+            config.append("setting").append(random.nextInt(1000)).append(" = ").append(random.nextInt()).append('\n');
+        }
+        return config.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static HashCode nextHash(final Random random) {
+        final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        random.nextBytes(hash);
+        return HashCode.fromBytes(hash);
+    }
+}
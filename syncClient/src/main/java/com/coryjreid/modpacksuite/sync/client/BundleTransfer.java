@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.client.chunk.ChunkStore;
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.bundle.ReleaseBundle;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+
+/**
+ * A {@link Transfer} which brings an instance from the pack version it last applied to the published one by streaming
+ * the {@link ReleaseBundle} between the two and applying it, instead of negotiating every changed file. It must only
+ * run when every local tree still matches the applied version. Like {@link NativeTransfer}, each affected tree is
+ * built in a {@link StagedTree}, excluded names are left alone and deleted files are retired into the
+ * {@link ChunkStore} first.
+ * <br><br>
+ * The bundle describes the served trees, which it maps onto local trees. Where two served trees make up one local
+ * tree, a file of the later tree wins, but a file deleted from one tree is deleted locally even if the other still
+ * serves it. The {@link NativeTransfer}s which run afterwards put back what such an edge case got wrong.
+ */
+public final class BundleTransfer implements Transfer {
+    private final HashCode mFromFingerprint;
+    private final Map<String, String> mLocalTrees;
+    private final Map<String, Set<String>> mExcludedNames;
+    private final SyncConnection mSession;
+    private final Path mInstanceRoot;
+    private final FileStateIndex mIndex;
+    private final ChunkStore mChunkStore;
+    private final ContentCache mContentCache;
+    private final OutputMultiplexer mOutput;
+
+    private long mFilesChecked;
+    private long mFilesDownloaded;
+    private long mFilesDeleted;
+
+    /**
+     * @param fromFingerprint the fingerprint of the pack version the instance has (never {@code null})
+     * @param localTrees the local tree each served tree is synchronized into, in order of precedence (never {@code
+     *     null})
+     * @param excludedNames the file and directory names which are neither updated nor deleted keyed by local tree
+     *     (never {@code null})
+     * @param session the connection to the server which the transfers of a launch share (never {@code null})
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param index the index holding the hashes of the local files (never {@code null})
+     * @param chunkStore the store to retire deleted files to (never {@code null})
+     * @param contentCache the cache to add written archives to (never {@code null})
+     * @param output receives a line for every changed file (never {@code null})
+     */
+    public BundleTransfer(
+        final HashCode fromFingerprint,
+        final Map<String, String> localTrees,
+        final Map<String, Set<String>> excludedNames,
+        final SyncConnection session,
+        final Path instanceRoot,
+        final FileStateIndex index,
+        final ChunkStore chunkStore,
+        final ContentCache contentCache,
+        final OutputMultiplexer output) {
+
+        mFromFingerprint = Preconditions.checkNotNull(fromFingerprint, "fromFingerprint cannot be null");
+        mLocalTrees = ImmutableMap.copyOf(localTrees);
+        mExcludedNames = ImmutableMap.copyOf(excludedNames);
+        mSession = Preconditions.checkNotNull(session, "session cannot be null");
+        mInstanceRoot = Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        mIndex = Preconditions.checkNotNull(index, "index cannot be null");
+        mChunkStore = Preconditions.checkNotNull(chunkStore, "chunkStore cannot be null");
+        mContentCache = Preconditions.checkNotNull(contentCache, "contentCache cannot be null");
+        mOutput = Preconditions.checkNotNull(output, "output cannot be null");
+    }
+
+    @Override
+    public String getName() {
+        return "bundle";
+    }
+
+    @Override
+    public TransferStatistics execute() throws IOException {
+        try (SyncConnection connection = mSession.share()) {
+            try {
+                connection.readBundle(mFromFingerprint, this::apply);
+            } catch (final ServerResponseException exception) {
+                if (exception.getStatus() != ResponseStatus.NOT_FOUND) {
+                    throw exception;
+                }
+                mOutput.processOutput("The server has no release bundle from " + mFromFingerprint, false);
+            }
+
+            return new TransferStatistics(
+                mFilesChecked,
+                mFilesDownloaded,
+                0,
+                mFilesDeleted,
+                connection.getBytesSent(),
+                connection.getBytesReceived(),
+                0,
+                0,
+                0);
+        }
+    }
+
+    private void apply(final InputStream body) throws IOException {
+        final ReleaseBundle bundle = ReleaseBundle.readHeader(new DataInputStream(body));
+        if (!bundle.getFromFingerprint().equals(mFromFingerprint)) {
+            throw new IOException("The server sent a release bundle from " + bundle.getFromFingerprint());
+        }
+        mFilesChecked = bundle.getDeletedPaths().size() + bundle.getFiles().size();
+
+        // Later served trees win, so the last file mapped onto a local path is the one to write
+        final Map<String, ManifestEntry> writtenFiles = new HashMap<>();
+        for (final ManifestEntry entry : bundle.getFiles()) {
+            toLocalPath(entry.getPath()).ifPresent(localPath -> writtenFiles.merge(localPath, entry,
+                (current, candidate) -> getPrecedence(candidate) >= getPrecedence(current) ? candidate : current));
+        }
+        final List<Path> deletedFiles = new ArrayList<>();
+        for (final String path : bundle.getDeletedPaths()) {
+            final Optional<String> localPath = toLocalPath(path);
+            if (localPath.isPresent() && !writtenFiles.containsKey(localPath.get())
+                && Files.isRegularFile(mInstanceRoot.resolve(localPath.get()))) {
+
+                deletedFiles.add(mInstanceRoot.resolve(localPath.get()));
+            }
+        }
+
+        final Set<Path> replacedFiles = new HashSet<>(deletedFiles);
+        final Map<String, StagedTree> stagedTrees = new LinkedHashMap<>();
+        for (final String localPath : writtenFiles.keySet()) {
+            replacedFiles.add(mInstanceRoot.resolve(localPath));
+            stagedTrees.computeIfAbsent(getTree(localPath), tree -> new StagedTree(mInstanceRoot, tree));
+        }
+        for (final Path file : deletedFiles) {
+            final String tree = getTree(toLocalPath(file));
+            stagedTrees.computeIfAbsent(tree, name -> new StagedTree(mInstanceRoot, name));
+        }
+
+        // Retire the files which are about to be deleted first, their replacements are probably new files
+        for (final Path file : deletedFiles) {
+            retire(file);
+        }
+
+        try {
+            for (final StagedTree stagedTree : stagedTrees.values()) {
+                stagedTree.begin();
+                stagedTree.linkLiveFiles(file -> !replacedFiles.contains(file));
+            }
+            for (final ManifestEntry entry : bundle.getFiles()) {
+                final InputStream contents = ByteStreams.limit(body, entry.getSize());
+                final Optional<String> localPath = toLocalPath(entry.getPath());
+                if (localPath.isPresent() && entry.equals(writtenFiles.get(localPath.get()))) {
+                    writeFile(stagedTrees.get(getTree(localPath.get())), localPath.get(), entry, contents);
+                } else if (ByteStreams.exhaust(contents) != entry.getSize()) {
+                    throw new IOException("The release bundle ended early");
+                }
+            }
+            for (final StagedTree stagedTree : stagedTrees.values()) {
+                stagedTree.commit();
+            }
+        } catch (final IOException | RuntimeException exception) {
+            // Trees which were already swapped in are whole, so they are kept
+            for (final StagedTree stagedTree : stagedTrees.values()) {
+                stagedTree.discard();
+            }
+            throw exception;
+        }
+
+        for (final Map.Entry<String, ManifestEntry> writtenFile : writtenFiles.entrySet()) {
+            mIndex.record(mInstanceRoot, writtenFile.getKey(), writtenFile.getValue().getHash());
+        }
+        for (final Path file : deletedFiles) {
+            mFilesDeleted++;
+            mOutput.processOutput("Deleted " + toLocalPath(file), true);
+        }
+    }
+
+    private void writeFile(
+        final StagedTree stagedTree,
+        final String localPath,
+        final ManifestEntry entry,
+        final InputStream contents) throws IOException {
+
+        final Path target = stagedTree.resolveStaged(localPath);
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+
+        final long copied;
+        final HashCode hash;
+        try (HashingOutputStream output = new HashingOutputStream(
+            ContentHasher.HASH_FUNCTION,
+            new BufferedOutputStream(Files.newOutputStream(target)))) {
+
+            copied = ByteStreams.copy(contents, output);
+            output.flush();
+            hash = output.hash();
+        }
+        if (copied != entry.getSize()) {
+            throw new IOException("The release bundle ended early");
+        }
+        if (!hash.equals(entry.getHash())) {
+            throw new IOException("'" + localPath + "' in the release bundle does not match its manifest");
+        }
+
+        mFilesDownloaded++;
+        mOutput.processOutput("Downloaded " + localPath + " (" + entry.getSize() + " bytes from the release bundle)",
+            true);
+        if (ContentCache.isCacheable(localPath)) {
+            try {
+                mContentCache.add(entry.getHash(), target);
+            } catch (final IOException exception) {
+                mOutput.processOutput("Failed to add " + localPath + " to the content cache: " + exception, false);
+            }
+        }
+    }
+
+    /**
+     * Maps the path of a served file onto the instance.
+     *
+     * @return the path relative to the instance root, or empty if the file is not synchronized or excluded
+     */
+    private Optional<String> toLocalPath(final String servedPath) {
+        final int separator = servedPath.indexOf('/');
+        final String localTree = separator < 0 ? null : mLocalTrees.get(servedPath.substring(0, separator));
+        if (localTree == null) {
+            return Optional.empty();
+        }
+
+        final String treePath = servedPath.substring(separator + 1);
+        final Set<String> excludedNames = mExcludedNames.getOrDefault(localTree, Collections.emptySet());
+        if (!Collections.disjoint(excludedNames, ImmutableList.copyOf(treePath.split("/")))) {
+            return Optional.empty();
+        }
+        return Optional.of(localTree + "/" + treePath);
+    }
+
+    private String toLocalPath(final Path file) {
+        return mInstanceRoot.relativize(file).toString().replace('\\', '/');
+    }
+
+    private int getPrecedence(final ManifestEntry entry) {
+        return ImmutableList.copyOf(mLocalTrees.keySet()).indexOf(getTree(entry.getPath()));
+    }
+
+    private static String getTree(final String path) {
+        return path.substring(0, path.indexOf('/'));
+    }
+
+    /**
+     * Adds a file to the {@link ChunkStore}. Failing to do so only costs bandwidth later, so it does not fail the
+     * transfer.
+     */
+    private void retire(final Path file) {
+        try {
+            mChunkStore.retire(file);
+        } catch (final IOException exception) {
+            mOutput.processOutput("Failed to keep the chunks of " + toLocalPath(file) + ": " + exception, false);
+        }
+    }
+}
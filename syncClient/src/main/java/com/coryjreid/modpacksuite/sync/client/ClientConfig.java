@@ -16,26 +16,157 @@
  */
 package com.coryjreid.modpacksuite.sync.client;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HostAndPort;
 import com.typesafe.config.Config;
 
 /**
  * Represents an {@code application.conf} file.
  */
 public class ClientConfig {
+    private static final int DEFAULT_MAX_CONCURRENT_TRANSFERS = 3;
+    private static final long DEFAULT_CHUNK_STORE_SIZE = 1024L * 1024 * 1024;
+    private static final int DEFAULT_DOWNLOAD_CONNECTIONS = 4;
+    private static final long DEFAULT_CONTENT_CACHE_SIZE = 2048L * 1024 * 1024;
+    private static final int DEFAULT_PEER_DISCOVERY_PORT = 25570;
+
     private final Config mConfig;
 
     public ClientConfig(final Config config) {
         mConfig = config;
     }
 
+    public String getServerHostname() {
+        return mConfig.getString("serverHostname");
+    }
+
+    public int getServerPort() {
+        return mConfig.getInt("serverPort");
+    }
+
+    /**
+     * @return how to talk to the server (defaults to {@link TransferProtocol#RSYNC} when not configured)
+     */
+    public TransferProtocol getProtocol() {
+        return mConfig.hasPath("protocol")
+            ? TransferProtocol.valueOf(mConfig.getString("protocol").toUpperCase(Locale.ROOT))
+            : TransferProtocol.RSYNC;
+    }
+
+    /**
+     * @return the size in bytes the chunk store of the native protocol is trimmed to (defaults to 1 GiB when not
+     *     configured, {@code 0} disables it)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public long getChunkStoreSize() {
+        final long chunkStoreSize = mConfig.hasPath("chunkStoreSize")
+            ? mConfig.getBytes("chunkStoreSize")
+            : DEFAULT_CHUNK_STORE_SIZE;
+        Preconditions.checkState(chunkStoreSize >= 0, "chunkStoreSize cannot be negative");
+        return chunkStoreSize;
+    }
+
+    /**
+     * @return the directory of the content cache which the instances on this machine share (defaults to {@code
+     *     .modpackSuite/contentCache} in the user's home directory when not configured)
+     */
+    public Path getContentCacheDirectory() {
+        return mConfig.hasPath("contentCacheDirectory")
+            ? Paths.get(mConfig.getString("contentCacheDirectory"))
+            : Paths.get(System.getProperty("user.home"), ".modpackSuite", "contentCache");
+    }
+
+    /**
+     * @return the size in bytes the files in the content cache which no instance uses are trimmed to (defaults to 2 GiB
+     *     when not configured, {@code 0} disables the cache)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public long getContentCacheSize() {
+        final long contentCacheSize = mConfig.hasPath("contentCacheSize")
+            ? mConfig.getBytes("contentCacheSize")
+            : DEFAULT_CONTENT_CACHE_SIZE;
+        Preconditions.checkState(contentCacheSize >= 0, "contentCacheSize cannot be negative");
+        return contentCacheSize;
+    }
+
+    /**
+     * @return {@code true} if the content cache is shared with other clients on the local network and files are
+     *     fetched from theirs (defaults to {@code false} when not configured)
+     */
+    public boolean isPeerSharingEnabled() {
+        return mConfig.hasPath("peerSharing") && mConfig.getBoolean("peerSharing");
+    }
+
+    /**
+     * @return the TCP port the content cache is shared on (defaults to {@code 0}, any free port, when not configured)
+     */
+    public int getPeerPort() {
+        return mConfig.hasPath("peerPort") ? mConfig.getInt("peerPort") : 0;
+    }
+
+    /**
+     * @return the UDP port clients find each other on, which must be the same for every client (defaults to {@value
+     *     #DEFAULT_PEER_DISCOVERY_PORT} when not configured)
+     */
+    public int getPeerDiscoveryPort() {
+        return mConfig.hasPath("peerDiscoveryPort") ? mConfig.getInt("peerDiscoveryPort") : DEFAULT_PEER_DISCOVERY_PORT;
+    }
+
+    /**
+     * @return the name of the network interface to find peers on, e.g. {@code eth0}, or {@code null} to pick the first
+     *     one which looks like it connects to a local network (defaults to {@code null} when not configured)
+     */
+    public String getPeerInterface() {
+        return mConfig.hasPath("peerInterface") ? mConfig.getString("peerInterface") : null;
+    }
+
+    /**
+     * @return the peers in {@code hostname:port} format to fetch files from besides the ones found on the local
+     *     network (defaults to none when not configured)
+     * @throws IllegalArgumentException if a peer has no port
+     */
+    public List<InetSocketAddress> getPeers() {
+        if (!mConfig.hasPath("peers")) {
+            return ImmutableList.of();
+        }
+        return mConfig.getStringList("peers").stream()
+            .map(HostAndPort::fromString)
+            .map(peer -> {
+                Preconditions.checkArgument(peer.hasPort(), "The peer %s has no port", peer);
+                return new InetSocketAddress(peer.getHost(), peer.getPort());
+            })
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of connections the native protocol downloads the segments of a large file over (defaults to
+     *     {@value #DEFAULT_DOWNLOAD_CONNECTIONS} when not configured)
+     * @throws IllegalStateException if the configured value is not positive
+     */
+    public int getDownloadConnections() {
+        final int downloadConnections = mConfig.hasPath("downloadConnections")
+            ? mConfig.getInt("downloadConnections")
+            : DEFAULT_DOWNLOAD_CONNECTIONS;
+        Preconditions.checkState(downloadConnections > 0, "downloadConnections must be positive");
+        return downloadConnections;
+    }
+
     /**
      * @return the rsync daemon address in {@code rsync://hostname:port/path/} format (note the trailing slash)
      */
     public String getRsyncAddress() {
         return "rsync://"
-            + mConfig.getString("serverHostname")
+            + getServerHostname()
             + ":"
-            + mConfig.getInt("serverPort")
+            + getServerPort()
             + "/"
             + mConfig.getString("serverPath")
             + "/";
@@ -48,4 +179,17 @@ public class ClientConfig {
         final String path = mConfig.getString("minecraftInstanceRoot").replace('\\', '/');
         return path.endsWith("/") ? path : path + "/";
     }
+
+    /**
+     * @return the maximum number of destination trees to synchronize at the same time (defaults to {@value
+     *     #DEFAULT_MAX_CONCURRENT_TRANSFERS} when not configured)
+     * @throws IllegalStateException if the configured value is not positive
+     */
+    public int getMaxConcurrentTransfers() {
+        final int maxConcurrentTransfers = mConfig.hasPath("maxConcurrentTransfers")
+            ? mConfig.getInt("maxConcurrentTransfers")
+            : DEFAULT_MAX_CONCURRENT_TRANSFERS;
+        Preconditions.checkState(maxConcurrentTransfers > 0, "maxConcurrentTransfers must be positive");
+        return maxConcurrentTransfers;
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.lang.invoke.MethodHandles;
+
+import com.github.fracpete.processoutput4j.core.StreamingProcessOutputType;
+import com.github.fracpete.processoutput4j.core.StreamingProcessOwner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StreamingProcessOwner} implementation which writes to the log.
+ */
+final class ConsoleLogger implements StreamingProcessOwner {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final String mPrefix;
+
+    /**
+     * @param transferName the name of the transfer the output belongs to, used to tell concurrent output apart
+     */
+    ConsoleLogger(final String transferName) {
+        mPrefix = "[" + transferName + "] ";
+    }
+
+    @Override
+    public StreamingProcessOutputType getOutputType() {
+        return StreamingProcessOutputType.BOTH;
+    }
+
+    @Override
+    public void processOutput(final String line, final boolean stdout) {
+        if (stdout) {
+            sLogger.info(mPrefix + line);
+        } else {
+            sLogger.error(mPrefix + line);
+        }
+    }
+}
@@ -0,0 +1,704 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.client.chunk.ChunkStore;
+import com.coryjreid.modpacksuite.sync.client.peer.PeerNode;
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.MerkleNode;
+import com.coryjreid.modpacksuite.sync.common.MerkleTree;
+import com.coryjreid.modpacksuite.sync.common.chunk.Chunk;
+import com.coryjreid.modpacksuite.sync.common.chunk.ChunkList;
+import com.coryjreid.modpacksuite.sync.common.delta.BlockMatcher;
+import com.coryjreid.modpacksuite.sync.common.delta.DeltaPlan;
+import com.coryjreid.modpacksuite.sync.common.delta.FileSignature;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+
+/**
+ * A {@link Transfer} which synchronizes one local tree with a SyncServer. Only the directories whose
+ * {@link MerkleTree} hashes differ from the served ones are listed, so an unchanged tree costs a single request over
+ * the connection every transfer of a launch shares.
+ * <br><br>
+ * Each file which differs is taken from the cheapest source at hand: the {@link ContentCache} of the machine, a peer
+ * (see {@link PeerNode}), the blocks of the local copy which still match (see {@link BlockMatcher}) or the
+ * {@link ChunkStore}, and only then a download, which resumes where it stopped for large files. Every file is verified
+ * against the manifest and written into a {@link StagedTree}, which is swapped in once complete. Like
+ * {@code rsync --delete}, files which are no longer served are deleted unless excluded, after being retired into the
+ * chunk store.
+ * <br><br>
+ * Responses on a connection arrive in request order, so file contents are downloaded over bulk connections of their
+ * own, opened on first use. Signatures, chunk lists and directory listings stay on the shared connection and are
+ * never stuck behind a large file another transfer is downloading.
+ */
+public final class NativeTransfer implements Transfer {
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+
+    /**
+     * The size in bytes from which files are downloaded in segments.
+     */
+    private static final long SEGMENTED_DOWNLOAD_THRESHOLD = 4L * SegmentedDownload.SEGMENT_SIZE;
+
+    /**
+     * The encodings whole files may be downloaded in, in order of preference.
+     */
+    private static final List<ContentEncoding> ACCEPTED_ENCODINGS =
+        ImmutableList.of(ContentEncoding.ZSTD, ContentEncoding.GZIP);
+
+    private final String mLocalTree;
+    private final List<String> mServerTrees;
+    private final Set<String> mExcludedNames;
+    private final ClientConfig mClientConfig;
+    private final SyncConnection mSession;
+    private final Path mInstanceRoot;
+    private final FileStateIndex mIndex;
+    private final ChunkStore mChunkStore;
+    private final ContentCache mContentCache;
+    private final PeerNode mPeerNode;
+    private final OutputMultiplexer mOutput;
+    private final StagedTree mStagedTree;
+    private final Path mDownloadDirectory;
+    private final List<SyncConnection> mBulkConnections = new ArrayList<>();
+
+    private long mFilesChecked;
+    private long mFilesDownloaded;
+    private long mFilesPatched;
+    private long mFilesDeleted;
+    private long mBytesReused;
+    private long mBytesFromPeers;
+
+    /**
+     * @param localTree the tree in the instance to synchronize, e.g. {@code mods} (never {@code null})
+     * @param serverTrees the served trees whose files make up the local tree, later trees win when two serve the same
+     *     name (never {@code null})
+     * @param excludedNames file and directory names which are neither updated nor deleted anywhere in the tree (never
+     *     {@code null})
+     * @param clientConfig the configuration holding the server address (never {@code null})
+     * @param session the connection to the server which the transfers of a launch share (never {@code null})
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param index the index holding the hashes of the local files (never {@code null})
+     * @param chunkStore the store to take chunks of new files from and retire deleted files to (never {@code null})
+     * @param contentCache the cache shared with the other instances on this machine (never {@code null})
+     * @param peerNode the node to fetch archives from peers with, or {@code null} to fetch them from the server only
+     * @param output receives a line for every changed file (never {@code null})
+     */
+    public NativeTransfer(
+        final String localTree,
+        final List<String> serverTrees,
+        final Set<String> excludedNames,
+        final ClientConfig clientConfig,
+        final SyncConnection session,
+        final Path instanceRoot,
+        final FileStateIndex index,
+        final ChunkStore chunkStore,
+        final ContentCache contentCache,
+        final PeerNode peerNode,
+        final OutputMultiplexer output) {
+
+        mLocalTree = Preconditions.checkNotNull(localTree, "localTree cannot be null");
+        mServerTrees = ImmutableList.copyOf(serverTrees);
+        mExcludedNames = ImmutableSet.copyOf(excludedNames);
+        mClientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig cannot be null");
+        mSession = Preconditions.checkNotNull(session, "session cannot be null");
+        mInstanceRoot = Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        mIndex = Preconditions.checkNotNull(index, "index cannot be null");
+        mChunkStore = Preconditions.checkNotNull(chunkStore, "chunkStore cannot be null");
+        mContentCache = Preconditions.checkNotNull(contentCache, "contentCache cannot be null");
+        mPeerNode = peerNode;
+        mOutput = Preconditions.checkNotNull(output, "output cannot be null");
+        mStagedTree = new StagedTree(instanceRoot, localTree);
+        mDownloadDirectory = instanceRoot.resolve(SegmentedDownload.DIRECTORY_NAME);
+    }
+
+    @Override
+    public String getName() {
+        return mLocalTree;
+    }
+
+    @Override
+    public TransferStatistics execute() throws IOException {
+        // Bring the hashes of the local files up to date, this only reads files which changed since the last launch
+        mIndex.update(mInstanceRoot, mLocalTree);
+        final MerkleTree localTree = MerkleTree.build(mIndex.getManifest(mLocalTree));
+
+        try (SyncConnection connection = mSession.share()) {
+            try {
+                final Map<String, ManifestEntry> changedFiles = new LinkedHashMap<>();
+                final List<Path> unservedFiles = new ArrayList<>();
+                compareTree(connection, localTree, changedFiles, unservedFiles);
+
+                if (!changedFiles.isEmpty() || !unservedFiles.isEmpty()) {
+                    apply(connection, changedFiles, unservedFiles);
+                }
+
+                long bytesSent = connection.getBytesSent();
+                long bytesReceived = connection.getBytesReceived();
+                for (final SyncConnection bulkConnection : mBulkConnections) {
+                    bytesSent += bulkConnection.getBytesSent();
+                    bytesReceived += bulkConnection.getBytesReceived();
+                }
+                return new TransferStatistics(
+                    mFilesChecked,
+                    mFilesDownloaded,
+                    mFilesPatched,
+                    mFilesDeleted,
+                    bytesSent,
+                    bytesReceived,
+                    mBytesReused,
+                    mBytesFromPeers,
+                    mBulkConnections.size());
+            } finally {
+                closeBulkConnections();
+            }
+        }
+    }
+
+    /**
+     * Builds the new state of the tree in a {@link StagedTree} and swaps it in. The live tree is only read until the
+     * swap, so a failed or interrupted transfer leaves it exactly as it was.
+     */
+    private void apply(
+        final SyncConnection connection,
+        final Map<String, ManifestEntry> changedFiles,
+        final List<Path> unservedFiles) throws IOException {
+
+        // Retire the files which are about to be deleted first, their replacements are probably new files
+        for (final Path file : unservedFiles) {
+            retire(file);
+        }
+
+        final Set<Path> replacedFiles = new HashSet<>(unservedFiles);
+        for (final String localPath : changedFiles.keySet()) {
+            replacedFiles.add(mInstanceRoot.resolve(localPath));
+        }
+
+        mStagedTree.begin();
+        try {
+            mStagedTree.linkLiveFiles(file -> !replacedFiles.contains(file));
+            for (final Map.Entry<String, ManifestEntry> changedFile : changedFiles.entrySet()) {
+                synchronizeFile(connection, changedFile.getKey(), changedFile.getValue());
+            }
+            mStagedTree.commit();
+        } catch (final IOException | RuntimeException exception) {
+            mStagedTree.discard();
+            throw exception;
+        }
+
+        // The swap kept the modification times, so the index can trust the hashes of the files it just verified
+        for (final Map.Entry<String, ManifestEntry> changedFile : changedFiles.entrySet()) {
+            mIndex.record(mInstanceRoot, changedFile.getKey(), changedFile.getValue().getHash());
+        }
+        for (final Path file : unservedFiles) {
+            mFilesDeleted++;
+            mOutput.processOutput("Deleted " + toLocalPath(file), true);
+        }
+    }
+
+    /**
+     * Compares the local tree with the served trees one level of directories at a time. Every directory of a level is
+     * listed in one pipelined batch, so descending costs a round trip per level rather than one per directory.
+     *
+     * @param changedFiles receives the served files which differ from the local copy keyed by their local path
+     * @param unservedFiles receives the local files which are neither served nor excluded
+     */
+    private void compareTree(
+        final SyncConnection connection,
+        final MerkleTree localTree,
+        final Map<String, ManifestEntry> changedFiles,
+        final List<Path> unservedFiles) throws IOException {
+
+        Map<String, List<String>> directories = ImmutableMap.of("", mServerTrees);
+        while (!directories.isEmpty()) {
+            final Map<String, HashCode> expectedHashes = new LinkedHashMap<>();
+            for (final Map.Entry<String, List<String>> directory : directories.entrySet()) {
+                final String localDirectory = mLocalTree + directory.getKey();
+                // A hash can only be compared when the directory is made up of a single served tree
+                final HashCode expectedHash = directory.getValue().size() == 1
+                    ? localTree.getHash(localDirectory).orElse(null)
+                    : null;
+                for (final String serverTree : directory.getValue()) {
+                    expectedHashes.put(serverTree + directory.getKey(), expectedHash);
+                }
+            }
+
+            final Map<String, Optional<List<MerkleNode>>> listings = connection.getDirectories(expectedHashes);
+            final Map<String, List<String>> subdirectories = new LinkedHashMap<>();
+            for (final Map.Entry<String, List<String>> directory : directories.entrySet()) {
+                compareDirectory(
+                    localTree,
+                    directory.getKey(),
+                    directory.getValue(),
+                    listings,
+                    subdirectories,
+                    changedFiles,
+                    unservedFiles);
+            }
+            directories = subdirectories;
+        }
+    }
+
+    /**
+     * Compares a directory of the local tree with the same directory of the served trees.
+     *
+     * @param relativePath the path of the directory below the tree root, e.g. {@code /jei}, or empty for the root
+     * @param serverTrees the served trees which have the directory, later trees win when two serve the same name
+     * @param listings the served listings keyed by served path, which include those of this directory
+     * @param subdirectories receives the subdirectories to compare next keyed by their path below the tree root, along
+     *     with the served trees which have them
+     * @param changedFiles receives the served files which differ from the local copy keyed by their local path
+     * @param unservedFiles receives the local files which are neither served nor excluded
+     */
+    private void compareDirectory(
+        final MerkleTree localTree,
+        final String relativePath,
+        final List<String> serverTrees,
+        final Map<String, Optional<List<MerkleNode>>> listings,
+        final Map<String, List<String>> subdirectories,
+        final Map<String, ManifestEntry> changedFiles,
+        final List<Path> unservedFiles) {
+
+        final String localDirectory = mLocalTree + relativePath;
+        final Map<String, MerkleNode> servedChildren = new TreeMap<>();
+        final Map<String, String> servingTrees = new HashMap<>();
+        final Map<String, List<String>> childDirectoryTrees = new HashMap<>();
+        for (final String serverTree : serverTrees) {
+            final Optional<List<MerkleNode>> children = listings.get(serverTree + relativePath);
+            if (!children.isPresent()) {
+                return;
+            }
+
+            for (final MerkleNode child : children.get()) {
+                servedChildren.put(child.getName(), child);
+                servingTrees.put(child.getName(), serverTree);
+                if (child.isDirectory()) {
+                    childDirectoryTrees.computeIfAbsent(child.getName(), name -> new ArrayList<>()).add(serverTree);
+                } else {
+                    childDirectoryTrees.remove(child.getName());
+                }
+            }
+        }
+
+        final Map<String, MerkleNode> localChildren = new HashMap<>();
+        for (final MerkleNode child : localTree.getChildren(localDirectory).orElse(Collections.emptyList())) {
+            localChildren.put(child.getName(), child);
+        }
+
+        for (final MerkleNode servedChild : servedChildren.values()) {
+            final String childRelativePath = relativePath + "/" + servedChild.getName();
+            final String localPath = mLocalTree + childRelativePath;
+            if (isExcluded(localPath)) {
+                continue;
+            }
+
+            final MerkleNode localChild = localChildren.get(servedChild.getName());
+            if (localChild != null && localChild.isDirectory() != servedChild.isDirectory()) {
+                addLocalFiles(localTree, localPath, localChild, unservedFiles);
+            }
+            if (servedChild.isDirectory()) {
+                subdirectories.put(childRelativePath, childDirectoryTrees.get(servedChild.getName()));
+            } else {
+                mFilesChecked++;
+                if (localChild == null || !localChild.equals(servedChild)) {
+                    changedFiles.put(localPath, new ManifestEntry(
+                        servingTrees.get(servedChild.getName()) + childRelativePath,
+                        servedChild.getSize(),
+                        servedChild.getHash()));
+                }
+            }
+        }
+
+        for (final MerkleNode localChild : localChildren.values()) {
+            final String localPath = localDirectory + "/" + localChild.getName();
+            if (!servedChildren.containsKey(localChild.getName()) && !isExcluded(localPath)) {
+                addLocalFiles(localTree, localPath, localChild, unservedFiles);
+            }
+        }
+    }
+
+    /**
+     * Adds a local file, or every file below a local directory which is not excluded, to a list.
+     */
+    private void addLocalFiles(
+        final MerkleTree localTree,
+        final String localPath,
+        final MerkleNode localNode,
+        final List<Path> files) {
+
+        if (!localNode.isDirectory()) {
+            files.add(mInstanceRoot.resolve(localPath));
+            return;
+        }
+        for (final MerkleNode child : localTree.getChildren(localPath).orElse(Collections.emptyList())) {
+            final String childPath = localPath + "/" + child.getName();
+            if (!isExcluded(childPath)) {
+                addLocalFiles(localTree, childPath, child, files);
+            }
+        }
+    }
+
+    private void synchronizeFile(
+        final SyncConnection connection,
+        final String localPath,
+        final ManifestEntry entry) throws IOException {
+
+        final Path basis = mInstanceRoot.resolve(localPath);
+        final Path target = mStagedTree.resolveStaged(localPath);
+        final Path partialFile = target.resolveSibling(target.getFileName() + PARTIAL_FILE_SUFFIX);
+        Files.createDirectories(target.getParent());
+        final SegmentedDownload segmentedDownload = entry.getSize() >= SEGMENTED_DOWNLOAD_THRESHOLD
+            ? new SegmentedDownload(mDownloadDirectory, entry)
+            : null;
+        try {
+            final boolean rebuilt;
+            if (linkCached(entry, partialFile, localPath) || fetchFromPeer(entry, partialFile, localPath)) {
+                rebuilt = true;
+            } else if (segmentedDownload != null && segmentedDownload.isStarted()) {
+                // An interrupted download fetches only what it still misses, which never costs more than rebuilding
+                rebuilt = false;
+            } else {
+                rebuilt = Files.isRegularFile(basis)
+                    ? patch(connection, entry, basis, partialFile, localPath)
+                    : assemble(connection, entry, partialFile, localPath);
+            }
+            if (!rebuilt && segmentedDownload != null) {
+                downloadSegmented(segmentedDownload, entry, partialFile, localPath);
+            } else if (!rebuilt) {
+                download(entry, partialFile, localPath);
+            }
+            Files.move(partialFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partialFile);
+        }
+        cache(localPath, entry, target);
+    }
+
+    /**
+     * Places a file from the {@link ContentCache}, where another instance on this machine may have left it.
+     *
+     * @return {@code true} if the file was placed at {@code partialFile}, {@code false} if it is not cached
+     */
+    private boolean linkCached(final ManifestEntry entry, final Path partialFile, final String localPath)
+        throws IOException {
+
+        if (!ContentCache.isCacheable(localPath) || !mContentCache.place(entry.getHash(), partialFile)) {
+            return false;
+        }
+
+        mFilesPatched++;
+        mBytesReused += entry.getSize();
+        mOutput.processOutput("Linked " + localPath + " (" + entry.getSize() + " bytes reused from the content cache)",
+            true);
+        return true;
+    }
+
+    /**
+     * Fetches a file from a peer on the local network, which saves the server the upload.
+     *
+     * @return {@code true} if the file was written to {@code partialFile} and verified, {@code false} if no peer
+     *     could provide it
+     */
+    private boolean fetchFromPeer(final ManifestEntry entry, final Path partialFile, final String localPath) {
+        if (mPeerNode == null || !ContentCache.isCacheable(localPath)) {
+            return false;
+        }
+        final Optional<InetSocketAddress> peer = mPeerNode.fetch(entry.getHash(), entry.getSize(), partialFile);
+        if (!peer.isPresent()) {
+            return false;
+        }
+
+        mFilesDownloaded++;
+        mBytesFromPeers += entry.getSize();
+        mOutput.processOutput("Downloaded " + localPath + " (" + entry.getSize() + " bytes from peer " + peer.get()
+            + ")", true);
+        return true;
+    }
+
+    /**
+     * Rebuilds a file from the matching blocks of its local copy and the downloaded remainder.
+     *
+     * @return {@code true} if the rebuilt file was written to {@code partialFile} and verified, {@code false} if it
+     *     has to be downloaded in full instead
+     */
+    private boolean patch(
+        final SyncConnection connection,
+        final ManifestEntry entry,
+        final Path basis,
+        final Path partialFile,
+        final String localPath) throws IOException {
+
+        final FileSignature signature = connection.getSignature(entry.getPath());
+        final DeltaPlan plan = BlockMatcher.match(signature, basis);
+        if (plan.getReusedBytes() == 0) {
+            return false;
+        }
+
+        final HashCode hash;
+        try (FileChannel basisChannel = FileChannel.open(basis, StandardOpenOption.READ);
+             HashingOutputStream output = new HashingOutputStream(
+                 ContentHasher.HASH_FUNCTION,
+                 new BufferedOutputStream(Files.newOutputStream(partialFile)))) {
+
+            for (final DeltaPlan.Segment segment : plan.getSegments()) {
+                if (segment.isReused()) {
+                    basisChannel.position(segment.getBasisOffset());
+                    final InputStream basisSegment =
+                        ByteStreams.limit(Channels.newInputStream(basisChannel), segment.getLength());
+                    if (ByteStreams.copy(basisSegment, output) != segment.getLength()) {
+                        return false;
+                    }
+                } else {
+                    getBulkConnection().readFile(
+                        entry.getPath(),
+                        segment.getTargetOffset(),
+                        segment.getLength(),
+                        output);
+                }
+            }
+            output.flush();
+            hash = output.hash();
+        }
+
+        if (!hash.equals(entry.getHash())) {
+            // The local copy changed while it was read or a weak match slipped through, start over
+            mOutput.processOutput("Patching " + localPath + " produced the wrong file, downloading it instead", false);
+            return false;
+        }
+
+        mFilesPatched++;
+        mBytesReused += plan.getReusedBytes();
+        mOutput.processOutput("Patched " + localPath
+            + " (" + plan.getMissingBytes() + " bytes downloaded, "
+            + plan.getReusedBytes() + " bytes reused)", true);
+        return true;
+    }
+
+    /**
+     * Builds a file from the chunks in the {@link ChunkStore} and downloads the chunks which are not stored. Runs of
+     * missing chunks are downloaded with a single range request.
+     *
+     * @return {@code true} if the file was written to {@code partialFile} and verified, {@code false} if it has to be
+     *     downloaded in full instead
+     */
+    private boolean assemble(
+        final SyncConnection connection,
+        final ManifestEntry entry,
+        final Path partialFile,
+        final String localPath) throws IOException {
+
+        final ChunkList chunkList = connection.getChunkList(entry.getPath());
+        if (chunkList.getChunks().stream().noneMatch(chunk -> mChunkStore.contains(chunk.getHash()))) {
+            return false;
+        }
+
+        final HashCode hash;
+        long reusedBytes = 0;
+        long missingStart = 0;
+        long missingLength = 0;
+        try (HashingOutputStream output = new HashingOutputStream(
+            ContentHasher.HASH_FUNCTION,
+            new BufferedOutputStream(Files.newOutputStream(partialFile)))) {
+
+            for (final Chunk chunk : chunkList.getChunks()) {
+                final Optional<byte[]> storedChunk = mChunkStore.read(chunk.getHash());
+                if (storedChunk.isPresent()) {
+                    if (missingLength > 0) {
+                        getBulkConnection().readFile(entry.getPath(), missingStart, missingLength, output);
+                        missingLength = 0;
+                    }
+                    output.write(storedChunk.get());
+                    reusedBytes += chunk.getLength();
+                } else {
+                    if (missingLength == 0) {
+                        missingStart = chunk.getOffset();
+                    }
+                    missingLength += chunk.getLength();
+                }
+            }
+            if (missingLength > 0) {
+                getBulkConnection().readFile(entry.getPath(), missingStart, missingLength, output);
+            }
+            output.flush();
+            hash = output.hash();
+        }
+
+        if (!hash.equals(entry.getHash())) {
+            mOutput.processOutput(
+                "Assembling " + localPath + " produced the wrong file, downloading it instead",
+                false);
+            return false;
+        }
+
+        mFilesPatched++;
+        mBytesReused += reusedBytes;
+        mOutput.processOutput("Assembled " + localPath
+            + " (" + (entry.getSize() - reusedBytes) + " bytes downloaded, "
+            + reusedBytes + " bytes reused from stored chunks)", true);
+        return true;
+    }
+
+    private void download(final ManifestEntry entry, final Path partialFile, final String localPath)
+        throws IOException {
+
+        final SyncConnection connection = getBulkConnection();
+        final long receivedBefore = connection.getBytesReceived();
+        final ContentEncoding encoding;
+        final HashCode hash;
+        try (HashingOutputStream output = new HashingOutputStream(
+            ContentHasher.HASH_FUNCTION,
+            new BufferedOutputStream(Files.newOutputStream(partialFile)))) {
+
+            encoding = connection.readEncodedFile(entry.getPath(), ACCEPTED_ENCODINGS, output);
+            output.flush();
+            hash = output.hash();
+        }
+
+        if (!hash.equals(entry.getHash())) {
+            throw new IOException("Downloaded '" + localPath + "' does not match the manifest");
+        }
+
+        mFilesDownloaded++;
+        mOutput.processOutput("Downloaded " + localPath + " (" + entry.getSize() + " bytes"
+            + (encoding == ContentEncoding.IDENTITY
+                ? ")"
+                : ", " + (connection.getBytesReceived() - receivedBefore) + " bytes as " + encoding + ")"), true);
+    }
+
+    /**
+     * Downloads a large file in segments over all bulk connections. Range requests are always answered with the file
+     * itself, large files are mostly compressed archives anyway.
+     */
+    private void downloadSegmented(
+        final SegmentedDownload segmentedDownload,
+        final ManifestEntry entry,
+        final Path partialFile,
+        final String localPath) throws IOException {
+
+        final long resumedBytes = segmentedDownload.download(
+            getBulkConnections(mClientConfig.getDownloadConnections()),
+            partialFile);
+
+        mFilesDownloaded++;
+        mBytesReused += resumedBytes;
+        mOutput.processOutput("Downloaded " + localPath + " (" + entry.getSize() + " bytes"
+            + (resumedBytes > 0 ? ", resumed after " + resumedBytes + " bytes)" : ")"), true);
+    }
+
+    private SyncConnection getBulkConnection() throws IOException {
+        return getBulkConnections(1).get(0);
+    }
+
+    /**
+     * Opens bulk connections on first use, they are kept open until the transfer ends. They carry the client ID of the
+     * session, so the server admits and throttles them together with it.
+     *
+     * @return the first {@code count} bulk connections
+     */
+    private List<SyncConnection> getBulkConnections(final int count) throws IOException {
+        while (mBulkConnections.size() < count) {
+            mBulkConnections.add(
+                SyncConnection.open(
+                    mClientConfig.getServerHostname(),
+                    mClientConfig.getServerPort(),
+                    mSession.getClientId()));
+        }
+        return ImmutableList.copyOf(mBulkConnections.subList(0, count));
+    }
+
+    private void closeBulkConnections() {
+        for (final SyncConnection bulkConnection : mBulkConnections) {
+            try {
+                bulkConnection.close();
+            } catch (final IOException exception) {
+                mOutput.processOutput("Failed to close a bulk connection: " + exception, false);
+            }
+        }
+        mBulkConnections.clear();
+    }
+
+    /**
+     * Adds a file to the {@link ChunkStore}. Failing to do so only costs bandwidth later, so it does not fail the
+     * transfer.
+     */
+    private void retire(final Path file) {
+        try {
+            mChunkStore.retire(file);
+        } catch (final IOException exception) {
+            mOutput.processOutput("Failed to keep the chunks of " + toLocalPath(file) + ": " + exception, false);
+        }
+    }
+
+    /**
+     * Adds a verified file to the {@link ContentCache}. Failing to do so only costs the other instances bandwidth, so
+     * it does not fail the transfer.
+     */
+    private void cache(final String localPath, final ManifestEntry entry, final Path file) {
+        if (!ContentCache.isCacheable(localPath)) {
+            return;
+        }
+        try {
+            mContentCache.add(entry.getHash(), file);
+        } catch (final IOException exception) {
+            mOutput.processOutput("Failed to add " + localPath + " to the content cache: " + exception, false);
+        }
+    }
+
+    private String toLocalPath(final Path file) {
+        return mInstanceRoot.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Matches excluded names against every component of the path below the tree, like an unanchored rsync exclude.
+     */
+    private boolean isExcluded(final String localPath) {
+        if (mExcludedNames.isEmpty()) {
+            return false;
+        }
+        final String treePath = localPath.substring(mLocalTree.length() + 1);
+        return !Collections.disjoint(mExcludedNames, ImmutableList.copyOf(treePath.split("/")));
+    }
+}
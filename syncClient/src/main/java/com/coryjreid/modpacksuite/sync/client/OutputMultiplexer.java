@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.github.fracpete.processoutput4j.core.StreamingProcessOutputType;
+import com.github.fracpete.processoutput4j.core.StreamingProcessOwner;
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link StreamingProcessOwner} which forwards every line of a single process to any number of registered sinks.
+ * This lets one process feed the GUI, the log and anything else without the process being started once per sink.
+ * <br><br>
+ * Each sink only receives the streams it asks for through {@link StreamingProcessOwner#getOutputType()}. Note that
+ * STDOUT and STDERR are read on separate threads so sinks may be called concurrently.
+ */
+public final class OutputMultiplexer implements StreamingProcessOwner {
+    private final List<StreamingProcessOwner> mSinks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Adds a sink which will receive all lines processed after this call.
+     *
+     * @param sink the sink to add (never {@code null})
+     * @return this {@link OutputMultiplexer} for chaining
+     */
+    public OutputMultiplexer register(final StreamingProcessOwner sink) {
+        mSinks.add(Preconditions.checkNotNull(sink, "sink cannot be null"));
+        return this;
+    }
+
+    @Override
+    public StreamingProcessOutputType getOutputType() {
+        return StreamingProcessOutputType.BOTH;
+    }
+
+    @Override
+    public void processOutput(final String line, final boolean stdout) {
+        for (final StreamingProcessOwner sink : mSinks) {
+            if (accepts(sink.getOutputType(), stdout)) {
+                sink.processOutput(line, stdout);
+            }
+        }
+    }
+
+    private static boolean accepts(final StreamingProcessOutputType outputType, final boolean stdout) {
+        switch (outputType) {
+            case STDOUT:
+                return stdout;
+            case STDERR:
+                return !stdout;
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.fracpete.processoutput4j.core.StreamingProcessOutputType;
+import com.github.fracpete.processoutput4j.core.StreamingProcessOwner;
+
+/**
+ * Collects the summary which rsync prints when run with {@code --stats}, e.g. {@code Total bytes received: 1,234}.
+ * Values which rsync does not print (older versions omit some) stay zero.
+ */
+final class RsyncStatisticsParser implements StreamingProcessOwner {
+    /**
+     * Matches a statistics line and captures its name and the first number after the colon. Numbers may contain
+     * thousands separators depending on the locale.
+     */
+    private static final Pattern STATISTIC_PATTERN = Pattern.compile("^([A-Za-z ]+): ([\\d,.]+)");
+
+    private long mFilesChecked;
+    private long mFilesDownloaded;
+    private long mFilesDeleted;
+    private long mBytesSent;
+    private long mBytesReceived;
+    private long mBytesReused;
+
+    @Override
+    public StreamingProcessOutputType getOutputType() {
+        return StreamingProcessOutputType.STDOUT;
+    }
+
+    @Override
+    public synchronized void processOutput(final String line, final boolean stdout) {
+        final Matcher matcher = STATISTIC_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return;
+        }
+
+        final long value = Long.parseLong(matcher.group(2).replaceAll("[,.]", ""));
+        switch (matcher.group(1)) {
+            case "Number of files":
+                mFilesChecked = value;
+                break;
+            case "Number of regular files transferred":
+                mFilesDownloaded = value;
+                break;
+            case "Number of deleted files":
+                mFilesDeleted = value;
+                break;
+            case "Total bytes sent":
+                mBytesSent = value;
+                break;
+            case "Total bytes received":
+                mBytesReceived = value;
+                break;
+            case "Matched data":
+                mBytesReused = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the collected statistics of the single daemon connection an rsync process makes
+     */
+    synchronized TransferStatistics getStatistics() {
+        return new TransferStatistics(
+            mFilesChecked,
+            mFilesDownloaded,
+            0,
+            mFilesDeleted,
+            mBytesSent,
+            mBytesReceived,
+            mBytesReused,
+            0,
+            1);
+    }
+}
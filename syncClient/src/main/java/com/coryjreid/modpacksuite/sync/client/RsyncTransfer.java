@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+import com.github.fracpete.processoutput4j.output.StreamingProcessOutput;
+import com.github.fracpete.rsync4j.RSync;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link Transfer} which runs a single rsync process and fans its output out to every sink of an {@link
+ * OutputMultiplexer}. The process is run with {@code --stats} so its summary can be reported as
+ * {@link TransferStatistics}.
+ * <br><br>
+ * rsync writes into the staging directory of a {@link StagedTree} with {@code --link-dest} pointing at the live tree,
+ * so unchanged files are hardlinked rather than downloaded and the live tree is only replaced once rsync succeeded.
+ * Excluded files are never part of the transfer, so they are carried over from the live tree before the swap.
+ */
+public final class RsyncTransfer implements Transfer {
+    private final String mName;
+    private final RSync mRsync;
+    private final StagedTree mStagedTree;
+    private final Set<String> mExcludedNames;
+    private final OutputMultiplexer mOutput;
+
+    /**
+     * @param name the name of the transfer (never {@code null})
+     * @param rsync the configured rsync invocation, its destination must be the staging directory of the staged tree
+     *     (never {@code null})
+     * @param stagedTree the tree being synchronized (never {@code null})
+     * @param excludedNames the file and directory names excluded from the rsync invocation (never {@code null})
+     * @param output receives the output of the rsync process (never {@code null})
+     */
+    public RsyncTransfer(
+        final String name,
+        final RSync rsync,
+        final StagedTree stagedTree,
+        final Set<String> excludedNames,
+        final OutputMultiplexer output) {
+
+        mName = Preconditions.checkNotNull(name, "name cannot be null");
+        mRsync = Preconditions.checkNotNull(rsync, "rsync cannot be null");
+        mStagedTree = Preconditions.checkNotNull(stagedTree, "stagedTree cannot be null");
+        mExcludedNames = ImmutableSet.copyOf(excludedNames);
+        mOutput = Preconditions.checkNotNull(output, "output cannot be null");
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public TransferStatistics execute() throws Exception {
+        final RsyncStatisticsParser statisticsParser = new RsyncStatisticsParser();
+        final StreamingProcessOutput processOutput =
+            new StreamingProcessOutput(new OutputMultiplexer().register(mOutput).register(statisticsParser));
+
+        mStagedTree.begin();
+        try {
+            processOutput.monitor(mRsync.stats(true).builder());
+            if (!processOutput.hasSucceeded()) {
+                throw new IOException("rsync exited with code " + processOutput.getExitCode());
+            }
+            mStagedTree.linkLiveFiles(this::isExcluded);
+            mStagedTree.commit();
+        } catch (final Exception exception) {
+            mStagedTree.discard();
+            throw exception;
+        }
+        return statisticsParser.getStatistics();
+    }
+
+    /**
+     * Matches excluded names against every component of the path below the tree, like an unanchored rsync exclude.
+     */
+    private boolean isExcluded(final Path liveFile) {
+        if (mExcludedNames.isEmpty()) {
+            return false;
+        }
+        for (final Path name : mStagedTree.getLiveDirectory().relativize(liveFile)) {
+            if (mExcludedNames.contains(name.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
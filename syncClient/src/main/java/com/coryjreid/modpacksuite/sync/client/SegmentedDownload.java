@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A download of a large file which is split into fixed size segments fetched with range requests. The segments are
+ * fetched over several {@link SyncConnection}s at once and written in place, and every completed segment is appended
+ * to a progress log next to the file. Both files are named after the hash of the content, so when a download is
+ * interrupted, the next attempt to fetch the same content only fetches the segments which are still missing, even if
+ * the file was renamed in the meantime. The finished file is verified against the manifest before it is handed out.
+ */
+final class SegmentedDownload {
+    /**
+     * The directory below the instance root holding unfinished downloads.
+     */
+    static final String DIRECTORY_NAME = ".syncDownloads";
+
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String DATA_FILE_SUFFIX = ".data";
+    private static final String PROGRESS_FILE_SUFFIX = ".progress";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final ManifestEntry mEntry;
+    private final Path mDataFile;
+    private final Path mProgressFile;
+    private final int mSegmentCount;
+
+    /**
+     * @param directory the directory holding unfinished downloads (never {@code null})
+     * @param entry the served file to download (never {@code null})
+     */
+    SegmentedDownload(final Path directory, final ManifestEntry entry) {
+        Preconditions.checkNotNull(directory, "directory cannot be null");
+
+        mEntry = Preconditions.checkNotNull(entry, "entry cannot be null");
+        mDataFile = directory.resolve(entry.getHash() + DATA_FILE_SUFFIX);
+        mProgressFile = directory.resolve(entry.getHash() + PROGRESS_FILE_SUFFIX);
+        mSegmentCount = (int) ((entry.getSize() + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    }
+
+    /**
+     * @return {@code true} if an earlier attempt already fetched part of the file
+     */
+    boolean isStarted() {
+        return Files.isRegularFile(mDataFile) && Files.isRegularFile(mProgressFile);
+    }
+
+    /**
+     * Fetches the missing segments, verifies the file against the manifest and moves it to a target.
+     *
+     * @param connections the connections to fetch segments over, one segment at a time each (never {@code null} or
+     *     empty)
+     * @param target the path to move the finished file to (never {@code null})
+     * @return the number of bytes which earlier attempts had already fetched
+     * @throws IOException if a segment could not be fetched, which keeps the fetched segments for the next attempt,
+     *     or if the finished file does not match the manifest, which discards it
+     */
+    long download(final List<SyncConnection> connections, final Path target) throws IOException {
+        Preconditions.checkArgument(!connections.isEmpty(), "connections cannot be empty");
+        Preconditions.checkNotNull(target, "target cannot be null");
+
+        final BitSet completed = readProgress();
+        if (completed.isEmpty()) {
+            delete();
+            Files.createDirectories(mDataFile.getParent());
+        }
+
+        final Queue<Integer> missing = new ConcurrentLinkedQueue<>();
+        long resumedBytes = 0;
+        for (int segment = 0; segment < mSegmentCount; segment++) {
+            if (completed.get(segment)) {
+                resumedBytes += getSegmentLength(segment);
+            } else {
+                missing.add(segment);
+            }
+        }
+
+        try (FileChannel data = FileChannel.open(
+                mDataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel progress = FileChannel.open(
+                 mProgressFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            if (data.size() > mEntry.getSize()) {
+                data.truncate(mEntry.getSize());
+            }
+            // Cut off a partial record left by a crash, or every record appended after it would be misaligned
+            progress.truncate(progress.size() - progress.size() % Integer.BYTES);
+            fetch(connections, missing, data, progress);
+        }
+
+        if (!ContentHasher.hash(mDataFile).equals(mEntry.getHash())) {
+            delete();
+            throw new IOException("Downloaded '" + mEntry.getPath() + "' does not match the manifest");
+        }
+        Files.move(mDataFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(mProgressFile);
+        return resumedBytes;
+    }
+
+    /**
+     * Deletes the fetched segments and the progress log.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(mProgressFile);
+        Files.deleteIfExists(mDataFile);
+    }
+
+    private BitSet readProgress() throws IOException {
+        final BitSet completed = new BitSet(mSegmentCount);
+        if (!isStarted()) {
+            return completed;
+        }
+
+        // A crash while appending leaves a partial record behind, its segment is simply fetched again and the record
+        // is cut off before appending
+        final ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(mProgressFile));
+        while (log.remaining() >= Integer.BYTES) {
+            final int segment = log.getInt();
+            if (segment >= 0 && segment < mSegmentCount) {
+                completed.set(segment);
+            }
+        }
+        return completed;
+    }
+
+    private void fetch(
+        final List<SyncConnection> connections,
+        final Queue<Integer> missing,
+        final FileChannel data,
+        final FileChannel progress) throws IOException {
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        final int workers = Math.min(connections.size(), missing.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            workers,
+            new ThreadFactoryBuilder().setNameFormat("segment-%d").setDaemon(true).build());
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(workers);
+            for (final SyncConnection connection : connections.subList(0, workers)) {
+                futures.add(executor.submit(() -> {
+                    fetchSegments(connection, missing, data, progress);
+                    return null;
+                }));
+            }
+
+            // A failed connection leaves its remaining segments to the others, so wait for all of them to finish
+            IOException failure = null;
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException exception) {
+                    final IOException cause = exception.getCause() instanceof IOException
+                        ? (IOException) exception.getCause()
+                        : new IOException("Failed to fetch a segment of '" + mEntry.getPath() + "'",
+                            exception.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading '" + mEntry.getPath() + "'");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void fetchSegments(
+        final SyncConnection connection,
+        final Queue<Integer> missing,
+        final FileChannel data,
+        final FileChannel progress) throws IOException {
+
+        Integer segment;
+        while ((segment = missing.poll()) != null) {
+            final long offset = (long) segment * SEGMENT_SIZE;
+            final long length = getSegmentLength(segment);
+            try (OutputStream output =
+                     new BufferedOutputStream(new PositionedOutputStream(data, offset), WRITE_BUFFER_SIZE)) {
+                if (connection.readFile(mEntry.getPath(), offset, length, output) != length) {
+                    throw new IOException("Server sent a short segment of '" + mEntry.getPath() + "'");
+                }
+            }
+
+            // The segment has to be on disk before the log claims it is
+            data.force(false);
+            final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES).putInt(segment);
+            record.flip();
+            synchronized (progress) {
+                while (record.hasRemaining()) {
+                    progress.write(record);
+                }
+            }
+        }
+    }
+
+    private long getSegmentLength(final int segment) {
+        return Math.min(SEGMENT_SIZE, mEntry.getSize() - (long) segment * SEGMENT_SIZE);
+    }
+
+    /**
+     * Writes to a {@link FileChannel} from a position on without moving the position of the channel, so several
+     * segments can be written at once.
+     */
+    private static final class PositionedOutputStream extends OutputStream {
+        private final FileChannel mChannel;
+        private long mPosition;
+
+        private PositionedOutputStream(final FileChannel channel, final long position) {
+            mChannel = channel;
+            mPosition = position;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            write(new byte[] {(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                mPosition += mChannel.write(buffer, mPosition);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+
+/**
+ * Thrown when a SyncServer answers a request with anything other than {@link ResponseStatus#OK}.
+ */
+public class ServerResponseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final ResponseStatus mStatus;
+
+    public ServerResponseException(final ResponseStatus status, final String message) {
+        super(status + ": " + message);
+        mStatus = status;
+    }
+
+    public ResponseStatus getStatus() {
+        return mStatus;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.function.Predicate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the new state of one tree of an instance, e.g. {@code mods}, next to the live tree and swaps it in once it is
+ * complete, so an interrupted synchronization never leaves a tree half old and half new. Files which do not change
+ * are hardlinked from the live tree rather than copied, so staging costs one link per unchanged file.
+ * <br><br>
+ * The swap is two renames: the live tree is moved aside and the staged tree takes its place. If the process dies
+ * between the two, {@link #recover()} completes the swap on the next launch.
+ */
+public final class StagedTree {
+    /**
+     * The name of the directory, in the instance root, which holds staged trees.
+     */
+    public static final String STAGING_DIRECTORY_NAME = ".syncStaging";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final String PREVIOUS_SUFFIX = ".previous";
+
+    private final String mTree;
+    private final Path mLiveDirectory;
+    private final Path mStagingDirectory;
+    private final Path mPreviousDirectory;
+
+    /**
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param tree the tree relative to the instance root, e.g. {@code mods} (never {@code null})
+     */
+    public StagedTree(final Path instanceRoot, final String tree) {
+        Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        mTree = tree;
+        mLiveDirectory = instanceRoot.resolve(tree);
+        mStagingDirectory = instanceRoot.resolve(STAGING_DIRECTORY_NAME).resolve(tree);
+        mPreviousDirectory = mStagingDirectory.resolveSibling(tree + PREVIOUS_SUFFIX);
+    }
+
+    /**
+     * @return the directory the new state of the tree is built in
+     */
+    public Path getStagingDirectory() {
+        return mStagingDirectory;
+    }
+
+    /**
+     * @return the live tree
+     */
+    public Path getLiveDirectory() {
+        return mLiveDirectory;
+    }
+
+    /**
+     * Completes a swap which was interrupted by a previous run, or restores the live tree if it was moved aside
+     * without a replacement, then removes what is left of previous runs.
+     *
+     * @throws IOException if the swap could not be completed or the leftovers could not be deleted
+     */
+    public void recover() throws IOException {
+        if (Files.exists(mPreviousDirectory)) {
+            if (!Files.exists(mLiveDirectory)) {
+                // The live tree is only moved aside once the staged tree is complete
+                final Path replacement = Files.isDirectory(mStagingDirectory) ? mStagingDirectory : mPreviousDirectory;
+                sLogger.warn("Completing the interrupted update of '{}'", mLiveDirectory);
+                Files.move(replacement, mLiveDirectory, StandardCopyOption.ATOMIC_MOVE);
+            }
+            deleteIfExists(mPreviousDirectory);
+        }
+        deleteIfExists(mStagingDirectory);
+    }
+
+    /**
+     * Creates an empty staging directory, discarding anything left in it.
+     *
+     * @throws IOException if the staging directory could not be created
+     */
+    public void begin() throws IOException {
+        deleteIfExists(mStagingDirectory);
+        Files.createDirectories(mStagingDirectory);
+    }
+
+    /**
+     * @param localPath the path of a file relative to the instance root, e.g. {@code mods/jei.jar} (never {@code
+     *     null})
+     * @return where the file goes in the staging directory
+     */
+    public Path resolveStaged(final String localPath) {
+        Preconditions.checkArgument(localPath.startsWith(mTree + "/"), "localPath must be in the tree");
+        return mStagingDirectory.resolve(localPath.substring(mTree.length() + 1));
+    }
+
+    /**
+     * Hardlinks files of the live tree into the staging directory. Files which are already staged are left alone. A
+     * file is copied instead when the file system does not support hardlinks.
+     *
+     * @param filter accepts the live files which should be carried over (never {@code null})
+     * @return the number of files carried over
+     * @throws IOException if the live tree could not be listed or a file could not be linked or copied
+     */
+    public int linkLiveFiles(final Predicate<Path> filter) throws IOException {
+        Preconditions.checkNotNull(filter, "filter cannot be null");
+
+        if (!Files.isDirectory(mLiveDirectory)) {
+            return 0;
+        }
+
+        final int[] linked = {0};
+        Files.walkFileTree(mLiveDirectory, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+            new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes)
+                    throws IOException {
+
+                    if (!attributes.isRegularFile() || !filter.test(file)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    final Path target = mStagingDirectory.resolve(mLiveDirectory.relativize(file).toString());
+                    if (Files.exists(target)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.createLink(target, file);
+                    } catch (final UnsupportedOperationException | FileSystemException exception) {
+                        // Keeping the modification time keeps the file state index valid for the copy
+                        Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                    linked[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        return linked[0];
+    }
+
+    /**
+     * Replaces the live tree with the staged tree.
+     *
+     * @throws IOException if the trees could not be swapped, in which case {@link #recover()} restores a consistent
+     *     state
+     */
+    public void commit() throws IOException {
+        if (Files.exists(mLiveDirectory)) {
+            deleteIfExists(mPreviousDirectory);
+            Files.move(mLiveDirectory, mPreviousDirectory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(mStagingDirectory, mLiveDirectory, StandardCopyOption.ATOMIC_MOVE);
+        deleteIfExists(mPreviousDirectory);
+    }
+
+    /**
+     * Throws the staged tree away, leaving the live tree as it was. Failures are logged since there is nothing more
+     * the caller could do.
+     */
+    public void discard() {
+        try {
+            deleteIfExists(mStagingDirectory);
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to delete '{}'", mStagingDirectory, exception);
+        }
+    }
+
+    private static void deleteIfExists(final Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            // Windows has no secure directory streams, and nothing else should be touching these directories
+            MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+}
@@ -19,18 +19,18 @@ package com.coryjreid.modpacksuite.sync.client;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
 import com.coryjreid.modpacksuite.config.ConfigLoader;
 import com.coryjreid.modpacksuite.sync.client.gui.ConfigurationGenerationDialog;
+import com.coryjreid.modpacksuite.sync.client.gui.ConsoleView;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
 import com.github.fracpete.processoutput4j.core.StreamingProcessOutputType;
 import com.github.fracpete.processoutput4j.core.StreamingProcessOwner;
-import com.github.fracpete.processoutput4j.output.StreamingProcessOutput;
-import com.github.fracpete.rsync4j.RSync;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigRenderOptions;
@@ -41,81 +41,48 @@ import org.slf4j.LoggerFactory;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
-import javafx.scene.control.TextArea;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 
 /**
- * An application which connects to an server hosted by Rsync Daemon for synchronizing a Minecraft directory.
+ * An application which connects to a server hosted by Rsync Daemon or a SyncServer for synchronizing a Minecraft
+ * directory.
  */
 public class SyncClient extends Application {
     private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     /**
-     * A map containing a "source pattern" to "destination pattern" mapping. Please see rsync documentation for more
-     * information. Note: the "mods" folder is not handled using this map
+     * The {@link ConsoleView} for the program's output.
      */
-    private static final Map<String, String> sTransferMap = new LinkedHashMap<>();
+    private static final ConsoleView sConsole = new ConsoleView();
 
     /**
-     * The {@link TextArea} for the program's output.
+     * The configuration file which was loaded or created, other client state is stored next to it.
      */
-    private static final TextArea sConsole = new TextArea();
-
-    static {
-        // Config
-        sTransferMap.put("config/", "config");
-        sTransferMap.put("defaultconfigs/", "defaultconfigs");
-
-        // KubeJS
-        sTransferMap.put("kubejs/", "kubejs");
-
-        // Resourcepacks
-        sTransferMap.put("resourcepacks/", "resourcepacks");
-    }
+    private Path mConfigFile;
 
     @Override
     public void start(final Stage primaryStage) throws IOException {
         final ClientConfig clientConfig = new ClientConfig(loadOrCreateConfig());
+        final Path configFile = mConfigFile.toAbsolutePath();
         final Thread syncThread = new Thread(() -> {
-            try {
-                // We want to sync the mods using multiple source roots
-                final RSync modsRsync = getRsyncInstance(new String[] {
-                    clientConfig.getRsyncAddress() + "mods/",
-                    clientConfig.getRsyncAddress() + "clientmods/"
-                }, clientConfig.getMinecraftPath() + "mods");
-                final ProcessBuilder modsRsyncProcessBuilder = modsRsync.builder();
-                new StreamingProcessOutput(new TextAreaOutput()).monitor(modsRsyncProcessBuilder);
-                new StreamingProcessOutput(new ConsoleLogger()).monitor(modsRsyncProcessBuilder);
-
-                // Handle everything else
-                for (final Map.Entry<String, String> entry : sTransferMap.entrySet()) {
-                    final RSync rsync = getRsyncInstance(
-                        clientConfig.getRsyncAddress() + entry.getKey(),
-                        clientConfig.getMinecraftPath() + entry.getValue());
-                    if (entry.getKey().equals("config/")) {
-                        sLogger.info("Excluding 'jei' from changes");
-                        rsync.exclude("jei");
-                    }
-                    final ProcessBuilder rsyncProcessBuilder = rsync.builder();
-                    new StreamingProcessOutput(new TextAreaOutput()).monitor(rsyncProcessBuilder);
-                    new StreamingProcessOutput(new ConsoleLogger()).monitor(rsyncProcessBuilder);
-                }
-            } catch (final Exception exception) {
-                sLogger.error("Writing the process output failed", exception);
-            }
+            new Synchronizer(
+                clientConfig,
+                configFile.resolveSibling(FileStateIndex.DEFAULT_INDEX_FILE_NAME),
+                configFile.resolveSibling(SyncReport.DEFAULT_REPORT_FILE_NAME),
+                SyncClient::createOutput).run();
             Platform.exit();
         });
         syncThread.setDaemon(true);
 
         primaryStage.setTitle("Minecraft Server Sync Tool");
-        sConsole.setEditable(false);
 
         final StackPane root = new StackPane();
         root.getChildren().add(sConsole);
         primaryStage.setScene(new Scene(root, 600, 200));
         primaryStage.show();
 
+        sConsole.start();
         syncThread.start();
     }
 
@@ -123,6 +90,12 @@ public class SyncClient extends Application {
         launch(args);
     }
 
+    private static OutputMultiplexer createOutput(final String transferName) {
+        return new OutputMultiplexer()
+            .register(new TextAreaOutput(transferName))
+            .register(new ConsoleLogger(transferName));
+    }
+
     /**
      * Creates a {@link Config} by doing one of the following:
      * <ul>
@@ -142,6 +115,7 @@ public class SyncClient extends Application {
 
         try {
             config = ConfigLoader.loadConfig(args, false);
+            mConfigFile = ConfigLoader.getConfigFile(args);
         } catch (final IllegalStateException ignoredException) {
             sLogger.error("Configuration file not found! Prompting user for values...");
             final ConfigurationGenerationDialog configurationGenerationDialog = new ConfigurationGenerationDialog();
@@ -152,9 +126,10 @@ public class SyncClient extends Application {
             }
 
             config = ConfigFactory.parseMap(result.get());
+            mConfigFile = Paths.get(ConfigLoader.DEFAULT_CONFIG_FILE_NAME);
 
             Files.write(
-                Paths.get(ConfigLoader.DEFAULT_CONFIG_FILE_NAME),
+                mConfigFile,
                 Collections.singleton(config.root().render(ConfigRenderOptions
                     .defaults()
                     .setOriginComments(false)
@@ -165,51 +140,27 @@ public class SyncClient extends Application {
         return config;
     }
 
-    private static RSync getRsyncInstance(final String source, final String destination) {
-        return getRsyncDefaultValues().source(source).destination(destination);
-    }
-
-    private static RSync getRsyncInstance(final String[] sources, final String destination) {
-        return getRsyncDefaultValues().sources(sources).destination(destination);
-    }
-
-    private static RSync getRsyncDefaultValues() {
-        return new RSync().delete(true).force(true).perms(false).checksum(true).verbose(true).recursive(true);
-    }
-
     /**
-     * A {@link StreamingProcessOwner} implementation which writes to a {@link TextArea}.
+     * A {@link StreamingProcessOwner} implementation which writes to the {@link ConsoleView}.
      */
     private static class TextAreaOutput implements StreamingProcessOwner {
+        private final String mPrefix;
 
-        @Override
-        public StreamingProcessOutputType getOutputType() {
-            return StreamingProcessOutputType.BOTH;
+        /**
+         * @param transferName the name of the transfer the output belongs to, used to tell concurrent output apart
+         */
+        TextAreaOutput(final String transferName) {
+            mPrefix = "[" + transferName + "] ";
         }
 
-        @Override
-        public void processOutput(final String line, final boolean stdout) {
-            Platform.runLater(() -> sConsole.appendText(line + "\n"));
-        }
-    }
-
-    /**
-     * A {@link StreamingProcessOwner} implementation which writes to STDOUT.
-     */
-    private static class ConsoleLogger implements StreamingProcessOwner {
-
         @Override
         public StreamingProcessOutputType getOutputType() {
             return StreamingProcessOutputType.BOTH;
         }
 
         @Override
-        public void processOutput(String line, boolean stdout) {
-            if (stdout) {
-                sLogger.info(line);
-            } else {
-                sLogger.error(line);
-            }
+        public void processOutput(final String line, final boolean stdout) {
+            sConsole.append(mPrefix + line);
         }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import com.coryjreid.modpacksuite.config.ConfigLoader;
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.client.peer.PeerNode;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The entry point of the client. It starts the {@link SyncClient} GUI unless running headless, in which case the
+ * synchronization runs on the main thread with its output going to the log only and the JavaFX toolkit is never
+ * loaded. Headless mode is used when the {@value #HEADLESS_ARGUMENT} argument is given or when no display is
+ * available. Running headless with the {@value #SHARE_ARGUMENT} argument keeps sharing the content cache with peers
+ * after synchronizing until the process is stopped.
+ * <br><br>
+ * This class must not reference any JavaFX type outside of {@link #launchGui(String[])}.
+ */
+public final class SyncClientLauncher {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final String HEADLESS_ARGUMENT = "--headless";
+    private static final String SHARE_ARGUMENT = "--share";
+
+    /**
+     * Prevent instantiation.
+     */
+    private SyncClientLauncher() {
+        // Nothing to do.
+    }
+
+    public static void main(final String[] args) {
+        final boolean headlessRequested = Arrays.asList(args).contains(HEADLESS_ARGUMENT);
+        final boolean shareRequested = Arrays.asList(args).contains(SHARE_ARGUMENT);
+        final String[] configArgs = Arrays.stream(args)
+            .filter(argument -> !HEADLESS_ARGUMENT.equals(argument) && !SHARE_ARGUMENT.equals(argument))
+            .toArray(String[]::new);
+
+        if (headlessRequested || GraphicsEnvironment.isHeadless()) {
+            final boolean successful = runHeadless(configArgs);
+            if (shareRequested) {
+                share(configArgs);
+            }
+            System.exit(successful ? 0 : 1);
+        } else {
+            launchGui(configArgs);
+        }
+    }
+
+    /**
+     * @return {@code true} if the instance was synchronized successfully
+     */
+    private static boolean runHeadless(final String[] args) {
+        final ClientConfig clientConfig = new ClientConfig(ConfigLoader.loadConfig(args, true));
+        final Path configFile = ConfigLoader.getConfigFile(args).toAbsolutePath();
+        sLogger.info("Running headless");
+        return new Synchronizer(
+            clientConfig,
+            configFile.resolveSibling(FileStateIndex.DEFAULT_INDEX_FILE_NAME),
+            configFile.resolveSibling(SyncReport.DEFAULT_REPORT_FILE_NAME),
+            transferName -> new OutputMultiplexer().register(new ConsoleLogger(transferName)))
+            .run();
+    }
+
+    /**
+     * Shares the content cache with peers until the process is stopped, e.g. on a machine which has already
+     * synchronized at a LAN event.
+     */
+    private static void share(final String[] args) {
+        final ClientConfig clientConfig = new ClientConfig(ConfigLoader.loadConfig(args, true));
+        final PeerNode peerNode = Synchronizer.startPeerNode(
+            clientConfig,
+            new ContentCache(clientConfig.getContentCacheDirectory(), clientConfig.getContentCacheSize()));
+        if (peerNode == null) {
+            return;
+        }
+
+        sLogger.info("Sharing the content cache with peers until stopped");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                peerNode.close();
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to stop sharing with peers", exception);
+            }
+        }));
+        try {
+            new CountDownLatch(1).await();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void launchGui(final String[] args) {
+        SyncClient.main(args);
+    }
+}
@@ -0,0 +1,711 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.coryjreid.modpacksuite.sync.common.MerkleNode;
+import com.coryjreid.modpacksuite.sync.common.MerkleTree;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.coryjreid.modpacksuite.sync.common.chunk.ChunkList;
+import com.coryjreid.modpacksuite.sync.common.delta.FileSignature;
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.RequestType;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A blocking connection to a SyncServer speaking the protocol described in {@link Protocol}. The connection is safe to
+ * share between threads and requests are pipelined: a thread sends its request without waiting for the responses to
+ * the requests of other threads, and responses are read in the order the server sends them. Further connections
+ * which use the same socket, and so skip connecting and the handshake, are created with {@link #share()}; the socket
+ * is closed once every connection using it is closed.
+ * <br><br>
+ * A request which fails while its response is being read leaves the socket in an unknown state, so every later
+ * request on it fails too.
+ * <br><br>
+ * The first bulk request on a socket waits until the server admits the client, polling it while the server is busy
+ * with other clients. A client which the server stopped admitting, e.g. after it stayed idle while others queued,
+ * waits again and retries the request. Non-bulk requests never wait.
+ */
+public final class SyncConnection implements Closeable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 4096;
+
+    /**
+     * The bounds on how long to wait between asking a busy server for admission, within which the server's estimate
+     * is followed.
+     */
+    private static final Duration MIN_ADMISSION_POLL_INTERVAL = Duration.ofMillis(100);
+    private static final Duration MAX_ADMISSION_POLL_INTERVAL = Duration.ofSeconds(2);
+
+    /**
+     * The most requests {@link #getDirectories(Map)} keeps in flight. The server stops reading a connection with too
+     * many unanswered requests, so this leaves room for the requests of other threads sharing the socket.
+     */
+    private static final int MAX_PIPELINED_REQUESTS = 16;
+
+    private final Transport mTransport;
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+
+    private SyncConnection(final Transport transport) {
+        mTransport = transport;
+    }
+
+    /**
+     * Connects to a SyncServer as a new client and completes the protocol handshake.
+     *
+     * @param hostname the hostname of the server (never {@code null})
+     * @param port the port of the server
+     * @return the open {@link SyncConnection}
+     * @throws IOException if the server could not be reached or does not speak this protocol version
+     */
+    public static SyncConnection open(final String hostname, final int port) throws IOException {
+        return open(hostname, port, new SecureRandom().nextLong());
+    }
+
+    /**
+     * Connects to a SyncServer and completes the protocol handshake. Connections opened with the same client ID share
+     * one place in the server's admission queue and one share of its bandwidth.
+     *
+     * @param hostname the hostname of the server (never {@code null})
+     * @param port the port of the server
+     * @param clientId identifies the client to the server, see {@link #getClientId()}
+     * @return the open {@link SyncConnection}
+     * @throws IOException if the server could not be reached or does not speak this protocol version
+     */
+    public static SyncConnection open(final String hostname, final int port, final long clientId)
+        throws IOException {
+
+        Preconditions.checkNotNull(hostname, "hostname cannot be null");
+
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            socket.connect(new InetSocketAddress(hostname, port), CONNECT_TIMEOUT_MILLIS);
+
+            final SyncConnection connection = new SyncConnection(new Transport(socket, clientId));
+            connection.hello();
+            return connection;
+        } catch (final IOException exception) {
+            socket.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Creates a connection which sends its requests over the socket of this one. It counts its own traffic, so a
+     * caller sharing the socket with others can tell what its requests cost.
+     *
+     * @return the new {@link SyncConnection}, which must be closed like any other
+     * @throws IOException if this connection has been closed
+     */
+    public SyncConnection share() throws IOException {
+        mTransport.retain();
+        return new SyncConnection(mTransport);
+    }
+
+    /**
+     * @return the fingerprint of the pack currently published by the server
+     * @throws IOException if the request failed
+     */
+    public HashCode getFingerprint() throws IOException {
+        return exchange(RequestType.FINGERPRINT, output -> { }, (body, length) -> {
+            final byte[] fingerprint = new byte[Math.toIntExact(length)];
+            ByteStreams.readFully(body, fingerprint);
+            return HashCode.fromBytes(fingerprint);
+        });
+    }
+
+    /**
+     * @param tree the name of the tree, e.g. {@code config} (never {@code null})
+     * @return the manifest of the tree
+     * @throws IOException if the request failed, e.g. with {@link ResponseStatus#NOT_FOUND} for a tree which is not
+     *     served
+     */
+    public TreeManifest getTreeManifest(final String tree) throws IOException {
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        return exchange(
+            RequestType.MANIFEST,
+            output -> output.writeUTF(tree),
+            (body, length) -> TreeManifest.readFrom(new DataInputStream(body)));
+    }
+
+    /**
+     * Lists a served directory unless the client already has the served version of it.
+     *
+     * @param path the path of a directory relative to the pack root, e.g. {@code config/jei} (never {@code null})
+     * @param expectedHash the {@link MerkleTree} hash the client has for the directory, or {@code null} if it has none
+     * @return the children of the directory sorted by name, or empty if its hash is the expected one
+     * @throws IOException if the request failed, e.g. with {@link ResponseStatus#NOT_FOUND} for a directory which is
+     *     not served
+     */
+    public Optional<List<MerkleNode>> getDirectory(final String path, final HashCode expectedHash)
+        throws IOException {
+
+        Preconditions.checkNotNull(path, "path cannot be null");
+
+        return exchange(RequestType.DIRECTORY, directoryPayload(path, expectedHash), SyncConnection::readListing);
+    }
+
+    /**
+     * Lists several served directories like {@link #getDirectory(String, HashCode)} would, pipelining the requests so
+     * the whole batch costs about one round trip instead of one per directory.
+     *
+     * @param expectedHashes the {@link MerkleTree} hash the client has for each directory keyed by the path of the
+     *     directory, {@code null} values for directories it has none for (never {@code null})
+     * @return the children of each directory sorted by name, or empty if its hash is the expected one, keyed by the
+     *     path of the directory in the iteration order of {@code expectedHashes}
+     * @throws IOException if any request failed
+     */
+    public Map<String, Optional<List<MerkleNode>>> getDirectories(final Map<String, HashCode> expectedHashes)
+        throws IOException {
+
+        Preconditions.checkNotNull(expectedHashes, "expectedHashes cannot be null");
+
+        final List<String> paths = new ArrayList<>(expectedHashes.keySet());
+        final Map<String, Optional<List<MerkleNode>>> listings = new LinkedHashMap<>();
+        final Deque<Integer> pendingRequestIds = new ArrayDeque<>();
+        int sentRequests = 0;
+        try {
+            while (listings.size() < paths.size()) {
+                while (sentRequests < paths.size() && pendingRequestIds.size() < MAX_PIPELINED_REQUESTS) {
+                    final String path = paths.get(sentRequests++);
+                    final HashCode expectedHash = expectedHashes.get(path);
+                    pendingRequestIds.add(send(RequestType.DIRECTORY, directoryPayload(path, expectedHash)));
+                }
+                listings.put(
+                    paths.get(listings.size()),
+                    receive(pendingRequestIds.remove(), RequestType.DIRECTORY, SyncConnection::readListing));
+            }
+            return listings;
+        } finally {
+            // Responses nobody reads would block every later request on the socket
+            for (final int requestId : pendingRequestIds) {
+                try {
+                    receive(requestId, RequestType.DIRECTORY, (body, length) -> null);
+                } catch (final IOException exception) {
+                    // The first failure is the one being reported
+                }
+            }
+        }
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root (never {@code null})
+     * @return the signature of the served version of the file
+     * @throws IOException if the request failed
+     */
+    public FileSignature getSignature(final String path) throws IOException {
+        Preconditions.checkNotNull(path, "path cannot be null");
+
+        return exchange(
+            RequestType.SIGNATURE,
+            output -> output.writeUTF(path),
+            (body, length) -> FileSignature.readFrom(new DataInputStream(body)));
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root (never {@code null})
+     * @return the chunks of the served version of the file
+     * @throws IOException if the request failed
+     */
+    public ChunkList getChunkList(final String path) throws IOException {
+        Preconditions.checkNotNull(path, "path cannot be null");
+
+        return exchange(
+            RequestType.CHUNKS,
+            output -> output.writeUTF(path),
+            (body, length) -> ChunkList.readFrom(new DataInputStream(body)));
+    }
+
+    /**
+     * Downloads a range of a file.
+     *
+     * @param path the path of a file relative to the pack root (never {@code null})
+     * @param offset where to start reading in the file
+     * @param length the number of bytes to read, or {@code -1} for the rest of the file
+     * @param target receives the bytes (never {@code null})
+     * @return the number of bytes received
+     * @throws IOException if the request failed or the target could not be written
+     */
+    public long readFile(
+        final String path,
+        final long offset,
+        final long length,
+        final OutputStream target) throws IOException {
+
+        Preconditions.checkNotNull(path, "path cannot be null");
+        Preconditions.checkNotNull(target, "target cannot be null");
+
+        return exchange(RequestType.FILE, output -> {
+            output.writeUTF(path);
+            output.writeLong(offset);
+            output.writeLong(length);
+        }, (body, bodyLength) -> {
+            final long copied = ByteStreams.copy(body, target);
+            if (copied != bodyLength) {
+                throw new IOException("Connection closed while reading '" + path + "'");
+            }
+            return copied;
+        });
+    }
+
+    /**
+     * Downloads a whole file, letting the server send a precompressed variant of it in one of the accepted encodings.
+     *
+     * @param path the path of a file relative to the pack root (never {@code null})
+     * @param accepted the encodings to accept besides {@link ContentEncoding#IDENTITY}, in order of preference (never
+     *     {@code null})
+     * @param target receives the decoded bytes (never {@code null})
+     * @return the encoding the server chose
+     * @throws IOException if the request failed, the body could not be decoded or the target could not be written
+     */
+    public ContentEncoding readEncodedFile(
+        final String path,
+        final List<ContentEncoding> accepted,
+        final OutputStream target) throws IOException {
+
+        Preconditions.checkNotNull(path, "path cannot be null");
+        Preconditions.checkNotNull(accepted, "accepted cannot be null");
+        Preconditions.checkNotNull(target, "target cannot be null");
+
+        return exchange(RequestType.ENCODED_FILE, output -> {
+            output.writeUTF(path);
+            output.writeByte(accepted.size());
+            for (final ContentEncoding encoding : accepted) {
+                output.writeByte(encoding.getCode());
+            }
+        }, (body, length) -> {
+            final ContentEncoding encoding = ContentEncoding.fromCode((byte) body.read())
+                .orElseThrow(() -> new IOException("Unknown encoding for '" + path + "'"));
+
+            // The decoder must not close the connection along with itself
+            final InputStream unclosableBody = new FilterInputStream(body) {
+                @Override
+                public void close() {
+                    // Nothing to do.
+                }
+            };
+            try (InputStream decoded = encoding.decode(unclosableBody)) {
+                ByteStreams.copy(decoded, target);
+            }
+            if (ByteStreams.exhaust(body) != 0) {
+                throw new IOException("Unexpected data after '" + path + "'");
+            }
+            return encoding;
+        });
+    }
+
+    /**
+     * Streams the release bundle leading from a pack version to the published one. Other requests on the socket wait
+     * until the whole bundle has been read.
+     *
+     * @param fromFingerprint the fingerprint of the pack version the client has (never {@code null})
+     * @param reader consumes the bundle as it arrives, it must not make requests of its own on this socket (never
+     *     {@code null})
+     * @throws IOException if the request failed, e.g. with {@link ResponseStatus#NOT_FOUND} if the server has no
+     *     bundle from that version, or the reader failed
+     */
+    public void readBundle(final HashCode fromFingerprint, final BodyReader reader) throws IOException {
+        Preconditions.checkNotNull(fromFingerprint, "fromFingerprint cannot be null");
+        Preconditions.checkNotNull(reader, "reader cannot be null");
+
+        exchange(RequestType.BUNDLE, output -> output.write(fromFingerprint.asBytes()), (body, length) -> {
+            reader.read(body);
+            if (ByteStreams.exhaust(body) != 0) {
+                throw new IOException("Unexpected data after the release bundle");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the ID this connection identified its client with, to open further sockets as the same client
+     */
+    public long getClientId() {
+        return mTransport.mClientId;
+    }
+
+    /**
+     * @return the number of bytes the requests of this connection sent so far, including the handshake if this
+     *     connection opened the socket
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * @return the number of bytes the responses to this connection received so far, including the handshake if this
+     *     connection opened the socket
+     */
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed.compareAndSet(false, true)) {
+            mTransport.release();
+        }
+    }
+
+    private void hello() throws IOException {
+        exchange(RequestType.HELLO, output -> {
+            output.writeInt(Protocol.VERSION);
+            output.writeLong(mTransport.mClientId);
+        }, (body, length) -> null);
+    }
+
+    /**
+     * Blocks until the server admits this client to bulk requests. Only one thread per socket polls, the others wait
+     * for it.
+     *
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    private void awaitAdmission() throws IOException {
+        synchronized (mTransport.mAdmissionLock) {
+            int reportedClientsAhead = -1;
+            while (!mTransport.mAdmitted) {
+                final Admission admission = exchange(RequestType.ADMISSION, output -> { }, (body, length) -> {
+                    final DataInputStream input = new DataInputStream(body);
+                    return new Admission(input.readBoolean(), input.readInt(), input.readLong());
+                });
+                if (admission.mAdmitted) {
+                    mTransport.mAdmitted = true;
+                    break;
+                }
+
+                if (admission.mClientsAhead != reportedClientsAhead) {
+                    sLogger.info(
+                        "The server is busy, {} clients are ahead of this one (about {}s)",
+                        admission.mClientsAhead,
+                        Math.max(1, admission.mWaitMillis / 1000));
+                    reportedClientsAhead = admission.mClientsAhead;
+                }
+                try {
+                    Thread.sleep(Math.max(
+                        MIN_ADMISSION_POLL_INTERVAL.toMillis(),
+                        Math.min(MAX_ADMISSION_POLL_INTERVAL.toMillis(), admission.mWaitMillis)));
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the server to admit the client");
+                }
+            }
+        }
+    }
+
+    private <T> T exchange(
+        final RequestType type,
+        final PayloadWriter payloadWriter,
+        final ResponseReader<T> responseReader) throws IOException {
+
+        if (!type.isBulk()) {
+            return receive(send(type, payloadWriter), type, responseReader);
+        }
+
+        while (true) {
+            if (!mTransport.mAdmitted) {
+                awaitAdmission();
+            }
+            try {
+                return receive(send(type, payloadWriter), type, responseReader);
+            } catch (final ServerResponseException exception) {
+                if (exception.getStatus() != ResponseStatus.NOT_ADMITTED) {
+                    throw exception;
+                }
+                sLogger.info("The server handed this client's place to another, queueing again");
+                mTransport.mAdmitted = false;
+            }
+        }
+    }
+
+    /**
+     * @return the ID of the request, whose response must be read with {@link #receive(int, RequestType,
+     *     ResponseReader)}
+     */
+    private int send(final RequestType type, final PayloadWriter payloadWriter) throws IOException {
+        Preconditions.checkState(!mClosed.get(), "The connection is closed");
+
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payloadWriter.write(new DataOutputStream(payload));
+        final int requestId = mTransport.send(type, payload);
+        mBytesSent.addAndGet(Integer.BYTES + Protocol.REQUEST_HEADER_SIZE + payload.size());
+        return requestId;
+    }
+
+    /**
+     * Waits for the response to a request and reads it.
+     *
+     * @throws ServerResponseException if the server did not answer with {@link ResponseStatus#OK}
+     */
+    private <T> T receive(final int requestId, final RequestType type, final ResponseReader<T> responseReader)
+        throws IOException {
+
+        return mTransport.receive(requestId, type, (body, length) -> {
+            mBytesReceived.addAndGet(Protocol.RESPONSE_HEADER_SIZE + length);
+            return responseReader.read(body, length);
+        });
+    }
+
+    private static PayloadWriter directoryPayload(final String path, final HashCode expectedHash) {
+        return output -> {
+            output.writeUTF(path);
+            output.writeBoolean(expectedHash != null);
+            if (expectedHash != null) {
+                output.write(expectedHash.asBytes());
+            }
+        };
+    }
+
+    private static Optional<List<MerkleNode>> readListing(final InputStream body, final long length)
+        throws IOException {
+
+        final DataInputStream input = new DataInputStream(body);
+        return input.readBoolean() ? Optional.of(MerkleTree.readListing(input)) : Optional.empty();
+    }
+
+    /**
+     * The server's answer to a {@link RequestType#ADMISSION} request.
+     */
+    private static final class Admission {
+        private final boolean mAdmitted;
+        private final int mClientsAhead;
+        private final long mWaitMillis;
+
+        private Admission(final boolean admitted, final int clientsAhead, final long waitMillis) {
+            mAdmitted = admitted;
+            mClientsAhead = clientsAhead;
+            mWaitMillis = waitMillis;
+        }
+    }
+
+    /**
+     * Consumes a response body which is too large to hold in memory.
+     */
+    public interface BodyReader {
+        /**
+         * @param body the body, which ends where the response does
+         * @throws IOException if the body could not be read or processed
+         */
+        void read(InputStream body) throws IOException;
+    }
+
+    /**
+     * Writes the payload of a request.
+     */
+    private interface PayloadWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Reads the body of a successful response. Whatever it leaves unread is skipped.
+     */
+    private interface ResponseReader<T> {
+        T read(InputStream body, long length) throws IOException;
+    }
+
+    /**
+     * The socket shared by every {@link SyncConnection} created from the same {@link #open(String, int, long)}.
+     * Requests are numbered as they are sent and their responses are read strictly in that order, each reader waiting
+     * for its turn.
+     */
+    private static final class Transport {
+        private final long mClientId;
+        private final Socket mSocket;
+        private final DataInputStream mInput;
+        private final DataOutputStream mOutput;
+        private final Object mSendLock = new Object();
+        private final Object mReceiveLock = new Object();
+        private final Object mAdmissionLock = new Object();
+        private volatile boolean mAdmitted;
+        private int mNextRequestId;
+        private int mNextResponseId;
+        private int mUsers = 1;
+        private IOException mFailure;
+
+        private Transport(final Socket socket, final long clientId) throws IOException {
+            mClientId = clientId;
+            mSocket = socket;
+            mInput = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            mOutput = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private int send(final RequestType type, final ByteArrayOutputStream payload) throws IOException {
+            synchronized (mSendLock) {
+                checkUsable();
+                final int requestId = mNextRequestId++;
+                try {
+                    mOutput.writeInt(Protocol.REQUEST_HEADER_SIZE + payload.size());
+                    mOutput.writeInt(requestId);
+                    mOutput.writeByte(type.getCode());
+                    payload.writeTo(mOutput);
+                    mOutput.flush();
+                } catch (final IOException exception) {
+                    fail(exception);
+                    throw exception;
+                }
+                return requestId;
+            }
+        }
+
+        private <T> T receive(final int requestId, final RequestType type, final ResponseReader<T> responseReader)
+            throws IOException {
+
+            awaitTurn(requestId);
+            boolean consumed = false;
+            try {
+                final int responseId = mInput.readInt();
+                final ResponseStatus status = ResponseStatus.fromCode(mInput.readByte())
+                    .orElseThrow(() -> new IOException("Unknown response status"));
+                final long length = mInput.readLong();
+                if (responseId != requestId || length < 0) {
+                    throw new IOException("Malformed response to " + type);
+                }
+
+                if (status != ResponseStatus.OK) {
+                    final byte[] message = new byte[(int) Math.min(length, MAX_ERROR_MESSAGE_LENGTH)];
+                    mInput.readFully(message);
+                    ByteStreams.skipFully(mInput, length - message.length);
+                    consumed = true;
+                    throw new ServerResponseException(status, new String(message, StandardCharsets.UTF_8));
+                }
+
+                final InputStream body = ByteStreams.limit(mInput, length);
+                final T response = responseReader.read(body, length);
+                ByteStreams.exhaust(body);
+                consumed = true;
+                return response;
+            } catch (final IOException exception) {
+                if (!consumed) {
+                    fail(exception);
+                }
+                throw exception;
+            } finally {
+                synchronized (mReceiveLock) {
+                    if (!consumed && mFailure == null) {
+                        fail(new IOException("A response to " + type + " was left unread"));
+                    }
+                    mNextResponseId++;
+                    mReceiveLock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Blocks until every response before the given request's has been read. The wait is not interruptible, since
+         * a response which is never read would block every later request.
+         */
+        private void awaitTurn(final int requestId) throws IOException {
+            boolean interrupted = false;
+            synchronized (mReceiveLock) {
+                while (mNextResponseId != requestId && mFailure == null) {
+                    try {
+                        mReceiveLock.wait();
+                    } catch (final InterruptedException exception) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            checkUsable();
+        }
+
+        private void retain() throws IOException {
+            synchronized (mReceiveLock) {
+                if (mUsers == 0) {
+                    throw new IOException("The connection is closed");
+                }
+                mUsers++;
+            }
+        }
+
+        private void release() throws IOException {
+            synchronized (mReceiveLock) {
+                if (--mUsers > 0) {
+                    return;
+                }
+                if (mFailure == null) {
+                    mFailure = new IOException("The connection is closed");
+                }
+                mReceiveLock.notifyAll();
+            }
+            mSocket.close();
+        }
+
+        private void fail(final IOException failure) {
+            synchronized (mReceiveLock) {
+                if (mFailure == null) {
+                    mFailure = new IOException("The connection failed during an earlier request", failure);
+                }
+                mReceiveLock.notifyAll();
+            }
+            try {
+                mSocket.close();
+            } catch (final IOException exception) {
+                // The failure is what matters
+            }
+        }
+
+        private void checkUsable() throws IOException {
+            synchronized (mReceiveLock) {
+                if (mFailure != null) {
+                    throw new IOException(mFailure.getMessage(), mFailure.getCause());
+                }
+            }
+        }
+    }
+}
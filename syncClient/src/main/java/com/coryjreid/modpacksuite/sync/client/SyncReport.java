@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+
+/**
+ * The metrics of a single synchronization: how long it took and what every transfer did. It can be written as a JSON
+ * report and logged as structured events, which use the same field names so the two are easy to correlate.
+ */
+public final class SyncReport {
+    public static final String DEFAULT_REPORT_FILE_NAME = "syncReport.json";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final ObjectMapper sObjectMapper = new ObjectMapper();
+
+    private final Instant mStartedAt;
+    private final Duration mElapsed;
+    private final TransferProtocol mProtocol;
+    private final HashCode mServerFingerprint;
+    private final boolean mAlreadyApplied;
+    private final List<TransferResult> mResults;
+
+    /**
+     * @param startedAt when the synchronization started (never {@code null})
+     * @param elapsed how long the whole synchronization took (never {@code null})
+     * @param protocol the protocol used to talk to the server (never {@code null})
+     * @param serverFingerprint the fingerprint published by the server, or {@code null} if it could not be fetched
+     * @param alreadyApplied {@code true} if nothing was transferred because the pack version was already applied
+     * @param results the results of every transfer which ran (never {@code null})
+     */
+    public SyncReport(
+        final Instant startedAt,
+        final Duration elapsed,
+        final TransferProtocol protocol,
+        final HashCode serverFingerprint,
+        final boolean alreadyApplied,
+        final List<TransferResult> results) {
+
+        mStartedAt = Preconditions.checkNotNull(startedAt, "startedAt cannot be null");
+        mElapsed = Preconditions.checkNotNull(elapsed, "elapsed cannot be null");
+        mProtocol = Preconditions.checkNotNull(protocol, "protocol cannot be null");
+        mServerFingerprint = serverFingerprint;
+        mAlreadyApplied = alreadyApplied;
+        mResults = ImmutableList.copyOf(results);
+    }
+
+    /**
+     * @return {@code true} if every transfer succeeded
+     */
+    public boolean isSuccessful() {
+        return mResults.stream().allMatch(TransferResult::isSuccessful);
+    }
+
+    /**
+     * Logs one event per transfer followed by a summary event. The fields are attached as key-value pairs and also
+     * rendered into the message as {@code key=value} pairs for appenders which do not output key-value pairs.
+     */
+    public void log() {
+        for (final TransferResult result : mResults) {
+            logEvent(result.isSuccessful() ? sLogger.atInfo() : sLogger.atError(), "sync.transfer", toMap(result));
+        }
+        logEvent(isSuccessful() ? sLogger.atInfo() : sLogger.atError(), "sync.summary", getSummary());
+    }
+
+    /**
+     * Writes this report as JSON. The file is replaced atomically so readers never see a partial report.
+     *
+     * @param reportFile the file to write to (never {@code null})
+     * @throws IOException if the report could not be written
+     */
+    public void writeTo(final Path reportFile) throws IOException {
+        Preconditions.checkNotNull(reportFile, "reportFile cannot be null");
+
+        final Map<String, Object> report = getSummary();
+        final List<Map<String, Object>> transfers = new ArrayList<>();
+        for (final TransferResult result : mResults) {
+            transfers.add(toMap(result));
+        }
+        report.put("transfers", transfers);
+
+        final Path temporaryFile = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+        sObjectMapper.writerWithDefaultPrettyPrinter().writeValue(temporaryFile.toFile(), report);
+        Files.move(temporaryFile, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<String, Object> getSummary() {
+        long filesChecked = 0;
+        long filesChanged = 0;
+        long bytesSent = 0;
+        long bytesReceived = 0;
+        long bytesReused = 0;
+        long bytesFromPeers = 0;
+        // The server fingerprint is fetched over a connection of its own, which native transfers share
+        long handshakes = 1;
+        for (final TransferResult result : mResults) {
+            final TransferStatistics statistics = result.getStatistics();
+            filesChecked += statistics.getFilesChecked();
+            filesChanged += statistics.getFilesChanged();
+            bytesSent += statistics.getBytesSent();
+            bytesReceived += statistics.getBytesReceived();
+            bytesReused += statistics.getBytesReused();
+            bytesFromPeers += statistics.getBytesFromPeers();
+            handshakes += statistics.getHandshakes();
+        }
+
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("startedAt", mStartedAt.toString());
+        summary.put("elapsedMillis", mElapsed.toMillis());
+        summary.put("protocol", mProtocol.name().toLowerCase(Locale.ROOT));
+        summary.put("serverFingerprint", mServerFingerprint == null ? null : mServerFingerprint.toString());
+        summary.put("alreadyApplied", mAlreadyApplied);
+        summary.put("successful", isSuccessful());
+        summary.put("filesChecked", filesChecked);
+        summary.put("filesChanged", filesChanged);
+        summary.put("bytesSent", bytesSent);
+        summary.put("bytesReceived", bytesReceived);
+        summary.put("bytesReused", bytesReused);
+        summary.put("bytesFromPeers", bytesFromPeers);
+        summary.put("handshakes", handshakes);
+        return summary;
+    }
+
+    private static Map<String, Object> toMap(final TransferResult result) {
+        final TransferStatistics statistics = result.getStatistics();
+        final Map<String, Object> transfer = new LinkedHashMap<>();
+        transfer.put("name", result.getName());
+        transfer.put("successful", result.isSuccessful());
+        transfer.put("elapsedMillis", result.getElapsed().toMillis());
+        transfer.put("filesChecked", statistics.getFilesChecked());
+        transfer.put("filesChanged", statistics.getFilesChanged());
+        transfer.put("filesDownloaded", statistics.getFilesDownloaded());
+        transfer.put("filesPatched", statistics.getFilesPatched());
+        transfer.put("filesDeleted", statistics.getFilesDeleted());
+        transfer.put("bytesSent", statistics.getBytesSent());
+        transfer.put("bytesReceived", statistics.getBytesReceived());
+        transfer.put("bytesReused", statistics.getBytesReused());
+        transfer.put("bytesFromPeers", statistics.getBytesFromPeers());
+        transfer.put("handshakes", statistics.getHandshakes());
+        transfer.put("failure", result.getFailure().map(Throwable::toString).orElse(null));
+        return transfer;
+    }
+
+    private static void logEvent(
+        final LoggingEventBuilder event,
+        final String eventName,
+        final Map<String, Object> fields) {
+
+        final StringBuilder message = new StringBuilder(eventName);
+        for (final Map.Entry<String, Object> field : fields.entrySet()) {
+            event.addKeyValue(field.getKey(), field.getValue());
+            final String value = String.valueOf(field.getValue());
+            message.append(' ').append(field.getKey()).append('=')
+                .append(value.indexOf(' ') < 0 ? value : '"' + value.replace("\"", "\\\"") + '"');
+        }
+        event.log(message.toString());
+    }
+}
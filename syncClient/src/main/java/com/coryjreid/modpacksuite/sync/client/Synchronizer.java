@@ -0,0 +1,567 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.client.chunk.ChunkStore;
+import com.coryjreid.modpacksuite.sync.client.peer.PeerNode;
+import com.coryjreid.modpacksuite.sync.common.PackFingerprint;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.github.fracpete.processoutput4j.output.StreamingProcessOutput;
+import com.github.fracpete.rsync4j.RSync;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the synchronization of a Minecraft instance with the server. It has no user interface of its own, the output of
+ * every transfer goes to the sinks supplied by the caller so it can run with or without the GUI.
+ */
+public final class Synchronizer {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * A map containing a "source pattern" to "destination pattern" mapping. Please see rsync documentation for more
+     * information. Note: the "mods" folder is not handled using this map
+     */
+    private static final Map<String, String> sTransferMap = new LinkedHashMap<>();
+
+    /**
+     * A map containing a destination tree to excluded file and directory names mapping. Excluded files are neither
+     * updated nor deleted, e.g. so players keep their own JEI settings.
+     */
+    private static final Map<String, Set<String>> sExcludedNames = ImmutableMap.of("config", ImmutableSet.of("jei"));
+
+    static {
+        // Config
+        sTransferMap.put("config/", "config");
+        sTransferMap.put("defaultconfigs/", "defaultconfigs");
+
+        // KubeJS
+        sTransferMap.put("kubejs/", "kubejs");
+
+        // Resourcepacks
+        sTransferMap.put("resourcepacks/", "resourcepacks");
+    }
+
+    private final ClientConfig mClientConfig;
+    private final Path mIndexFile;
+    private final Path mReportFile;
+    private final Function<String, OutputMultiplexer> mOutputFactory;
+
+    /**
+     * @param clientConfig the client configuration (never {@code null})
+     * @param indexFile the file holding the {@link FileStateIndex} (never {@code null})
+     * @param reportFile the file to write the {@link SyncReport} of each run to (never {@code null})
+     * @param outputFactory creates the output of a transfer given its name (never {@code null})
+     */
+    public Synchronizer(
+        final ClientConfig clientConfig,
+        final Path indexFile,
+        final Path reportFile,
+        final Function<String, OutputMultiplexer> outputFactory) {
+
+        mClientConfig = Preconditions.checkNotNull(clientConfig, "clientConfig cannot be null");
+        mIndexFile = Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+        mReportFile = Preconditions.checkNotNull(reportFile, "reportFile cannot be null");
+        mOutputFactory = Preconditions.checkNotNull(outputFactory, "outputFactory cannot be null");
+    }
+
+    /**
+     * Brings every synchronized tree of the instance up to date with the server.
+     *
+     * @return {@code true} if the instance is up to date, {@code false} if any tree failed to synchronize
+     */
+    public boolean run() {
+        final Instant startedAt = Instant.now();
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ClientConfig clientConfig = mClientConfig;
+        final Path indexFile = mIndexFile;
+        SyncConnection session = null;
+        PeerNode peerNode = null;
+        try {
+            final Path instanceRoot = Paths.get(clientConfig.getMinecraftPath());
+            if (!recoverStagedTrees(instanceRoot)) {
+                return false;
+            }
+            final FileStateIndex index = FileStateIndex.load(indexFile);
+            final Map<String, Boolean> unchangedTrees = new LinkedHashMap<>();
+            unchangedTrees.put("mods", isTreeUnchanged(index, instanceRoot, "mods"));
+            for (final String tree : sTransferMap.values()) {
+                unchangedTrees.put(tree, isTreeUnchanged(index, instanceRoot, tree));
+            }
+
+            if (clientConfig.getProtocol() == TransferProtocol.NATIVE) {
+                try {
+                    // Every request of this launch goes over this connection, so it is only set up once
+                    session = SyncConnection.open(clientConfig.getServerHostname(), clientConfig.getServerPort());
+                } catch (final IOException exception) {
+                    sLogger.error("Failed to connect to the server", exception);
+                    final List<TransferResult> results = new ArrayList<>();
+                    for (final String tree : new LinkedHashSet<>(getLocalTrees().values())) {
+                        results.add(TransferResult.failed(tree, exception, Duration.ZERO));
+                    }
+                    report(new SyncReport(
+                        startedAt,
+                        stopwatch.elapsed(),
+                        clientConfig.getProtocol(),
+                        null,
+                        false,
+                        results));
+                    return false;
+                }
+            }
+
+            final Optional<HashCode> serverFingerprint = fetchServerFingerprint(clientConfig, session);
+            if (serverFingerprint.isPresent()
+                && serverFingerprint.equals(index.getAppliedFingerprint())
+                && !unchangedTrees.containsValue(false)) {
+
+                sLogger.info("Pack version {} is already applied, nothing to synchronize", serverFingerprint.get());
+                report(new SyncReport(
+                    startedAt,
+                    stopwatch.elapsed(),
+                    clientConfig.getProtocol(),
+                    serverFingerprint.get(),
+                    true,
+                    ImmutableList.of()));
+                return true;
+            }
+
+            final ChunkStore chunkStore = new ChunkStore(
+                instanceRoot.resolve(ChunkStore.DEFAULT_DIRECTORY_NAME),
+                clientConfig.getChunkStoreSize());
+            final ContentCache contentCache = new ContentCache(
+                clientConfig.getContentCacheDirectory(),
+                clientConfig.getContentCacheSize());
+            if (clientConfig.getProtocol() == TransferProtocol.NATIVE && clientConfig.isPeerSharingEnabled()) {
+                peerNode = startPeerNode(clientConfig, contentCache);
+            }
+            final TransferScheduler scheduler = new TransferScheduler(clientConfig.getMaxConcurrentTransfers());
+            final List<TransferResult> results = new ArrayList<>();
+            if (clientConfig.getProtocol() == TransferProtocol.NATIVE
+                && index.getAppliedFingerprint().isPresent()
+                && !unchangedTrees.containsValue(false)) {
+
+                // The instance is exactly the version it last applied, so the release bundle from it applies cleanly
+                final TransferResult bundleResult = scheduler.runAll(ImmutableList.of(new BundleTransfer(
+                    index.getAppliedFingerprint().get(),
+                    getLocalTrees(),
+                    sExcludedNames,
+                    session,
+                    instanceRoot,
+                    index,
+                    chunkStore,
+                    contentCache,
+                    createOutput("bundle")))).get(0);
+                if (bundleResult.isSuccessful()) {
+                    results.add(bundleResult);
+                } else {
+                    sLogger.info("Synchronizing file by file instead of applying the release bundle");
+                }
+            }
+
+            final List<Transfer> transfers = clientConfig.getProtocol() == TransferProtocol.NATIVE
+                ? createNativeTransfers(
+                    clientConfig,
+                    session,
+                    instanceRoot,
+                    index,
+                    chunkStore,
+                    contentCache,
+                    peerNode)
+                : createRsyncTransfers(clientConfig, instanceRoot, unchangedTrees);
+            final List<TransferResult> transferResults = scheduler.runAll(transfers);
+            results.addAll(transferResults);
+            updateIndex(index, indexFile, instanceRoot, transferResults, serverFingerprint.orElse(null));
+            trimChunkStore(chunkStore);
+            trimContentCache(contentCache);
+
+            final SyncReport report = new SyncReport(
+                startedAt,
+                stopwatch.elapsed(),
+                clientConfig.getProtocol(),
+                serverFingerprint.orElse(null),
+                false,
+                results);
+            report(report);
+            if (report.isSuccessful()) {
+                deleteUnfinishedDownloads(instanceRoot);
+            }
+            return report.isSuccessful();
+        } catch (final InterruptedException exception) {
+            sLogger.error("Interrupted while waiting for transfers to finish", exception);
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            closePeerNode(peerNode);
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Starts sharing the content cache with peers. Peers only save the server work, so failing to start the node
+     * only means files are fetched from the server.
+     *
+     * @param clientConfig the configuration holding the peer settings (never {@code null})
+     * @param contentCache the cache to share (never {@code null})
+     * @return the started node, or {@code null} if it could not be started
+     */
+    public static PeerNode startPeerNode(final ClientConfig clientConfig, final ContentCache contentCache) {
+        final PeerNode peerNode = new PeerNode(
+            contentCache,
+            clientConfig.getPeerPort(),
+            clientConfig.getPeerDiscoveryPort(),
+            clientConfig.getPeerInterface(),
+            clientConfig.getPeers());
+        try {
+            peerNode.start();
+            return peerNode;
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to start sharing with peers, fetching every file from the server", exception);
+            closePeerNode(peerNode);
+            return null;
+        }
+    }
+
+    private static void closePeerNode(final PeerNode peerNode) {
+        try {
+            if (peerNode != null) {
+                peerNode.close();
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to stop sharing with peers", exception);
+        }
+    }
+
+    private static void closeSession(final SyncConnection session) {
+        try {
+            if (session != null) {
+                session.close();
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to close the connection to the server", exception);
+        }
+    }
+
+    /**
+     * Completes or rolls back the swaps of {@link StagedTree}s which a previous run was interrupted in, so every tree
+     * is whole before it is compared.
+     *
+     * @return {@code false} if a tree could not be recovered
+     */
+    private static boolean recoverStagedTrees(final Path instanceRoot) {
+        final List<String> trees = new ArrayList<>();
+        trees.add("mods");
+        trees.addAll(sTransferMap.values());
+        for (final String tree : trees) {
+            try {
+                new StagedTree(instanceRoot, tree).recover();
+            } catch (final IOException exception) {
+                sLogger.error("Failed to recover the interrupted update of '{}'", tree, exception);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void trimChunkStore(final ChunkStore chunkStore) {
+        try {
+            chunkStore.trim();
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to trim the chunk store", exception);
+        }
+    }
+
+    private static void trimContentCache(final ContentCache contentCache) {
+        try {
+            contentCache.trim();
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to trim the content cache", exception);
+        }
+    }
+
+    /**
+     * Deletes the segments of downloads which were interrupted by an earlier run. Once every tree is up to date, what
+     * is left belongs to files which are no longer served.
+     */
+    private static void deleteUnfinishedDownloads(final Path instanceRoot) {
+        final Path directory = instanceRoot.resolve(SegmentedDownload.DIRECTORY_NAME);
+        try {
+            if (Files.exists(directory)) {
+                MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to delete the unfinished downloads in '{}'", directory, exception);
+        }
+    }
+
+    private void report(final SyncReport report) {
+        report.log();
+        try {
+            report.writeTo(mReportFile);
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to write the report to '{}'", mReportFile, exception);
+        }
+    }
+
+    private List<Transfer> createRsyncTransfers(
+        final ClientConfig clientConfig,
+        final Path instanceRoot,
+        final Map<String, Boolean> unchangedTrees) {
+
+        final List<Transfer> transfers = new ArrayList<>();
+
+        // We want to sync the mods using multiple source roots
+        transfers.add(new RsyncTransfer(
+            "mods",
+            getRsyncInstance(new String[] {
+                clientConfig.getRsyncAddress() + "mods/",
+                clientConfig.getRsyncAddress() + "clientmods/"
+            }, clientConfig.getMinecraftPath(), "mods", !unchangedTrees.get("mods")),
+            new StagedTree(instanceRoot, "mods"),
+            getExcludedNames("mods"),
+            createOutput("mods")));
+
+        // Handle everything else
+        for (final Map.Entry<String, String> entry : sTransferMap.entrySet()) {
+            final RSync rsync = getRsyncInstance(
+                new String[] {clientConfig.getRsyncAddress() + entry.getKey()},
+                clientConfig.getMinecraftPath(),
+                entry.getValue(),
+                !unchangedTrees.get(entry.getValue()));
+            final Set<String> excludedNames = getExcludedNames(entry.getValue());
+            if (!excludedNames.isEmpty()) {
+                sLogger.info("Excluding {} from changes", excludedNames);
+                rsync.exclude(excludedNames.toArray(new String[0]));
+            }
+            transfers.add(new RsyncTransfer(
+                entry.getValue(),
+                rsync,
+                new StagedTree(instanceRoot, entry.getValue()),
+                excludedNames,
+                createOutput(entry.getValue())));
+        }
+
+        return transfers;
+    }
+
+    private List<Transfer> createNativeTransfers(
+        final ClientConfig clientConfig,
+        final SyncConnection session,
+        final Path instanceRoot,
+        final FileStateIndex index,
+        final ChunkStore chunkStore,
+        final ContentCache contentCache,
+        final PeerNode peerNode) {
+
+        final List<Transfer> transfers = new ArrayList<>();
+
+        // The mods folder is made up of multiple served trees
+        transfers.add(new NativeTransfer(
+            "mods",
+            ImmutableList.of("mods", "clientmods"),
+            getExcludedNames("mods"),
+            clientConfig,
+            session,
+            instanceRoot,
+            index,
+            chunkStore,
+            contentCache,
+            peerNode,
+            createOutput("mods")));
+
+        // Handle everything else, the transfer map sources are served trees with a trailing slash
+        for (final Map.Entry<String, String> entry : sTransferMap.entrySet()) {
+            transfers.add(new NativeTransfer(
+                entry.getValue(),
+                ImmutableList.of(entry.getKey().substring(0, entry.getKey().length() - 1)),
+                getExcludedNames(entry.getValue()),
+                clientConfig,
+                session,
+                instanceRoot,
+                index,
+                chunkStore,
+                contentCache,
+                peerNode,
+                createOutput(entry.getValue())));
+        }
+
+        return transfers;
+    }
+
+    /**
+     * @return the destination tree each served tree is synchronized into, a later served tree wins over an earlier one
+     *     with the same destination
+     */
+    private static Map<String, String> getLocalTrees() {
+        final Map<String, String> localTrees = new LinkedHashMap<>();
+        localTrees.put("mods", "mods");
+        localTrees.put("clientmods", "mods");
+        for (final Map.Entry<String, String> entry : sTransferMap.entrySet()) {
+            localTrees.put(entry.getKey().substring(0, entry.getKey().length() - 1), entry.getValue());
+        }
+        return localTrees;
+    }
+
+    /**
+     * @param tree the destination tree
+     * @return the file and directory names in the tree which are never changed by synchronizing
+     */
+    private static Set<String> getExcludedNames(final String tree) {
+        return sExcludedNames.getOrDefault(tree, Collections.emptySet());
+    }
+
+    private OutputMultiplexer createOutput(final String transferName) {
+        return mOutputFactory.apply(transferName);
+    }
+
+    /**
+     * Checks whether a tree still matches the index recorded after its last successful synchronization. If it does,
+     * its modification times match the server (see {@link #getRsyncDefaultValues()}) and rsync's size and
+     * modification time check is enough. Otherwise, e.g. on the first launch or after an interrupted synchronization,
+     * every file has to be checksummed.
+     */
+    private static boolean isTreeUnchanged(final FileStateIndex index, final Path instanceRoot, final String tree) {
+        try {
+            if (index.isUnchanged(instanceRoot, tree)) {
+                return true;
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to check '{}' against the index", tree, exception);
+        }
+        sLogger.info("Verifying the contents of '{}'", tree);
+        return false;
+    }
+
+    /**
+     * Downloads the fingerprint published by the server, which takes a single request no matter how large the pack
+     * is.
+     *
+     * @param session the connection of the native protocol, or {@code null} to download it from the rsync daemon
+     * @return the server's fingerprint, or empty if it could not be downloaded (e.g. it was never published)
+     */
+    private static Optional<HashCode> fetchServerFingerprint(
+        final ClientConfig clientConfig,
+        final SyncConnection session) {
+
+        try {
+            if (session != null) {
+                return Optional.of(session.getFingerprint());
+            }
+
+            final Path fingerprintFile = Files.createTempFile("fingerprint", null);
+            try {
+                final RSync rsync = new RSync()
+                    .source(clientConfig.getRsyncAddress() + PackFingerprint.FILE_NAME)
+                    .destination(fingerprintFile.toString().replace('\\', '/'));
+                final StreamingProcessOutput processOutput =
+                    new StreamingProcessOutput(new ConsoleLogger("fingerprint"));
+                processOutput.monitor(rsync.builder());
+                return processOutput.hasSucceeded() ? PackFingerprint.read(fingerprintFile) : Optional.empty();
+            } finally {
+                Files.deleteIfExists(fingerprintFile);
+            }
+        } catch (final Exception exception) {
+            sLogger.warn("Failed to download the server fingerprint", exception);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Records the state of every successfully synchronized tree. Failed trees were left untouched, so what the index
+     * knows about them is still true. The server's fingerprint is only recorded as applied when every transfer
+     * succeeded.
+     */
+    private static void updateIndex(
+        final FileStateIndex index,
+        final Path indexFile,
+        final Path instanceRoot,
+        final List<TransferResult> results,
+        final HashCode serverFingerprint) {
+
+        for (final TransferResult result : results) {
+            try {
+                // A failed transfer discards its staged tree, so the index still describes the live tree
+                if (result.isSuccessful()) {
+                    index.update(instanceRoot, result.getName());
+                }
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to update the index for '{}'", result.getName(), exception);
+                index.forget(result.getName());
+            }
+        }
+        index.setAppliedFingerprint(results.stream().allMatch(TransferResult::isSuccessful) ? serverFingerprint : null);
+
+        try {
+            index.save(indexFile);
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to save the index to '{}'", indexFile, exception);
+        }
+    }
+
+    /**
+     * Creates an rsync invocation which writes into the staging directory of a {@link StagedTree} and hardlinks the
+     * files which are unchanged from the live tree.
+     */
+    private static RSync getRsyncInstance(
+        final String[] sources,
+        final String minecraftPath,
+        final String tree,
+        final boolean checksum) {
+
+        return getRsyncDefaultValues()
+            .checksum(checksum)
+            .sources(sources)
+            .destination(minecraftPath + StagedTree.STAGING_DIRECTORY_NAME + "/" + tree)
+            // rsync resolves a relative link destination against the destination, so no path conversion is needed
+            .linkDest("../../" + tree);
+    }
+
+    /**
+     * Modification times are preserved so that a tree which has been synchronized once can be compared with the
+     * server by size and modification time instead of by checksum.
+     */
+    private static RSync getRsyncDefaultValues() {
+        return new RSync().delete(true).force(true).perms(false).times(true).verbose(true).recursive(true);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+/**
+ * A single unit of work which synchronizes one destination tree of the Minecraft instance. Transfers must be
+ * independent of each other as a {@link TransferScheduler} may run them concurrently.
+ */
+public interface Transfer {
+
+    /**
+     * @return a short human readable name for this transfer, e.g. the destination directory
+     */
+    String getName();
+
+    /**
+     * Runs this transfer to completion on the calling thread.
+     *
+     * @return what the transfer did (never {@code null})
+     * @throws Exception if the transfer failed
+     */
+    TransferStatistics execute() throws Exception;
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The outcome of running a single {@link Transfer}.
+ */
+public final class TransferResult {
+    private final String mName;
+    private final TransferStatistics mStatistics;
+    private final Throwable mFailure;
+    private final Duration mElapsed;
+
+    private TransferResult(
+        final String name,
+        final TransferStatistics statistics,
+        final Throwable failure,
+        final Duration elapsed) {
+
+        mName = Preconditions.checkNotNull(name, "name cannot be null");
+        mStatistics = Preconditions.checkNotNull(statistics, "statistics cannot be null");
+        mFailure = failure;
+        mElapsed = Preconditions.checkNotNull(elapsed, "elapsed cannot be null");
+    }
+
+    /**
+     * Creates a result for a {@link Transfer} which ran to completion.
+     *
+     * @param name the name of the transfer (never {@code null})
+     * @param statistics what the transfer did (never {@code null})
+     * @param elapsed how long the transfer took (never {@code null})
+     * @return the new {@link TransferResult}
+     */
+    public static TransferResult completed(
+        final String name,
+        final TransferStatistics statistics,
+        final Duration elapsed) {
+
+        return new TransferResult(name, statistics, null, elapsed);
+    }
+
+    /**
+     * Creates a result for a {@link Transfer} which failed.
+     *
+     * @param name the name of the transfer (never {@code null})
+     * @param failure the cause of the failure (never {@code null})
+     * @param elapsed how long the transfer ran before failing (never {@code null})
+     * @return the new {@link TransferResult}
+     */
+    public static TransferResult failed(final String name, final Throwable failure, final Duration elapsed) {
+        return new TransferResult(
+            name,
+            TransferStatistics.UNKNOWN,
+            Preconditions.checkNotNull(failure, "failure cannot be null"),
+            elapsed);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public boolean isSuccessful() {
+        return mFailure == null;
+    }
+
+    public TransferStatistics getStatistics() {
+        return mStatistics;
+    }
+
+    /**
+     * @return the exception thrown by the transfer, or empty if it ran to completion
+     */
+    public Optional<Throwable> getFailure() {
+        return Optional.ofNullable(mFailure);
+    }
+
+    public Duration getElapsed() {
+        return mElapsed;
+    }
+
+    @Override
+    public String toString() {
+        return mName
+            + " " + (isSuccessful() ? "succeeded" : "failed")
+            + " in " + mElapsed.toMillis() + "ms"
+            + (isSuccessful() ? " (" + mStatistics + ")" : "");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent {@link Transfer}s concurrently with an upper bound on how many may be in flight at once.
+ */
+public final class TransferScheduler {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final int mMaxConcurrentTransfers;
+
+    /**
+     * @param maxConcurrentTransfers the maximum number of transfers to run at the same time (must be positive)
+     */
+    public TransferScheduler(final int maxConcurrentTransfers) {
+        Preconditions.checkArgument(maxConcurrentTransfers > 0, "maxConcurrentTransfers must be positive");
+        mMaxConcurrentTransfers = maxConcurrentTransfers;
+    }
+
+    /**
+     * Runs every transfer and blocks until all of them have finished. A transfer which fails does not stop the others
+     * from running.
+     *
+     * @param transfers the transfers to run (never {@code null})
+     * @return one {@link TransferResult} per transfer, in the same order as {@code transfers}
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public List<TransferResult> runAll(final List<? extends Transfer> transfers) throws InterruptedException {
+        Preconditions.checkNotNull(transfers, "transfers cannot be null");
+        if (transfers.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(mMaxConcurrentTransfers, transfers.size()),
+            new ThreadFactoryBuilder().setNameFormat("transfer-%d").setDaemon(true).build());
+        try {
+            final List<Future<TransferResult>> futures = new ArrayList<>(transfers.size());
+            for (final Transfer transfer : transfers) {
+                futures.add(executor.submit(() -> runTransfer(transfer)));
+            }
+
+            final List<TransferResult> results = new ArrayList<>(futures.size());
+            for (final Future<TransferResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (final ExecutionException exception) {
+                    // runTransfer() never throws so this cannot happen
+                    throw new IllegalStateException(exception);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TransferResult runTransfer(final Transfer transfer) {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            final TransferStatistics statistics = transfer.execute();
+            return TransferResult.completed(transfer.getName(), statistics, stopwatch.elapsed());
+        } catch (final Exception exception) {
+            sLogger.error("Transfer '{}' failed", transfer.getName(), exception);
+            return TransferResult.failed(transfer.getName(), exception, stopwatch.elapsed());
+        }
+    }
+}
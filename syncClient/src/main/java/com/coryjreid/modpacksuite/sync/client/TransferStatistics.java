@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+/**
+ * What a {@link Transfer} did, as reported by the transfer itself rather than parsed from log output.
+ */
+public final class TransferStatistics {
+    /**
+     * The statistics of a transfer which cannot report what it did.
+     */
+    public static final TransferStatistics UNKNOWN = new TransferStatistics(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long mFilesChecked;
+    private final long mFilesDownloaded;
+    private final long mFilesPatched;
+    private final long mFilesDeleted;
+    private final long mBytesSent;
+    private final long mBytesReceived;
+    private final long mBytesReused;
+    private final long mBytesFromPeers;
+    private final long mHandshakes;
+
+    /**
+     * @param filesChecked the number of served files compared with the local copy
+     * @param filesDownloaded the number of files downloaded in full
+     * @param filesPatched the number of files rebuilt from a delta against the local copy, from stored chunks or
+     *     from the content cache
+     * @param filesDeleted the number of local files deleted because they are no longer served
+     * @param bytesSent the number of bytes sent to the server, including protocol overhead
+     * @param bytesReceived the number of bytes received from the server, including protocol overhead
+     * @param bytesReused the number of file bytes copied from local files instead of being downloaded
+     * @param bytesFromPeers the number of file bytes fetched from peers instead of the server
+     * @param handshakes the number of connections made to the server
+     */
+    public TransferStatistics(
+        final long filesChecked,
+        final long filesDownloaded,
+        final long filesPatched,
+        final long filesDeleted,
+        final long bytesSent,
+        final long bytesReceived,
+        final long bytesReused,
+        final long bytesFromPeers,
+        final long handshakes) {
+
+        mFilesChecked = filesChecked;
+        mFilesDownloaded = filesDownloaded;
+        mFilesPatched = filesPatched;
+        mFilesDeleted = filesDeleted;
+        mBytesSent = bytesSent;
+        mBytesReceived = bytesReceived;
+        mBytesReused = bytesReused;
+        mBytesFromPeers = bytesFromPeers;
+        mHandshakes = handshakes;
+    }
+
+    public long getFilesChecked() {
+        return mFilesChecked;
+    }
+
+    public long getFilesDownloaded() {
+        return mFilesDownloaded;
+    }
+
+    public long getFilesPatched() {
+        return mFilesPatched;
+    }
+
+    public long getFilesDeleted() {
+        return mFilesDeleted;
+    }
+
+    /**
+     * @return the number of local files which were written or deleted
+     */
+    public long getFilesChanged() {
+        return mFilesDownloaded + mFilesPatched + mFilesDeleted;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public long getBytesReused() {
+        return mBytesReused;
+    }
+
+    public long getBytesFromPeers() {
+        return mBytesFromPeers;
+    }
+
+    public long getHandshakes() {
+        return mHandshakes;
+    }
+
+    @Override
+    public String toString() {
+        return mFilesChecked + " checked, "
+            + mFilesDownloaded + " downloaded, "
+            + mFilesPatched + " patched, "
+            + mFilesDeleted + " deleted, "
+            + mBytesSent + " bytes sent, "
+            + mBytesReceived + " bytes received, "
+            + mBytesReused + " bytes reused, "
+            + mBytesFromPeers + " bytes from peers";
+    }
+}
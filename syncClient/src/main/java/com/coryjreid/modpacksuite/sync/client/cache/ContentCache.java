@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.cache;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A machine-wide store of whole files keyed by their hash, shared by every instance synchronized on the machine. A
+ * file one instance downloaded is {@link #place(HashCode, Path) placed} into the next instance by a hardlink instead of
+ * being downloaded again, or by a copy where the file system cannot link.
+ * <br><br>
+ * Linked files share their contents with the cache, so only archives (see {@link #isCacheable(String)}) are cached:
+ * mod jars and zipped packs are replaced rather than edited, while configs are edited in place by the game. Cached
+ * files are never modified either, which is why {@link #trim()} tells how recently an entry was used by whether an
+ * instance still links to it rather than by touching its modification time. Every operation is safe to use from
+ * multiple threads and processes since entries are only ever created by a link or an atomic move.
+ */
+public final class ContentCache {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Path mDirectory;
+    private final long mMaxSize;
+
+    /**
+     * @param directory the directory holding the cache, it is created when the first file is added (never {@code
+     *     null})
+     * @param maxSize the size in bytes the files no instance links to are trimmed to, {@code 0} disables the cache
+     */
+    public ContentCache(final Path directory, final long maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "maxSize cannot be negative");
+
+        mDirectory = Preconditions.checkNotNull(directory, "directory cannot be null");
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param path the path of a file, e.g. {@code mods/example.jar} (never {@code null})
+     * @return {@code true} if the file is an archive, which is the only kind of file the cache holds
+     */
+    public static boolean isCacheable(final String path) {
+        final String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        return lowerCasePath.endsWith(".jar") || lowerCasePath.endsWith(".zip");
+    }
+
+    /**
+     * @param hash the hash of a file (never {@code null})
+     * @return the cached file to read the contents from, or empty if the file is not in the cache. The file is not
+     *     verified and may be trimmed by another process at any time.
+     */
+    public Optional<Path> getFile(final HashCode hash) {
+        final Path entryFile = getEntryFile(hash);
+        return mMaxSize > 0 && Files.isRegularFile(entryFile) ? Optional.of(entryFile) : Optional.empty();
+    }
+
+    /**
+     * @return the hashes of every file in the cache
+     * @throws IOException if the cache could not be listed
+     */
+    public List<HashCode> getHashes() throws IOException {
+        if (mMaxSize == 0 || !Files.isDirectory(mDirectory)) {
+            return new ArrayList<>();
+        }
+
+        try (Stream<Path> paths = Files.walk(mDirectory, 2)) {
+            return paths
+                .filter(path -> path.getNameCount() == mDirectory.getNameCount() + 2)
+                .map(path -> path.getParent().getFileName().toString() + path.getFileName())
+                // Skips the temporary files of copies which are being added
+                .filter(name -> name.length() == ContentHasher.HASH_FUNCTION.bits() / 4 && isHex(name))
+                .map(HashCode::fromString)
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Links a cached file to the given path, or copies it where that is not possible. A cached file whose contents no
+     * longer match its hash is removed.
+     *
+     * @param hash the hash of the file (never {@code null})
+     * @param target the path to place the file at, an existing file is replaced (never {@code null})
+     * @return {@code true} if the file was placed, {@code false} if it is not in the cache
+     * @throws IOException if the cached file could not be read or placed
+     */
+    public boolean place(final HashCode hash, final Path target) throws IOException {
+        Preconditions.checkNotNull(target, "target cannot be null");
+
+        final Path entryFile = getEntryFile(hash);
+        if (mMaxSize == 0 || !Files.isRegularFile(entryFile)) {
+            return false;
+        }
+
+        try {
+            if (!ContentHasher.hash(entryFile).equals(hash)) {
+                sLogger.warn("Removing corrupt cached file {}", hash);
+                Files.deleteIfExists(entryFile);
+                return false;
+            }
+
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, entryFile);
+            } catch (final NoSuchFileException exception) {
+                throw exception;
+            } catch (final UnsupportedOperationException | FileSystemException exception) {
+                // The cache is on another file system than the instance
+                Files.copy(entryFile, target, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        } catch (final NoSuchFileException exception) {
+            // Another process trimmed the file in the meantime
+            if (Files.exists(entryFile)) {
+                throw exception;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a file to the cache by linking it, or by copying it where that is not possible. The caller has verified
+     * that the file matches the hash.
+     *
+     * @param hash the hash of the file (never {@code null})
+     * @param file the file to add, it must not be modified afterwards (never {@code null})
+     * @return {@code true} if the file was not already in the cache
+     * @throws IOException if the file could not be added
+     */
+    public boolean add(final HashCode hash, final Path file) throws IOException {
+        Preconditions.checkNotNull(file, "file cannot be null");
+
+        final Path entryFile = getEntryFile(hash);
+        if (mMaxSize == 0 || Files.isRegularFile(entryFile)) {
+            return false;
+        }
+
+        Files.createDirectories(entryFile.getParent());
+        try {
+            Files.createLink(entryFile, file);
+            return true;
+        } catch (final FileAlreadyExistsException exception) {
+            // Another transfer added the same file first
+            return false;
+        } catch (final UnsupportedOperationException | FileSystemException exception) {
+            // The cache is on another file system than the instance
+        }
+
+        final Path temporaryFile =
+            Files.createTempFile(entryFile.getParent(), entryFile.getFileName().toString(), null);
+        try {
+            Files.copy(file, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryFile, entryFile, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (final FileAlreadyExistsException exception) {
+            return false;
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Deletes the oldest files no instance links to until those files take up no more than the maximum size. A file
+     * which is still linked costs no space of its own, so it is kept. Where the file system does not report link
+     * counts, every file counts as unlinked.
+     *
+     * @throws IOException if the cache could not be listed
+     */
+    public void trim() throws IOException {
+        if (!Files.isDirectory(mDirectory)) {
+            return;
+        }
+
+        final List<Path> entryFiles;
+        try (Stream<Path> paths = Files.walk(mDirectory)) {
+            entryFiles = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        final List<CachedFile> unlinkedFiles = new ArrayList<>();
+        long unlinkedSize = 0;
+        for (final Path entryFile : entryFiles) {
+            final BasicFileAttributes attributes;
+            try {
+                if (getLinkCount(entryFile) > 1) {
+                    continue;
+                }
+                attributes = Files.readAttributes(entryFile, BasicFileAttributes.class);
+            } catch (final NoSuchFileException exception) {
+                continue;
+            }
+            unlinkedFiles.add(new CachedFile(entryFile, attributes.size(), attributes.lastModifiedTime()));
+            unlinkedSize += attributes.size();
+        }
+
+        unlinkedFiles.sort(Comparator.comparing(cachedFile -> cachedFile.mLastModified));
+        int evictedCount = 0;
+        for (final CachedFile cachedFile : unlinkedFiles) {
+            if (unlinkedSize <= mMaxSize) {
+                break;
+            }
+            Files.deleteIfExists(cachedFile.mFile);
+            unlinkedSize -= cachedFile.mSize;
+            evictedCount++;
+        }
+        sLogger.debug("Content cache holds {} unlinked bytes after evicting {} files", unlinkedSize, evictedCount);
+    }
+
+    private static boolean isHex(final String name) {
+        return name.chars().allMatch(character -> Character.digit(character, 16) >= 0
+            && !Character.isUpperCase(character));
+    }
+
+    private static int getLinkCount(final Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (final UnsupportedOperationException | IllegalArgumentException exception) {
+            return 1;
+        }
+    }
+
+    /**
+     * Files are spread over 256 directories by the first byte of their hash to keep directories small.
+     */
+    private Path getEntryFile(final HashCode hash) {
+        final String name = Preconditions.checkNotNull(hash, "hash cannot be null").toString();
+        return mDirectory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    /**
+     * A cached file found while trimming.
+     */
+    private static final class CachedFile {
+        private final Path mFile;
+        private final long mSize;
+        private final FileTime mLastModified;
+
+        CachedFile(final Path file, final long size, final FileTime lastModified) {
+            mFile = file;
+            mSize = size;
+            mLastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.chunk;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.chunk.Chunk;
+import com.coryjreid.modpacksuite.sync.common.chunk.ChunkList;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local content-addressed store of file chunks (see {@link ChunkList}). Files which are about to be deleted are
+ * {@link #retire(Path) retired} into the store first, so when a mod is updated and its jar renamed, the chunks the
+ * new jar shares with the old one are copied from here instead of being downloaded again.
+ * <br><br>
+ * Each chunk is stored in its own file named after its hash. Reading a chunk marks it as recently used and
+ * {@link #trim()} evicts the least recently used chunks once the store grows past its maximum size. Every operation
+ * is safe to use from multiple threads and processes since chunk files are only ever created by an atomic move.
+ */
+public final class ChunkStore {
+    public static final String DEFAULT_DIRECTORY_NAME = ".syncChunks";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Path mDirectory;
+    private final long mMaxSize;
+
+    /**
+     * @param directory the directory holding the store, it is created when the first chunk is added (never {@code
+     *     null})
+     * @param maxSize the size in bytes the store is trimmed to, {@code 0} disables storing chunks
+     */
+    public ChunkStore(final Path directory, final long maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "maxSize cannot be negative");
+
+        mDirectory = Preconditions.checkNotNull(directory, "directory cannot be null");
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @param hash the hash of a chunk (never {@code null})
+     * @return {@code true} if the chunk is in the store
+     */
+    public boolean contains(final HashCode hash) {
+        return Files.isRegularFile(getChunkFile(hash));
+    }
+
+    /**
+     * Reads a chunk and marks it as recently used. A chunk whose contents no longer match its hash is removed.
+     *
+     * @param hash the hash of the chunk (never {@code null})
+     * @return the contents of the chunk, or empty if it is not in the store
+     * @throws IOException if the chunk could not be read
+     */
+    public Optional<byte[]> read(final HashCode hash) throws IOException {
+        final Path chunkFile = getChunkFile(hash);
+        final byte[] contents;
+        try {
+            contents = Files.readAllBytes(chunkFile);
+        } catch (final NoSuchFileException exception) {
+            return Optional.empty();
+        }
+
+        if (!ContentHasher.HASH_FUNCTION.hashBytes(contents).equals(hash)) {
+            sLogger.warn("Removing corrupt chunk {}", hash);
+            Files.deleteIfExists(chunkFile);
+            return Optional.empty();
+        }
+        Files.setLastModifiedTime(chunkFile, FileTime.fromMillis(System.currentTimeMillis()));
+        return Optional.of(contents);
+    }
+
+    /**
+     * Adds every chunk of a file to the store.
+     *
+     * @param file the file to add (never {@code null})
+     * @return the number of chunks which were not already in the store
+     * @throws IOException if the file could not be read or a chunk could not be stored
+     */
+    public int retire(final Path file) throws IOException {
+        Preconditions.checkNotNull(file, "file cannot be null");
+
+        if (mMaxSize == 0) {
+            return 0;
+        }
+
+        int addedCount = 0;
+        final ChunkList chunkList = ChunkList.compute(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (final Chunk chunk : chunkList.getChunks()) {
+                if (contains(chunk.getHash())) {
+                    continue;
+                }
+                final ByteBuffer contents = ByteBuffer.allocate(chunk.getLength());
+                while (contents.hasRemaining()) {
+                    if (channel.read(contents, chunk.getOffset() + contents.position()) < 0) {
+                        throw new IOException("'" + file + "' changed while it was retired");
+                    }
+                }
+                contents.flip();
+                put(chunk.getHash(), contents);
+                addedCount++;
+            }
+        }
+        return addedCount;
+    }
+
+    /**
+     * Deletes the least recently used chunks until the store is no larger than its maximum size.
+     *
+     * @throws IOException if the store could not be listed
+     */
+    public void trim() throws IOException {
+        if (!Files.isDirectory(mDirectory)) {
+            return;
+        }
+
+        final List<Path> chunkFiles;
+        try (Stream<Path> paths = Files.walk(mDirectory)) {
+            chunkFiles = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        final List<StoredChunk> storedChunks = new ArrayList<>(chunkFiles.size());
+        long totalSize = 0;
+        for (final Path chunkFile : chunkFiles) {
+            final BasicFileAttributes attributes = Files.readAttributes(chunkFile, BasicFileAttributes.class);
+            storedChunks.add(new StoredChunk(chunkFile, attributes.size(), attributes.lastModifiedTime()));
+            totalSize += attributes.size();
+        }
+
+        storedChunks.sort(Comparator.comparing(storedChunk -> storedChunk.mLastUsed));
+        int evictedCount = 0;
+        for (final StoredChunk storedChunk : storedChunks) {
+            if (totalSize <= mMaxSize) {
+                break;
+            }
+            Files.deleteIfExists(storedChunk.mFile);
+            totalSize -= storedChunk.mSize;
+            evictedCount++;
+        }
+        sLogger.debug("Chunk store holds {} bytes after evicting {} chunks", totalSize, evictedCount);
+    }
+
+    private void put(final HashCode hash, final ByteBuffer contents) throws IOException {
+        final Path chunkFile = getChunkFile(hash);
+        Files.createDirectories(chunkFile.getParent());
+
+        final Path temporaryFile =
+            Files.createTempFile(chunkFile.getParent(), chunkFile.getFileName().toString(), null);
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                while (contents.hasRemaining()) {
+                    channel.write(contents);
+                }
+            }
+            Files.move(temporaryFile, chunkFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final FileAlreadyExistsException exception) {
+            // Another transfer stored the same chunk first
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Chunks are spread over 256 directories by the first byte of their hash to keep directories small.
+     */
+    private Path getChunkFile(final HashCode hash) {
+        final String name = hash.toString();
+        return mDirectory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+    }
+
+    /**
+     * A chunk file found while trimming.
+     */
+    private static final class StoredChunk {
+        private final Path mFile;
+        private final long mSize;
+        private final FileTime mLastUsed;
+
+        StoredChunk(final Path file, final long size, final FileTime lastUsed) {
+            mFile = file;
+            mSize = size;
+            mLastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.gui;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.control.TextArea;
+import javafx.util.Duration;
+
+/**
+ * A read-only {@link TextArea} which lines can be appended to from any thread. Lines are queued and rendered in
+ * batches at a fixed rate instead of one FX event per line, and only the most recent {@value #MAX_LINES} lines are
+ * kept.
+ */
+public class ConsoleView extends TextArea {
+    private static final int MAX_LINES = 2000;
+    private static final Duration FLUSH_INTERVAL = Duration.millis(100);
+
+    private final Queue<String> mPendingLines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPendingLineCount = new AtomicInteger();
+
+    /**
+     * The lines currently displayed, only accessed on the FX application thread.
+     */
+    private final Deque<String> mLines = new ArrayDeque<>();
+
+    private final Timeline mFlushTimeline = new Timeline(new KeyFrame(FLUSH_INTERVAL, event -> flush()));
+
+    public ConsoleView() {
+        setEditable(false);
+        mFlushTimeline.setCycleCount(Animation.INDEFINITE);
+    }
+
+    /**
+     * Starts rendering appended lines. Must be called on the FX application thread.
+     */
+    public void start() {
+        mFlushTimeline.play();
+    }
+
+    /**
+     * Queues a line to be displayed with the next batch. Safe to call from any thread. When the FX application thread
+     * falls behind, the oldest queued lines are dropped.
+     *
+     * @param line the line to append, without a line terminator
+     */
+    public void append(final String line) {
+        mPendingLines.add(line);
+        if (mPendingLineCount.incrementAndGet() > MAX_LINES && mPendingLines.poll() != null) {
+            mPendingLineCount.decrementAndGet();
+        }
+    }
+
+    private void flush() {
+        final StringBuilder batch = new StringBuilder();
+        boolean trimmed = false;
+
+        String line;
+        while ((line = mPendingLines.poll()) != null) {
+            mPendingLineCount.decrementAndGet();
+            mLines.addLast(line);
+            batch.append(line).append('\n');
+            if (mLines.size() > MAX_LINES) {
+                mLines.removeFirst();
+                trimmed = true;
+            }
+        }
+
+        if (trimmed) {
+            // Rebuilding is bounded by MAX_LINES, unlike appending to an ever growing text
+            final StringBuilder text = new StringBuilder();
+            for (final String displayedLine : mLines) {
+                text.append(displayedLine).append('\n');
+            }
+            setText(text.toString());
+            setScrollTop(Double.MAX_VALUE);
+        } else if (batch.length() > 0) {
+            appendText(batch.toString());
+        }
+    }
+}
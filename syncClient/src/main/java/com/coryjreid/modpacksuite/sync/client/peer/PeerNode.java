@@ -0,0 +1,625 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.peer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.DatagramPacket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the {@link ContentCache} with other clients on the local network and fetches files from theirs (see
+ * {@link PeerProtocol}). Peers are found by multicast, and peers configured by address are asked as well, which
+ * reaches them across networks multicast does not cross.
+ * <br><br>
+ * Every node announces a Bloom filter of the hashes it holds, so a fetch only asks the peers which probably hold the
+ * file, in random order to spread the load. Files fetched from a peer are verified against the hash before they are
+ * used, so a peer cannot make a client use anything but the file the server's manifest describes.
+ */
+public final class PeerNode implements Closeable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final long ANNOUNCE_INTERVAL_MILLIS = 5000;
+    private static final long PEER_EXPIRY_MILLIS = 3 * ANNOUNCE_INTERVAL_MILLIS;
+    private static final long DISCOVERY_WAIT_MILLIS = 500;
+
+    /**
+     * A solicitation is answered after a random delay of up to this long, so the nodes on a network do not all answer
+     * at the same moment.
+     */
+    private static final long MAX_ANSWER_DELAY_MILLIS = 250;
+
+    /**
+     * The least time between an announcement and a solicited one, which bounds what solicitations can make a node
+     * send.
+     */
+    private static final long MIN_ANSWER_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Further solicitations from an address are ignored for this long after one was answered.
+     */
+    private static final long SOLICITOR_HOLDOFF_MILLIS = ANNOUNCE_INTERVAL_MILLIS;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int MAX_UPLOADS = 4;
+    private static final int MIN_FILTER_INSERTIONS = 64;
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Bounds the size of an announcement, a Bloom filter which holds more hashes than it was sized for only has more
+     * false positives.
+     */
+    private static final int MAX_FILTER_INSERTIONS = 40_000;
+
+    private static final Funnel<HashCode> HASH_FUNNEL = (hash, sink) -> sink.putBytes(hash.asBytes());
+
+    private final ContentCache mContentCache;
+    private final int mPort;
+    private final int mDiscoveryPort;
+    private final String mDiscoveryInterfaceName;
+    private final List<InetSocketAddress> mConfiguredPeers;
+    private final long mNodeId = new SecureRandom().nextLong();
+    private final Map<Long, Peer> mPeers = new ConcurrentHashMap<>();
+    private final CountDownLatch mFirstPeerFound = new CountDownLatch(1);
+    private final AtomicLong mFilesUploaded = new AtomicLong();
+    private final AtomicLong mBytesUploaded = new AtomicLong();
+    private final Map<InetAddress, Long> mAnsweredSolicitors = new HashMap<>();
+    private final AtomicBoolean mAnswerPending = new AtomicBoolean();
+    private volatile long mLastAnnouncedAt;
+
+    private ServerSocket mServerSocket;
+    private MulticastSocket mDiscoverySocket;
+    private InetSocketAddress mDiscoveryGroup;
+    private NetworkInterface mDiscoveryInterface;
+    private ExecutorService mUploadExecutor;
+    private ScheduledExecutorService mAnnouncer;
+    private volatile boolean mClosed;
+
+    /**
+     * @param contentCache the cache to share and to serve files from (never {@code null})
+     * @param port the TCP port to serve files on, {@code 0} picks any free port
+     * @param discoveryPort the UDP port peers announce themselves on, the same for every peer
+     * @param discoveryInterface the name of the network interface to find peers on, or {@code null} to pick the first
+     *     interface which looks like it connects to a local network
+     * @param configuredPeers the addresses of peers to ask even if they are not found by multicast (never {@code
+     *     null})
+     */
+    public PeerNode(
+        final ContentCache contentCache,
+        final int port,
+        final int discoveryPort,
+        final String discoveryInterface,
+        final List<InetSocketAddress> configuredPeers) {
+
+        Preconditions.checkArgument(port >= 0 && port <= 0xFFFF, "port is out of range");
+        Preconditions.checkArgument(discoveryPort > 0 && discoveryPort <= 0xFFFF, "discoveryPort is out of range");
+
+        mContentCache = Preconditions.checkNotNull(contentCache, "contentCache cannot be null");
+        mPort = port;
+        mDiscoveryPort = discoveryPort;
+        mDiscoveryInterfaceName = discoveryInterface;
+        mConfiguredPeers = ImmutableList.copyOf(configuredPeers);
+    }
+
+    /**
+     * Starts sharing the content cache and looking for peers. Waits briefly for the peers on the network to answer,
+     * so the first fetches already know about them.
+     *
+     * @throws IOException if the node could not listen on its ports or the configured network interface does not
+     *     exist, in which case it must be closed
+     */
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(mPort);
+        mDiscoveryGroup = new InetSocketAddress(InetAddress.getByName(PeerProtocol.DISCOVERY_GROUP), mDiscoveryPort);
+        mDiscoveryInterface = findDiscoveryInterface();
+        mDiscoverySocket = new MulticastSocket(mDiscoveryPort);
+        // Peers are on the local network only
+        mDiscoverySocket.setTimeToLive(1);
+        if (mDiscoveryInterface != null) {
+            mDiscoverySocket.setNetworkInterface(mDiscoveryInterface);
+        }
+        mDiscoverySocket.joinGroup(mDiscoveryGroup, mDiscoveryInterface);
+
+        mUploadExecutor = new ThreadPoolExecutor(
+            0,
+            MAX_UPLOADS,
+            30,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("peer-upload-%d").setDaemon(true).build());
+        mAnnouncer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("peer-announcer").setDaemon(true).build());
+        startDaemon(this::acceptConnections, "peer-server");
+        startDaemon(this::receiveDatagrams, "peer-discovery");
+
+        send(createDatagram(PeerProtocol.SOLICIT).toByteArray());
+        mAnnouncer.scheduleWithFixedDelay(this::announce, 0, ANNOUNCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        sLogger.info("Sharing the content cache with peers on port {}", mServerSocket.getLocalPort());
+
+        try {
+            mFirstPeerFound.await(DISCOVERY_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the TCP port files are served on
+     */
+    public int getPort() {
+        Preconditions.checkState(mServerSocket != null, "The node is not started");
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Fetches a file from the first peer which holds it and verifies it.
+     *
+     * @param hash the hash of the file (never {@code null})
+     * @param size the size of the file in bytes
+     * @param target where to write the file to, an existing file is replaced (never {@code null})
+     * @return the address of the peer the file was fetched from, or empty if no peer could provide it, in which case
+     *     nothing is left at {@code target}
+     */
+    public Optional<InetSocketAddress> fetch(final HashCode hash, final long size, final Path target) {
+        Preconditions.checkNotNull(hash, "hash cannot be null");
+        Preconditions.checkNotNull(target, "target cannot be null");
+
+        for (final InetSocketAddress candidate : getCandidates(hash)) {
+            try {
+                if (fetchFrom(candidate, hash, size, target)) {
+                    return Optional.of(candidate);
+                }
+            } catch (final IOException exception) {
+                sLogger.debug("Failed to fetch {} from peer {}", hash, candidate, exception);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        if (mAnnouncer != null) {
+            mAnnouncer.shutdownNow();
+        }
+        if (mUploadExecutor != null) {
+            mUploadExecutor.shutdownNow();
+        }
+        if (mDiscoverySocket != null) {
+            try {
+                mDiscoverySocket.leaveGroup(mDiscoveryGroup, mDiscoveryInterface);
+            } catch (final IOException exception) {
+                sLogger.debug("Failed to leave the discovery group", exception);
+            }
+            mDiscoverySocket.close();
+        }
+        if (mServerSocket != null) {
+            mServerSocket.close();
+            sLogger.info("Shared {} files ({} bytes) with peers", mFilesUploaded.get(), mBytesUploaded.get());
+        }
+    }
+
+    /**
+     * @return the configured network interface, or else the first one which is up, supports multicast and has an IPv4
+     *     address, preferring private addresses, or {@code null} to leave the choice to the operating system if there
+     *     is none
+     * @throws IOException if the configured network interface does not exist
+     */
+    private NetworkInterface findDiscoveryInterface() throws IOException {
+        if (mDiscoveryInterfaceName != null) {
+            final NetworkInterface configured = NetworkInterface.getByName(mDiscoveryInterfaceName);
+            if (configured == null) {
+                throw new IOException("There is no network interface named " + mDiscoveryInterfaceName);
+            }
+            return configured;
+        }
+
+        NetworkInterface fallback = null;
+        final List<NetworkInterface> interfaces = Collections.list(NetworkInterface.getNetworkInterfaces());
+        interfaces.sort(Comparator.comparingInt(NetworkInterface::getIndex));
+        for (final NetworkInterface candidate : interfaces) {
+            // Tunnels such as VPNs rarely lead to peers on the same network
+            if (!candidate.isUp()
+                || !candidate.supportsMulticast()
+                || candidate.isLoopback()
+                || candidate.isVirtual()
+                || candidate.isPointToPoint()) {
+
+                continue;
+            }
+            for (final InterfaceAddress address : candidate.getInterfaceAddresses()) {
+                if (address.getAddress() instanceof Inet4Address) {
+                    if (address.getAddress().isSiteLocalAddress()) {
+                        sLogger.info("Looking for peers on {}", candidate.getName());
+                        return candidate;
+                    }
+                    if (fallback == null) {
+                        fallback = candidate;
+                    }
+                }
+            }
+        }
+        if (fallback != null) {
+            sLogger.info("Looking for peers on {}", fallback.getName());
+        }
+        return fallback;
+    }
+
+    /**
+     * @return the peers which probably hold the file in random order, followed by the configured peers
+     */
+    private Set<InetSocketAddress> getCandidates(final HashCode hash) {
+        final long now = System.currentTimeMillis();
+        final List<InetSocketAddress> foundPeers = new ArrayList<>();
+        for (final Peer peer : mPeers.values()) {
+            if (now - peer.mLastSeen <= PEER_EXPIRY_MILLIS && peer.mHashes.mightContain(hash)) {
+                foundPeers.add(peer.mAddress);
+            }
+        }
+        Collections.shuffle(foundPeers);
+
+        final Set<InetSocketAddress> candidates = new LinkedHashSet<>(foundPeers);
+        candidates.addAll(mConfiguredPeers);
+        return candidates;
+    }
+
+    private boolean fetchFrom(
+        final InetSocketAddress address,
+        final HashCode hash,
+        final long size,
+        final Path target) throws IOException {
+
+        try (Socket socket = new Socket()) {
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeInt(PeerProtocol.MAGIC);
+            output.writeByte(PeerProtocol.VERSION);
+            output.write(hash.asBytes());
+            output.flush();
+
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (!input.readBoolean()) {
+                return false;
+            }
+            if (input.readLong() != size) {
+                throw new IOException("The peer holds a file of another size under the same hash");
+            }
+
+            final HashCode receivedHash;
+            try (HashingOutputStream file = new HashingOutputStream(
+                ContentHasher.HASH_FUNCTION,
+                new BufferedOutputStream(Files.newOutputStream(target)))) {
+
+                if (ByteStreams.copy(ByteStreams.limit(input, size), file) != size) {
+                    throw new EOFException("The peer closed the connection before sending the whole file");
+                }
+                file.flush();
+                receivedHash = file.hash();
+            }
+            if (!receivedHash.equals(hash)) {
+                throw new IOException("The peer sent a file which does not match its hash");
+            }
+            return true;
+        } catch (final IOException exception) {
+            Files.deleteIfExists(target);
+            throw exception;
+        }
+    }
+
+    private void acceptConnections() {
+        while (!mClosed) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (final IOException exception) {
+                if (!mClosed) {
+                    sLogger.warn("Stopped sharing the content cache with peers", exception);
+                }
+                return;
+            }
+            try {
+                mUploadExecutor.execute(() -> upload(socket));
+            } catch (final RejectedExecutionException exception) {
+                // Every upload slot is taken, the peer falls back to another source
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void upload(final Socket socket) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            if (input.readInt() != PeerProtocol.MAGIC || input.readByte() != PeerProtocol.VERSION) {
+                return;
+            }
+            final byte[] hashBytes = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+            input.readFully(hashBytes);
+            final HashCode hash = HashCode.fromBytes(hashBytes);
+
+            final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            final Optional<Path> file = mContentCache.getFile(hash);
+            if (!file.isPresent()) {
+                output.writeBoolean(false);
+                output.flush();
+                return;
+            }
+
+            final long size;
+            try (FileChannel channel = FileChannel.open(file.get(), StandardOpenOption.READ)) {
+                size = channel.size();
+                output.writeBoolean(true);
+                output.writeLong(size);
+                ByteStreams.copy(Channels.newInputStream(channel), output);
+            } catch (final NoSuchFileException exception) {
+                // Trimmed since it was looked up
+                output.writeBoolean(false);
+                output.flush();
+                return;
+            }
+            output.flush();
+            mFilesUploaded.incrementAndGet();
+            mBytesUploaded.addAndGet(size);
+            sLogger.debug("Sent {} ({} bytes) to peer {}", hash, size, connection.getRemoteSocketAddress());
+        } catch (final IOException exception) {
+            sLogger.debug("Failed to send a file to a peer", exception);
+        }
+    }
+
+    private void receiveDatagrams() {
+        final byte[] buffer = new byte[PeerProtocol.MAX_DATAGRAM_SIZE];
+        while (!mClosed) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                mDiscoverySocket.receive(packet);
+            } catch (final IOException exception) {
+                if (!mClosed) {
+                    sLogger.warn("Stopped looking for peers", exception);
+                }
+                return;
+            }
+            try {
+                handleDatagram(packet);
+            } catch (final IOException | RuntimeException exception) {
+                sLogger.debug("Ignoring a malformed datagram from {}", packet.getAddress(), exception);
+            }
+        }
+    }
+
+    private void handleDatagram(final DatagramPacket packet) throws IOException {
+        final DataInputStream input = new DataInputStream(
+            new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (input.readInt() != PeerProtocol.MAGIC || input.readByte() != PeerProtocol.VERSION) {
+            return;
+        }
+        final byte type = input.readByte();
+        final long nodeId = input.readLong();
+        final int port = input.readInt();
+        if (nodeId == mNodeId) {
+            return;
+        }
+
+        if (type == PeerProtocol.SOLICIT) {
+            answerSolicitation(packet.getAddress());
+        } else if (type == PeerProtocol.ANNOUNCE) {
+            final Optional<BloomFilter<HashCode>> hashes = readFilter(input);
+            if (!hashes.isPresent()) {
+                sLogger.debug("Ignoring an announcement with a malformed filter from {}", packet.getAddress());
+                return;
+            }
+            final Peer peer = new Peer(
+                new InetSocketAddress(packet.getAddress(), port),
+                hashes.get(),
+                System.currentTimeMillis());
+            if (mPeers.put(nodeId, peer) == null) {
+                sLogger.info("Found peer {}", peer.mAddress);
+            }
+            mFirstPeerFound.countDown();
+        }
+    }
+
+    /**
+     * Schedules an announcement in answer to a solicitation. Solicitations are not authenticated, so a node answers
+     * each address at most every {@link #SOLICITOR_HOLDOFF_MILLIS}, answers at most once per {@link
+     * #MIN_ANSWER_INTERVAL_MILLIS} overall, and skips the answer if an announcement went out since the solicitation
+     * arrived, which every node received as well. Only called from the discovery thread.
+     *
+     * @param solicitor the address the solicitation came from
+     */
+    private void answerSolicitation(final InetAddress solicitor) {
+        final long now = System.currentTimeMillis();
+        mAnsweredSolicitors.values().removeIf(answeredAt -> now - answeredAt >= SOLICITOR_HOLDOFF_MILLIS);
+        if (mAnsweredSolicitors.putIfAbsent(solicitor, now) != null) {
+            return;
+        }
+        // The pending answer covers this solicitation too
+        if (!mAnswerPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long delayMillis = Math.max(
+            ThreadLocalRandom.current().nextLong(MAX_ANSWER_DELAY_MILLIS + 1),
+            mLastAnnouncedAt + MIN_ANSWER_INTERVAL_MILLIS - now);
+        try {
+            mAnnouncer.schedule(() -> {
+                mAnswerPending.set(false);
+                if (mLastAnnouncedAt < now) {
+                    announce();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException exception) {
+            // The node is closing
+            mAnswerPending.set(false);
+        }
+    }
+
+    /**
+     * Reads the Bloom filter of an announcement. Datagrams are not authenticated and the filter's header declares how
+     * much memory deserializing it allocates, so the header is checked against the bytes the datagram actually holds
+     * first.
+     *
+     * @param input the rest of the datagram
+     * @return the filter, or empty if it is malformed
+     */
+    private static Optional<BloomFilter<HashCode>> readFilter(final DataInputStream input) throws IOException {
+        input.mark(PeerProtocol.MAX_DATAGRAM_SIZE);
+        // The header starts with the hashing strategy and the number of hash functions, a byte each
+        input.readFully(new byte[2]);
+        final int dataLength = input.readInt();
+        if (dataLength <= 0
+            || dataLength > PeerProtocol.MAX_DATAGRAM_SIZE / Long.BYTES
+            || dataLength != input.available() / Long.BYTES) {
+
+            return Optional.empty();
+        }
+        input.reset();
+
+        try {
+            return Optional.of(BloomFilter.readFrom(input, HASH_FUNNEL));
+        } catch (final IOException | RuntimeException | OutOfMemoryError exception) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Announces the files in the content cache. Failing to do so only means peers do not ask this node for now.
+     */
+    private synchronized void announce() {
+        mLastAnnouncedAt = System.currentTimeMillis();
+        try {
+            final List<HashCode> hashes = mContentCache.getHashes();
+            final BloomFilter<HashCode> filter = BloomFilter.create(
+                HASH_FUNNEL,
+                Math.max(MIN_FILTER_INSERTIONS, Math.min(hashes.size(), MAX_FILTER_INSERTIONS)),
+                FILTER_FALSE_POSITIVE_RATE);
+            for (final HashCode hash : hashes) {
+                filter.put(hash);
+            }
+
+            final ByteArrayOutputStream datagram = createDatagram(PeerProtocol.ANNOUNCE);
+            filter.writeTo(datagram);
+            send(datagram.toByteArray());
+        } catch (final IOException exception) {
+            if (!mClosed) {
+                sLogger.warn("Failed to announce the content cache to peers", exception);
+            }
+        }
+    }
+
+    private ByteArrayOutputStream createDatagram(final byte type) throws IOException {
+        final ByteArrayOutputStream datagram = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(datagram);
+        output.writeInt(PeerProtocol.MAGIC);
+        output.writeByte(PeerProtocol.VERSION);
+        output.writeByte(type);
+        output.writeLong(mNodeId);
+        output.writeInt(mServerSocket.getLocalPort());
+        output.flush();
+        return datagram;
+    }
+
+    private void send(final byte[] datagram) throws IOException {
+        mDiscoverySocket.send(new DatagramPacket(datagram, datagram.length, mDiscoveryGroup));
+    }
+
+    private static void startDaemon(final Runnable task, final String name) {
+        final Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException exception) {
+            sLogger.debug("Failed to close a peer connection", exception);
+        }
+    }
+
+    /**
+     * The latest announcement of a peer.
+     */
+    private static final class Peer {
+        private final InetSocketAddress mAddress;
+        private final BloomFilter<HashCode> mHashes;
+        private final long mLastSeen;
+
+        Peer(final InetSocketAddress address, final BloomFilter<HashCode> hashes, final long lastSeen) {
+            mAddress = address;
+            mHashes = hashes;
+            mLastSeen = lastSeen;
+        }
+    }
+}
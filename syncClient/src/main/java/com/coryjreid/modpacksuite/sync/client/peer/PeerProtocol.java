@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.peer;
+
+/**
+ * Constants of the protocol clients in peer mode share their content caches over.
+ * <br><br>
+ * Peers find each other with datagrams sent to the multicast group {@link #DISCOVERY_GROUP}, each made up of:
+ * <ul>
+ *     <li>{@code int} {@link #MAGIC}</li>
+ *     <li>{@code byte} {@link #VERSION}</li>
+ *     <li>{@code byte} message type, {@link #SOLICIT} or {@link #ANNOUNCE}</li>
+ *     <li>{@code long} ID of the sending node, which lets a node ignore its own datagrams</li>
+ *     <li>{@code int} TCP port the node serves files on</li>
+ *     <li>for {@link #ANNOUNCE} only, a Bloom filter of the hashes of the files the node holds (see {@link
+ *     com.google.common.hash.BloomFilter#writeTo(java.io.OutputStream)})</li>
+ * </ul>
+ * A node solicits announcements when it starts. Every node answers a solicitation with an announcement after a short
+ * random delay, unless it announced since the solicitation arrived or answered the same address recently, and repeats
+ * its announcement periodically as its content cache fills.
+ * <br><br>
+ * A file is fetched over a TCP connection of its own to the announced port. The request is {@code int}
+ * {@link #MAGIC}, {@code byte} {@link #VERSION} and the raw bytes of the file's hash. The response is a {@code boolean}
+ * which is {@code true} if the node holds the file, in which case it is followed by the {@code long} length and the
+ * contents of the file. A node which is busy closes the connection without a response.
+ */
+public final class PeerProtocol {
+    public static final int MAGIC = 0x4D505350;
+    public static final byte VERSION = 1;
+
+    /**
+     * The administratively scoped multicast group peers announce themselves to.
+     */
+    public static final String DISCOVERY_GROUP = "239.255.77.77";
+
+    public static final byte SOLICIT = 0;
+    public static final byte ANNOUNCE = 1;
+
+    /**
+     * The largest datagram a node sends, which keeps announcements within a single UDP datagram.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 60 * 1024;
+
+    /**
+     * Prevent instantiation.
+     */
+    private PeerProtocol() {
+        // Nothing to do.
+    }
+}
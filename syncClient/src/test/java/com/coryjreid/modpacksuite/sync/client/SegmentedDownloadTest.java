@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.RequestType;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Downloads a file of three segments from a scripted server which serves range requests, including downloads which
+ * resume from the progress log of an interrupted one.
+ */
+class SegmentedDownloadTest {
+    private static final int CONNECTION_COUNT = 2;
+    private static final String PATH = "mods/large.jar";
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Queue<Long> mRequestedOffsets = new ConcurrentLinkedQueue<>();
+    private final byte[] mContents = randomBytes(2 * SegmentedDownload.SEGMENT_SIZE + 1000, 1);
+    private volatile long mRefusedOffset = -1;
+    private ServerSocket mServerSocket;
+    private Path mDirectory;
+    private Path mTarget;
+
+    @BeforeEach
+    void listen() throws IOException {
+        mServerSocket = new ServerSocket(0, CONNECTION_COUNT, InetAddress.getLoopbackAddress());
+        mExecutor.submit(this::acceptConnections);
+        mDirectory = mTemporaryDirectory.resolve(SegmentedDownload.DIRECTORY_NAME);
+        mTarget = mTemporaryDirectory.resolve("large.jar");
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    void downloadsEverySegment() throws IOException {
+        final SegmentedDownload download = new SegmentedDownload(mDirectory, createEntry(mContents));
+
+        assertEquals(0, download(download));
+
+        assertArrayEquals(mContents, Files.readAllBytes(mTarget));
+        assertEquals(ImmutableSet.of(0L, segmentOffset(1), segmentOffset(2)), ImmutableSet.copyOf(mRequestedOffsets));
+        assertNoLeftovers();
+    }
+
+    @Test
+    void resumeOnlyFetchesMissingSegments() throws IOException {
+        final ManifestEntry entry = createEntry(mContents);
+        writeDataFile(entry, mContents);
+        writeProgressFile(entry, progressRecords(0, 2));
+
+        final SegmentedDownload download = new SegmentedDownload(mDirectory, entry);
+        assertTrue(download.isStarted());
+
+        assertEquals(SegmentedDownload.SEGMENT_SIZE + 1000, download(download));
+
+        assertArrayEquals(mContents, Files.readAllBytes(mTarget));
+        assertEquals(Arrays.asList(segmentOffset(1)), new ArrayList<>(mRequestedOffsets));
+        assertNoLeftovers();
+    }
+
+    @Test
+    void tornProgressRecordIsCutOff() throws IOException {
+        final ManifestEntry entry = createEntry(mContents);
+        writeDataFile(entry, Arrays.copyOf(mContents, SegmentedDownload.SEGMENT_SIZE));
+        // A crash while appending the record of segment 1 left half of it behind
+        writeProgressFile(entry, Bytes.concat(progressRecords(0), Arrays.copyOf(progressRecords(1), 2)));
+        mRefusedOffset = segmentOffset(2);
+
+        final SegmentedDownload download = new SegmentedDownload(mDirectory, entry);
+        assertThrows(ServerResponseException.class, () -> download(download));
+
+        // Segment 1 was fetched again and its record appended in line with the first one
+        final byte[] progress = Files.readAllBytes(getProgressFile(entry));
+        assertArrayEquals(progressRecords(0, 1), progress);
+
+        mRequestedOffsets.clear();
+        mRefusedOffset = -1;
+        assertEquals(2 * SegmentedDownload.SEGMENT_SIZE, download(download));
+
+        assertArrayEquals(mContents, Files.readAllBytes(mTarget));
+        assertEquals(Arrays.asList(segmentOffset(2)), new ArrayList<>(mRequestedOffsets));
+        assertNoLeftovers();
+    }
+
+    @Test
+    void mismatchedFileIsDiscarded() throws IOException {
+        final ManifestEntry entry = createEntry(randomBytes(mContents.length, 2));
+        final SegmentedDownload download = new SegmentedDownload(mDirectory, entry);
+
+        assertThrows(IOException.class, () -> download(download));
+
+        assertFalse(Files.exists(mTarget));
+        assertFalse(download.isStarted());
+        assertNoLeftovers();
+    }
+
+    private long download(final SegmentedDownload download) throws IOException {
+        final List<SyncConnection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONNECTION_COUNT; i++) {
+                connections.add(SyncConnection.open(
+                    mServerSocket.getInetAddress().getHostAddress(),
+                    mServerSocket.getLocalPort()));
+            }
+            return download.download(connections, mTarget);
+        } finally {
+            for (final SyncConnection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private void writeDataFile(final ManifestEntry entry, final byte[] contents) throws IOException {
+        Files.createDirectories(mDirectory);
+        Files.write(mDirectory.resolve(entry.getHash() + ".data"), contents);
+    }
+
+    private void writeProgressFile(final ManifestEntry entry, final byte[] records) throws IOException {
+        Files.createDirectories(mDirectory);
+        Files.write(getProgressFile(entry), records);
+    }
+
+    private Path getProgressFile(final ManifestEntry entry) {
+        return mDirectory.resolve(entry.getHash() + ".progress");
+    }
+
+    private void assertNoLeftovers() throws IOException {
+        if (Files.isDirectory(mDirectory)) {
+            try (Stream<Path> files = Files.list(mDirectory)) {
+                assertEquals(0, files.count());
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        try {
+            while (true) {
+                final Socket socket = mServerSocket.accept();
+                mExecutor.submit(() -> {
+                    serve(socket);
+                    return null;
+                });
+            }
+        } catch (final IOException exception) {
+            // The test is over
+        }
+    }
+
+    /**
+     * Answers the requests of one connection until it disconnects: HELLO with the protocol version, ADMISSION with an
+     * immediate admission and FILE with the requested range of {@link #mContents}, unless it starts at
+     * {@link #mRefusedOffset}.
+     */
+    private void serve(final Socket socket) throws IOException {
+        try (Socket closed = socket;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            while (true) {
+                final int frameLength;
+                try {
+                    frameLength = input.readInt();
+                } catch (final EOFException exception) {
+                    return;
+                }
+                final int requestId = input.readInt();
+                final RequestType type = RequestType.fromCode(input.readByte()).get();
+                final byte[] payload = new byte[frameLength - Protocol.REQUEST_HEADER_SIZE];
+                input.readFully(payload);
+
+                ResponseStatus status = ResponseStatus.OK;
+                final byte[] body;
+                if (type == RequestType.HELLO) {
+                    body = ByteBuffer.allocate(Integer.BYTES).putInt(Protocol.VERSION).array();
+                } else if (type == RequestType.ADMISSION) {
+                    body = ByteBuffer.allocate(Byte.BYTES + Integer.BYTES + Long.BYTES).put((byte) 1).array();
+                } else if (type == RequestType.FILE) {
+                    final DataInputStream request = new DataInputStream(new ByteArrayInputStream(payload));
+                    assertEquals(PATH, request.readUTF());
+                    final long offset = request.readLong();
+                    final long length = request.readLong();
+                    mRequestedOffsets.add(offset);
+                    if (offset == mRefusedOffset) {
+                        status = ResponseStatus.NOT_FOUND;
+                        body = "Refused".getBytes(StandardCharsets.UTF_8);
+                    } else {
+                        body = Arrays.copyOfRange(mContents, (int) offset, (int) (offset + length));
+                    }
+                } else {
+                    status = ResponseStatus.BAD_REQUEST;
+                    body = ("Unexpected " + type).getBytes(StandardCharsets.UTF_8);
+                }
+                output.writeInt(requestId);
+                output.writeByte(status.getCode());
+                output.writeLong(body.length);
+                output.write(body);
+                output.flush();
+            }
+        }
+    }
+
+    private static ManifestEntry createEntry(final byte[] contents) {
+        return new ManifestEntry(PATH, contents.length, ContentHasher.HASH_FUNCTION.hashBytes(contents));
+    }
+
+    private static long segmentOffset(final int segment) {
+        return (long) segment * SegmentedDownload.SEGMENT_SIZE;
+    }
+
+    private static byte[] progressRecords(final int... segments) {
+        final ByteBuffer records = ByteBuffer.allocate(segments.length * Integer.BYTES);
+        for (final int segment : segments) {
+            records.putInt(segment);
+        }
+        return records.array();
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Stages and commits a tree, and recovers from each state an interrupted {@link StagedTree#commit()} can leave behind.
+ */
+class StagedTreeTest {
+    private static final String TREE = "mods";
+
+    @TempDir
+    Path mInstanceRoot;
+
+    private StagedTree mStagedTree;
+
+    @BeforeEach
+    void createLiveTree() throws IOException {
+        mStagedTree = new StagedTree(mInstanceRoot, TREE);
+        write(mStagedTree.getLiveDirectory().resolve("kept.jar"), "kept");
+        write(mStagedTree.getLiveDirectory().resolve("removed.jar"), "removed");
+    }
+
+    @Test
+    void commitReplacesLiveTree() throws IOException {
+        stageNewTree();
+
+        mStagedTree.commit();
+
+        assertNewTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void recoverInstallsStagedTreeWhenLiveTreeWasMovedAside() throws IOException {
+        stageNewTree();
+        // The process died between moving the live tree aside and moving the staged tree in
+        Files.move(mStagedTree.getLiveDirectory(), getPreviousDirectory());
+
+        mStagedTree.recover();
+
+        assertNewTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void recoverRestoresPreviousTreeWhenNothingWasStaged() throws IOException {
+        Files.createDirectories(getPreviousDirectory().getParent());
+        Files.move(mStagedTree.getLiveDirectory(), getPreviousDirectory());
+
+        mStagedTree.recover();
+
+        assertOldTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void recoverDeletesPreviousTreeWhenSwapCompleted() throws IOException {
+        stageNewTree();
+        // The process died after the swap but before the previous tree was deleted
+        Files.move(mStagedTree.getLiveDirectory(), getPreviousDirectory());
+        Files.move(mStagedTree.getStagingDirectory(), mStagedTree.getLiveDirectory());
+
+        mStagedTree.recover();
+
+        assertNewTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void recoverDeletesUncommittedStagedTree() throws IOException {
+        stageNewTree();
+
+        mStagedTree.recover();
+
+        assertOldTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void discardKeepsLiveTree() throws IOException {
+        stageNewTree();
+
+        mStagedTree.discard();
+
+        assertOldTree();
+        assertNoLeftovers();
+    }
+
+    @Test
+    void beginDiscardsLeftoverStagedFiles() throws IOException {
+        stageNewTree();
+
+        mStagedTree.begin();
+
+        assertTrue(Files.isDirectory(mStagedTree.getStagingDirectory()));
+        try (Stream<Path> staged = Files.list(mStagedTree.getStagingDirectory())) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    private void stageNewTree() throws IOException {
+        mStagedTree.begin();
+        write(mStagedTree.resolveStaged(TREE + "/added.jar"), "added");
+        assertEquals(1, mStagedTree.linkLiveFiles(file -> file.getFileName().toString().equals("kept.jar")));
+    }
+
+    private void assertNewTree() throws IOException {
+        final Path live = mStagedTree.getLiveDirectory();
+        assertEquals("kept", read(live.resolve("kept.jar")));
+        assertEquals("added", read(live.resolve("added.jar")));
+        assertFalse(Files.exists(live.resolve("removed.jar")));
+    }
+
+    private void assertOldTree() throws IOException {
+        final Path live = mStagedTree.getLiveDirectory();
+        assertEquals("kept", read(live.resolve("kept.jar")));
+        assertEquals("removed", read(live.resolve("removed.jar")));
+        assertFalse(Files.exists(live.resolve("added.jar")));
+    }
+
+    private void assertNoLeftovers() {
+        assertFalse(Files.exists(mStagedTree.getStagingDirectory()));
+        assertFalse(Files.exists(getPreviousDirectory()));
+    }
+
+    private Path getPreviousDirectory() {
+        return mStagedTree.getStagingDirectory().resolveSibling(TREE + ".previous");
+    }
+
+    private static void write(final Path file, final String contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.RequestType;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs a {@link SyncConnection} against a scripted server which decodes the request frames and encodes the responses
+ * by the layout in {@link Protocol}, counting the bytes of both.
+ */
+class SyncConnectionTest {
+    private static final long CLIENT_ID = 0x1234_5678_9abc_def0L;
+    private static final HashCode FINGERPRINT = HashCode.fromBytes(new byte[32]);
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private ServerSocket mServerSocket;
+
+    @BeforeEach
+    void listen() throws IOException {
+        mServerSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    void requestsAndResponsesRoundTrip() throws Exception {
+        final Future<ServerTraffic> server = mExecutor.submit(this::serve);
+
+        final long bytesSent;
+        final long bytesReceived;
+        try (SyncConnection connection = open()) {
+            assertEquals(CLIENT_ID, connection.getClientId());
+            assertEquals(FINGERPRINT, connection.getFingerprint());
+            bytesSent = connection.getBytesSent();
+            bytesReceived = connection.getBytesReceived();
+        }
+
+        final ServerTraffic traffic = server.get(10, TimeUnit.SECONDS);
+        assertEquals(ImmutableList.of(RequestType.HELLO, RequestType.FINGERPRINT), traffic.mRequestTypes);
+        assertEquals(ImmutableList.of(0, 1), traffic.mRequestIds);
+        assertEquals(traffic.mBytesRead, bytesSent);
+        assertEquals(traffic.mBytesWritten, bytesReceived);
+    }
+
+    @Test
+    void errorResponseLeavesConnectionUsable() throws Exception {
+        final Future<ServerTraffic> server = mExecutor.submit(this::serve);
+
+        try (SyncConnection connection = open()) {
+            final ServerResponseException exception =
+                assertThrows(ServerResponseException.class, () -> connection.getSignature("mods/missing.jar"));
+            assertEquals(ResponseStatus.NOT_FOUND, exception.getStatus());
+            assertEquals(FINGERPRINT, connection.getFingerprint());
+        }
+
+        assertEquals(
+            ImmutableList.of(RequestType.HELLO, RequestType.SIGNATURE, RequestType.FINGERPRINT),
+            server.get(10, TimeUnit.SECONDS).mRequestTypes);
+    }
+
+    @Test
+    void sharedConnectionCountsOwnTraffic() throws Exception {
+        final Future<ServerTraffic> server = mExecutor.submit(this::serve);
+
+        final long sessionBytesSent;
+        final long sharedBytesSent;
+        try (SyncConnection connection = open()) {
+            try (SyncConnection shared = connection.share()) {
+                assertEquals(FINGERPRINT, shared.getFingerprint());
+                sharedBytesSent = shared.getBytesSent();
+                assertEquals(Protocol.RESPONSE_HEADER_SIZE + 32, shared.getBytesReceived());
+            }
+            sessionBytesSent = connection.getBytesSent();
+        }
+
+        final ServerTraffic traffic = server.get(10, TimeUnit.SECONDS);
+        assertEquals(Integer.BYTES + Protocol.REQUEST_HEADER_SIZE, sharedBytesSent);
+        assertEquals(traffic.mBytesRead, sessionBytesSent + sharedBytesSent);
+    }
+
+    private SyncConnection open() throws IOException {
+        return SyncConnection.open(
+            mServerSocket.getInetAddress().getHostAddress(),
+            mServerSocket.getLocalPort(),
+            CLIENT_ID);
+    }
+
+    /**
+     * Answers the requests of one client until it disconnects: HELLO with the protocol version, FINGERPRINT with
+     * {@link #FINGERPRINT} and everything else with {@link ResponseStatus#NOT_FOUND}.
+     */
+    private ServerTraffic serve() throws IOException {
+        final ServerTraffic traffic = new ServerTraffic();
+        try (Socket socket = mServerSocket.accept();
+             DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            while (true) {
+                final int frameLength;
+                try {
+                    frameLength = input.readInt();
+                } catch (final EOFException exception) {
+                    return traffic;
+                }
+                final int requestId = input.readInt();
+                final RequestType type = RequestType.fromCode(input.readByte()).get();
+                final byte[] payload = new byte[frameLength - Protocol.REQUEST_HEADER_SIZE];
+                input.readFully(payload);
+                traffic.mBytesRead += Integer.BYTES + frameLength;
+                traffic.mRequestIds.add(requestId);
+                traffic.mRequestTypes.add(type);
+
+                final ResponseStatus status;
+                final byte[] body;
+                if (type == RequestType.HELLO) {
+                    final DataInputStream hello = new DataInputStream(new ByteArrayInputStream(payload));
+                    assertEquals(Protocol.VERSION, hello.readInt());
+                    assertEquals(CLIENT_ID, hello.readLong());
+                    status = ResponseStatus.OK;
+                    body = ByteBuffer.allocate(Integer.BYTES).putInt(Protocol.VERSION).array();
+                } else if (type == RequestType.FINGERPRINT) {
+                    status = ResponseStatus.OK;
+                    body = FINGERPRINT.asBytes();
+                } else {
+                    status = ResponseStatus.NOT_FOUND;
+                    body = "Not found".getBytes(StandardCharsets.UTF_8);
+                }
+                output.writeInt(requestId);
+                output.writeByte(status.getCode());
+                output.writeLong(body.length);
+                output.write(body);
+                output.flush();
+                traffic.mBytesWritten += Protocol.RESPONSE_HEADER_SIZE + body.length;
+            }
+        }
+    }
+
+    private static final class ServerTraffic {
+        private final List<Integer> mRequestIds = new ArrayList<>();
+        private final List<RequestType> mRequestTypes = new ArrayList<>();
+        private long mBytesRead;
+        private long mBytesWritten;
+    }
+}
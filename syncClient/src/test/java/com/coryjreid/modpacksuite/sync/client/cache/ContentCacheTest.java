@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.Random;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Adds files of one instance to a {@link ContentCache}, places them into another and trims the cache.
+ */
+class ContentCacheTest {
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    @Test
+    void addedFileIsPlacedIntoAnotherInstance() throws IOException {
+        final ContentCache cache = new ContentCache(mTemporaryDirectory.resolve("cache"), MAX_SIZE);
+        final byte[] contents = randomBytes(10_000, 1);
+        final Path file = write("first/mods/a.jar", contents);
+        final HashCode hash = ContentHasher.hash(file);
+
+        assertTrue(cache.add(hash, file));
+        assertFalse(cache.add(hash, file));
+        assertEquals(ImmutableList.of(hash), cache.getHashes());
+
+        final Path target = write("second/mods/a.jar", randomBytes(100, 2));
+        assertTrue(cache.place(hash, target));
+        assertArrayEquals(contents, Files.readAllBytes(target));
+    }
+
+    @Test
+    void missingFileIsNotPlaced() throws IOException {
+        final ContentCache cache = new ContentCache(mTemporaryDirectory.resolve("cache"), MAX_SIZE);
+        final Path target = mTemporaryDirectory.resolve("mods/a.jar");
+
+        assertFalse(cache.place(ContentHasher.HASH_FUNCTION.hashInt(1), target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void corruptFileIsRemoved() throws IOException {
+        final ContentCache cache = new ContentCache(mTemporaryDirectory.resolve("cache"), MAX_SIZE);
+        final Path file = write("first/mods/a.jar", randomBytes(10_000, 3));
+        final HashCode hash = ContentHasher.hash(file);
+        cache.add(hash, file);
+        // Editing a linked file edits the cached one, which the cache relies on never happening
+        Files.write(cache.getFile(hash).get(), randomBytes(10_000, 4));
+
+        assertFalse(cache.place(hash, mTemporaryDirectory.resolve("second/a.jar")));
+        assertEquals(Optional.empty(), cache.getFile(hash));
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() throws IOException {
+        final Path directory = mTemporaryDirectory.resolve("cache");
+        final ContentCache cache = new ContentCache(directory, 0);
+        final Path file = write("first/mods/a.jar", randomBytes(10_000, 5));
+
+        assertFalse(cache.add(ContentHasher.hash(file), file));
+        assertFalse(Files.exists(directory));
+    }
+
+    @Test
+    void trimEvictsOldestUnlinkedFiles() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"), "Needs link counts");
+
+        final ContentCache cache = new ContentCache(mTemporaryDirectory.resolve("cache"), 10_000);
+        final HashCode oldHash = addRemovedFile(cache, "old.jar", 6, 120_000);
+        final HashCode recentHash = addRemovedFile(cache, "recent.jar", 7, 60_000);
+        final Path linkedFile = write("first/mods/linked.jar", randomBytes(10_000, 8));
+        final HashCode linkedHash = ContentHasher.hash(linkedFile);
+        cache.add(linkedHash, linkedFile);
+
+        cache.trim();
+
+        assertFalse(cache.getFile(oldHash).isPresent());
+        assertTrue(cache.getFile(recentHash).isPresent());
+        assertTrue(cache.getFile(linkedHash).isPresent());
+    }
+
+    /**
+     * Adds a file to the cache, then deletes it from the instance so only the cache links to it.
+     */
+    private HashCode addRemovedFile(final ContentCache cache, final String name, final long seed, final long ageMillis)
+        throws IOException {
+
+        final Path file = write("first/mods/" + name, randomBytes(10_000, seed));
+        final HashCode hash = ContentHasher.hash(file);
+        cache.add(hash, file);
+        Files.delete(file);
+        final FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - ageMillis);
+        Files.setLastModifiedTime(cache.getFile(hash).get(), lastModified);
+        return hash;
+    }
+
+    private Path write(final String path, final byte[] contents) throws IOException {
+        final Path file = mTemporaryDirectory.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, contents);
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.chunk.Chunk;
+import com.coryjreid.modpacksuite.sync.common.chunk.ChunkList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Retires files into a {@link ChunkStore}, rebuilds them from the stored chunks and trims the store.
+ */
+class ChunkStoreTest {
+    private static final long MAX_SIZE = 16 * 1024 * 1024;
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    @Test
+    void retiredFileRebuildsFromChunks() throws IOException {
+        final ChunkStore store = new ChunkStore(mTemporaryDirectory.resolve("store"), MAX_SIZE);
+        final byte[] contents = randomBytes(500_000, 1);
+        final Path file = write("a.jar", contents);
+        final ChunkList chunkList = ChunkList.compute(file);
+
+        assertEquals(chunkList.getChunks().size(), store.retire(file));
+        assertEquals(0, store.retire(file));
+
+        final ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        for (final Chunk chunk : chunkList.getChunks()) {
+            assertTrue(store.contains(chunk.getHash()));
+            rebuilt.write(store.read(chunk.getHash()).get());
+        }
+        assertArrayEquals(contents, rebuilt.toByteArray());
+    }
+
+    @Test
+    void corruptChunkIsRemoved() throws IOException {
+        final Path directory = mTemporaryDirectory.resolve("store");
+        final ChunkStore store = new ChunkStore(directory, MAX_SIZE);
+        final Path file = write("a.jar", randomBytes(10_000, 2));
+        store.retire(file);
+        final Chunk chunk = ChunkList.compute(file).getChunks().get(0);
+        final List<Path> chunkFiles = listChunkFiles(directory);
+        for (final Path chunkFile : chunkFiles) {
+            Files.write(chunkFile, new byte[] {1, 2, 3});
+        }
+
+        assertEquals(Optional.empty(), store.read(chunk.getHash()));
+        assertFalse(store.contains(chunk.getHash()));
+    }
+
+    @Test
+    void disabledStoreKeepsNothing() throws IOException {
+        final Path directory = mTemporaryDirectory.resolve("store");
+        final ChunkStore store = new ChunkStore(directory, 0);
+
+        assertEquals(0, store.retire(write("a.jar", randomBytes(100_000, 3))));
+        assertFalse(Files.exists(directory));
+    }
+
+    @Test
+    void trimEvictsLeastRecentlyUsedChunks() throws IOException {
+        final Path directory = mTemporaryDirectory.resolve("store");
+        final Path oldFile = write("old.jar", randomBytes(200_000, 4));
+        final Path newFile = write("new.jar", randomBytes(200_000, 5));
+        new ChunkStore(directory, MAX_SIZE).retire(oldFile);
+        for (final Path chunkFile : listChunkFiles(directory)) {
+            Files.setLastModifiedTime(chunkFile, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        }
+        final ChunkStore store = new ChunkStore(directory, Files.size(newFile));
+        store.retire(newFile);
+
+        store.trim();
+
+        for (final Chunk chunk : ChunkList.compute(newFile).getChunks()) {
+            assertTrue(store.contains(chunk.getHash()));
+        }
+        for (final Chunk chunk : ChunkList.compute(oldFile).getChunks()) {
+            assertFalse(store.contains(chunk.getHash()));
+        }
+    }
+
+    private Path write(final String name, final byte[] contents) throws IOException {
+        return Files.write(mTemporaryDirectory.resolve(name), contents);
+    }
+
+    private static List<Path> listChunkFiles(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.client.peer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.coryjreid.modpacksuite.sync.client.cache.ContentCache;
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Fetches files through a {@link PeerNode} from configured peers which are scripted to answer as {@link PeerProtocol}
+ * describes, or to send something else than they were asked for.
+ */
+class PeerNodeTest {
+    private static final int DISCOVERY_PORT = 45_977;
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final List<ServerSocket> mPeers = new ArrayList<>();
+    private final byte[] mContents = randomBytes(100_000, 1);
+    private final HashCode mHash = ContentHasher.HASH_FUNCTION.hashBytes(mContents);
+
+    @AfterEach
+    void stop() throws IOException {
+        for (final ServerSocket peer : mPeers) {
+            peer.close();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    void fetchesFileFromPeer() throws IOException {
+        final InetSocketAddress peer = startPeer(true, mContents.length, mContents);
+        final Path target = mTemporaryDirectory.resolve("a.jar");
+
+        assertEquals(Optional.of(peer), createNode(peer).fetch(mHash, mContents.length, target));
+        assertArrayEquals(mContents, Files.readAllBytes(target));
+    }
+
+    @Test
+    void fileWhichDoesNotMatchHashIsDiscarded() throws IOException {
+        final InetSocketAddress peer = startPeer(true, mContents.length, randomBytes(mContents.length, 2));
+        final Path target = mTemporaryDirectory.resolve("a.jar");
+
+        assertEquals(Optional.empty(), createNode(peer).fetch(mHash, mContents.length, target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void fileOfAnotherSizeIsRefused() throws IOException {
+        final byte[] longer = randomBytes(mContents.length + 1, 3);
+        final InetSocketAddress peer = startPeer(true, longer.length, longer);
+        final Path target = mTemporaryDirectory.resolve("a.jar");
+
+        assertEquals(Optional.empty(), createNode(peer).fetch(mHash, mContents.length, target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void truncatedFileIsDiscarded() throws IOException {
+        final InetSocketAddress peer = startPeer(true, mContents.length, new byte[mContents.length / 2]);
+        final Path target = mTemporaryDirectory.resolve("a.jar");
+
+        assertEquals(Optional.empty(), createNode(peer).fetch(mHash, mContents.length, target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void nextPeerIsAskedWhenFileIsMissingOrBad() throws IOException {
+        final InetSocketAddress missing = startPeer(false, 0, new byte[0]);
+        final InetSocketAddress corrupt = startPeer(true, mContents.length, randomBytes(mContents.length, 4));
+        final InetSocketAddress holder = startPeer(true, mContents.length, mContents);
+        final Path target = mTemporaryDirectory.resolve("a.jar");
+
+        final PeerNode node = createNode(missing, corrupt, holder);
+
+        assertEquals(Optional.of(holder), node.fetch(mHash, mContents.length, target));
+        assertArrayEquals(mContents, Files.readAllBytes(target));
+    }
+
+    /**
+     * The node is not started, fetching only asks the configured peers.
+     */
+    private PeerNode createNode(final InetSocketAddress... peers) {
+        final ContentCache cache = new ContentCache(mTemporaryDirectory.resolve("cache"), 0);
+        return new PeerNode(cache, 0, DISCOVERY_PORT, null, Arrays.asList(peers));
+    }
+
+    /**
+     * Starts a peer which answers every request for {@link #mHash} with the given header and body.
+     */
+    private InetSocketAddress startPeer(final boolean holdsFile, final long size, final byte[] body)
+        throws IOException {
+
+        final ServerSocket serverSocket = new ServerSocket(0, 4, InetAddress.getLoopbackAddress());
+        mPeers.add(serverSocket);
+        mExecutor.submit(() -> {
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    assertEquals(PeerProtocol.MAGIC, input.readInt());
+                    assertEquals(PeerProtocol.VERSION, input.readByte());
+                    final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+                    input.readFully(hash);
+                    assertArrayEquals(mHash.asBytes(), hash);
+
+                    final DataOutputStream output =
+                        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    output.writeBoolean(holdsFile);
+                    if (holdsFile) {
+                        output.writeLong(size);
+                        output.write(body);
+                    }
+                    output.flush();
+                }
+            }
+        });
+        return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
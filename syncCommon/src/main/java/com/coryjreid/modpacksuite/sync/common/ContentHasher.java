@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Hashes file contents the same way on the client and the server, so the hashes in a {@link TreeManifest} can be
+ * compared no matter which side built it.
+ * <br><br>
+ * Large files are read through memory-mapped regions, which avoids copying them through a heap buffer, and
+ * {@link #hashAll(List)} spreads files over the common fork-join pool so hashing a cold instance scales with the number
+ * of cores rather than being limited to a single reader thread.
+ */
+public final class ContentHasher {
+    /**
+     * The hash function of all file contents.
+     */
+    public static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+    /**
+     * Files smaller than this are read into memory, mapping them costs more than it saves.
+     */
+    private static final long MAPPING_THRESHOLD = 64 * 1024;
+
+    /**
+     * The largest region of a file mapped at once, which bounds the address space used per hashing thread.
+     */
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Prevent instantiation.
+     */
+    private ContentHasher() {
+        // Nothing to do.
+    }
+
+    /**
+     * @param file the file to hash (never {@code null})
+     * @return the {@link #HASH_FUNCTION} hash of the file's contents
+     * @throws IOException if the file could not be read
+     */
+    public static HashCode hash(final Path file) throws IOException {
+        Preconditions.checkNotNull(file, "file cannot be null");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < MAPPING_THRESHOLD) {
+                return HASH_FUNCTION.hashBytes(Files.readAllBytes(file));
+            }
+
+            final Hasher hasher = HASH_FUNCTION.newHasher();
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                final MappedByteBuffer region =
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+                hasher.putBytes(region);
+            }
+            return hasher.hash();
+        }
+    }
+
+    /**
+     * Hashes many files in parallel.
+     *
+     * @param files the files to hash (never {@code null})
+     * @return the hash of every file in the same order as {@code files}
+     * @throws IOException if any file could not be read
+     */
+    public static List<HashCode> hashAll(final List<Path> files) throws IOException {
+        Preconditions.checkNotNull(files, "files cannot be null");
+
+        try {
+            return files.parallelStream().map(file -> {
+                try {
+                    return hash(file);
+                } catch (final IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }).collect(ImmutableList.toImmutableList());
+        } catch (final UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+}
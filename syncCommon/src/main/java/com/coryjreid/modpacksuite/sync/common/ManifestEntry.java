@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * A single file in a {@link TreeManifest}.
+ */
+public final class ManifestEntry {
+    private final String mPath;
+    private final long mSize;
+    private final HashCode mHash;
+
+    /**
+     * @param path the path of the file relative to the pack root using {@code /} as the separator, e.g. {@code
+     *     config/jei.toml} (never {@code null})
+     * @param size the size of the file in bytes
+     * @param hash the hash of the file contents (never {@code null})
+     */
+    public ManifestEntry(final String path, final long size, final HashCode hash) {
+        mPath = Preconditions.checkNotNull(path, "path cannot be null");
+        mSize = size;
+        mHash = Preconditions.checkNotNull(hash, "hash cannot be null");
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public HashCode getHash() {
+        return mHash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ManifestEntry)) {
+            return false;
+        }
+        final ManifestEntry that = (ManifestEntry) other;
+        return mSize == that.mSize && mPath.equals(that.mPath) && mHash.equals(that.mHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mPath, mSize, mHash);
+    }
+
+    @Override
+    public String toString() {
+        return mPath + " (" + mSize + " bytes, " + mHash + ")";
+    }
+}
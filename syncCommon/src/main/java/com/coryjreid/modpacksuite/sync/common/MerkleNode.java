@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * A child of a directory in a {@link MerkleTree}. The hash of a file is the hash of its contents and the hash of a
+ * directory covers everything below it, so two nodes with the same hash have the same contents.
+ */
+public final class MerkleNode {
+    private final String mName;
+    private final boolean mDirectory;
+    private final long mSize;
+    private final HashCode mHash;
+
+    /**
+     * @param name the name of the file or directory (never {@code null})
+     * @param directory {@code true} if the node is a directory
+     * @param size the size of a file in bytes, or the total size of the files below a directory
+     * @param hash the hash of the node (never {@code null})
+     */
+    public MerkleNode(final String name, final boolean directory, final long size, final HashCode hash) {
+        mName = Preconditions.checkNotNull(name, "name cannot be null");
+        mDirectory = directory;
+        mSize = size;
+        mHash = Preconditions.checkNotNull(hash, "hash cannot be null");
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public boolean isDirectory() {
+        return mDirectory;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public HashCode getHash() {
+        return mHash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof MerkleNode)) {
+            return false;
+        }
+        final MerkleNode that = (MerkleNode) other;
+        return mDirectory == that.mDirectory
+            && mSize == that.mSize
+            && mName.equals(that.mName)
+            && mHash.equals(that.mHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mName, mDirectory, mSize, mHash);
+    }
+
+    @Override
+    public String toString() {
+        return mName + (mDirectory ? "/" : "") + " (" + mSize + " bytes, " + mHash + ")";
+    }
+}
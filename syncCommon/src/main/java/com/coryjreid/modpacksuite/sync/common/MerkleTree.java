@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+
+/**
+ * A hierarchical view of a {@link TreeManifest} in which every directory has a hash built from the names and hashes
+ * of its children. Two trees can be compared by walking down only into the directories whose hashes differ, so a
+ * change to one file in a large tree costs a handful of comparisons instead of a comparison of every file.
+ * <br><br>
+ * Directories are identified by their path relative to the pack root without a trailing slash, the root directory
+ * being the name of the tree itself, e.g. {@code config} and {@code config/jei}. Directory hashes only depend on what
+ * is below the directory, not on its path, so a subtree can be compared with the same subtree served under another
+ * name.
+ */
+public final class MerkleTree {
+    private final String mName;
+    private final Map<String, HashCode> mHashes;
+    private final Map<String, List<MerkleNode>> mListings;
+
+    private MerkleTree(
+        final String name,
+        final Map<String, HashCode> hashes,
+        final Map<String, List<MerkleNode>> listings) {
+
+        mName = name;
+        mHashes = hashes;
+        mListings = listings;
+    }
+
+    /**
+     * Builds the directory hashes of a tree.
+     *
+     * @param manifest the manifest of the tree (never {@code null})
+     * @return the new {@link MerkleTree}
+     */
+    public static MerkleTree build(final TreeManifest manifest) {
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+
+        final String rootPath = manifest.getName();
+        final Map<String, SortedMap<String, Object>> directories = new HashMap<>();
+        directories.put(rootPath, new TreeMap<>());
+        for (final ManifestEntry entry : manifest.getEntries()) {
+            // Each directory maps child names to either a ManifestEntry or the path of a child directory
+            String parentPath = rootPath;
+            final String[] names = entry.getPath().substring(rootPath.length() + 1).split("/");
+            for (int i = 0; i < names.length - 1; i++) {
+                final String childPath = parentPath + "/" + names[i];
+                if (directories.get(parentPath).putIfAbsent(names[i], childPath) == null) {
+                    directories.put(childPath, new TreeMap<>());
+                }
+                parentPath = childPath;
+            }
+            directories.get(parentPath).put(names[names.length - 1], entry);
+        }
+
+        final Map<String, HashCode> hashes = new HashMap<>();
+        final Map<String, List<MerkleNode>> listings = new HashMap<>();
+        hashDirectory(rootPath, directories, hashes, listings);
+        return new MerkleTree(rootPath, ImmutableMap.copyOf(hashes), ImmutableMap.copyOf(listings));
+    }
+
+    /**
+     * Reads a directory listing written by {@link #writeListing(List, DataOutput)}.
+     *
+     * @param input the input to read from (never {@code null})
+     * @return the children of the directory sorted by name
+     * @throws IOException if the listing could not be read
+     */
+    public static List<MerkleNode> readListing(final DataInput input) throws IOException {
+        final int childCount = input.readInt();
+        final ImmutableList.Builder<MerkleNode> children = ImmutableList.builderWithExpectedSize(childCount);
+        final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        for (int i = 0; i < childCount; i++) {
+            final boolean directory = input.readBoolean();
+            final String name = input.readUTF();
+            final long size = input.readLong();
+            input.readFully(hash);
+            children.add(new MerkleNode(name, directory, size, HashCode.fromBytes(hash)));
+        }
+        return children.build();
+    }
+
+    /**
+     * Writes the children of a directory in a compact binary form.
+     *
+     * @param children the children of the directory (never {@code null})
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the listing could not be written
+     */
+    public static void writeListing(final List<MerkleNode> children, final DataOutput output) throws IOException {
+        output.writeInt(children.size());
+        for (final MerkleNode child : children) {
+            output.writeBoolean(child.isDirectory());
+            output.writeUTF(child.getName());
+            output.writeLong(child.getSize());
+            output.write(child.getHash().asBytes());
+        }
+    }
+
+    /**
+     * @param children the children of a directory
+     * @return the listing in the form written by {@link #writeListing(List, DataOutput)}
+     */
+    public static byte[] listingToByteArray(final List<MerkleNode> children) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeListing(children, output);
+        } catch (final IOException exception) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the name of the tree, which is also the path of its root directory
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the paths of every directory in the tree, including the root
+     */
+    public List<String> getDirectories() {
+        return ImmutableList.copyOf(mHashes.keySet());
+    }
+
+    /**
+     * @param path the path of a directory relative to the pack root, e.g. {@code config/jei}
+     * @return the hash of the directory, or empty if it is not in this tree
+     */
+    public Optional<HashCode> getHash(final String path) {
+        return Optional.ofNullable(mHashes.get(path));
+    }
+
+    /**
+     * @param path the path of a directory relative to the pack root, e.g. {@code config/jei}
+     * @return the children of the directory sorted by name, or empty if it is not in this tree
+     */
+    public Optional<List<MerkleNode>> getChildren(final String path) {
+        return Optional.ofNullable(mListings.get(path));
+    }
+
+    /**
+     * Hashes a directory after its subdirectories, recording the hash and children of each.
+     *
+     * @return the node describing the directory within its parent
+     */
+    private static MerkleNode hashDirectory(
+        final String path,
+        final Map<String, SortedMap<String, Object>> directories,
+        final Map<String, HashCode> hashes,
+        final Map<String, List<MerkleNode>> listings) {
+
+        final List<MerkleNode> children = new ArrayList<>();
+        long size = 0;
+        for (final Map.Entry<String, Object> child : directories.get(path).entrySet()) {
+            final MerkleNode node;
+            if (child.getValue() instanceof ManifestEntry) {
+                final ManifestEntry entry = (ManifestEntry) child.getValue();
+                node = new MerkleNode(child.getKey(), false, entry.getSize(), entry.getHash());
+            } else {
+                final MerkleNode directory = hashDirectory((String) child.getValue(), directories, hashes, listings);
+                node = new MerkleNode(child.getKey(), true, directory.getSize(), directory.getHash());
+            }
+            children.add(node);
+            size += node.getSize();
+        }
+
+        final Hasher hasher = ContentHasher.HASH_FUNCTION.newHasher();
+        for (final MerkleNode child : children) {
+            final byte[] name = child.getName().getBytes(StandardCharsets.UTF_8);
+            hasher.putBoolean(child.isDirectory())
+                .putInt(name.length)
+                .putBytes(name)
+                .putLong(child.getSize())
+                .putBytes(child.getHash().asBytes());
+        }
+
+        final HashCode hash = hasher.hash();
+        hashes.put(path, hash);
+        listings.put(path, ImmutableList.copyOf(children));
+        return new MerkleNode(path.substring(path.lastIndexOf('/') + 1), true, size, hash);
+    }
+}
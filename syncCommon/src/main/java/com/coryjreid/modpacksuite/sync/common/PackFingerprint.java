@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+/**
+ * Publishes and reads the single hash which identifies the version of everything a pack serves (see {@link
+ * PackManifest#getFingerprint()}). Any added, removed or modified file in any served tree changes the fingerprint, so
+ * a client which already applied a fingerprint has nothing to synchronize.
+ */
+public final class PackFingerprint {
+    /**
+     * The name of the file, in the pack root, which holds the published fingerprint as a hex string.
+     */
+    public static final String FILE_NAME = ".fingerprint";
+
+    /**
+     * The trees, relative to the pack root, which are served to clients.
+     */
+    public static final List<String> SERVED_TREES =
+        ImmutableList.of("mods", "clientmods", "config", "defaultconfigs", "kubejs", "resourcepacks");
+
+    /**
+     * Prevent instantiation.
+     */
+    private PackFingerprint() {
+        // Nothing to do.
+    }
+
+    /**
+     * Publishes a fingerprint by atomically replacing the {@link #FILE_NAME} file in the pack root.
+     *
+     * @param packRoot the root directory of the served pack (never {@code null})
+     * @param fingerprint the fingerprint to publish (never {@code null})
+     * @throws IOException if the file could not be written
+     */
+    public static void write(final Path packRoot, final HashCode fingerprint) throws IOException {
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(fingerprint, "fingerprint cannot be null");
+
+        final Path temporaryFile = packRoot.resolve(FILE_NAME + ".tmp");
+        Files.write(temporaryFile, fingerprint.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.move(
+            temporaryFile,
+            packRoot.resolve(FILE_NAME),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a fingerprint written by {@link #write(Path, HashCode)}.
+     *
+     * @param fingerprintFile the file holding the fingerprint (never {@code null})
+     * @return the fingerprint, or empty if the file is missing or does not hold a valid fingerprint
+     */
+    public static Optional<HashCode> read(final Path fingerprintFile) {
+        Preconditions.checkNotNull(fingerprintFile, "fingerprintFile cannot be null");
+
+        try {
+            return Optional.of(HashCode.fromString(
+                new String(Files.readAllBytes(fingerprintFile), StandardCharsets.US_ASCII).trim()));
+        } catch (final IOException | IllegalArgumentException ignoredException) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.SortedMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+
+/**
+ * The list of every file served by a pack, grouped by tree. A manifest is immutable, so a published manifest can be
+ * shared freely between threads.
+ */
+public final class PackManifest {
+    private static final int MAGIC = 0x4d4d534d;
+    private static final int FORMAT_VERSION = 1;
+
+    private final SortedMap<String, TreeManifest> mTrees;
+    private final HashCode mFingerprint;
+
+    /**
+     * @param trees the manifests of the served trees (never {@code null})
+     */
+    public PackManifest(final Collection<TreeManifest> trees) {
+        Preconditions.checkNotNull(trees, "trees cannot be null");
+
+        final ImmutableSortedMap.Builder<String, TreeManifest> builder = ImmutableSortedMap.naturalOrder();
+        for (final TreeManifest tree : trees) {
+            builder.put(tree.getName(), tree);
+        }
+        mTrees = builder.build();
+
+        final Hasher hasher = ContentHasher.HASH_FUNCTION.newHasher();
+        for (final TreeManifest tree : mTrees.values()) {
+            tree.putEntries(hasher);
+        }
+        mFingerprint = hasher.hash();
+    }
+
+    /**
+     * Builds the manifest of a pack by hashing every file in the given trees. Trees which do not exist are empty.
+     *
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param trees the trees to include relative to the pack root (never {@code null})
+     * @return the new {@link PackManifest}
+     * @throws IOException if a tree could not be listed or a file could not be read
+     */
+    public static PackManifest build(final Path packRoot, final Collection<String> trees) throws IOException {
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(trees, "trees cannot be null");
+
+        final ImmutableSortedMap.Builder<String, TreeManifest> builder = ImmutableSortedMap.naturalOrder();
+        for (final String tree : trees) {
+            builder.put(tree, TreeManifest.build(packRoot, tree));
+        }
+        return new PackManifest(builder.build().values());
+    }
+
+    /**
+     * Reads a manifest written by {@link #writeTo(DataOutput)}.
+     *
+     * @param input the input to read from (never {@code null})
+     * @return the read {@link PackManifest}
+     * @throws IOException if the manifest could not be read or is in an unknown format
+     */
+    public static PackManifest readFrom(final DataInput input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown manifest format");
+        }
+
+        final int treeCount = input.readInt();
+        final ImmutableSortedMap.Builder<String, TreeManifest> builder = ImmutableSortedMap.naturalOrder();
+        for (int i = 0; i < treeCount; i++) {
+            final TreeManifest tree = TreeManifest.readFrom(input);
+            builder.put(tree.getName(), tree);
+        }
+        return new PackManifest(builder.build().values());
+    }
+
+    /**
+     * Writes this manifest in a compact binary form.
+     *
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the manifest could not be written
+     */
+    public void writeTo(final DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(mTrees.size());
+        for (final TreeManifest tree : mTrees.values()) {
+            tree.writeTo(output);
+        }
+    }
+
+    /**
+     * @return a hash over the path, size and content hash of every file, which changes whenever any served file does
+     */
+    public HashCode getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * @return the manifests of every tree keyed by tree name
+     */
+    public SortedMap<String, TreeManifest> getTrees() {
+        return mTrees;
+    }
+
+    /**
+     * @param name the name of the tree, e.g. {@code config}
+     * @return the manifest of the tree, or empty if the tree is not served
+     */
+    public Optional<TreeManifest> getTree(final String name) {
+        return Optional.ofNullable(mTrees.get(name));
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root, e.g. {@code config/jei.toml}
+     * @return the entry for the file, or empty if it is not served
+     */
+    public Optional<ManifestEntry> getEntry(final String path) {
+        final int separator = path.indexOf('/');
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        return getTree(path.substring(0, separator)).flatMap(tree -> tree.getEntry(path));
+    }
+}
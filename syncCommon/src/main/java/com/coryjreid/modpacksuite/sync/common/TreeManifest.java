@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+
+/**
+ * The list of files in one served tree (e.g. {@code config}) of a pack, sorted by path.
+ */
+public final class TreeManifest {
+    private final String mName;
+    private final List<ManifestEntry> mEntries;
+
+    /**
+     * @param name the name of the tree relative to the pack root, e.g. {@code config} (never {@code null})
+     * @param entries the files in the tree in any order (never {@code null})
+     */
+    public TreeManifest(final String name, final Collection<ManifestEntry> entries) {
+        mName = Preconditions.checkNotNull(name, "name cannot be null");
+        mEntries = entries.stream()
+            .sorted(Comparator.comparing(ManifestEntry::getPath))
+            .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Builds the manifest of a tree by hashing every regular file in it with {@link ContentHasher}. A tree which does
+     * not exist is empty.
+     *
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param name the name of the tree relative to the pack root (never {@code null})
+     * @return the new {@link TreeManifest}
+     * @throws IOException if the tree could not be listed or a file could not be read
+     */
+    public static TreeManifest build(final Path packRoot, final String name) throws IOException {
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(name, "name cannot be null");
+
+        final Path treeRoot = packRoot.resolve(name);
+        if (!Files.isDirectory(treeRoot)) {
+            return new TreeManifest(name, ImmutableList.of());
+        }
+
+        final List<Path> files;
+        try (Stream<Path> paths = Files.walk(treeRoot, FileVisitOption.FOLLOW_LINKS)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        // Hashing dominates, so it is done for all files at once to keep every core busy
+        final List<HashCode> hashes = ContentHasher.hashAll(files);
+        final List<ManifestEntry> entries = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            final Path file = files.get(i);
+            entries.add(new ManifestEntry(
+                packRoot.relativize(file).toString().replace('\\', '/'),
+                Files.size(file),
+                hashes.get(i)));
+        }
+        return new TreeManifest(name, entries);
+    }
+
+    /**
+     * Reads a manifest written by {@link #writeTo(DataOutput)}.
+     *
+     * @param input the input to read from (never {@code null})
+     * @return the read {@link TreeManifest}
+     * @throws IOException if the manifest could not be read
+     */
+    public static TreeManifest readFrom(final DataInput input) throws IOException {
+        final String name = input.readUTF();
+        final int entryCount = input.readInt();
+        final ImmutableList.Builder<ManifestEntry> entries = ImmutableList.builderWithExpectedSize(entryCount);
+        final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        for (int i = 0; i < entryCount; i++) {
+            final String path = input.readUTF();
+            final long size = input.readLong();
+            input.readFully(hash);
+            entries.add(new ManifestEntry(path, size, HashCode.fromBytes(hash)));
+        }
+        return new TreeManifest(name, entries.build());
+    }
+
+    /**
+     * Writes this manifest in a compact binary form.
+     *
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the manifest could not be written
+     */
+    public void writeTo(final DataOutput output) throws IOException {
+        output.writeUTF(mName);
+        output.writeInt(mEntries.size());
+        for (final ManifestEntry entry : mEntries) {
+            output.writeUTF(entry.getPath());
+            output.writeLong(entry.getSize());
+            output.write(entry.getHash().asBytes());
+        }
+    }
+
+    /**
+     * @return this manifest in the form written by {@link #writeTo(DataOutput)}
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeTo(output);
+        } catch (final IOException exception) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the files in this tree sorted by path
+     */
+    public List<ManifestEntry> getEntries() {
+        return mEntries;
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root
+     * @return the entry for the file, or empty if it is not in this tree
+     */
+    public Optional<ManifestEntry> getEntry(final String path) {
+        final int index = binarySearch(path);
+        return index < 0 ? Optional.empty() : Optional.of(mEntries.get(index));
+    }
+
+    /**
+     * Adds the path, size and hash of every entry to a {@link Hasher}, which is how fingerprints are built.
+     */
+    void putEntries(final Hasher hasher) {
+        for (final ManifestEntry entry : mEntries) {
+            hasher.putString(entry.getPath(), StandardCharsets.UTF_8)
+                .putLong(entry.getSize())
+                .putBytes(entry.getHash().asBytes());
+        }
+    }
+
+    private int binarySearch(final String path) {
+        int low = 0;
+        int high = mEntries.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = mEntries.get(middle).getPath().compareTo(path);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.bundle;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+/**
+ * The difference between two versions of a pack, which lets a client holding the older version catch up with a single
+ * sequential download. A bundle is made up of this header followed by the contents of every file in
+ * {@link #getFiles()}, in that order and without any separators.
+ */
+public final class ReleaseBundle {
+    private static final int MAGIC = 0x4d4d5342;
+    private static final int FORMAT_VERSION = 1;
+
+    private final HashCode mFromFingerprint;
+    private final HashCode mToFingerprint;
+    private final List<String> mDeletedPaths;
+    private final List<ManifestEntry> mFiles;
+
+    /**
+     * @param fromFingerprint the fingerprint of the version the bundle applies to (never {@code null})
+     * @param toFingerprint the fingerprint of the version the bundle leads to (never {@code null})
+     * @param deletedPaths the paths relative to the pack root of the files to delete (never {@code null})
+     * @param files the files to add or replace, in the order their contents follow the header (never {@code null})
+     */
+    public ReleaseBundle(
+        final HashCode fromFingerprint,
+        final HashCode toFingerprint,
+        final List<String> deletedPaths,
+        final List<ManifestEntry> files) {
+
+        mFromFingerprint = Preconditions.checkNotNull(fromFingerprint, "fromFingerprint cannot be null");
+        mToFingerprint = Preconditions.checkNotNull(toFingerprint, "toFingerprint cannot be null");
+        mDeletedPaths = ImmutableList.copyOf(deletedPaths);
+        mFiles = ImmutableList.copyOf(files);
+    }
+
+    /**
+     * Works out which files changed between two versions of a pack.
+     *
+     * @param from the manifest of the older version (never {@code null})
+     * @param to the manifest of the newer version (never {@code null})
+     * @return the new {@link ReleaseBundle}
+     */
+    public static ReleaseBundle diff(final PackManifest from, final PackManifest to) {
+        Preconditions.checkNotNull(from, "from cannot be null");
+        Preconditions.checkNotNull(to, "to cannot be null");
+
+        final ImmutableList.Builder<String> deletedPaths = ImmutableList.builder();
+        for (final TreeManifest tree : from.getTrees().values()) {
+            for (final ManifestEntry entry : tree.getEntries()) {
+                if (!to.getEntry(entry.getPath()).isPresent()) {
+                    deletedPaths.add(entry.getPath());
+                }
+            }
+        }
+
+        final ImmutableList.Builder<ManifestEntry> files = ImmutableList.builder();
+        for (final TreeManifest tree : to.getTrees().values()) {
+            for (final ManifestEntry entry : tree.getEntries()) {
+                if (!from.getEntry(entry.getPath()).equals(Optional.of(entry))) {
+                    files.add(entry);
+                }
+            }
+        }
+        return new ReleaseBundle(from.getFingerprint(), to.getFingerprint(), deletedPaths.build(), files.build());
+    }
+
+    /**
+     * Reads a header written by {@link #writeHeader(DataOutput)}.
+     *
+     * @param input the input to read from, positioned at the start of a bundle (never {@code null})
+     * @return the read {@link ReleaseBundle}, the input is left at the contents of the first file
+     * @throws IOException if the header could not be read or is in an unknown format
+     */
+    public static ReleaseBundle readHeader(final DataInput input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown release bundle format");
+        }
+
+        final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        input.readFully(hash);
+        final HashCode fromFingerprint = HashCode.fromBytes(hash);
+        input.readFully(hash);
+        final HashCode toFingerprint = HashCode.fromBytes(hash);
+
+        final int deletedCount = input.readInt();
+        final ImmutableList.Builder<String> deletedPaths = ImmutableList.builderWithExpectedSize(deletedCount);
+        for (int i = 0; i < deletedCount; i++) {
+            deletedPaths.add(input.readUTF());
+        }
+
+        final int fileCount = input.readInt();
+        final ImmutableList.Builder<ManifestEntry> files = ImmutableList.builderWithExpectedSize(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            final String path = input.readUTF();
+            final long size = input.readLong();
+            input.readFully(hash);
+            files.add(new ManifestEntry(path, size, HashCode.fromBytes(hash)));
+        }
+        return new ReleaseBundle(fromFingerprint, toFingerprint, deletedPaths.build(), files.build());
+    }
+
+    /**
+     * Writes the header of the bundle, the contents of the files have to follow it.
+     *
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the header could not be written
+     */
+    public void writeHeader(final DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.write(mFromFingerprint.asBytes());
+        output.write(mToFingerprint.asBytes());
+        output.writeInt(mDeletedPaths.size());
+        for (final String path : mDeletedPaths) {
+            output.writeUTF(path);
+        }
+        output.writeInt(mFiles.size());
+        for (final ManifestEntry entry : mFiles) {
+            output.writeUTF(entry.getPath());
+            output.writeLong(entry.getSize());
+            output.write(entry.getHash().asBytes());
+        }
+    }
+
+    public HashCode getFromFingerprint() {
+        return mFromFingerprint;
+    }
+
+    public HashCode getToFingerprint() {
+        return mToFingerprint;
+    }
+
+    /**
+     * @return the paths relative to the pack root of the files which are no longer served
+     */
+    public List<String> getDeletedPaths() {
+        return mDeletedPaths;
+    }
+
+    /**
+     * @return the files which were added or changed, in the order their contents follow the header
+     */
+    public List<ManifestEntry> getFiles() {
+        return mFiles;
+    }
+}
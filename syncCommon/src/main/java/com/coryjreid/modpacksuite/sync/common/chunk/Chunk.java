@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.chunk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * One content-defined chunk of a file.
+ */
+public final class Chunk {
+    private final long mOffset;
+    private final int mLength;
+    private final HashCode mHash;
+
+    /**
+     * @param offset where the chunk starts in the file
+     * @param length the length of the chunk in bytes
+     * @param hash the hash of the chunk's contents (never {@code null})
+     */
+    public Chunk(final long offset, final int length, final HashCode hash) {
+        mOffset = offset;
+        mLength = length;
+        mHash = Preconditions.checkNotNull(hash, "hash cannot be null");
+    }
+
+    public long getOffset() {
+        return mOffset;
+    }
+
+    public int getLength() {
+        return mLength;
+    }
+
+    public HashCode getHash() {
+        return mHash;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+/**
+ * A file described as the sequence of its content-defined chunks (see {@link Chunker}). Chunks are identified by the
+ * {@link ContentHasher} hash of their contents, so a chunk held anywhere locally can stand in for the same chunk of
+ * any file.
+ */
+public final class ChunkList {
+    /**
+     * The largest region of a file mapped at once while chunking.
+     */
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final long mFileSize;
+    private final List<Chunk> mChunks;
+
+    private ChunkList(final long fileSize, final List<Chunk> chunks) {
+        mFileSize = fileSize;
+        mChunks = chunks;
+    }
+
+    /**
+     * Splits a file into chunks and hashes each of them.
+     *
+     * @param file the file to split (never {@code null})
+     * @return the new {@link ChunkList}
+     * @throws IOException if the file could not be read
+     */
+    public static ChunkList compute(final Path file) throws IOException {
+        Preconditions.checkNotNull(file, "file cannot be null");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+            long regionStart = 0;
+            while (regionStart < fileSize) {
+                final long regionLength = Math.min(MAPPED_REGION_SIZE, fileSize - regionStart);
+                final boolean lastRegion = regionStart + regionLength == fileSize;
+                final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+
+                // A chunk may only end at the end of a region if the file ends there, otherwise the next region is
+                // mapped from the start of the unfinished chunk
+                int chunkStart = 0;
+                while (chunkStart < regionLength
+                    && (lastRegion || regionLength - chunkStart >= Chunker.MAX_CHUNK_SIZE)) {
+
+                    final int chunkLength = Chunker.nextChunkLength(region, chunkStart, (int) regionLength);
+                    chunks.add(new Chunk(regionStart + chunkStart, chunkLength, hash(region, chunkStart, chunkLength)));
+                    chunkStart += chunkLength;
+                }
+                regionStart += chunkStart;
+            }
+            return new ChunkList(fileSize, chunks.build());
+        }
+    }
+
+    /**
+     * Reads a chunk list written by {@link #writeTo(DataOutput)}.
+     *
+     * @param input the input to read from (never {@code null})
+     * @return the read {@link ChunkList}
+     * @throws IOException if the chunk list could not be read or is inconsistent
+     */
+    public static ChunkList readFrom(final DataInput input) throws IOException {
+        final long fileSize = input.readLong();
+        final int chunkCount = input.readInt();
+        if (fileSize < 0 || chunkCount < 0) {
+            throw new IOException("Invalid chunk list");
+        }
+
+        final ImmutableList.Builder<Chunk> chunks = ImmutableList.builderWithExpectedSize(chunkCount);
+        final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        long offset = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            final int length = input.readInt();
+            input.readFully(hash);
+            if (length <= 0 || length > Chunker.MAX_CHUNK_SIZE) {
+                throw new IOException("Invalid chunk length " + length);
+            }
+            chunks.add(new Chunk(offset, length, HashCode.fromBytes(hash)));
+            offset += length;
+        }
+        if (offset != fileSize) {
+            throw new IOException("Chunks do not cover the file");
+        }
+        return new ChunkList(fileSize, chunks.build());
+    }
+
+    /**
+     * Writes this chunk list in a compact binary form. Offsets are implied by the lengths.
+     *
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the chunk list could not be written
+     */
+    public void writeTo(final DataOutput output) throws IOException {
+        output.writeLong(mFileSize);
+        output.writeInt(mChunks.size());
+        for (final Chunk chunk : mChunks) {
+            output.writeInt(chunk.getLength());
+            output.write(chunk.getHash().asBytes());
+        }
+    }
+
+    /**
+     * @return this chunk list in the form written by {@link #writeTo(DataOutput)}
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + mChunks.size() * 36);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeTo(output);
+        } catch (final IOException exception) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    /**
+     * @return the chunks in file order
+     */
+    public List<Chunk> getChunks() {
+        return mChunks;
+    }
+
+    /**
+     * Computes the hash of a chunk the same way {@link #compute(Path)} does.
+     *
+     * @param buffer the buffer to read from (its position and limit are not changed)
+     * @param offset the absolute offset of the chunk in the buffer
+     * @param length the length of the chunk
+     * @return the hash of the chunk
+     */
+    public static HashCode hash(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(offset + length).position(offset);
+        return ContentHasher.HASH_FUNCTION.hashBytes(chunk);
+    }
+}
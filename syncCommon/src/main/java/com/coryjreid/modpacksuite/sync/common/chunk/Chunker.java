@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.chunk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits data into content-defined chunks using a gear hash. A boundary is placed wherever the hash of the last 64
+ * bytes matches a bit mask, so boundaries move with the data: inserting or removing bytes only changes the chunks
+ * around the edit. For jars this means an entry which did not change between two versions of a mod ends up in the
+ * same chunks in both, even though it moved.
+ * <br><br>
+ * The client and the server must agree on every constant here, changing any of them changes every chunk hash.
+ */
+public final class Chunker {
+    /**
+     * No boundary is placed before this many bytes, which bounds the per-chunk overhead.
+     */
+    public static final int MIN_CHUNK_SIZE = 2 * 1024;
+
+    /**
+     * A boundary is forced after this many bytes.
+     */
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * With 13 bits a boundary follows on average every 8 KiB past the minimum.
+     */
+    private static final long BOUNDARY_MASK = (1L << 13) - 1;
+
+    private static final long[] GEAR = createGearTable();
+
+    /**
+     * Prevent instantiation.
+     */
+    private Chunker() {
+        // Nothing to do.
+    }
+
+    /**
+     * Finds the end of the chunk which starts at an offset.
+     *
+     * @param buffer the data to split (its position and limit are not used)
+     * @param start the absolute offset of the chunk start in the buffer
+     * @param end the absolute offset of the end of the data available in the buffer
+     * @return the length of the chunk, which is {@code end - start} if no boundary was found before {@code end}
+     */
+    public static int nextChunkLength(final ByteBuffer buffer, final int start, final int end) {
+        final int limit = Math.min(end, start + MAX_CHUNK_SIZE);
+        long hash = 0;
+        for (int offset = start; offset < limit; offset++) {
+            hash = (hash << 1) + GEAR[buffer.get(offset) & 0xff];
+            if (offset - start + 1 >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0) {
+                return offset - start + 1;
+            }
+        }
+        return limit - start;
+    }
+
+    /**
+     * Generates a fixed table of random values with SplitMix64 so every JVM produces the same one.
+     */
+    private static long[] createGearTable() {
+        final long[] table = new long[256];
+        long state = 0x4d4d534d_43444331L;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+            table[i] = value ^ (value >>> 31);
+        }
+        return table;
+    }
+}
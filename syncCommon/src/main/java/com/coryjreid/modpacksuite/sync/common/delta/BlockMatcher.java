@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds the blocks of a {@link FileSignature} in a local basis file, at any offset, by rolling a weak checksum over
+ * the basis one byte at a time and confirming candidates with the strong checksum.
+ */
+public final class BlockMatcher {
+    /**
+     * Prevent instantiation.
+     */
+    private BlockMatcher() {
+        // Nothing to do.
+    }
+
+    /**
+     * Plans how to rebuild the file described by a signature from a basis file.
+     *
+     * @param signature the signature of the target file (never {@code null})
+     * @param basis the local file to reuse blocks from (never {@code null})
+     * @return the {@link DeltaPlan}, which downloads everything if the basis is too large to be mapped
+     * @throws IOException if the basis could not be read
+     */
+    public static DeltaPlan match(final FileSignature signature, final Path basis) throws IOException {
+        Preconditions.checkNotNull(signature, "signature cannot be null");
+        Preconditions.checkNotNull(basis, "basis cannot be null");
+
+        final long[] basisOffsets = new long[signature.getBlockCount()];
+        Arrays.fill(basisOffsets, -1);
+
+        try (FileChannel channel = FileChannel.open(basis, StandardOpenOption.READ)) {
+            final long basisSize = channel.size();
+            final int blockSize = signature.getBlockSize();
+            if (basisSize >= blockSize && basisSize <= Integer.MAX_VALUE && signature.getBlockCount() > 0) {
+                findBlocks(signature, channel.map(FileChannel.MapMode.READ_ONLY, 0, basisSize), basisOffsets);
+            }
+        }
+
+        return plan(signature, basisOffsets);
+    }
+
+    private static void findBlocks(
+        final FileSignature signature,
+        final MappedByteBuffer basis,
+        final long[] basisOffsets) {
+
+        final Map<Integer, List<Integer>> blocksByWeakChecksum = new HashMap<>();
+        for (int block = 0; block < signature.getBlockCount(); block++) {
+            blocksByWeakChecksum
+                .computeIfAbsent(signature.getWeakChecksum(block), ignored -> new ArrayList<>(1))
+                .add(block);
+        }
+
+        final int blockSize = signature.getBlockSize();
+        final int basisSize = basis.capacity();
+        final RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(basis, 0, blockSize);
+        int position = 0;
+        while (true) {
+            boolean matched = false;
+            final List<Integer> candidates = blocksByWeakChecksum.get(checksum.getValue());
+            if (candidates != null) {
+                final long strongChecksum = FileSignature.strongChecksum(basis, position, blockSize);
+                for (final int block : candidates) {
+                    if (signature.getStrongChecksum(block) == strongChecksum) {
+                        matched = true;
+                        if (basisOffsets[block] < 0) {
+                            basisOffsets[block] = position;
+                        }
+                    }
+                }
+            }
+
+            if (matched) {
+                // Skip past the matched block, the next block most likely follows it directly
+                position += blockSize;
+                if (position + blockSize > basisSize) {
+                    return;
+                }
+                checksum.reset(basis, position, blockSize);
+            } else {
+                if (position + blockSize >= basisSize) {
+                    return;
+                }
+                checksum.roll(basis.get(position), basis.get(position + blockSize));
+                position++;
+            }
+        }
+    }
+
+    private static DeltaPlan plan(final FileSignature signature, final long[] basisOffsets) {
+        final List<DeltaPlan.Segment> segments = new ArrayList<>();
+        final int blockSize = signature.getBlockSize();
+        for (int block = 0; block < basisOffsets.length; block++) {
+            append(segments, new DeltaPlan.Segment((long) block * blockSize, blockSize, basisOffsets[block]));
+        }
+
+        final long tailOffset = (long) basisOffsets.length * blockSize;
+        if (tailOffset < signature.getFileSize()) {
+            append(segments, new DeltaPlan.Segment(tailOffset, signature.getFileSize() - tailOffset, -1));
+        }
+        return new DeltaPlan(segments);
+    }
+
+    private static void append(final List<DeltaPlan.Segment> segments, final DeltaPlan.Segment segment) {
+        if (!segments.isEmpty()) {
+            final DeltaPlan.Segment merged = segments.get(segments.size() - 1).mergeWith(segment);
+            if (merged != null) {
+                segments.set(segments.size() - 1, merged);
+                return;
+            }
+        }
+        segments.add(segment);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import java.util.Locale;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the block size of a {@link FileSignature}. Archives (mod jars and zipped resource packs) get their own block
+ * size since their entries are compressed individually and an update usually leaves most entries untouched.
+ */
+public final class BlockSizePolicy {
+    public static final int DEFAULT_BLOCK_SIZE = 2048;
+    public static final int DEFAULT_ARCHIVE_BLOCK_SIZE = 8192;
+
+    private final int mBlockSize;
+    private final int mArchiveBlockSize;
+
+    /**
+     * @param blockSize the block size for regular files (must be positive)
+     * @param archiveBlockSize the block size for {@code .jar} and {@code .zip} files (must be positive)
+     */
+    public BlockSizePolicy(final int blockSize, final int archiveBlockSize) {
+        Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+        Preconditions.checkArgument(archiveBlockSize > 0, "archiveBlockSize must be positive");
+        mBlockSize = blockSize;
+        mArchiveBlockSize = archiveBlockSize;
+    }
+
+    /**
+     * @param path the path of the file
+     * @return the block size to use for the file
+     */
+    public int getBlockSize(final String path) {
+        final String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        return lowerCasePath.endsWith(".jar") || lowerCasePath.endsWith(".zip") ? mArchiveBlockSize : mBlockSize;
+    }
+}
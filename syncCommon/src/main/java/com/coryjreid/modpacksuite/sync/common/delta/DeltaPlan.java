@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Describes how to rebuild a target file as a sequence of {@link Segment}s, each either copied from a local basis
+ * file or downloaded from the server. Adjacent segments of the same kind are coalesced so each download is a single
+ * range request.
+ */
+public final class DeltaPlan {
+    private final List<Segment> mSegments;
+    private final long mReusedBytes;
+    private final long mMissingBytes;
+
+    DeltaPlan(final List<Segment> segments) {
+        mSegments = ImmutableList.copyOf(segments);
+        long reusedBytes = 0;
+        long missingBytes = 0;
+        for (final Segment segment : mSegments) {
+            if (segment.isReused()) {
+                reusedBytes += segment.getLength();
+            } else {
+                missingBytes += segment.getLength();
+            }
+        }
+        mReusedBytes = reusedBytes;
+        mMissingBytes = missingBytes;
+    }
+
+    /**
+     * @return the segments in target file order, which together cover the whole target file
+     */
+    public List<Segment> getSegments() {
+        return mSegments;
+    }
+
+    /**
+     * @return the number of bytes which can be copied from the basis file
+     */
+    public long getReusedBytes() {
+        return mReusedBytes;
+    }
+
+    /**
+     * @return the number of bytes which have to be downloaded
+     */
+    public long getMissingBytes() {
+        return mMissingBytes;
+    }
+
+    /**
+     * A contiguous range of the target file.
+     */
+    public static final class Segment {
+        private final long mTargetOffset;
+        private final long mLength;
+        private final long mBasisOffset;
+
+        /**
+         * @param targetOffset where the segment starts in the target file
+         * @param length the length of the segment in bytes
+         * @param basisOffset where the segment starts in the basis file, or {@code -1} if it has to be downloaded
+         */
+        Segment(final long targetOffset, final long length, final long basisOffset) {
+            Preconditions.checkArgument(length > 0, "length must be positive");
+            mTargetOffset = targetOffset;
+            mLength = length;
+            mBasisOffset = basisOffset;
+        }
+
+        public long getTargetOffset() {
+            return mTargetOffset;
+        }
+
+        public long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return where the segment starts in the basis file, only valid when {@link #isReused()}
+         */
+        public long getBasisOffset() {
+            return mBasisOffset;
+        }
+
+        /**
+         * @return {@code true} if the segment is copied from the basis file, {@code false} if it is downloaded
+         */
+        public boolean isReused() {
+            return mBasisOffset >= 0;
+        }
+
+        /**
+         * @return a segment covering this one followed directly by {@code next}, or {@code null} if they cannot be
+         *     merged
+         */
+        Segment mergeWith(final Segment next) {
+            if (mTargetOffset + mLength != next.mTargetOffset || isReused() != next.isReused()) {
+                return null;
+            }
+            if (isReused() && mBasisOffset + mLength != next.mBasisOffset) {
+                return null;
+            }
+            return new Segment(mTargetOffset, mLength + next.mLength, mBasisOffset);
+        }
+    }
+}
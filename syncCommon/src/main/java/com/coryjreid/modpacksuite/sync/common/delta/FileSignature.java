@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * The block checksums of one version of a file. A client holding any other version of the file can use them to find
+ * which blocks it already has (see {@link BlockMatcher}) and only download the rest.
+ * <br><br>
+ * Each full block has a weak {@link RollingChecksum} and a strong checksum. The last block of a file is usually
+ * shorter than the block size and is never matched, so it is always downloaded.
+ */
+public final class FileSignature {
+    private static final HashFunction sStrongHashFunction = Hashing.murmur3_128();
+
+    private final int mBlockSize;
+    private final long mFileSize;
+    private final int[] mWeakChecksums;
+    private final long[] mStrongChecksums;
+
+    private FileSignature(
+        final int blockSize,
+        final long fileSize,
+        final int[] weakChecksums,
+        final long[] strongChecksums) {
+
+        mBlockSize = blockSize;
+        mFileSize = fileSize;
+        mWeakChecksums = weakChecksums;
+        mStrongChecksums = strongChecksums;
+    }
+
+    /**
+     * Computes the signature of a file.
+     *
+     * @param file the file to compute the signature of (never {@code null})
+     * @param blockSize the size of each block in bytes (must be positive)
+     * @return the new {@link FileSignature}
+     * @throws IOException if the file could not be read
+     */
+    public static FileSignature compute(final Path file, final int blockSize) throws IOException {
+        Preconditions.checkNotNull(file, "file cannot be null");
+        Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final int blockCount = Math.toIntExact(fileSize / blockSize);
+            final int[] weakChecksums = new int[blockCount];
+            final long[] strongChecksums = new long[blockCount];
+
+            // Map in regions which hold a whole number of blocks so no block straddles two regions
+            final long regionSize = (Integer.MAX_VALUE / blockSize) * (long) blockSize;
+            for (long regionStart = 0; regionStart < (long) blockCount * blockSize; regionStart += regionSize) {
+                final long regionLength = Math.min(regionSize, (long) blockCount * blockSize - regionStart);
+                final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+                final int firstBlock = Math.toIntExact(regionStart / blockSize);
+                for (int offset = 0; offset < regionLength; offset += blockSize) {
+                    final int block = firstBlock + offset / blockSize;
+                    weakChecksums[block] = RollingChecksum.of(region, offset, blockSize);
+                    strongChecksums[block] = strongChecksum(region, offset, blockSize);
+                }
+            }
+            return new FileSignature(blockSize, fileSize, weakChecksums, strongChecksums);
+        }
+    }
+
+    /**
+     * Reads a signature written by {@link #writeTo(DataOutput)}.
+     *
+     * @param input the input to read from (never {@code null})
+     * @return the read {@link FileSignature}
+     * @throws IOException if the signature could not be read
+     */
+    public static FileSignature readFrom(final DataInput input) throws IOException {
+        final int blockSize = input.readInt();
+        final long fileSize = input.readLong();
+        final int blockCount = input.readInt();
+        if (blockSize <= 0 || blockCount < 0 || (long) blockCount * blockSize > fileSize) {
+            throw new IOException("Invalid signature");
+        }
+
+        final int[] weakChecksums = new int[blockCount];
+        final long[] strongChecksums = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            weakChecksums[i] = input.readInt();
+            strongChecksums[i] = input.readLong();
+        }
+        return new FileSignature(blockSize, fileSize, weakChecksums, strongChecksums);
+    }
+
+    /**
+     * Writes this signature in a compact binary form.
+     *
+     * @param output the output to write to (never {@code null})
+     * @throws IOException if the signature could not be written
+     */
+    public void writeTo(final DataOutput output) throws IOException {
+        output.writeInt(mBlockSize);
+        output.writeLong(mFileSize);
+        output.writeInt(mWeakChecksums.length);
+        for (int i = 0; i < mWeakChecksums.length; i++) {
+            output.writeInt(mWeakChecksums[i]);
+            output.writeLong(mStrongChecksums[i]);
+        }
+    }
+
+    /**
+     * @return this signature in the form written by {@link #writeTo(DataOutput)}
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + mWeakChecksums.length * 12);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeTo(output);
+        } catch (final IOException exception) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    /**
+     * @return the number of full blocks, which excludes a shorter last block
+     */
+    public int getBlockCount() {
+        return mWeakChecksums.length;
+    }
+
+    public int getWeakChecksum(final int block) {
+        return mWeakChecksums[block];
+    }
+
+    public long getStrongChecksum(final int block) {
+        return mStrongChecksums[block];
+    }
+
+    /**
+     * Computes the strong checksum of a window.
+     *
+     * @param buffer the buffer to read from (its position and limit are not changed)
+     * @param offset the absolute offset of the window in the buffer
+     * @param length the length of the window
+     * @return the strong checksum of the window
+     */
+    static long strongChecksum(final ByteBuffer buffer, final int offset, final int length) {
+        final ByteBuffer window = buffer.duplicate();
+        window.limit(offset + length).position(offset);
+        return sStrongHashFunction.hashBytes(window).asLong();
+    }
+}
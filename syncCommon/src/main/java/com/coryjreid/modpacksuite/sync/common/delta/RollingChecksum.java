@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The rsync weak rolling checksum. It can be moved along a buffer one byte at a time in constant time, which is what
+ * makes it possible to find blocks of a file at any offset of another file.
+ */
+public final class RollingChecksum {
+    private int mA;
+    private int mB;
+    private int mLength;
+
+    /**
+     * Computes the checksum of a window from scratch.
+     *
+     * @param buffer the buffer to read from (its position and limit are not changed)
+     * @param offset the absolute offset of the window in the buffer
+     * @param length the length of the window
+     */
+    public void reset(final ByteBuffer buffer, final int offset, final int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            final int value = buffer.get(offset + i) & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        mA = a & 0xffff;
+        mB = b & 0xffff;
+        mLength = length;
+    }
+
+    /**
+     * Moves the window forward by one byte.
+     *
+     * @param outgoing the byte leaving the start of the window
+     * @param incoming the byte entering the end of the window
+     */
+    public void roll(final byte outgoing, final byte incoming) {
+        final int out = outgoing & 0xff;
+        mA = (mA - out + (incoming & 0xff)) & 0xffff;
+        mB = (mB - mLength * out + mA) & 0xffff;
+    }
+
+    /**
+     * @return the checksum of the current window
+     */
+    public int getValue() {
+        return (mB << 16) | mA;
+    }
+
+    /**
+     * Computes the checksum of a window in one step.
+     *
+     * @param buffer the buffer to read from (its position and limit are not changed)
+     * @param offset the absolute offset of the window in the buffer
+     * @param length the length of the window
+     * @return the checksum of the window
+     */
+    public static int of(final ByteBuffer buffer, final int offset, final int length) {
+        final RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(buffer, offset, length);
+        return checksum.getValue();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.index;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+/**
+ * The recorded state of a single file in a {@link FileStateIndex}.
+ */
+public final class FileState {
+    private final long mSize;
+    private final long mLastModified;
+    private final HashCode mHash;
+
+    /**
+     * @param size the size of the file in bytes
+     * @param lastModified the last modified time of the file in milliseconds since the epoch
+     * @param hash the hash of the file contents (never {@code null})
+     */
+    public FileState(final long size, final long lastModified, final HashCode hash) {
+        mSize = size;
+        mLastModified = lastModified;
+        mHash = Preconditions.checkNotNull(hash, "hash cannot be null");
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public HashCode getHash() {
+        return mHash;
+    }
+
+    /**
+     * @param size the current size of the file in bytes
+     * @param lastModified the current last modified time of the file in milliseconds since the epoch
+     * @return {@code true} if the metadata still matches, meaning the recorded hash can be trusted
+     */
+    public boolean matches(final long size, final long lastModified) {
+        return mSize == size && mLastModified == lastModified;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FileState)) {
+            return false;
+        }
+        final FileState that = (FileState) other;
+        return mSize == that.mSize && mLastModified == that.mLastModified && mHash.equals(that.mHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mSize, mLastModified, mHash);
+    }
+}
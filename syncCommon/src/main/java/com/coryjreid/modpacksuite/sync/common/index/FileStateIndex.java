@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent record of the size, last modified time and content hash of every file in the synchronized trees of a
+ * Minecraft instance, or the served trees of a pack. Files are only rehashed when their size or last modified time no
+ * longer match the index, so keeping the index up to date costs little more than listing the trees.
+ * <br><br>
+ * Paths are stored relative to the instance root using {@code /} as the separator, e.g. {@code config/jei.toml}. A
+ * tree is only considered known once it has been {@link #update(Path, String) updated}, which callers should only do
+ * after the tree was successfully synchronized. The index also remembers the fingerprint of the last pack version
+ * which was applied in full.
+ * <br><br>
+ * Safe to use from several threads. Trees are walked and hashed without holding the index's lock, so the transfers
+ * of different trees update the index in parallel.
+ */
+public final class FileStateIndex {
+    public static final String DEFAULT_INDEX_FILE_NAME = "syncIndex.dat";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAGIC = 0x4d4d5349;
+    private static final int FORMAT_VERSION = 2;
+
+    private final NavigableMap<String, FileState> mEntries = new TreeMap<>();
+    private final Set<String> mTrees = new TreeSet<>();
+    private HashCode mAppliedFingerprint;
+
+    /**
+     * Loads an index previously written by {@link #save(Path)}. A missing, unreadable or outdated index is treated as
+     * empty since it can always be rebuilt.
+     *
+     * @param indexFile the file to load the index from (never {@code null})
+     * @return the loaded {@link FileStateIndex}
+     */
+    public static FileStateIndex load(final Path indexFile) {
+        Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+
+        final FileStateIndex index = new FileStateIndex();
+        if (!Files.exists(indexFile)) {
+            return index;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                sLogger.warn("Ignoring index '{}' written in an unknown format", indexFile);
+                return new FileStateIndex();
+            }
+
+            if (input.readBoolean()) {
+                index.mAppliedFingerprint = HashCode.fromString(input.readUTF());
+            }
+
+            final int treeCount = input.readInt();
+            for (int i = 0; i < treeCount; i++) {
+                index.mTrees.add(input.readUTF());
+            }
+
+            final int entryCount = input.readInt();
+            final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+            for (int i = 0; i < entryCount; i++) {
+                final String path = input.readUTF();
+                final long size = input.readLong();
+                final long lastModified = input.readLong();
+                input.readFully(hash);
+                index.mEntries.put(path, new FileState(size, lastModified, HashCode.fromBytes(hash)));
+            }
+        } catch (final IOException | IllegalArgumentException exception) {
+            sLogger.warn("Ignoring unreadable index '{}'", indexFile, exception);
+            return new FileStateIndex();
+        }
+
+        return index;
+    }
+
+    /**
+     * Writes this index to disk. The file is replaced atomically so an interrupted write never leaves a corrupt index
+     * behind.
+     *
+     * @param indexFile the file to write the index to (never {@code null})
+     * @throws IOException if the index could not be written
+     */
+    public synchronized void save(final Path indexFile) throws IOException {
+        Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+
+        final Path temporaryFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+
+            output.writeBoolean(mAppliedFingerprint != null);
+            if (mAppliedFingerprint != null) {
+                output.writeUTF(mAppliedFingerprint.toString());
+            }
+
+            output.writeInt(mTrees.size());
+            for (final String tree : mTrees) {
+                output.writeUTF(tree);
+            }
+
+            output.writeInt(mEntries.size());
+            for (final Map.Entry<String, FileState> entry : mEntries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().getSize());
+                output.writeLong(entry.getValue().getLastModified());
+                output.write(entry.getValue().getHash().asBytes());
+            }
+        }
+        Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checks whether a tree is known and still matches the index, without reading any file contents.
+     *
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param tree the tree to check relative to the instance root, e.g. {@code config} (never {@code null})
+     * @return {@code true} if the tree was previously {@link #update(Path, String) updated} and no file has been
+     *     added, removed or modified since
+     * @throws IOException if the tree could not be listed
+     */
+    public boolean isUnchanged(final Path instanceRoot, final String tree) throws IOException {
+        Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        final Map<String, FileState> treeEntries;
+        synchronized (this) {
+            if (!mTrees.contains(tree)) {
+                return false;
+            }
+            treeEntries = snapshot(Collections.singleton(tree));
+        }
+        final boolean[] unchanged = {true};
+        final int[] fileCount = {0};
+        walkTree(instanceRoot, tree, (path, attributes) -> {
+            fileCount[0]++;
+            final FileState state = treeEntries.get(path);
+            if (state == null || !state.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                unchanged[0] = false;
+                return FileVisitResult.TERMINATE;
+            }
+            return FileVisitResult.CONTINUE;
+        });
+
+        return unchanged[0] && fileCount[0] == treeEntries.size();
+    }
+
+    /**
+     * Brings the entries for a tree up to date with the files on disk and marks the tree as known. Only files whose
+     * size or last modified time changed are rehashed.
+     *
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param tree the tree to update relative to the instance root, e.g. {@code config} (never {@code null})
+     * @return the number of files which had to be hashed
+     * @throws IOException if the tree could not be listed or a file could not be read
+     */
+    public int update(final Path instanceRoot, final String tree) throws IOException {
+        Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        final Map<String, FileState> treeEntries = snapshot(Collections.singleton(tree));
+        final Set<String> removedPaths = new HashSet<>(treeEntries.keySet());
+        final List<String> changedPaths = new ArrayList<>();
+        final List<BasicFileAttributes> changedAttributes = new ArrayList<>();
+        walkTree(instanceRoot, tree, (path, attributes) -> {
+            removedPaths.remove(path);
+            final FileState state = treeEntries.get(path);
+            if (state == null || !state.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                changedPaths.add(path);
+                changedAttributes.add(attributes);
+            }
+            return FileVisitResult.CONTINUE;
+        });
+
+        // The walk only stats files, the changed ones are then read in parallel
+        final List<HashCode> hashes = ContentHasher.hashAll(
+            changedPaths.stream().map(instanceRoot::resolve).collect(Collectors.toList()));
+        synchronized (this) {
+            merge(changedPaths, changedAttributes, hashes, removedPaths);
+            mTrees.add(tree);
+        }
+
+        sLogger.debug("Updated index for '{}' ({} hashed, {} removed)", tree, changedPaths.size(), removedPaths.size());
+        return changedPaths.size();
+    }
+
+    /**
+     * Brings the entries for individual paths up to date with the disk, e.g. after a file system watcher reported
+     * them as changed. A path which is a directory is updated as a whole and a path which no longer exists is removed
+     * along with everything under it. Only files whose size or last modified time changed are rehashed.
+     *
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param paths the paths to update relative to the instance root, e.g. {@code config/jei.toml} (never {@code
+     *     null})
+     * @return the number of files which had to be hashed
+     * @throws IOException if a directory could not be listed or a file could not be read
+     */
+    public int refresh(final Path instanceRoot, final Collection<String> paths) throws IOException {
+        Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        Preconditions.checkNotNull(paths, "paths cannot be null");
+
+        final Map<String, FileState> entries = snapshot(paths);
+        final Set<String> removedPaths = new HashSet<>();
+        final List<String> changedPaths = new ArrayList<>();
+        final List<BasicFileAttributes> changedAttributes = new ArrayList<>();
+        final FileCallback collectChanged = (path, attributes) -> {
+            final FileState state = entries.get(path);
+            if (state == null || !state.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+                changedPaths.add(path);
+                changedAttributes.add(attributes);
+            }
+            return FileVisitResult.CONTINUE;
+        };
+
+        for (final String path : paths) {
+            final Path file = instanceRoot.resolve(path);
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (final NoSuchFileException exception) {
+                removedPaths.addAll(getEntriesUnder(entries, path));
+                continue;
+            }
+
+            if (attributes.isDirectory()) {
+                // Entries under the directory which are no longer on disk are found by walking it
+                final Set<String> missingPaths = new HashSet<>(getEntriesUnder(entries, path));
+                walkTree(instanceRoot, path, (filePath, fileAttributes) -> {
+                    missingPaths.remove(filePath);
+                    return collectChanged.onFile(filePath, fileAttributes);
+                });
+                removedPaths.addAll(missingPaths);
+            } else if (attributes.isRegularFile()) {
+                collectChanged.onFile(path, attributes);
+            }
+        }
+
+        final List<HashCode> hashes = ContentHasher.hashAll(
+            changedPaths.stream().map(instanceRoot::resolve).collect(Collectors.toList()));
+        merge(changedPaths, changedAttributes, hashes, removedPaths);
+
+        sLogger.debug("Refreshed {} paths in the index ({} hashed)", paths.size(), changedPaths.size());
+        return changedPaths.size();
+    }
+
+    /**
+     * Records the hash of a file which the caller has just written and verified, so it does not have to be read again.
+     *
+     * @param instanceRoot the root directory of the Minecraft instance (never {@code null})
+     * @param path the path of the file relative to the instance root, e.g. {@code config/jei.toml} (never {@code
+     *     null})
+     * @param hash the hash of the file contents (never {@code null})
+     * @throws IOException if the file's metadata could not be read
+     */
+    public synchronized void record(final Path instanceRoot, final String path, final HashCode hash)
+        throws IOException {
+
+        Preconditions.checkNotNull(instanceRoot, "instanceRoot cannot be null");
+        Preconditions.checkNotNull(path, "path cannot be null");
+        Preconditions.checkNotNull(hash, "hash cannot be null");
+
+        final BasicFileAttributes attributes =
+            Files.readAttributes(instanceRoot.resolve(path), BasicFileAttributes.class);
+        mEntries.put(path, new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), hash));
+    }
+
+    /**
+     * Marks a tree as unknown so it is fully verified on the next synchronization. This should be used when a
+     * synchronization of the tree failed part way through.
+     *
+     * @param tree the tree to forget (never {@code null})
+     */
+    public synchronized void forget(final String tree) {
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        mTrees.remove(tree);
+        getTreeEntries(tree).clear();
+    }
+
+    /**
+     * @return the fingerprint of the pack version which was last applied in full, or empty if unknown
+     */
+    public synchronized Optional<HashCode> getAppliedFingerprint() {
+        return Optional.ofNullable(mAppliedFingerprint);
+    }
+
+    /**
+     * @param appliedFingerprint the fingerprint of the pack version which was just applied in full, or {@code null}
+     *     if the instance may not match any pack version
+     */
+    public synchronized void setAppliedFingerprint(final HashCode appliedFingerprint) {
+        mAppliedFingerprint = appliedFingerprint;
+    }
+
+    /**
+     * @param path the path of the file relative to the instance root, e.g. {@code config/jei.toml}
+     * @return the recorded state of the file, or empty if the file is not in the index
+     */
+    public synchronized Optional<FileState> get(final String path) {
+        return Optional.ofNullable(mEntries.get(path));
+    }
+
+    /**
+     * Describes a tree as it was last {@link #update(Path, String) updated} in the same form the server publishes, so
+     * the two can be compared entry by entry.
+     *
+     * @param tree the tree relative to the instance root, e.g. {@code config} (never {@code null})
+     * @return the manifest of the tree, which is empty if the tree is unknown
+     */
+    public synchronized TreeManifest getManifest(final String tree) {
+        Preconditions.checkNotNull(tree, "tree cannot be null");
+
+        final List<ManifestEntry> entries = new ArrayList<>();
+        for (final Map.Entry<String, FileState> entry : getTreeEntries(tree).entrySet()) {
+            entries.add(new ManifestEntry(entry.getKey(), entry.getValue().getSize(), entry.getValue().getHash()));
+        }
+        return new TreeManifest(tree, entries);
+    }
+
+    /**
+     * @return a live view of all entries which belong to a tree
+     */
+    private NavigableMap<String, FileState> getTreeEntries(final String tree) {
+        // '0' is the character after '/' so this covers exactly the paths which start with "tree/"
+        return mEntries.subMap(tree + "/", true, tree + "0", false);
+    }
+
+    /**
+     * Copies the entries of some paths so they can be compared with the disk without holding the lock.
+     *
+     * @return the entries of the given paths and of every file under them
+     */
+    private synchronized Map<String, FileState> snapshot(final Collection<String> paths) {
+        final Map<String, FileState> entries = new HashMap<>();
+        for (final String path : paths) {
+            final FileState state = mEntries.get(path);
+            if (state != null) {
+                entries.put(path, state);
+            }
+            entries.putAll(getTreeEntries(path));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the paths of {@code entries} which are {@code path} itself or lie under it
+     */
+    private static List<String> getEntriesUnder(final Map<String, FileState> entries, final String path) {
+        return entries.keySet().stream()
+            .filter(entryPath -> entryPath.equals(path) || entryPath.startsWith(path + "/"))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Records the files which were hashed outside the lock and drops the ones which are gone.
+     */
+    private synchronized void merge(
+        final List<String> changedPaths,
+        final List<BasicFileAttributes> changedAttributes,
+        final List<HashCode> hashes,
+        final Collection<String> removedPaths) {
+
+        for (int i = 0; i < changedPaths.size(); i++) {
+            final BasicFileAttributes attributes = changedAttributes.get(i);
+            mEntries.put(changedPaths.get(i), new FileState(
+                attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                hashes.get(i)));
+        }
+        mEntries.keySet().removeAll(removedPaths);
+    }
+
+    private static void walkTree(final Path instanceRoot, final String tree, final FileCallback callback)
+        throws IOException {
+
+        final Path treeRoot = instanceRoot.resolve(tree);
+        if (!Files.isDirectory(treeRoot)) {
+            return;
+        }
+
+        Files.walkFileTree(treeRoot, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+            new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes)
+                    throws IOException {
+
+                    if (!attributes.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    return callback.onFile(
+                        instanceRoot.relativize(file).toString().replace('\\', '/'),
+                        attributes);
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exception)
+                    throws IOException {
+
+                    if (exception instanceof NoSuchFileException) {
+                        // The file was deleted while walking, which is no different from it never existing
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exception;
+                }
+            });
+    }
+
+    /**
+     * Receives the regular files found while walking a tree.
+     */
+    private interface FileCallback {
+        FileVisitResult onFile(String path, BasicFileAttributes attributes) throws IOException;
+    }
+}
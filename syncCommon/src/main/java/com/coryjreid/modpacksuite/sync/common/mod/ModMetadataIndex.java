@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.mod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent record of the mod IDs in every mod jar, keyed by the content hash of the jar. A jar is only opened by
+ * {@link ModMetadataReader} the first time its contents are seen, so deciding which of hundreds of jars a mod
+ * exception applies to costs a lookup per jar once their hashes are known, e.g. from a
+ * {@link com.coryjreid.modpacksuite.sync.common.index.FileStateIndex}.
+ */
+public final class ModMetadataIndex {
+    public static final String DEFAULT_INDEX_FILE_NAME = "modIndex.dat";
+
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAGIC = 0x4d4d4d49;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<HashCode, Set<String>> mModIds = new HashMap<>();
+    private boolean mChanged;
+
+    /**
+     * Loads an index previously written by {@link #save(Path)}. A missing, unreadable or outdated index is treated as
+     * empty since it can always be rebuilt.
+     *
+     * @param indexFile the file to load the index from (never {@code null})
+     * @return the loaded {@link ModMetadataIndex}
+     */
+    public static ModMetadataIndex load(final Path indexFile) {
+        Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+
+        final ModMetadataIndex index = new ModMetadataIndex();
+        if (!Files.exists(indexFile)) {
+            return index;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                sLogger.warn("Ignoring mod index '{}' written in an unknown format", indexFile);
+                return new ModMetadataIndex();
+            }
+
+            final int jarCount = input.readInt();
+            final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+            for (int i = 0; i < jarCount; i++) {
+                input.readFully(hash);
+                final int modIdCount = input.readInt();
+                final ImmutableSet.Builder<String> modIds = ImmutableSet.builderWithExpectedSize(modIdCount);
+                for (int j = 0; j < modIdCount; j++) {
+                    modIds.add(input.readUTF());
+                }
+                index.mModIds.put(HashCode.fromBytes(hash), modIds.build());
+            }
+        } catch (final IOException | IllegalArgumentException exception) {
+            sLogger.warn("Ignoring unreadable mod index '{}'", indexFile, exception);
+            return new ModMetadataIndex();
+        }
+
+        return index;
+    }
+
+    /**
+     * Writes this index to disk if it changed since it was loaded. The file is replaced atomically so an interrupted
+     * write never leaves a corrupt index behind.
+     *
+     * @param indexFile the file to write the index to (never {@code null})
+     * @throws IOException if the index could not be written
+     */
+    public synchronized void save(final Path indexFile) throws IOException {
+        Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+
+        if (!mChanged && Files.exists(indexFile)) {
+            return;
+        }
+
+        final Path temporaryFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+
+            output.writeInt(mModIds.size());
+            for (final Map.Entry<HashCode, Set<String>> entry : mModIds.entrySet()) {
+                output.write(entry.getKey().asBytes());
+                output.writeInt(entry.getValue().size());
+                for (final String modId : entry.getValue()) {
+                    output.writeUTF(modId);
+                }
+            }
+        }
+        Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mChanged = false;
+    }
+
+    /**
+     * @param jar the mod jar (never {@code null})
+     * @param hash the content hash of the jar (never {@code null})
+     * @return the IDs of the mods in the jar, which is only read if its hash is not in the index yet
+     */
+    public synchronized Set<String> getModIds(final Path jar, final HashCode hash) {
+        Preconditions.checkNotNull(jar, "jar cannot be null");
+        Preconditions.checkNotNull(hash, "hash cannot be null");
+
+        final Set<String> knownModIds = mModIds.get(hash);
+        if (knownModIds != null) {
+            return knownModIds;
+        }
+
+        Set<String> modIds;
+        try {
+            modIds = ImmutableSet.copyOf(ModMetadataReader.readModIds(jar));
+        } catch (final IOException exception) {
+            // A broken jar has no mods, remembering that saves reopening it every time
+            sLogger.warn("Failed to read the mod metadata of '{}'", jar, exception);
+            modIds = ImmutableSet.of();
+        }
+        mModIds.put(hash, modIds);
+        mChanged = true;
+        return modIds;
+    }
+
+    /**
+     * Forgets every jar whose hash is not in a collection, e.g. the jars of previous pack versions.
+     *
+     * @param hashes the content hashes of the jars to keep (never {@code null})
+     */
+    public synchronized void retainAll(final Collection<HashCode> hashes) {
+        Preconditions.checkNotNull(hashes, "hashes cannot be null");
+
+        mChanged |= mModIds.keySet().retainAll(hashes);
+    }
+}
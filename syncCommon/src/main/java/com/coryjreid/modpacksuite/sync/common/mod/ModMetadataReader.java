@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.mod;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads the IDs of the mods in a mod jar from the metadata of the supported loaders:
+ * <ul>
+ *     <li>{@code META-INF/mods.toml}: the {@code modId} of every {@code [[mods]]} table (Forge 1.13+)</li>
+ *     <li>{@code mcmod.info}: the {@code modid} of every mod listed (Forge 1.12 and older)</li>
+ *     <li>{@code fabric.mod.json}: the top level {@code id} (Fabric)</li>
+ * </ul>
+ */
+public final class ModMetadataReader {
+    private static final String MODS_TOML = "META-INF/mods.toml";
+    private static final String MCMOD_INFO = "mcmod.info";
+    private static final String FABRIC_MOD_JSON = "fabric.mod.json";
+
+    private static final Pattern TOML_TABLE = Pattern.compile("^\\s*\\[\\[?\\s*([^\\]\\s]+)\\s*]");
+    private static final Pattern TOML_MOD_ID = Pattern.compile("^\\s*modId\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private static final ObjectMapper sObjectMapper = JsonMapper.builder()
+        .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS, JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+        .build();
+
+    /**
+     * Prevent instantiation.
+     */
+    private ModMetadataReader() {
+    }
+
+    /**
+     * @param jar the mod jar to read (never {@code null})
+     * @return the IDs of the mods in the jar, empty if it has no metadata this reader understands
+     * @throws IOException if the jar is not a readable zip file
+     */
+    public static Set<String> readModIds(final Path jar) throws IOException {
+        Preconditions.checkNotNull(jar, "jar cannot be null");
+
+        final Set<String> modIds = new TreeSet<>();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            final ZipEntry modsToml = zipFile.getEntry(MODS_TOML);
+            if (modsToml != null) {
+                try (InputStream input = zipFile.getInputStream(modsToml)) {
+                    readModsToml(input, modIds);
+                }
+            }
+
+            final ZipEntry mcmodInfo = zipFile.getEntry(MCMOD_INFO);
+            if (mcmodInfo != null) {
+                try (InputStream input = zipFile.getInputStream(mcmodInfo)) {
+                    readMcmodInfo(input, modIds);
+                }
+            }
+
+            final ZipEntry fabricModJson = zipFile.getEntry(FABRIC_MOD_JSON);
+            if (fabricModJson != null) {
+                try (InputStream input = zipFile.getInputStream(fabricModJson)) {
+                    final JsonNode id = readJson(input).path("id");
+                    if (id.isTextual()) {
+                        modIds.add(id.asText());
+                    }
+                }
+            }
+        }
+        return modIds;
+    }
+
+    /**
+     * Takes the {@code modId} keys of the {@code [[mods]]} tables only, dependency tables have them too.
+     */
+    private static void readModsToml(final InputStream input, final Set<String> modIds) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        boolean inModsTable = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final Matcher table = TOML_TABLE.matcher(line);
+            if (table.find()) {
+                inModsTable = table.group(1).equals("mods");
+                continue;
+            }
+            final Matcher modId = TOML_MOD_ID.matcher(line);
+            if (inModsTable && modId.find()) {
+                modIds.add(modId.group(1));
+            }
+        }
+    }
+
+    /**
+     * Reads both forms of the file, a list of mods and an object holding the list in {@code modList}.
+     */
+    private static void readMcmodInfo(final InputStream input, final Set<String> modIds) throws IOException {
+        final JsonNode root = readJson(input);
+        final JsonNode mods = root.isArray() ? root : root.path("modList");
+        for (final JsonNode mod : mods) {
+            final JsonNode modId = mod.path("modid");
+            if (modId.isTextual()) {
+                modIds.add(modId.asText());
+            }
+        }
+    }
+
+    private static JsonNode readJson(final InputStream input) throws IOException {
+        // Mod metadata is hand written and often slightly broken, which is no reason to fail
+        try {
+            final JsonNode root = sObjectMapper.readTree(input);
+            return root == null ? sObjectMapper.missingNode() : root;
+        } catch (final JsonProcessingException exception) {
+            return sObjectMapper.missingNode();
+        }
+    }
+}
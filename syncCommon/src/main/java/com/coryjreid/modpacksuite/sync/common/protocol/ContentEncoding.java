@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * The encodings a file can be sent in. Clients list the encodings they accept in a
+ * {@link RequestType#ENCODED_FILE} request and the server picks one it has a precompressed variant for. Variants are
+ * built once per pack version, so the highest compression levels are used.
+ */
+public enum ContentEncoding {
+    IDENTITY((byte) 0) {
+        @Override
+        public OutputStream encode(final OutputStream output) {
+            return output;
+        }
+
+        @Override
+        public InputStream decode(final InputStream input) {
+            return input;
+        }
+    },
+    GZIP((byte) 1) {
+        @Override
+        public OutputStream encode(final OutputStream output) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(final InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+    ZSTD((byte) 2) {
+        @Override
+        public OutputStream encode(final OutputStream output) throws IOException {
+            return new ZstdOutputStream(output, ZSTD_LEVEL);
+        }
+
+        @Override
+        public InputStream decode(final InputStream input) throws IOException {
+            return new ZstdInputStream(input);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ZSTD_LEVEL = 19;
+
+    private final byte mCode;
+
+    ContentEncoding(final byte code) {
+        mCode = code;
+    }
+
+    public byte getCode() {
+        return mCode;
+    }
+
+    /**
+     * @param output the stream to write the encoded data to (never {@code null})
+     * @return a stream which encodes everything written to it, closing it finishes the encoding and closes {@code
+     *     output}
+     * @throws IOException if the encoding could not be started
+     */
+    public abstract OutputStream encode(OutputStream output) throws IOException;
+
+    /**
+     * @param input the stream to read encoded data from (never {@code null})
+     * @return a stream of the decoded data
+     * @throws IOException if the encoding could not be started
+     */
+    public abstract InputStream decode(InputStream input) throws IOException;
+
+    /**
+     * @param code the code read from the wire
+     * @return the matching {@link ContentEncoding}, or empty if the code is unknown
+     */
+    public static Optional<ContentEncoding> fromCode(final byte code) {
+        for (final ContentEncoding encoding : values()) {
+            if (encoding.mCode == code) {
+                return Optional.of(encoding);
+            }
+        }
+        return Optional.empty();
+    }
+}
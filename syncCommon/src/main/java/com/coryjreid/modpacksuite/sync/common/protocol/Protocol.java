@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.protocol;
+
+/**
+ * Constants of the SyncServer wire protocol.
+ * <br><br>
+ * A client opens a TCP connection and sends request frames, each made up of:
+ * <ul>
+ *     <li>{@code int} frame length, counting every byte after the length itself</li>
+ *     <li>{@code int} request ID, chosen by the client and echoed in the response</li>
+ *     <li>{@code byte} {@link RequestType} code</li>
+ *     <li>the payload of the request</li>
+ * </ul>
+ * The server answers every request, in the order the requests were received, with a response made up of:
+ * <ul>
+ *     <li>{@code int} request ID</li>
+ *     <li>{@code byte} {@link ResponseStatus} code</li>
+ *     <li>{@code long} body length</li>
+ *     <li>the body of the response</li>
+ * </ul>
+ * A client may send further requests before earlier responses arrive. The payloads (written with {@link
+ * java.io.DataOutput}) and bodies of each request type are:
+ * <ul>
+ *     <li>{@link RequestType#HELLO}: {@code int} {@link #VERSION}, {@code long} client ID; the body is the server's
+ *     {@code int} version. It must be the first request on a connection. The client picks its ID at random when it
+ *     starts, but the server treats connections from the same address as one client when admitting clients and
+ *     sharing bandwidth, so a client cannot claim more by sending several IDs.</li>
+ *     <li>{@link RequestType#FINGERPRINT}: no payload; the body is the raw bytes of the pack fingerprint</li>
+ *     <li>{@link RequestType#MANIFEST}: {@code UTF} tree name; the body is the tree's
+ *     {@link com.coryjreid.modpacksuite.sync.common.TreeManifest}</li>
+ *     <li>{@link RequestType#FILE}: {@code UTF} path relative to the pack root, {@code long} offset, {@code long}
+ *     length or {@code -1} for the rest of the file; the body is the requested bytes</li>
+ *     <li>{@link RequestType#SIGNATURE}: {@code UTF} path relative to the pack root; the body is the file's
+ *     {@link com.coryjreid.modpacksuite.sync.common.delta.FileSignature}</li>
+ *     <li>{@link RequestType#CHUNKS}: {@code UTF} path relative to the pack root; the body is the file's
+ *     {@link com.coryjreid.modpacksuite.sync.common.chunk.ChunkList}</li>
+ *     <li>{@link RequestType#ENCODED_FILE}: {@code UTF} path relative to the pack root, {@code byte} count and that
+ *     many {@link ContentEncoding} codes the client accepts in order of preference; the body is the {@code byte} code
+ *     of the encoding the server chose followed by the whole file in that encoding. The server falls back to
+ *     {@link ContentEncoding#IDENTITY} when it has no accepted variant.</li>
+ *     <li>{@link RequestType#DIRECTORY}: {@code UTF} directory path relative to the pack root, {@code boolean} whether
+ *     an expected hash follows and the raw bytes of the hash the client has for the directory; the body is a
+ *     {@code boolean} which is {@code false} if the server's hash is the expected one, otherwise it is followed by the
+ *     directory's listing (see {@link com.coryjreid.modpacksuite.sync.common.MerkleTree})</li>
+ *     <li>{@link RequestType#BUNDLE}: the raw bytes of the fingerprint of the pack version the client has; the body is
+ *     the {@link com.coryjreid.modpacksuite.sync.common.bundle.ReleaseBundle} leading from that version to the
+ *     published one, or {@link ResponseStatus#NOT_FOUND} if the server has none</li>
+ *     <li>{@link RequestType#ADMISSION}: no payload; the body is a {@code boolean} which is {@code true} once the
+ *     client is admitted, followed by the {@code int} number of clients queued ahead of it and the {@code long}
+ *     estimated wait in milliseconds. The first such request puts the client in the queue, and it is asked again until
+ *     the client is admitted.</li>
+ * </ul>
+ * {@link RequestType#FILE}, {@link RequestType#ENCODED_FILE} and {@link RequestType#BUNDLE} are bulk requests (see
+ * {@link RequestType#isBulk()}), which the server only answers for admitted clients and otherwise refuses with
+ * {@link ResponseStatus#NOT_ADMITTED}. A client which makes no progress on bulk requests for a while may lose its
+ * place to a queued one and has to ask for admission again. Bulk bodies are sent at the client's fair share of the
+ * bandwidth, while every other response is sent right away.
+ */
+public final class Protocol {
+    public static final int VERSION = 8;
+
+    /**
+     * The size of the fields in a request frame which precede the payload, excluding the frame length.
+     */
+    public static final int REQUEST_HEADER_SIZE = Integer.BYTES + Byte.BYTES;
+
+    /**
+     * The size of the fields in a response which precede the body.
+     */
+    public static final int RESPONSE_HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES;
+
+    /**
+     * The largest request frame a server accepts, requests are small so anything larger is a broken client.
+     */
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    /**
+     * Prevent instantiation.
+     */
+    private Protocol() {
+        // Nothing to do.
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.protocol;
+
+import java.util.Optional;
+
+/**
+ * The kinds of requests a client can send to a SyncServer. See {@link Protocol} for the payload of each.
+ */
+public enum RequestType {
+    HELLO((byte) 1, false),
+    FINGERPRINT((byte) 2, false),
+    MANIFEST((byte) 3, false),
+    FILE((byte) 4, true),
+    SIGNATURE((byte) 5, false),
+    CHUNKS((byte) 6, false),
+    ENCODED_FILE((byte) 7, true),
+    DIRECTORY((byte) 8, false),
+    BUNDLE((byte) 9, true),
+    ADMISSION((byte) 10, false);
+
+    private final byte mCode;
+    private final boolean mBulk;
+
+    RequestType(final byte code, final boolean bulk) {
+        mCode = code;
+        mBulk = bulk;
+    }
+
+    public byte getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return {@code true} if the request is answered with file contents, which a client must be admitted for first
+     */
+    public boolean isBulk() {
+        return mBulk;
+    }
+
+    /**
+     * @param code the code read from the wire
+     * @return the matching {@link RequestType}, or empty if the code is unknown
+     */
+    public static Optional<RequestType> fromCode(final byte code) {
+        for (final RequestType type : values()) {
+            if (type.mCode == code) {
+                return Optional.of(type);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.protocol;
+
+import java.util.Optional;
+
+/**
+ * The status of a response sent by a SyncServer. Every status other than {@link #OK} carries a UTF-8 error message as
+ * its body.
+ */
+public enum ResponseStatus {
+    OK((byte) 0),
+    NOT_FOUND((byte) 1),
+    BAD_REQUEST((byte) 2),
+    SERVER_ERROR((byte) 3),
+    /**
+     * A bulk request from a client which is not admitted, e.g. because it lost its place after going idle. The client
+     * should ask for {@link RequestType#ADMISSION} again and retry.
+     */
+    NOT_ADMITTED((byte) 4);
+
+    private final byte mCode;
+
+    ResponseStatus(final byte code) {
+        mCode = code;
+    }
+
+    public byte getCode() {
+        return mCode;
+    }
+
+    /**
+     * @param code the code read from the wire
+     * @return the matching {@link ResponseStatus}, or empty if the code is unknown
+     */
+    public static Optional<ResponseStatus> fromCode(final byte code) {
+        for (final ResponseStatus status : values()) {
+            if (status.mCode == code) {
+                return Optional.of(status);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that directory hashes only depend on what is below a directory, since clients and servers of different
+ * releases compare them.
+ */
+class MerkleTreeTest {
+    private static final List<ManifestEntry> ENTRIES = Arrays.asList(
+        entry("config/forge.toml", 5, 1),
+        entry("config/jei/jei.toml", 7, 2),
+        entry("config/jei/recipes/hidden.json", 11, 3),
+        entry("config/waila/waila.json", 13, 4));
+
+    @Test
+    void hashesAreStable() {
+        final MerkleTree tree = MerkleTree.build(new TreeManifest("config", ENTRIES));
+
+        // Pinned so a change to how directories are hashed, which makes every client list every directory, is noticed
+        assertEquals(
+            HashCode.fromString("6939ed78f983db62203312ef2783b384516e2ef01de8552917ef8e80fb0ad9a8"),
+            tree.getHash("config").get());
+        assertEquals(
+            HashCode.fromString("6c143a47207093eda96849f3ae7a9fcaede8bb286aa10be44831f459d55cbbef"),
+            tree.getHash("config/jei").get());
+    }
+
+    @Test
+    void hashesDoNotDependOnEntryOrder() {
+        final List<ManifestEntry> shuffled = new ArrayList<>(ENTRIES);
+        Collections.reverse(shuffled);
+
+        final MerkleTree tree = MerkleTree.build(new TreeManifest("config", ENTRIES));
+        final MerkleTree shuffledTree = MerkleTree.build(new TreeManifest("config", shuffled));
+
+        for (final String directory : tree.getDirectories()) {
+            assertEquals(tree.getHash(directory), shuffledTree.getHash(directory));
+            assertEquals(tree.getChildren(directory), shuffledTree.getChildren(directory));
+        }
+    }
+
+    @Test
+    void hashesDoNotDependOnTreeName() {
+        final List<ManifestEntry> renamed = new ArrayList<>();
+        for (final ManifestEntry entry : ENTRIES) {
+            renamed.add(new ManifestEntry(
+                "defaultconfigs" + entry.getPath().substring("config".length()),
+                entry.getSize(),
+                entry.getHash()));
+        }
+
+        final MerkleTree tree = MerkleTree.build(new TreeManifest("config", ENTRIES));
+        final MerkleTree renamedTree = MerkleTree.build(new TreeManifest("defaultconfigs", renamed));
+
+        assertEquals(tree.getHash("config"), renamedTree.getHash("defaultconfigs"));
+        assertEquals(tree.getHash("config/jei/recipes"), renamedTree.getHash("defaultconfigs/jei/recipes"));
+    }
+
+    @Test
+    void changedFileOnlyChangesItsAncestors() {
+        final List<ManifestEntry> changed = new ArrayList<>(ENTRIES);
+        changed.set(2, entry("config/jei/recipes/hidden.json", 11, 99));
+
+        final MerkleTree tree = MerkleTree.build(new TreeManifest("config", ENTRIES));
+        final MerkleTree changedTree = MerkleTree.build(new TreeManifest("config", changed));
+
+        final ImmutableSet<String> ancestors = ImmutableSet.of("config", "config/jei", "config/jei/recipes");
+        assertEquals(ImmutableSet.copyOf(tree.getDirectories()), ImmutableSet.copyOf(changedTree.getDirectories()));
+        for (final String directory : tree.getDirectories()) {
+            if (ancestors.contains(directory)) {
+                assertNotEquals(tree.getHash(directory), changedTree.getHash(directory));
+            } else {
+                assertEquals(tree.getHash(directory), changedTree.getHash(directory));
+            }
+        }
+    }
+
+    @Test
+    void listingRoundTrips() throws IOException {
+        final MerkleTree tree = MerkleTree.build(new TreeManifest("config", ENTRIES));
+        final List<MerkleNode> children = tree.getChildren("config/jei").get();
+
+        final byte[] bytes = MerkleTree.listingToByteArray(children);
+
+        assertEquals(children, MerkleTree.readListing(new DataInputStream(new ByteArrayInputStream(bytes))));
+        assertEquals(2, children.size());
+        assertEquals(new MerkleNode("jei.toml", false, 7, hash(2)), children.get(0));
+        assertEquals("recipes", children.get(1).getName());
+        assertEquals(tree.getHash("config/jei/recipes").get(), children.get(1).getHash());
+        assertEquals(11, children.get(1).getSize());
+    }
+
+    private static ManifestEntry entry(final String path, final long size, final int contents) {
+        return new ManifestEntry(path, size, hash(contents));
+    }
+
+    private static HashCode hash(final int contents) {
+        return ContentHasher.HASH_FUNCTION.hashInt(contents);
+    }
+}
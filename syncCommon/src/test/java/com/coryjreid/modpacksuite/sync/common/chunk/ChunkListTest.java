@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.chunk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.common.hash.HashCode;
+import com.google.common.primitives.Bytes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Splits files with {@link Chunker} through {@link ChunkList#compute(Path)} and sends the result through its binary
+ * form.
+ */
+class ChunkListTest {
+    @TempDir
+    Path mTemporaryDirectory;
+
+    @Test
+    void chunksCoverFileWithinSizeBounds() throws IOException {
+        final byte[] contents = randomBytes(1024 * 1024, 1);
+
+        final ChunkList chunkList = ChunkList.compute(write("file", contents));
+
+        assertEquals(contents.length, chunkList.getFileSize());
+        final List<Chunk> chunks = chunkList.getChunks();
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final Chunk chunk = chunks.get(i);
+            assertEquals(offset, chunk.getOffset());
+            assertTrue(chunk.getLength() <= Chunker.MAX_CHUNK_SIZE);
+            assertTrue(chunk.getLength() >= Chunker.MIN_CHUNK_SIZE || i == chunks.size() - 1);
+            final ByteBuffer buffer = ByteBuffer.wrap(contents);
+            assertEquals(ChunkList.hash(buffer, (int) chunk.getOffset(), chunk.getLength()), chunk.getHash());
+            offset += chunk.getLength();
+        }
+        assertEquals(contents.length, offset);
+    }
+
+    @Test
+    void insertionOnlyChangesNearbyChunks() throws IOException {
+        final byte[] original = randomBytes(1024 * 1024, 2);
+        final byte[] edited = Bytes.concat(
+            Arrays.copyOfRange(original, 0, original.length / 2),
+            randomBytes(100, 3),
+            Arrays.copyOfRange(original, original.length / 2, original.length));
+
+        final List<Chunk> originalChunks = ChunkList.compute(write("original", original)).getChunks();
+        final List<Chunk> editedChunks = ChunkList.compute(write("edited", edited)).getChunks();
+
+        final Set<HashCode> originalHashes = new HashSet<>();
+        originalChunks.forEach(chunk -> originalHashes.add(chunk.getHash()));
+        final long changedCount = editedChunks.stream()
+            .filter(chunk -> !originalHashes.contains(chunk.getHash()))
+            .count();
+        // Only the chunks around the insertion differ, the boundaries after it are found again
+        assertTrue(changedCount <= 3, changedCount + " of " + editedChunks.size() + " chunks changed");
+    }
+
+    @Test
+    void emptyFileHasNoChunks() throws IOException {
+        final ChunkList chunkList = ChunkList.compute(write("empty", new byte[0]));
+
+        assertEquals(0, chunkList.getFileSize());
+        assertEquals(0, chunkList.getChunks().size());
+    }
+
+    @Test
+    void chunkListRoundTrips() throws IOException {
+        final ChunkList chunkList = ChunkList.compute(write("file", randomBytes(300_000, 4)));
+
+        final ChunkList decoded = decode(chunkList.toByteArray());
+
+        assertEquals(chunkList.getFileSize(), decoded.getFileSize());
+        assertEquals(chunkList.getChunks().size(), decoded.getChunks().size());
+        for (int i = 0; i < chunkList.getChunks().size(); i++) {
+            final Chunk chunk = chunkList.getChunks().get(i);
+            final Chunk decodedChunk = decoded.getChunks().get(i);
+            assertEquals(chunk.getOffset(), decodedChunk.getOffset());
+            assertEquals(chunk.getLength(), decodedChunk.getLength());
+            assertEquals(chunk.getHash(), decodedChunk.getHash());
+        }
+        assertArrayEquals(chunkList.toByteArray(), decoded.toByteArray());
+    }
+
+    @Test
+    void chunkListNotCoveringFileIsRejected() throws IOException {
+        final byte[] encoded = ChunkList.compute(write("file", randomBytes(100_000, 5))).toByteArray();
+        // The file size comes first, claiming one more byte leaves it uncovered
+        ByteBuffer.wrap(encoded).putLong(0, 100_001);
+
+        assertThrows(IOException.class, () -> decode(encoded));
+    }
+
+    private Path write(final String name, final byte[] contents) throws IOException {
+        return Files.write(mTemporaryDirectory.resolve(name), contents);
+    }
+
+    private static ChunkList decode(final byte[] encoded) throws IOException {
+        return ChunkList.readFrom(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.delta;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.google.common.primitives.Bytes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sends a {@link FileSignature} through its binary form, matches it against a basis file and rebuilds the target from
+ * the resulting {@link DeltaPlan} the way a client does.
+ */
+class BlockMatcherTest {
+    private static final int BLOCK_SIZE = 1024;
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    @Test
+    void signatureRoundTrips() throws IOException {
+        final FileSignature signature = FileSignature.compute(write("target", randomBytes(10_500, 1)), BLOCK_SIZE);
+
+        final FileSignature decoded = decode(signature);
+
+        assertEquals(BLOCK_SIZE, decoded.getBlockSize());
+        assertEquals(10_500, decoded.getFileSize());
+        assertEquals(10, decoded.getBlockCount());
+        for (int block = 0; block < signature.getBlockCount(); block++) {
+            assertEquals(signature.getWeakChecksum(block), decoded.getWeakChecksum(block));
+            assertEquals(signature.getStrongChecksum(block), decoded.getStrongChecksum(block));
+        }
+        assertArrayEquals(signature.toByteArray(), decoded.toByteArray());
+    }
+
+    @Test
+    void rebuildsEditedFile() throws IOException {
+        final byte[] basis = randomBytes(64 * BLOCK_SIZE, 2);
+        // Insert bytes, overwrite part of a block and append a tail, which shifts most blocks off their old offsets
+        final byte[] target = Bytes.concat(
+            Arrays.copyOfRange(basis, 0, 10 * BLOCK_SIZE + 17),
+            randomBytes(333, 3),
+            Arrays.copyOfRange(basis, 10 * BLOCK_SIZE + 17, basis.length),
+            randomBytes(1500, 4));
+        target[40 * BLOCK_SIZE] ^= 0x5a;
+
+        final DeltaPlan plan = match(target, basis);
+
+        assertArrayEquals(target, apply(plan, target, basis));
+        assertEquals(target.length, plan.getReusedBytes() + plan.getMissingBytes());
+        assertTrue(plan.getMissingBytes() < 5 * BLOCK_SIZE, "missing " + plan.getMissingBytes() + " bytes");
+    }
+
+    @Test
+    void reusesAllOfUnchangedFile() throws IOException {
+        final byte[] file = randomBytes(16 * BLOCK_SIZE, 5);
+
+        final DeltaPlan plan = match(file, file);
+
+        assertArrayEquals(file, apply(plan, file, file));
+        assertEquals(0, plan.getMissingBytes());
+        assertEquals(1, plan.getSegments().size());
+    }
+
+    @Test
+    void downloadsAllOfUnrelatedFile() throws IOException {
+        final byte[] target = randomBytes(16 * BLOCK_SIZE + 100, 6);
+
+        final DeltaPlan plan = match(target, randomBytes(16 * BLOCK_SIZE, 7));
+
+        assertArrayEquals(target, apply(plan, target, new byte[0]));
+        assertEquals(0, plan.getReusedBytes());
+        assertEquals(target.length, plan.getMissingBytes());
+    }
+
+    private DeltaPlan match(final byte[] target, final byte[] basis) throws IOException {
+        final FileSignature signature = FileSignature.compute(write("target", target), BLOCK_SIZE);
+        return BlockMatcher.match(decode(signature), write("basis", basis));
+    }
+
+    /**
+     * Rebuilds the target, taking reused segments from the basis and the others from the target itself as if they had
+     * been downloaded.
+     */
+    private static byte[] apply(final DeltaPlan plan, final byte[] target, final byte[] basis) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long expectedOffset = 0;
+        for (final DeltaPlan.Segment segment : plan.getSegments()) {
+            assertEquals(expectedOffset, segment.getTargetOffset());
+            final int length = Math.toIntExact(segment.getLength());
+            if (segment.isReused()) {
+                output.write(basis, Math.toIntExact(segment.getBasisOffset()), length);
+            } else {
+                output.write(target, Math.toIntExact(segment.getTargetOffset()), length);
+            }
+            expectedOffset += length;
+        }
+        return output.toByteArray();
+    }
+
+    private static FileSignature decode(final FileSignature signature) throws IOException {
+        return FileSignature.readFrom(new DataInputStream(new ByteArrayInputStream(signature.toByteArray())));
+    }
+
+    private Path write(final String name, final byte[] contents) throws IOException {
+        return Files.write(mTemporaryDirectory.resolve(name), contents);
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
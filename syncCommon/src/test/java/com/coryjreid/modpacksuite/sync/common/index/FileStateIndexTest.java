@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.common.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.google.common.hash.HashCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saves a {@link FileStateIndex} and loads it back, including files whose header does not match the current format.
+ */
+class FileStateIndexTest {
+    private static final HashCode FINGERPRINT = ContentHasher.HASH_FUNCTION.hashInt(42);
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    private Path mInstanceRoot;
+    private Path mIndexFile;
+
+    @BeforeEach
+    void createInstance() throws IOException {
+        mInstanceRoot = Files.createDirectories(mTemporaryDirectory.resolve("instance"));
+        mIndexFile = mTemporaryDirectory.resolve(FileStateIndex.DEFAULT_INDEX_FILE_NAME);
+        Files.createDirectories(mInstanceRoot.resolve("config/jei"));
+        Files.write(mInstanceRoot.resolve("config/forge.toml"), "a = 1".getBytes(StandardCharsets.UTF_8));
+        Files.write(mInstanceRoot.resolve("config/jei/jei.toml"), "b = 2".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(mInstanceRoot.resolve("mods"));
+        Files.write(mInstanceRoot.resolve("mods/a.jar"), new byte[] {1, 2, 3});
+    }
+
+    @Test
+    void savedIndexLoadsBack() throws IOException {
+        final FileStateIndex index = new FileStateIndex();
+        assertEquals(3, index.update(mInstanceRoot, "config") + index.update(mInstanceRoot, "mods"));
+        index.setAppliedFingerprint(FINGERPRINT);
+        index.save(mIndexFile);
+
+        final FileStateIndex loaded = FileStateIndex.load(mIndexFile);
+
+        assertEquals(Optional.of(FINGERPRINT), loaded.getAppliedFingerprint());
+        assertEquals(index.getManifest("config").getEntries(), loaded.getManifest("config").getEntries());
+        assertEquals(index.getManifest("mods").getEntries(), loaded.getManifest("mods").getEntries());
+        assertEquals(index.get("config/jei/jei.toml"), loaded.get("config/jei/jei.toml"));
+        assertTrue(loaded.isUnchanged(mInstanceRoot, "config"));
+        assertEquals(0, loaded.update(mInstanceRoot, "config"));
+    }
+
+    @Test
+    void refreshUpdatesOnlyGivenPaths() throws IOException {
+        final FileStateIndex index = new FileStateIndex();
+        index.update(mInstanceRoot, "config");
+        // A new size, the modification time may not have moved on since the file was written
+        Files.write(mInstanceRoot.resolve("config/forge.toml"), "a = 10".getBytes(StandardCharsets.UTF_8));
+        deleteRecursively(mInstanceRoot.resolve("config/jei"));
+        Files.createDirectories(mInstanceRoot.resolve("config/waila"));
+        Files.write(mInstanceRoot.resolve("config/waila/waila.json"), "{}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, index.refresh(mInstanceRoot, Arrays.asList("config/forge.toml", "config/jei", "config/waila")));
+
+        final FileStateIndex rescanned = new FileStateIndex();
+        rescanned.update(mInstanceRoot, "config");
+        assertEquals(rescanned.getManifest("config").getEntries(), index.getManifest("config").getEntries());
+        assertEquals(0, index.update(mInstanceRoot, "config"));
+    }
+
+    @Test
+    void missingIndexIsEmpty() {
+        assertEmpty(FileStateIndex.load(mIndexFile));
+    }
+
+    @Test
+    void indexOfOtherFormatVersionIsIgnored() throws IOException {
+        final byte[] bytes = saveIndex();
+        // The header is the magic number followed by the format version
+        final ByteBuffer header = ByteBuffer.wrap(bytes);
+        header.putInt(Integer.BYTES, header.getInt(Integer.BYTES) + 1);
+        Files.write(mIndexFile, bytes);
+
+        assertEmpty(FileStateIndex.load(mIndexFile));
+    }
+
+    @Test
+    void indexWithoutMagicNumberIsIgnored() throws IOException {
+        final byte[] bytes = saveIndex();
+        bytes[0] ^= 0xff;
+        Files.write(mIndexFile, bytes);
+
+        assertEmpty(FileStateIndex.load(mIndexFile));
+    }
+
+    @Test
+    void truncatedIndexIsIgnored() throws IOException {
+        final byte[] bytes = saveIndex();
+        Files.write(mIndexFile, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertEmpty(FileStateIndex.load(mIndexFile));
+    }
+
+    private byte[] saveIndex() throws IOException {
+        final FileStateIndex index = new FileStateIndex();
+        index.update(mInstanceRoot, "config");
+        index.setAppliedFingerprint(FINGERPRINT);
+        index.save(mIndexFile);
+        return Files.readAllBytes(mIndexFile);
+    }
+
+    private static void deleteRecursively(final Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private void assertEmpty(final FileStateIndex index) {
+        assertFalse(index.getAppliedFingerprint().isPresent());
+        assertTrue(index.getManifest("config").getEntries().isEmpty());
+        assertFalse(index.get("config/forge.toml").isPresent());
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.RequestType;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state of one client connection, owned by a single {@link EventLoop} thread. Requests are decoded as they arrive
+ * and their responses are queued and written in order. Reading stops while too many responses are waiting so a client
+ * which pipelines requests without reading cannot make the server buffer without bound. Bulk requests are refused
+ * until the {@link EgressScheduler} admits the client, and their responses are written as fast as it allows, which
+ * may leave the connection waiting on its event loop rather than on the socket.
+ */
+final class Connection {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAX_PENDING_RESPONSES = 64;
+
+    /**
+     * The most bytes of a bulk response taken from the client's bucket at once.
+     */
+    private static final long MAX_BULK_WRITE_SIZE = 256 * 1024;
+
+    private final SocketChannel mChannel;
+    private final SelectionKey mKey;
+    private final EventLoop mEventLoop;
+    private final RequestHandler mRequestHandler;
+    private final EgressScheduler mScheduler;
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(Integer.BYTES + Protocol.MAX_FRAME_SIZE);
+    private final Deque<Response> mPendingResponses = new ArrayDeque<>();
+    private EgressScheduler.Client mClient;
+    private boolean mHandshakeComplete;
+    private boolean mCloseWhenFlushed;
+    private boolean mThrottled;
+
+    Connection(
+        final SocketChannel channel,
+        final SelectionKey key,
+        final EventLoop eventLoop,
+        final RequestHandler requestHandler,
+        final EgressScheduler scheduler) {
+
+        mChannel = channel;
+        mKey = key;
+        mEventLoop = eventLoop;
+        mRequestHandler = requestHandler;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Reads what is available and handles every complete request.
+     *
+     * @throws IOException if reading failed or the client sent a malformed frame
+     */
+    void onReadable() throws IOException {
+        if (mChannel.read(mReadBuffer) < 0) {
+            close();
+            return;
+        }
+
+        decodeRequests();
+        onWritable();
+    }
+
+    /**
+     * Writes queued responses until the socket would block, the client's bucket runs dry or nothing is left, then
+     * picks up any requests which were left buffered while the queue was full.
+     *
+     * @throws IOException if writing failed or a buffered frame was malformed
+     */
+    void onWritable() throws IOException {
+        writeResponses();
+        if (mPendingResponses.size() < MAX_PENDING_RESPONSES && mReadBuffer.position() > 0) {
+            decodeRequests();
+            writeResponses();
+        }
+
+        if (mCloseWhenFlushed && mPendingResponses.isEmpty()) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * Continues writing once the client's bucket has refilled.
+     *
+     * @throws IOException if writing failed
+     */
+    void onRefilled() throws IOException {
+        mThrottled = false;
+        if (mKey.isValid()) {
+            onWritable();
+        }
+    }
+
+    /**
+     * Closes the connection and releases every queued response.
+     */
+    void close() {
+        if (mClient != null) {
+            mScheduler.release(mClient);
+            mClient = null;
+        }
+        mKey.cancel();
+        try {
+            mChannel.close();
+        } catch (final IOException exception) {
+            sLogger.debug("Failed to close connection", exception);
+        }
+        for (final Response response : mPendingResponses) {
+            response.close();
+        }
+        mPendingResponses.clear();
+    }
+
+    private void decodeRequests() throws IOException {
+        mReadBuffer.flip();
+        while (!mCloseWhenFlushed
+            && mPendingResponses.size() < MAX_PENDING_RESPONSES
+            && mReadBuffer.remaining() >= Integer.BYTES) {
+
+            final int frameLength = mReadBuffer.getInt(mReadBuffer.position());
+            if (frameLength < Protocol.REQUEST_HEADER_SIZE || frameLength > Protocol.MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + frameLength);
+            }
+            if (mReadBuffer.remaining() < Integer.BYTES + frameLength) {
+                break;
+            }
+
+            mReadBuffer.getInt();
+            final int requestId = mReadBuffer.getInt();
+            final byte typeCode = mReadBuffer.get();
+            final byte[] payload = new byte[frameLength - Protocol.REQUEST_HEADER_SIZE];
+            mReadBuffer.get(payload);
+            mPendingResponses.add(handle(requestId, typeCode, payload));
+        }
+        mReadBuffer.compact();
+    }
+
+    private void writeResponses() throws IOException {
+        while (!mThrottled && !mPendingResponses.isEmpty()) {
+            final Response response = mPendingResponses.peek();
+            final long allowance = response.isBulk()
+                ? mScheduler.acquire(mClient, MAX_BULK_WRITE_SIZE)
+                : Long.MAX_VALUE;
+            if (allowance == 0) {
+                mThrottled = true;
+                mEventLoop.resumeLater(this, mScheduler.getRefillDelayNanos(mClient));
+                return;
+            }
+
+            final long written = response.writeTo(mChannel, allowance);
+            if (response.isBulk()) {
+                mScheduler.refund(mClient, allowance - written);
+                if (written > 0) {
+                    mScheduler.recordProgress(mClient);
+                }
+            } else if (mClient != null) {
+                mScheduler.charge(mClient, written);
+            }
+            if (!response.isWritten()) {
+                if (written < allowance) {
+                    // The socket buffer is full, wait until it is writable again
+                    return;
+                }
+                continue;
+            }
+            mPendingResponses.poll().close();
+        }
+    }
+
+    private Response handle(final int requestId, final byte typeCode, final byte[] payload) {
+        final Optional<RequestType> type = RequestType.fromCode(typeCode);
+        if (!type.isPresent()) {
+            mCloseWhenFlushed = true;
+            return Response.error(requestId, ResponseStatus.BAD_REQUEST, "Unknown request type " + typeCode);
+        }
+
+        if (!mHandshakeComplete && type.get() != RequestType.HELLO) {
+            mCloseWhenFlushed = true;
+            return Response.error(requestId, ResponseStatus.BAD_REQUEST, "Expected " + RequestType.HELLO);
+        }
+
+        if (type.get() == RequestType.ADMISSION) {
+            return answerAdmission(requestId);
+        }
+        if (type.get().isBulk()) {
+            if (!mScheduler.isAdmitted(mClient)) {
+                return Response.error(requestId, ResponseStatus.NOT_ADMITTED, "Not admitted for " + type.get());
+            }
+            mScheduler.recordProgress(mClient);
+        }
+
+        final Response response = mRequestHandler.handle(requestId, type.get(), payload);
+        if (type.get() == RequestType.HELLO) {
+            mHandshakeComplete = response.isOk();
+            mCloseWhenFlushed = !mHandshakeComplete;
+            if (mHandshakeComplete) {
+                // Clients are scheduled by the address they connect from, not the ID they chose
+                mClient = mScheduler.register(mChannel.socket().getInetAddress());
+            }
+        }
+        return type.get().isBulk() ? response.asBulk() : response;
+    }
+
+    private Response answerAdmission(final int requestId) {
+        final boolean admitted = mScheduler.requestAdmission(mClient);
+        final ByteBuffer body = ByteBuffer.allocate(Byte.BYTES + Integer.BYTES + Long.BYTES);
+        body.put((byte) (admitted ? 1 : 0))
+            .putInt(mScheduler.getClientsAhead(mClient))
+            .putLong(mScheduler.getEstimatedWait(mClient).toMillis())
+            .flip();
+        return Response.ok(requestId, body);
+    }
+
+    private void updateInterest() {
+        int interestOps = 0;
+        if (!mCloseWhenFlushed && mPendingResponses.size() < MAX_PENDING_RESPONSES) {
+            interestOps |= SelectionKey.OP_READ;
+        }
+        if (!mThrottled && !mPendingResponses.isEmpty()) {
+            interestOps |= SelectionKey.OP_WRITE;
+        }
+        mKey.interestOps(interestOps);
+    }
+}
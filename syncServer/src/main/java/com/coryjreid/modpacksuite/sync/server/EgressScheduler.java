@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which clients may download and how fast, so a release which makes every player restart at once slows
+ * everyone down a little instead of making most of them time out.
+ * <br><br>
+ * At most a configured number of clients are admitted to bulk requests at once (see
+ * {@link com.coryjreid.modpacksuite.sync.common.protocol.Protocol}). The others wait in a queue in the order they
+ * asked, and are told roughly how long they will wait based on how long admitted clients have recently stayed. A
+ * client which never needs a file, e.g. one which is already up to date, never enters the queue. An admitted client
+ * which makes no progress on bulk requests for the idle timeout while others are queued loses its place, so a stalled
+ * client cannot hold one until its sockets time out; it has to queue again for its next bulk request.
+ * <br><br>
+ * Clients are told apart by their address rather than the ID they send, so a client cannot earn extra places or
+ * shares by opening connections under several IDs. Players behind one router therefore share a place and a share.
+ * <br><br>
+ * When the egress rate is capped, every client has a token bucket which refills at an equal share of the cap among
+ * the clients currently downloading. A client on a fast link therefore cannot starve the others, and opening more
+ * connections does not earn it a larger share since its connections share one bucket. Responses to small requests
+ * are charged to the bucket but never wait for it. A connection still writes its responses in request order, so one
+ * queued behind a throttled bulk body waits for that body; clients keep bulk requests on connections of their own.
+ * <br><br>
+ * Safe to use from every {@link EventLoop} at once.
+ */
+final class EgressScheduler {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * A client which wanted to send within this window counts towards the clients the egress rate is shared by. It
+     * is short so the share of a client which stopped reading, e.g. while it flushes to disk, goes to the others.
+     */
+    private static final long BUSY_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long RATE_UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * A bucket holds up to this long of its refill rate, but never less than {@link #MIN_BURST_BYTES}.
+     */
+    private static final double BURST_SECONDS = 0.25;
+    private static final double MIN_BURST_BYTES = 256 * 1024;
+
+    /**
+     * A throttled client waits until its bucket holds at least this much, so it is not woken up for tiny writes.
+     */
+    private static final double MIN_WRITE_BYTES = 16 * 1024;
+
+    /**
+     * The time an admitted client is assumed to stay until the first one leaves.
+     */
+    private static final Duration INITIAL_STAY = Duration.ofSeconds(30);
+    private static final double STAY_SMOOTHING = 0.2;
+
+    /**
+     * How long an admitted client may go without progress on bulk requests before a queued client takes its place.
+     */
+    static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final int mMaxActiveClients;
+    private final long mMaxEgressRate;
+    private final long mIdleTimeoutNanos;
+    private final Map<InetAddress, Client> mClients = new HashMap<>();
+    private final Deque<Client> mQueue = new ArrayDeque<>();
+    private int mActiveClients;
+    private double mAverageStayNanos = INITIAL_STAY.toNanos();
+    private double mFairRate;
+    private long mFairRateUpdatedAt;
+
+    /**
+     * @param maxActiveClients the most clients admitted to bulk requests at once, {@code 0} admits every client
+     * @param maxEgressRate the bytes per second shared by every client, {@code 0} does not cap the rate
+     */
+    EgressScheduler(final int maxActiveClients, final long maxEgressRate) {
+        this(maxActiveClients, maxEgressRate, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param maxActiveClients the most clients admitted to bulk requests at once, {@code 0} admits every client
+     * @param maxEgressRate the bytes per second shared by every client, {@code 0} does not cap the rate
+     * @param idleTimeout how long an admitted client may go without progress on bulk requests before a queued client
+     *     takes its place (never {@code null})
+     */
+    EgressScheduler(final int maxActiveClients, final long maxEgressRate, final Duration idleTimeout) {
+        Preconditions.checkArgument(maxActiveClients >= 0, "maxActiveClients cannot be negative");
+        Preconditions.checkArgument(maxEgressRate >= 0, "maxEgressRate cannot be negative");
+        Preconditions.checkArgument(!idleTimeout.isNegative(), "idleTimeout cannot be negative");
+
+        mMaxActiveClients = maxActiveClients;
+        mMaxEgressRate = maxEgressRate;
+        mIdleTimeoutNanos = idleTimeout.toNanos();
+        mFairRate = maxEgressRate;
+        mFairRateUpdatedAt = System.nanoTime() - RATE_UPDATE_INTERVAL_NANOS;
+    }
+
+    /**
+     * Adds a connection of a client, the connections of a client share its place in the queue and its bucket.
+     *
+     * @param address the address the connection comes from (never {@code null})
+     * @return the client, which must be {@link #release(Client) released} when the connection closes
+     */
+    synchronized Client register(final InetAddress address) {
+        Preconditions.checkNotNull(address, "address cannot be null");
+
+        final Client client = mClients.computeIfAbsent(address, key -> new Client(key, System.nanoTime()));
+        client.mConnections++;
+        return client;
+    }
+
+    /**
+     * Removes a connection of a client. Once its last connection is gone the client leaves the queue or frees its
+     * place for the next queued client.
+     *
+     * @param client the client the connection was registered for (never {@code null})
+     */
+    synchronized void release(final Client client) {
+        if (--client.mConnections > 0) {
+            return;
+        }
+        mClients.remove(client.mAddress);
+        if (client.mState == State.QUEUED) {
+            mQueue.remove(client);
+        } else if (client.mState == State.ADMITTED) {
+            leave(client, System.nanoTime());
+            admitQueuedClients();
+        }
+    }
+
+    /**
+     * Admits a client if there is room, otherwise puts it at the end of the queue unless it is already waiting.
+     *
+     * @param client the client which wants to make bulk requests (never {@code null})
+     * @return {@code true} if the client is admitted
+     */
+    synchronized boolean requestAdmission(final Client client) {
+        if (client.mState == State.NEW) {
+            client.mState = State.QUEUED;
+            mQueue.add(client);
+            admitQueuedClients();
+            if (client.mState == State.QUEUED) {
+                sLogger.debug("Queued client {} behind {} others", client.mAddress, mQueue.size() - 1);
+            }
+        }
+        if (client.mState == State.QUEUED) {
+            // Queued clients keep asking, which is when places held by idle clients are handed on
+            evictIdleClients();
+        }
+        return isAdmitted(client);
+    }
+
+    /**
+     * Notes that a client made progress on its bulk requests, either by making one or by receiving part of a body.
+     * Only admitted clients which make no progress for the idle timeout lose their place.
+     *
+     * @param client a client (never {@code null})
+     */
+    synchronized void recordProgress(final Client client) {
+        client.mProgressAt = System.nanoTime();
+    }
+
+    /**
+     * @param client a client (never {@code null})
+     * @return {@code true} if the client may make bulk requests
+     */
+    synchronized boolean isAdmitted(final Client client) {
+        return mMaxActiveClients == 0 || client.mState == State.ADMITTED;
+    }
+
+    /**
+     * @param client a client (never {@code null})
+     * @return the number of clients queued ahead of the client, {@code 0} if it is not queued
+     */
+    synchronized int getClientsAhead(final Client client) {
+        int clientsAhead = 0;
+        for (final Iterator<Client> queued = mQueue.iterator(); queued.hasNext(); clientsAhead++) {
+            if (queued.next() == client) {
+                return clientsAhead;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Estimates the wait of a queued client. A place is freed every average stay divided by the number of places.
+     *
+     * @param client a client (never {@code null})
+     * @return the estimated time until the client is admitted, {@link Duration#ZERO} if it is not queued
+     */
+    synchronized Duration getEstimatedWait(final Client client) {
+        if (client.mState != State.QUEUED) {
+            return Duration.ZERO;
+        }
+        final double waitNanos = (getClientsAhead(client) + 1) * mAverageStayNanos / mMaxActiveClients;
+        return Duration.ofNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), (long) waitNanos));
+    }
+
+    /**
+     * Takes bytes for a bulk response out of a client's bucket.
+     *
+     * @param client the client sending (never {@code null})
+     * @param wanted the number of bytes the client wants to send
+     * @return the number of bytes the client may send now, {@code 0} if it has to wait for
+     *     {@link #getRefillDelayNanos(Client)}
+     */
+    synchronized long acquire(final Client client, final long wanted) {
+        if (mMaxEgressRate == 0) {
+            return wanted;
+        }
+        final long now = System.nanoTime();
+        client.mBusyAt = now;
+        refill(client, now);
+        if (client.mTokens < 1) {
+            return 0;
+        }
+        final long granted = (long) Math.min(wanted, client.mTokens);
+        client.mTokens -= granted;
+        return granted;
+    }
+
+    /**
+     * Puts bytes which were {@link #acquire(Client, long) acquired} but not sent back into a client's bucket.
+     */
+    synchronized void refund(final Client client, final long bytes) {
+        if (mMaxEgressRate > 0) {
+            client.mTokens += bytes;
+        }
+    }
+
+    /**
+     * Takes the bytes of a response which does not wait for the bucket out of it, which may leave it in debt.
+     */
+    synchronized void charge(final Client client, final long bytes) {
+        if (mMaxEgressRate > 0) {
+            refill(client, System.nanoTime());
+            client.mTokens -= bytes;
+        }
+    }
+
+    /**
+     * @param client a client whose bucket ran dry (never {@code null})
+     * @return how long until the client's bucket holds enough for a worthwhile write
+     */
+    synchronized long getRefillDelayNanos(final Client client) {
+        final double missingBytes = Math.min(MIN_WRITE_BYTES, getBurstBytes()) - client.mTokens;
+        final long delayNanos = (long) (missingBytes / mFairRate * TimeUnit.SECONDS.toNanos(1));
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(1), delayNanos);
+    }
+
+    private void admitQueuedClients() {
+        while (!mQueue.isEmpty() && (mMaxActiveClients == 0 || mActiveClients < mMaxActiveClients)) {
+            final Client client = mQueue.poll();
+            client.mState = State.ADMITTED;
+            client.mAdmittedAt = System.nanoTime();
+            client.mProgressAt = client.mAdmittedAt;
+            mActiveClients++;
+        }
+    }
+
+    private void evictIdleClients() {
+        final long now = System.nanoTime();
+        for (final Client client : mClients.values()) {
+            if (client.mState == State.ADMITTED && now - client.mProgressAt > mIdleTimeoutNanos) {
+                sLogger.info("Client {} made no progress for {}s, handing its place on", client.mAddress,
+                    TimeUnit.NANOSECONDS.toSeconds(now - client.mProgressAt));
+                client.mState = State.NEW;
+                leave(client, now);
+            }
+        }
+        admitQueuedClients();
+    }
+
+    /**
+     * Frees the place of an admitted client.
+     */
+    private void leave(final Client client, final long now) {
+        mActiveClients--;
+        mAverageStayNanos += STAY_SMOOTHING * (now - client.mAdmittedAt - mAverageStayNanos);
+    }
+
+    private void refill(final Client client, final long now) {
+        updateFairRate(now);
+        final double refilled = client.mTokens + (now - client.mRefilledAt) * mFairRate / TimeUnit.SECONDS.toNanos(1);
+        client.mTokens = Math.min(getBurstBytes(), refilled);
+        client.mRefilledAt = now;
+    }
+
+    /**
+     * Shares the egress rate equally between the clients which recently wanted to send.
+     */
+    private void updateFairRate(final long now) {
+        if (now - mFairRateUpdatedAt < RATE_UPDATE_INTERVAL_NANOS) {
+            return;
+        }
+        int busyClients = 0;
+        for (final Client client : mClients.values()) {
+            if (now - client.mBusyAt <= BUSY_WINDOW_NANOS) {
+                busyClients++;
+            }
+        }
+        mFairRate = (double) mMaxEgressRate / Math.max(1, busyClients);
+        mFairRateUpdatedAt = now;
+    }
+
+    private double getBurstBytes() {
+        return Math.max(MIN_BURST_BYTES, mFairRate * BURST_SECONDS);
+    }
+
+    private enum State {
+        NEW,
+        QUEUED,
+        ADMITTED
+    }
+
+    /**
+     * The scheduling state of one client, shared by its connections. Only accessed while holding the lock of the
+     * {@link EgressScheduler}.
+     */
+    static final class Client {
+        private final InetAddress mAddress;
+        private int mConnections;
+        private State mState = State.NEW;
+        private long mAdmittedAt;
+        private long mProgressAt;
+        private double mTokens;
+        private long mRefilledAt;
+        private long mBusyAt;
+
+        private Client(final InetAddress address, final long createdAt) {
+            mAddress = address;
+            mRefilledAt = createdAt;
+            mBusyAt = createdAt - BUSY_WINDOW_NANOS - 1;
+        }
+    }
+}
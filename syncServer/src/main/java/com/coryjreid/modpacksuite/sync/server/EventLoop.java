@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread which services many {@link Connection}s with a single {@link Selector}, so the number of threads does not
+ * grow with the number of clients. Connections which are throttled by the {@link EgressScheduler} are woken up by the
+ * loop itself once their client's bucket has refilled.
+ */
+final class EventLoop implements Runnable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Selector mSelector;
+    private final RequestHandler mRequestHandler;
+    private final EgressScheduler mScheduler;
+    private final Queue<SocketChannel> mNewChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<Wakeup> mWakeups = new PriorityQueue<>(Comparator.comparingLong(wakeup -> wakeup.mDueAt));
+    private volatile boolean mRunning = true;
+
+    EventLoop(final RequestHandler requestHandler, final EgressScheduler scheduler) throws IOException {
+        mSelector = Selector.open();
+        mRequestHandler = requestHandler;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Hands a newly accepted channel to this loop. Safe to call from any thread.
+     *
+     * @param channel the accepted channel, already in non-blocking mode
+     */
+    void register(final SocketChannel channel) {
+        mNewChannels.add(channel);
+        mSelector.wakeup();
+    }
+
+    /**
+     * Stops the loop and closes every connection it owns. Safe to call from any thread.
+     */
+    void shutdown() {
+        mRunning = false;
+        mSelector.wakeup();
+    }
+
+    /**
+     * Calls {@link Connection#onRefilled()} after a delay. Must be called from this loop's thread.
+     *
+     * @param connection the throttled connection
+     * @param delayNanos how long to wait
+     */
+    void resumeLater(final Connection connection, final long delayNanos) {
+        mWakeups.add(new Wakeup(connection, System.nanoTime() + delayNanos));
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (mRunning) {
+                mSelector.select(getSelectTimeoutMillis());
+                registerNewChannels();
+                resumeDueConnections();
+
+                final Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    service(key);
+                }
+            }
+        } catch (final IOException | ClosedSelectorException exception) {
+            sLogger.error("Event loop failed", exception);
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * @return how long to wait for events before the next throttled connection is due, {@code 0} to wait indefinitely
+     */
+    private long getSelectTimeoutMillis() {
+        final Wakeup next = mWakeups.peek();
+        if (next == null) {
+            return 0;
+        }
+        final long delayNanos = next.mDueAt - System.nanoTime();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    private void resumeDueConnections() {
+        final long now = System.nanoTime();
+        while (!mWakeups.isEmpty() && mWakeups.peek().mDueAt - now <= 0) {
+            final Connection connection = mWakeups.poll().mConnection;
+            try {
+                connection.onRefilled();
+            } catch (final IOException exception) {
+                sLogger.debug("Closing connection after failure", exception);
+                connection.close();
+            }
+        }
+    }
+
+    private void registerNewChannels() {
+        SocketChannel channel;
+        while ((channel = mNewChannels.poll()) != null) {
+            try {
+                final SelectionKey key = channel.register(mSelector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, this, mRequestHandler, mScheduler));
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to register connection", exception);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static void service(final SelectionKey key) {
+        final Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (final IOException exception) {
+            sLogger.debug("Closing connection after failure", exception);
+            connection.close();
+        }
+    }
+
+    private void closeAll() {
+        for (final SelectionKey key : mSelector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        SocketChannel channel;
+        while ((channel = mNewChannels.poll()) != null) {
+            closeQuietly(channel);
+        }
+        try {
+            mSelector.close();
+        } catch (final IOException exception) {
+            sLogger.debug("Failed to close selector", exception);
+        }
+    }
+
+    /**
+     * A throttled connection and when to resume it.
+     */
+    private static final class Wakeup {
+        private final Connection mConnection;
+        private final long mDueAt;
+
+        Wakeup(final Connection connection, final long dueAt) {
+            mConnection = connection;
+            mDueAt = dueAt;
+        }
+    }
+
+    private static void closeQuietly(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ignoredException) {
+            // Nothing more can be done
+        }
+    }
+}
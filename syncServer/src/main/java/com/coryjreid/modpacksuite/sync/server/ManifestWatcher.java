@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the manifest a {@link SyncServer} publishes current without rescanning the pack. The state of every served
+ * file is kept in a persistent {@link FileStateIndex}, so a restart only rehashes files which changed while the server
+ * was down. While running, the served trees are watched with a {@link WatchService} and only the paths named by its
+ * events are rehashed.
+ * <br><br>
+ * Edits are published in batches: a new manifest is only built once no change has been seen for the settle time, so
+ * an admin copying a folder of configs causes one publish rather than dozens, and clients never see a manifest with
+ * only part of an edit in it.
+ */
+final class ManifestWatcher implements Runnable, Closeable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final SyncServer mServer;
+    private final Path mPackRoot;
+    private final List<String> mTrees;
+    private final Path mIndexFile;
+    private final Duration mSettleTime;
+    private final FileStateIndex mIndex;
+    private final Map<WatchKey, Path> mWatchedDirectories = new HashMap<>();
+    private final Set<String> mPendingPaths = new TreeSet<>();
+    private WatchService mWatchService;
+    private boolean mRescanPending;
+    private HashCode mPublishedFingerprint;
+
+    /**
+     * @param server the server to publish changes to (never {@code null})
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param trees the served trees relative to the pack root (never {@code null})
+     * @param indexFile the file the index of the served files is kept in (never {@code null})
+     * @param settleTime how long the trees must go without changes before they are published (never {@code null})
+     */
+    ManifestWatcher(
+        final SyncServer server,
+        final Path packRoot,
+        final List<String> trees,
+        final Path indexFile,
+        final Duration settleTime) {
+
+        mServer = Preconditions.checkNotNull(server, "server cannot be null");
+        mPackRoot = Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        mTrees = ImmutableList.copyOf(Preconditions.checkNotNull(trees, "trees cannot be null"));
+        mIndexFile = Preconditions.checkNotNull(indexFile, "indexFile cannot be null");
+        mSettleTime = Preconditions.checkNotNull(settleTime, "settleTime cannot be null");
+        mIndex = FileStateIndex.load(indexFile);
+    }
+
+    /**
+     * Brings the whole index up to date with the disk, rehashing only files whose size or last modified time changed,
+     * and publishes the result.
+     *
+     * @throws IOException if a tree could not be listed, a file could not be read or the pack could not be published
+     */
+    void scan() throws IOException {
+        int hashed = 0;
+        for (final String tree : mTrees) {
+            hashed += mIndex.update(mPackRoot, tree);
+        }
+        sLogger.info("Scanned '{}' ({} files hashed)", mPackRoot.toAbsolutePath(), hashed);
+        publish();
+    }
+
+    /**
+     * Starts watching the served trees on a new thread. The pack must have been {@link #scan() scanned} first.
+     *
+     * @throws IOException if the watch service could not be created or a directory could not be registered
+     */
+    synchronized void start() throws IOException {
+        Preconditions.checkState(mPublishedFingerprint != null, "The pack must be scanned before watching it");
+        Preconditions.checkState(mWatchService == null, "The watcher has already been started");
+
+        mWatchService = FileSystems.getDefault().newWatchService();
+        // The pack root is watched so that trees which are created later are picked up
+        register(mPackRoot);
+        for (final String tree : mTrees) {
+            registerAll(mPackRoot.resolve(tree));
+        }
+        new Thread(this, "manifest-watcher").start();
+    }
+
+    /**
+     * Stops watching. Edits which have not settled yet are not published.
+     */
+    @Override
+    public synchronized void close() {
+        if (mWatchService == null) {
+            return;
+        }
+
+        try {
+            mWatchService.close();
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to close the watch service", exception);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                final WatchKey key = isBatchPending()
+                    ? mWatchService.poll(mSettleTime.toMillis(), TimeUnit.MILLISECONDS)
+                    : mWatchService.take();
+                if (key == null) {
+                    publishBatch();
+                } else {
+                    collectEvents(key);
+                }
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException exception) {
+            sLogger.debug("Stopped watching '{}'", mPackRoot.toAbsolutePath());
+        }
+    }
+
+    private boolean isBatchPending() {
+        return mRescanPending || !mPendingPaths.isEmpty();
+    }
+
+    private void collectEvents(final WatchKey key) {
+        final Path directory = mWatchedDirectories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                // Events were lost, only a rescan can tell what changed
+                mRescanPending = true;
+                continue;
+            }
+
+            final Path file = directory.resolve((Path) event.context());
+            final String path = mPackRoot.relativize(file).toString().replace('\\', '/');
+            if (directory.equals(mPackRoot) && !mTrees.contains(path)) {
+                continue;
+            }
+
+            mPendingPaths.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                try {
+                    registerAll(file);
+                } catch (final IOException exception) {
+                    sLogger.warn("Failed to watch '{}', rescanning instead", file, exception);
+                    mRescanPending = true;
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            // The directory was deleted, its contents were reported before it went away
+            mWatchedDirectories.remove(key);
+        }
+    }
+
+    /**
+     * Publishes the pending changes. The batch is only cleared once it has been published, so a failed batch is tried
+     * again after the next settle time even if nothing else changes.
+     */
+    private void publishBatch() {
+        try {
+            if (mRescanPending) {
+                scan();
+                mRescanPending = false;
+                mPendingPaths.clear();
+                return;
+            }
+
+            final int hashed = mIndex.refresh(mPackRoot, mPendingPaths);
+            sLogger.info("Updated {} changed paths ({} files hashed)", mPendingPaths.size(), hashed);
+            publish();
+            mPendingPaths.clear();
+        } catch (final IOException exception) {
+            // Most likely a file is still being written, so the batch is tried again once it has settled
+            sLogger.warn("Failed to update the manifest, retrying in {}", mSettleTime, exception);
+        }
+    }
+
+    private void publish() throws IOException {
+        mIndex.save(mIndexFile);
+
+        final PackManifest manifest =
+            new PackManifest(mTrees.stream().map(mIndex::getManifest).collect(Collectors.toList()));
+        if (manifest.getFingerprint().equals(mPublishedFingerprint)) {
+            sLogger.debug("Fingerprint {} is unchanged", mPublishedFingerprint);
+            return;
+        }
+        mServer.publish(manifest);
+        mPublishedFingerprint = manifest.getFingerprint();
+    }
+
+    private void registerAll(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        final List<Path> directories;
+        try (Stream<Path> paths = Files.walk(directory, FileVisitOption.FOLLOW_LINKS)) {
+            directories = paths.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (final Path subdirectory : directories) {
+            register(subdirectory);
+        }
+    }
+
+    private void register(final Path directory) throws IOException {
+        final WatchKey key = directory.register(
+            mWatchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        mWatchedDirectories.put(key, directory);
+    }
+}
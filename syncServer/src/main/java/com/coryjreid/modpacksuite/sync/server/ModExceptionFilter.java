@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.coryjreid.modpacksuite.sync.common.mod.ModMetadataIndex;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the mod exceptions of a {@link ServerConfig} to a manifest before it is published. Jars whose mods are all
+ * server-only or dev-only are left out of the manifest, so clients never download them. Client-only mods belong in
+ * clientmods/ since the server loads everything in mods/ itself, so finding one there is logged.
+ * <br><br>
+ * The mod IDs of each jar come from a {@link ModMetadataIndex} keyed by the hashes the manifest already holds, so only
+ * jars which were added or changed since the last publish are opened.
+ */
+final class ModExceptionFilter {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String SERVER_MODS_TREE = "mods";
+
+    private final Set<String> mExcludedModIds;
+    private final Set<String> mClientOnlyModIds;
+    private final Path mIndexFile;
+    private ModMetadataIndex mIndex;
+
+    /**
+     * @param config the configuration holding the mod exceptions and the cache directory (never {@code null})
+     */
+    ModExceptionFilter(final ServerConfig config) {
+        Preconditions.checkNotNull(config, "config cannot be null");
+
+        mExcludedModIds = ImmutableSet.copyOf(Sets.union(config.getServerOnlyModIds(), config.getDevOnlyModIds()));
+        mClientOnlyModIds = config.getClientOnlyModIds();
+        mIndexFile = config.getCacheDirectory().resolve(ModMetadataIndex.DEFAULT_INDEX_FILE_NAME);
+    }
+
+    /**
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param manifest the manifest of the files currently in the pack root (never {@code null})
+     * @return the manifest without the jars of server-only and dev-only mods
+     */
+    synchronized PackManifest filter(final Path packRoot, final PackManifest manifest) {
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+
+        if (mExcludedModIds.isEmpty() && mClientOnlyModIds.isEmpty()) {
+            return manifest;
+        }
+        if (mIndex == null) {
+            mIndex = ModMetadataIndex.load(mIndexFile);
+        }
+
+        final List<TreeManifest> trees = new ArrayList<>();
+        final Set<HashCode> jarHashes = new HashSet<>();
+        int excludedJars = 0;
+        for (final TreeManifest tree : manifest.getTrees().values()) {
+            final List<ManifestEntry> entries = new ArrayList<>();
+            for (final ManifestEntry entry : tree.getEntries()) {
+                if (!entry.getPath().endsWith(JAR_SUFFIX)) {
+                    entries.add(entry);
+                    continue;
+                }
+
+                jarHashes.add(entry.getHash());
+                final Set<String> modIds = mIndex.getModIds(packRoot.resolve(entry.getPath()), entry.getHash());
+                if (!modIds.isEmpty() && mExcludedModIds.containsAll(modIds)) {
+                    sLogger.debug("Not serving '{}' with mods {}", entry.getPath(), modIds);
+                    excludedJars++;
+                    continue;
+                }
+                if (tree.getName().equals(SERVER_MODS_TREE) && !Collections.disjoint(modIds, mClientOnlyModIds)) {
+                    sLogger.warn(
+                        "'{}' holds client-only mods {} but is loaded by the server, it belongs in clientmods/",
+                        entry.getPath(),
+                        Sets.intersection(modIds, mClientOnlyModIds));
+                }
+                entries.add(entry);
+            }
+            trees.add(new TreeManifest(tree.getName(), entries));
+        }
+
+        mIndex.retainAll(jarHashes);
+        try {
+            Files.createDirectories(mIndexFile.getParent());
+            mIndex.save(mIndexFile);
+        } catch (final IOException exception) {
+            // The index only saves reading jars again
+            sLogger.warn("Failed to save the mod index to '{}'", mIndexFile, exception);
+        }
+
+        if (excludedJars > 0) {
+            sLogger.info("Not serving {} jars of server-only or dev-only mods", excludedJars);
+        }
+        return new PackManifest(trees);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.coryjreid.modpacksuite.sync.common.MerkleTree;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.TreeManifest;
+import com.coryjreid.modpacksuite.sync.common.chunk.ChunkList;
+import com.coryjreid.modpacksuite.sync.common.delta.BlockSizePolicy;
+import com.coryjreid.modpacksuite.sync.common.delta.FileSignature;
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+/**
+ * An immutable snapshot of the pack a {@link SyncServer} serves, with every response body which does not depend on
+ * the request encoded once up front. This includes the {@link FileSignature} and {@link ChunkList} of every file, so
+ * the cost of letting clients download deltas is paid once per publish instead of once per client. The listing of
+ * every directory in the {@link MerkleTree} of each tree is encoded up front as well. Precompressed
+ * variants of the files are kept on disk by a {@link VariantCache}, and the release bundles leading to the pack from
+ * earlier versions by a {@link ReleaseBundleStore}.
+ */
+final class PublishedPack {
+    private final Path mPackRoot;
+    private final PackManifest mManifest;
+    private final ByteBuffer mFingerprint;
+    private final Map<String, ByteBuffer> mTreeManifests;
+    private final Map<String, HashCode> mDirectoryHashes;
+    private final Map<String, ByteBuffer> mDirectoryListings;
+    private final Map<String, ByteBuffer> mSignatures;
+    private final Map<String, ByteBuffer> mChunkLists;
+    private final Map<String, Map<ContentEncoding, VariantCache.Variant>> mVariants;
+    private final Map<HashCode, ReleaseBundleStore.Bundle> mBundles;
+
+    private PublishedPack(
+        final Path packRoot,
+        final PackManifest manifest,
+        final Map<String, ByteBuffer> signatures,
+        final Map<String, ByteBuffer> chunkLists,
+        final Map<String, Map<ContentEncoding, VariantCache.Variant>> variants,
+        final Map<HashCode, ReleaseBundleStore.Bundle> bundles) {
+
+        mPackRoot = packRoot;
+        mManifest = manifest;
+        mFingerprint = ByteBuffer.wrap(manifest.getFingerprint().asBytes()).asReadOnlyBuffer();
+
+        final ImmutableMap.Builder<String, ByteBuffer> treeManifests = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, HashCode> directoryHashes = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, ByteBuffer> directoryListings = ImmutableMap.builder();
+        for (final TreeManifest tree : manifest.getTrees().values()) {
+            treeManifests.put(tree.getName(), ByteBuffer.wrap(tree.toByteArray()).asReadOnlyBuffer());
+
+            final MerkleTree merkleTree = MerkleTree.build(tree);
+            for (final String directory : merkleTree.getDirectories()) {
+                directoryHashes.put(directory, merkleTree.getHash(directory).get());
+
+                final byte[] listing = MerkleTree.listingToByteArray(merkleTree.getChildren(directory).get());
+                final ByteBuffer body = ByteBuffer.allocate(1 + listing.length);
+                body.put((byte) 1).put(listing).flip();
+                directoryListings.put(directory, body.asReadOnlyBuffer());
+            }
+        }
+        mTreeManifests = treeManifests.build();
+        mDirectoryHashes = directoryHashes.build();
+        mDirectoryListings = directoryListings.build();
+        mSignatures = signatures;
+        mChunkLists = chunkLists;
+        mVariants = variants;
+        mBundles = bundles;
+    }
+
+    /**
+     * Prepares a manifest for serving by computing the signatures and chunk lists of its files in parallel and making
+     * sure their precompressed variants and release bundles are built. Files which did not change since the previous
+     * pack reuse its work.
+     *
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param manifest the manifest of the files currently in the pack root (never {@code null})
+     * @param blockSizePolicy chooses the block size of each signature (never {@code null})
+     * @param variantCache holds the precompressed variants of the files (never {@code null})
+     * @param bundleStore holds the release bundles (never {@code null})
+     * @param previous the pack which is currently published, or {@code null} if there is none
+     * @return the new {@link PublishedPack}
+     * @throws IOException if a file could not be read
+     */
+    static PublishedPack create(
+        final Path packRoot,
+        final PackManifest manifest,
+        final BlockSizePolicy blockSizePolicy,
+        final VariantCache variantCache,
+        final ReleaseBundleStore bundleStore,
+        final PublishedPack previous) throws IOException {
+
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+        Preconditions.checkNotNull(blockSizePolicy, "blockSizePolicy cannot be null");
+        Preconditions.checkNotNull(variantCache, "variantCache cannot be null");
+        Preconditions.checkNotNull(bundleStore, "bundleStore cannot be null");
+
+        final Map<String, ByteBuffer> signatures = new ConcurrentHashMap<>();
+        final Map<String, ByteBuffer> chunkLists = new ConcurrentHashMap<>();
+        try {
+            manifest.getTrees().values().stream()
+                .flatMap(tree -> tree.getEntries().stream())
+                .parallel()
+                .forEach(entry -> {
+                    if (previous != null
+                        && previous.getManifest().getEntry(entry.getPath()).equals(Optional.of(entry))) {
+
+                        signatures.put(entry.getPath(), previous.mSignatures.get(entry.getPath()));
+                        chunkLists.put(entry.getPath(), previous.mChunkLists.get(entry.getPath()));
+                        return;
+                    }
+                    try {
+                        final Path file = packRoot.resolve(entry.getPath());
+                        final FileSignature signature =
+                            FileSignature.compute(file, blockSizePolicy.getBlockSize(entry.getPath()));
+                        signatures.put(
+                            entry.getPath(),
+                            ByteBuffer.wrap(signature.toByteArray()).asReadOnlyBuffer());
+                        chunkLists.put(
+                            entry.getPath(),
+                            ByteBuffer.wrap(ChunkList.compute(file).toByteArray()).asReadOnlyBuffer());
+                    } catch (final IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+        } catch (final UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+
+        return new PublishedPack(
+            packRoot,
+            manifest,
+            ImmutableMap.copyOf(signatures),
+            ImmutableMap.copyOf(chunkLists),
+            variantCache.prepare(packRoot, manifest),
+            bundleStore.prepare(packRoot, manifest));
+    }
+
+    Path getPackRoot() {
+        return mPackRoot;
+    }
+
+    PackManifest getManifest() {
+        return mManifest;
+    }
+
+    /**
+     * @return a new buffer over the raw fingerprint bytes
+     */
+    ByteBuffer getFingerprint() {
+        return mFingerprint.duplicate();
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root
+     * @return a new buffer over the encoded signature of the file, or empty if the file is not served
+     */
+    Optional<ByteBuffer> getSignature(final String path) {
+        return Optional.ofNullable(mSignatures.get(path)).map(ByteBuffer::duplicate);
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root
+     * @return a new buffer over the encoded chunk list of the file, or empty if the file is not served
+     */
+    Optional<ByteBuffer> getChunkList(final String path) {
+        return Optional.ofNullable(mChunkLists.get(path)).map(ByteBuffer::duplicate);
+    }
+
+    /**
+     * @param path the path of a file relative to the pack root
+     * @param accepted the encodings the client accepts, in order of preference (never {@code null})
+     * @return the first precompressed variant of the file in an accepted encoding, or empty if the file should be sent
+     * as is
+     */
+    Optional<VariantCache.Variant> getVariant(final String path, final List<ContentEncoding> accepted) {
+        final Map<ContentEncoding, VariantCache.Variant> variants = mVariants.get(path);
+        if (variants == null) {
+            return Optional.empty();
+        }
+        return accepted.stream().map(variants::get).filter(variant -> variant != null).findFirst();
+    }
+
+    /**
+     * @param fromFingerprint the fingerprint of the pack version a client has
+     * @return the release bundle leading from that version to this pack, or empty if there is none
+     */
+    Optional<ReleaseBundleStore.Bundle> getBundle(final HashCode fromFingerprint) {
+        return Optional.ofNullable(mBundles.get(fromFingerprint));
+    }
+
+    /**
+     * @param tree the name of the tree
+     * @return a new buffer over the encoded manifest of the tree, or empty if the tree is not served
+     */
+    Optional<ByteBuffer> getTreeManifest(final String tree) {
+        return Optional.ofNullable(mTreeManifests.get(tree)).map(ByteBuffer::duplicate);
+    }
+
+    /**
+     * @param path the path of a directory relative to the pack root, e.g. {@code config/jei}
+     * @param expectedHash the hash the client has for the directory, or {@code null} if it has none
+     * @return a new buffer over the {@link com.coryjreid.modpacksuite.sync.common.protocol.RequestType#DIRECTORY}
+     *     body for the directory, or empty if the directory is not served
+     */
+    Optional<ByteBuffer> getDirectory(final String path, final HashCode expectedHash) {
+        final HashCode hash = mDirectoryHashes.get(path);
+        if (hash == null) {
+            return Optional.empty();
+        }
+        if (hash.equals(expectedHash)) {
+            return Optional.of(ByteBuffer.wrap(new byte[] {0}));
+        }
+        return Optional.of(mDirectoryListings.get(path).duplicate());
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.bundle.ReleaseBundle;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashingOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk store of {@link ReleaseBundle}s. The manifest of every published version is kept, and when a version is
+ * published a bundle leading to it is built from each of the most recent earlier versions. Clients still on one of
+ * those versions then catch up with a single sequential download which the server sends straight from disk, instead of
+ * negotiating every changed file on their own. Manifests and bundles outlive restarts, so a pack updated while the
+ * server was down gets its bundles too.
+ */
+final class ReleaseBundleStore {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String BUNDLE_SUFFIX = ".bundle";
+
+    private final Path mDirectory;
+    private final int mVersions;
+
+    /**
+     * @param directory the directory to keep manifests and bundles in, it is created if needed (never {@code null})
+     * @param versions the number of earlier versions to build bundles from, {@code 0} disables bundles
+     */
+    ReleaseBundleStore(final Path directory, final int versions) {
+        Preconditions.checkArgument(versions >= 0, "versions cannot be negative");
+
+        mDirectory = Preconditions.checkNotNull(directory, "directory cannot be null");
+        mVersions = versions;
+    }
+
+    /**
+     * Records a manifest as the most recent version and makes sure the bundles leading to it are built. Manifests of
+     * versions which are no longer recent enough and bundles which lead elsewhere are removed.
+     *
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param manifest the manifest being published (never {@code null})
+     * @return the bundles leading to the manifest keyed by the fingerprint of the version they apply to
+     * @throws IOException if the store could not be written
+     */
+    Map<HashCode, Bundle> prepare(final Path packRoot, final PackManifest manifest) throws IOException {
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+
+        if (mVersions == 0) {
+            return ImmutableMap.of();
+        }
+        Files.createDirectories(mDirectory);
+
+        final HashCode toFingerprint = manifest.getFingerprint();
+        final Path manifestFile = mDirectory.resolve(toFingerprint + MANIFEST_SUFFIX);
+        if (Files.exists(manifestFile)) {
+            // Publishing a version again makes it the most recent one
+            Files.setLastModifiedTime(manifestFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            writeManifest(manifest, manifestFile);
+        }
+
+        final List<Path> previousManifests = listFiles(MANIFEST_SUFFIX).stream()
+            .filter(file -> !file.equals(manifestFile))
+            .sorted(Comparator.comparing(ReleaseBundleStore::getLastModifiedTime).reversed())
+            .collect(Collectors.toList());
+        for (final Path staleManifest : previousManifests.subList(Math.min(mVersions, previousManifests.size()),
+            previousManifests.size())) {
+
+            Files.deleteIfExists(staleManifest);
+        }
+
+        final Map<HashCode, Bundle> bundles = new HashMap<>();
+        final int versions = Math.min(mVersions, previousManifests.size());
+        for (final Path previousManifest : previousManifests.subList(0, versions)) {
+            final String fromName = previousManifest.getFileName().toString().replace(MANIFEST_SUFFIX, "");
+            final Path bundleFile = mDirectory.resolve(fromName + "-" + toFingerprint + BUNDLE_SUFFIX);
+            if (Files.exists(bundleFile) || build(packRoot, previousManifest, manifest, bundleFile)) {
+                bundles.put(HashCode.fromString(fromName), new Bundle(bundleFile, Files.size(bundleFile)));
+            }
+        }
+
+        final List<Path> builtBundles = bundles.values().stream().map(Bundle::getFile).collect(Collectors.toList());
+        for (final Path bundleFile : listFiles(BUNDLE_SUFFIX)) {
+            if (!builtBundles.contains(bundleFile)) {
+                Files.deleteIfExists(bundleFile);
+            }
+        }
+        return ImmutableMap.copyOf(bundles);
+    }
+
+    /**
+     * Builds the bundle leading from an earlier version to the one being published.
+     *
+     * @return {@code false} if the earlier manifest is unreadable or a file changed while it was bundled
+     */
+    private boolean build(
+        final Path packRoot,
+        final Path fromManifestFile,
+        final PackManifest to,
+        final Path bundleFile) throws IOException {
+
+        final PackManifest from;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(fromManifestFile))) {
+            from = PackManifest.readFrom(new DataInputStream(input));
+        } catch (final IOException exception) {
+            sLogger.warn("Discarding unreadable manifest '{}'", fromManifestFile, exception);
+            Files.deleteIfExists(fromManifestFile);
+            return false;
+        }
+
+        final ReleaseBundle bundle = ReleaseBundle.diff(from, to);
+        final Path temporaryFile = Files.createTempFile(mDirectory, bundleFile.getFileName().toString(), null);
+        try {
+            try (DataOutputStream output =
+                     new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+
+                bundle.writeHeader(output);
+                for (final ManifestEntry entry : bundle.getFiles()) {
+                    if (!copyVerified(packRoot, entry, output)) {
+                        sLogger.warn("'{}' changed while it was bundled, skipping the bundle from {}",
+                            entry.getPath(), from.getFingerprint());
+                        return false;
+                    }
+                }
+            }
+            Files.move(temporaryFile, bundleFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        sLogger.info("Built release bundle from {} ({} files changed, {} deleted, {} bytes)",
+            from.getFingerprint(), bundle.getFiles().size(), bundle.getDeletedPaths().size(), Files.size(bundleFile));
+        return true;
+    }
+
+    /**
+     * Appends a file to a bundle, checking that it still matches the manifest.
+     */
+    private static boolean copyVerified(final Path packRoot, final ManifestEntry entry, final OutputStream output)
+        throws IOException {
+
+        // The hashing stream must not close the bundle along with itself
+        final OutputStream unclosableOutput = new FilterOutputStream(output) {
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() {
+                // Nothing to do.
+            }
+        };
+        try (HashingOutputStream hashingOutput =
+                 new HashingOutputStream(ContentHasher.HASH_FUNCTION, unclosableOutput)) {
+
+            final long copied = Files.copy(packRoot.resolve(entry.getPath()), hashingOutput);
+            return copied == entry.getSize() && hashingOutput.hash().equals(entry.getHash());
+        }
+    }
+
+    private static void writeManifest(final PackManifest manifest, final Path manifestFile) throws IOException {
+        final Path temporaryFile =
+            Files.createTempFile(manifestFile.getParent(), manifestFile.getFileName().toString(), null);
+        try {
+            try (DataOutputStream output =
+                     new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+
+                manifest.writeTo(output);
+            }
+            Files.move(
+                temporaryFile,
+                manifestFile,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private List<Path> listFiles(final String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(mDirectory)) {
+            return files
+                .filter(file -> file.getFileName().toString().endsWith(suffix))
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static FileTime getLastModifiedTime(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (final IOException exception) {
+            // A file which cannot be inspected is treated as the oldest one
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * A built bundle.
+     */
+    static final class Bundle {
+        private final Path mFile;
+        private final long mLength;
+
+        Bundle(final Path file, final long length) {
+            mFile = file;
+            mLength = length;
+        }
+
+        Path getFile() {
+            return mFile;
+        }
+
+        long getLength() {
+            return mLength;
+        }
+    }
+}
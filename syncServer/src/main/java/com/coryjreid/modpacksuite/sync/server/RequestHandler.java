@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.coryjreid.modpacksuite.sync.common.ContentHasher;
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.RequestType;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers decoded requests from the currently {@link PublishedPack published pack}. Only files listed in the manifest
+ * are ever served, so requests cannot reach anything else on disk.
+ */
+final class RequestHandler {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Supplier<PublishedPack> mPublishedPack;
+
+    /**
+     * @param publishedPack supplies the pack to answer from, it is read once per request (never {@code null})
+     */
+    RequestHandler(final Supplier<PublishedPack> publishedPack) {
+        mPublishedPack = Preconditions.checkNotNull(publishedPack, "publishedPack cannot be null");
+    }
+
+    /**
+     * @param requestId the ID of the request
+     * @param type the type of the request
+     * @param payload the payload of the request
+     * @return the response to send back (never {@code null})
+     */
+    Response handle(final int requestId, final RequestType type, final byte[] payload) {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            switch (type) {
+                case HELLO:
+                    return handleHello(requestId, input);
+                case FINGERPRINT:
+                    return Response.ok(requestId, mPublishedPack.get().getFingerprint());
+                case MANIFEST:
+                    return handleManifest(requestId, input);
+                case FILE:
+                    return handleFile(requestId, input);
+                case ENCODED_FILE:
+                    return handleEncodedFile(requestId, input);
+                case DIRECTORY:
+                    return handleDirectory(requestId, input);
+                case BUNDLE:
+                    return handleBundle(requestId, input);
+                case SIGNATURE:
+                    return handleFileMetadata(requestId, input, PublishedPack::getSignature);
+                case CHUNKS:
+                    return handleFileMetadata(requestId, input, PublishedPack::getChunkList);
+                default:
+                    return Response.error(requestId, ResponseStatus.BAD_REQUEST, "Unsupported request " + type);
+            }
+        } catch (final IOException exception) {
+            // The payload is in memory so this is a request which ended early
+            return Response.error(requestId, ResponseStatus.BAD_REQUEST, "Malformed " + type + " request");
+        }
+    }
+
+    private static Response handleHello(final int requestId, final DataInputStream input) throws IOException {
+        final int clientVersion = input.readInt();
+        if (clientVersion != Protocol.VERSION) {
+            return Response.error(
+                requestId,
+                ResponseStatus.BAD_REQUEST,
+                "Unsupported protocol version " + clientVersion + ", expected " + Protocol.VERSION);
+        }
+        // The client ID is for the connection, reading it only checks that it was sent
+        input.readLong();
+        final ByteBuffer body = ByteBuffer.allocate(Integer.BYTES).putInt(Protocol.VERSION);
+        body.flip();
+        return Response.ok(requestId, body);
+    }
+
+    private Response handleManifest(final int requestId, final DataInputStream input) throws IOException {
+        final String tree = input.readUTF();
+        final Optional<ByteBuffer> treeManifest = mPublishedPack.get().getTreeManifest(tree);
+        if (!treeManifest.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "Tree '" + tree + "' is not served");
+        }
+        return Response.ok(requestId, treeManifest.get());
+    }
+
+    private Response handleDirectory(final int requestId, final DataInputStream input) throws IOException {
+        final String path = input.readUTF();
+        HashCode expectedHash = null;
+        if (input.readBoolean()) {
+            final byte[] hash = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+            input.readFully(hash);
+            expectedHash = HashCode.fromBytes(hash);
+        }
+
+        final Optional<ByteBuffer> directory = mPublishedPack.get().getDirectory(path, expectedHash);
+        if (!directory.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "Directory '" + path + "' is not served");
+        }
+        return Response.ok(requestId, directory.get());
+    }
+
+    private Response handleBundle(final int requestId, final DataInputStream input) throws IOException {
+        final byte[] fingerprint = new byte[ContentHasher.HASH_FUNCTION.bits() / Byte.SIZE];
+        input.readFully(fingerprint);
+        final HashCode fromFingerprint = HashCode.fromBytes(fingerprint);
+
+        final Optional<ReleaseBundleStore.Bundle> bundle = mPublishedPack.get().getBundle(fromFingerprint);
+        if (!bundle.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "No bundle from " + fromFingerprint);
+        }
+        return sendFile(
+            requestId,
+            bundle.get().getFile().getFileName().toString(),
+            bundle.get().getFile(),
+            file -> Response.ok(requestId, file, 0, bundle.get().getLength()));
+    }
+
+    /**
+     * Answers a request for data which the {@link PublishedPack} precomputed for each served file.
+     */
+    private Response handleFileMetadata(
+        final int requestId,
+        final DataInputStream input,
+        final BiFunction<PublishedPack, String, Optional<ByteBuffer>> lookup) throws IOException {
+
+        final String path = input.readUTF();
+        final Optional<ByteBuffer> metadata = lookup.apply(mPublishedPack.get(), path);
+        if (!metadata.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "File '" + path + "' is not served");
+        }
+        return Response.ok(requestId, metadata.get());
+    }
+
+    private Response handleFile(final int requestId, final DataInputStream input) throws IOException {
+        final String path = input.readUTF();
+        final long offset = input.readLong();
+        final long length = input.readLong();
+
+        final PublishedPack publishedPack = mPublishedPack.get();
+        final Optional<ManifestEntry> entry = publishedPack.getManifest().getEntry(path);
+        if (!entry.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "File '" + path + "' is not served");
+        }
+        if (offset < 0 || offset > entry.get().getSize() || length < -1) {
+            return Response.error(requestId, ResponseStatus.BAD_REQUEST, "Invalid range for '" + path + "'");
+        }
+
+        final long available = entry.get().getSize() - offset;
+        return sendFile(
+            requestId,
+            path,
+            publishedPack.getPackRoot().resolve(path),
+            file -> Response.ok(requestId, file, offset, length == -1 ? available : Math.min(length, available)));
+    }
+
+    private Response handleEncodedFile(final int requestId, final DataInputStream input) throws IOException {
+        final String path = input.readUTF();
+        final int encodingCount = input.readUnsignedByte();
+        final List<ContentEncoding> accepted = new ArrayList<>(encodingCount);
+        for (int i = 0; i < encodingCount; i++) {
+            // Encodings added by newer clients are skipped rather than refused
+            ContentEncoding.fromCode(input.readByte()).ifPresent(accepted::add);
+        }
+
+        final PublishedPack publishedPack = mPublishedPack.get();
+        final Optional<ManifestEntry> entry = publishedPack.getManifest().getEntry(path);
+        if (!entry.isPresent()) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "File '" + path + "' is not served");
+        }
+
+        final Optional<VariantCache.Variant> variant = publishedPack.getVariant(path, accepted);
+        final ContentEncoding encoding =
+            variant.map(VariantCache.Variant::getEncoding).orElse(ContentEncoding.IDENTITY);
+        final long length = variant.map(VariantCache.Variant::getLength).orElse(entry.get().getSize());
+        final ByteBuffer prefix = ByteBuffer.allocate(1).put(encoding.getCode());
+        prefix.flip();
+        return sendFile(
+            requestId,
+            path,
+            variant.map(VariantCache.Variant::getFile).orElse(publishedPack.getPackRoot().resolve(path)),
+            file -> Response.ok(requestId, prefix, file, 0, length));
+    }
+
+    /**
+     * Opens a file for sending, answering with an error if it cannot be opened.
+     */
+    private static Response sendFile(
+        final int requestId,
+        final String path,
+        final Path source,
+        final Function<FileChannel, Response> responder) {
+
+        final FileChannel file;
+        try {
+            file = FileChannel.open(source, StandardOpenOption.READ);
+        } catch (final NoSuchFileException exception) {
+            return Response.error(requestId, ResponseStatus.NOT_FOUND, "File '" + path + "' no longer exists");
+        } catch (final IOException exception) {
+            sLogger.error("Failed to open '{}'", path, exception);
+            return Response.error(requestId, ResponseStatus.SERVER_ERROR, "File '" + path + "' could not be read");
+        }
+        return responder.apply(file);
+    }
+}
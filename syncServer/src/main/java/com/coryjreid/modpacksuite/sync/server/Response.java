@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import com.google.common.base.Preconditions;
+
+/**
+ * A response which is written to a non-blocking channel in as many steps as it takes. File bodies are written with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} so their contents never pass through the heap. The
+ * caller can bound how much is written in one step, which is how bulk responses are held to a share of the bandwidth
+ * (see {@link EgressScheduler}).
+ */
+final class Response {
+    private final ResponseStatus mStatus;
+    private final ByteBuffer mHeader;
+    private final Body mBody;
+    private boolean mBulk;
+
+    private Response(final int requestId, final ResponseStatus status, final Body body) {
+        mStatus = status;
+        mHeader = ByteBuffer.allocate(Protocol.RESPONSE_HEADER_SIZE);
+        mHeader.putInt(requestId).put(status.getCode()).putLong(body.getLength()).flip();
+        mBody = body;
+    }
+
+    /**
+     * @param requestId the ID of the request being answered
+     * @param body the body to send, which will be consumed by writing (never {@code null})
+     * @return a new {@link ResponseStatus#OK} response
+     */
+    static Response ok(final int requestId, final ByteBuffer body) {
+        return new Response(requestId, ResponseStatus.OK, new BufferBody(body));
+    }
+
+    /**
+     * @param requestId the ID of the request being answered
+     * @param file the file to send from, which is closed once the response is done (never {@code null})
+     * @param position the position in the file to start sending from
+     * @param length the number of bytes to send
+     * @return a new {@link ResponseStatus#OK} response
+     */
+    static Response ok(final int requestId, final FileChannel file, final long position, final long length) {
+        return new Response(requestId, ResponseStatus.OK, new FileBody(file, position, length));
+    }
+
+    /**
+     * @param requestId the ID of the request being answered
+     * @param prefix the bytes to send before the file, which will be consumed by writing (never {@code null})
+     * @param file the file to send from, which is closed once the response is done (never {@code null})
+     * @param position the position in the file to start sending from
+     * @param length the number of bytes of the file to send
+     * @return a new {@link ResponseStatus#OK} response
+     */
+    static Response ok(
+        final int requestId,
+        final ByteBuffer prefix,
+        final FileChannel file,
+        final long position,
+        final long length) {
+
+        return new Response(
+            requestId,
+            ResponseStatus.OK,
+            new CompositeBody(new BufferBody(prefix), new FileBody(file, position, length)));
+    }
+
+    /**
+     * @param requestId the ID of the request being answered
+     * @param status the failure status (must not be {@link ResponseStatus#OK})
+     * @param message a description of what went wrong (never {@code null})
+     * @return a new failure response
+     */
+    static Response error(final int requestId, final ResponseStatus status, final String message) {
+        Preconditions.checkArgument(status != ResponseStatus.OK, "status cannot be OK");
+        return new Response(
+            requestId,
+            status,
+            new BufferBody(ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    boolean isOk() {
+        return mStatus == ResponseStatus.OK;
+    }
+
+    /**
+     * Marks this response as the answer to a bulk request, whose bytes are only sent as fast as the client's share of
+     * the bandwidth allows.
+     *
+     * @return this response
+     */
+    Response asBulk() {
+        mBulk = true;
+        return this;
+    }
+
+    boolean isBulk() {
+        return mBulk;
+    }
+
+    /**
+     * Writes as much of this response as the channel accepts without blocking, up to the given number of bytes.
+     *
+     * @param channel the channel to write to (never {@code null})
+     * @param maxBytes the most bytes to write
+     * @return the number of bytes written
+     * @throws IOException if writing failed
+     */
+    long writeTo(final WritableByteChannel channel, final long maxBytes) throws IOException {
+        final long headerWritten = writeBuffer(channel, mHeader, maxBytes);
+        if (mHeader.hasRemaining()) {
+            return headerWritten;
+        }
+        return headerWritten + mBody.writeTo(channel, maxBytes - headerWritten);
+    }
+
+    /**
+     * @return {@code true} if the whole response has been written
+     */
+    boolean isWritten() {
+        return !mHeader.hasRemaining() && mBody.isWritten();
+    }
+
+    /**
+     * Releases any resources held by the body, whether or not it was written.
+     */
+    void close() {
+        mBody.close();
+    }
+
+    private static long writeBuffer(final WritableByteChannel channel, final ByteBuffer buffer, final long maxBytes)
+        throws IOException {
+
+        if (!buffer.hasRemaining() || maxBytes <= 0) {
+            return 0;
+        }
+        final int limit = buffer.limit();
+        if (buffer.remaining() > maxBytes) {
+            buffer.limit(buffer.position() + (int) maxBytes);
+        }
+        try {
+            return channel.write(buffer);
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * The part of a response after the header.
+     */
+    private interface Body {
+        long getLength();
+
+        /**
+         * @return the number of bytes written, which is less than {@code maxBytes} if the channel is full or the body
+         *     is written
+         */
+        long writeTo(WritableByteChannel channel, long maxBytes) throws IOException;
+
+        boolean isWritten();
+
+        void close();
+    }
+
+    private static final class BufferBody implements Body {
+        private final ByteBuffer mBuffer;
+
+        BufferBody(final ByteBuffer buffer) {
+            mBuffer = Preconditions.checkNotNull(buffer, "buffer cannot be null");
+        }
+
+        @Override
+        public long getLength() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public long writeTo(final WritableByteChannel channel, final long maxBytes) throws IOException {
+            return writeBuffer(channel, mBuffer, maxBytes);
+        }
+
+        @Override
+        public boolean isWritten() {
+            return !mBuffer.hasRemaining();
+        }
+
+        @Override
+        public void close() {
+            // Nothing to do.
+        }
+    }
+
+    private static final class CompositeBody implements Body {
+        private final Body mFirst;
+        private final Body mSecond;
+
+        CompositeBody(final Body first, final Body second) {
+            mFirst = first;
+            mSecond = second;
+        }
+
+        @Override
+        public long getLength() {
+            return mFirst.getLength() + mSecond.getLength();
+        }
+
+        @Override
+        public long writeTo(final WritableByteChannel channel, final long maxBytes) throws IOException {
+            final long firstWritten = mFirst.writeTo(channel, maxBytes);
+            if (!mFirst.isWritten()) {
+                return firstWritten;
+            }
+            return firstWritten + mSecond.writeTo(channel, maxBytes - firstWritten);
+        }
+
+        @Override
+        public boolean isWritten() {
+            return mFirst.isWritten() && mSecond.isWritten();
+        }
+
+        @Override
+        public void close() {
+            mFirst.close();
+            mSecond.close();
+        }
+    }
+
+    private static final class FileBody implements Body {
+        private final FileChannel mFile;
+        private final long mLength;
+        private long mPosition;
+        private long mRemaining;
+
+        FileBody(final FileChannel file, final long position, final long length) {
+            mFile = Preconditions.checkNotNull(file, "file cannot be null");
+            mLength = length;
+            mPosition = position;
+            mRemaining = length;
+        }
+
+        @Override
+        public long getLength() {
+            return mLength;
+        }
+
+        @Override
+        public long writeTo(final WritableByteChannel channel, final long maxBytes) throws IOException {
+            long written = 0;
+            while (mRemaining > 0 && written < maxBytes) {
+                final long transferred = mFile.transferTo(mPosition, Math.min(mRemaining, maxBytes - written), channel);
+                if (transferred == 0) {
+                    if (mPosition >= mFile.size()) {
+                        throw new IOException("File was truncated while it was being sent");
+                    }
+                    // The socket buffer is full, wait until it is writable again
+                    break;
+                }
+                mPosition += transferred;
+                mRemaining -= transferred;
+                written += transferred;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isWritten() {
+            return mRemaining == 0;
+        }
+
+        @Override
+        public void close() {
+            try {
+                mFile.close();
+            } catch (final IOException ignoredException) {
+                // Nothing more can be done, the response is finished either way
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Set;
+
+import com.coryjreid.modpacksuite.config.ConfigPath;
+import com.coryjreid.modpacksuite.sync.common.delta.BlockSizePolicy;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.typesafe.config.Config;
+
+/**
+ * Represents the {@code application.conf} file of a {@link SyncServer}.
+ */
+public class ServerConfig {
+    public static final String DEFAULT_CACHE_DIRECTORY_NAME = ".syncCache";
+    public static final Duration DEFAULT_WATCH_SETTLE_TIME = Duration.ofSeconds(2);
+    public static final int DEFAULT_BUNDLE_VERSIONS = 3;
+    public static final int DEFAULT_MAX_ACTIVE_CLIENTS = 32;
+
+    private final Config mConfig;
+
+    public ServerConfig(final Config config) {
+        mConfig = config;
+    }
+
+    /**
+     * @return the root directory of the served pack, which contains mods/, config/, etc.
+     */
+    public Path getPackRoot() {
+        return Paths.get(mConfig.getString(ConfigPath.minecraftInstanceRoot()));
+    }
+
+    /**
+     * @return the directory precompressed variants of the served files are kept in (defaults to {@value
+     *     #DEFAULT_CACHE_DIRECTORY_NAME} in the pack root when not configured)
+     */
+    public Path getCacheDirectory() {
+        return mConfig.hasPath(ConfigPath.cacheDirectory())
+            ? Paths.get(mConfig.getString(ConfigPath.cacheDirectory()))
+            : getPackRoot().resolve(DEFAULT_CACHE_DIRECTORY_NAME);
+    }
+
+    /**
+     * @return how long the served trees must go without changes before edits are published (defaults to {@link
+     *     #DEFAULT_WATCH_SETTLE_TIME} when not configured)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public Duration getWatchSettleTime() {
+        final Duration watchSettleTime = mConfig.hasPath(ConfigPath.watchSettleTime())
+            ? mConfig.getDuration(ConfigPath.watchSettleTime())
+            : DEFAULT_WATCH_SETTLE_TIME;
+        Preconditions.checkState(!watchSettleTime.isNegative(), "watchSettleTime cannot be negative");
+        return watchSettleTime;
+    }
+
+    /**
+     * @return the number of previously published versions a release bundle to the published version is built from
+     *     (defaults to {@value #DEFAULT_BUNDLE_VERSIONS} when not configured, {@code 0} disables bundles)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public int getBundleVersions() {
+        final int bundleVersions = mConfig.hasPath(ConfigPath.bundleVersions())
+            ? mConfig.getInt(ConfigPath.bundleVersions())
+            : DEFAULT_BUNDLE_VERSIONS;
+        Preconditions.checkState(bundleVersions >= 0, "bundleVersions cannot be negative");
+        return bundleVersions;
+    }
+
+    /**
+     * @return the IDs of the mods which only run on the server, their jars are not served (empty when not configured)
+     */
+    public Set<String> getServerOnlyModIds() {
+        return getModIds(ConfigPath.serverOnlyModIds());
+    }
+
+    /**
+     * @return the IDs of the mods which only run on clients and belong in clientmods/ (empty when not configured)
+     */
+    public Set<String> getClientOnlyModIds() {
+        return getModIds(ConfigPath.clientOnlyModIds());
+    }
+
+    /**
+     * @return the IDs of the mods which are only used while developing the pack, their jars are not served (empty when
+     *     not configured)
+     */
+    public Set<String> getDevOnlyModIds() {
+        return getModIds(ConfigPath.devOnlyModIds());
+    }
+
+    /**
+     * @return the port to listen on, {@code 0} picks any free port
+     */
+    public int getPort() {
+        return mConfig.getInt(ConfigPath.serverPort());
+    }
+
+    /**
+     * @return the number of threads which service connections (defaults to the number of processors when not
+     *     configured)
+     * @throws IllegalStateException if the configured value is not positive
+     */
+    public int getIoThreads() {
+        final int ioThreads = mConfig.hasPath(ConfigPath.ioThreads())
+            ? mConfig.getInt(ConfigPath.ioThreads())
+            : Runtime.getRuntime().availableProcessors();
+        Preconditions.checkState(ioThreads > 0, "ioThreads must be positive");
+        return ioThreads;
+    }
+
+    /**
+     * @return the number of clients which may download at once, later clients queue until one finishes (defaults to
+     *     {@value #DEFAULT_MAX_ACTIVE_CLIENTS} when not configured, {@code 0} admits everyone)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public int getMaxActiveClients() {
+        final int maxActiveClients = mConfig.hasPath(ConfigPath.maxActiveClients())
+            ? mConfig.getInt(ConfigPath.maxActiveClients())
+            : DEFAULT_MAX_ACTIVE_CLIENTS;
+        Preconditions.checkState(maxActiveClients >= 0, "maxActiveClients cannot be negative");
+        return maxActiveClients;
+    }
+
+    /**
+     * @return the number of bytes per second the server sends across all clients, shared fairly between the clients
+     *     which are downloading (defaults to {@code 0} when not configured, which does not cap the rate)
+     * @throws IllegalStateException if the configured value is negative
+     */
+    public long getMaxEgressRate() {
+        final long maxEgressRate = mConfig.hasPath(ConfigPath.maxEgressRate())
+            ? mConfig.getBytes(ConfigPath.maxEgressRate())
+            : 0;
+        Preconditions.checkState(maxEgressRate >= 0, "maxEgressRate cannot be negative");
+        return maxEgressRate;
+    }
+
+    /**
+     * @return the block sizes used for the signatures clients compute deltas against (each defaults to the {@link
+     *     BlockSizePolicy} default when not configured)
+     */
+    public BlockSizePolicy getBlockSizePolicy() {
+        return new BlockSizePolicy(
+            mConfig.hasPath(ConfigPath.deltaBlockSize())
+                ? mConfig.getInt(ConfigPath.deltaBlockSize())
+                : BlockSizePolicy.DEFAULT_BLOCK_SIZE,
+            mConfig.hasPath(ConfigPath.archiveDeltaBlockSize())
+                ? mConfig.getInt(ConfigPath.archiveDeltaBlockSize())
+                : BlockSizePolicy.DEFAULT_ARCHIVE_BLOCK_SIZE);
+    }
+
+    private Set<String> getModIds(final String path) {
+        return mConfig.hasPath(path) ? ImmutableSet.copyOf(mConfig.getStringList(path)) : ImmutableSet.of();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.coryjreid.modpacksuite.config.ConfigLoader;
+import com.coryjreid.modpacksuite.sync.common.PackFingerprint;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves a pack's manifests and files to SyncClients over the protocol described in {@link
+ * com.coryjreid.modpacksuite.sync.common.protocol.Protocol}.
+ * <br><br>
+ * One thread accepts connections and hands them out to a fixed number of {@link EventLoop}s, so hundreds of clients
+ * can be served without a thread per connection. File bodies are sent with zero-copy transfers straight from the page
+ * cache. The published pack is also written as a {@link PackFingerprint#FILE_NAME} file so clients which still use
+ * an rsync daemon serving the same directory can skip unchanged versions.
+ */
+public final class SyncServer implements Closeable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final String BUNDLE_DIRECTORY_NAME = "bundles";
+
+    private final ServerConfig mConfig;
+    private final AtomicReference<PublishedPack> mPublishedPack = new AtomicReference<>();
+    private final VariantCache mVariantCache;
+    private final ReleaseBundleStore mBundleStore;
+    private final ModExceptionFilter mModExceptionFilter;
+    private List<EventLoop> mEventLoops;
+    private ServerSocketChannel mServerChannel;
+    private Thread mAcceptorThread;
+
+    public SyncServer(final ServerConfig config) {
+        mConfig = Preconditions.checkNotNull(config, "config cannot be null");
+        mVariantCache = new VariantCache(config.getCacheDirectory());
+        mBundleStore = new ReleaseBundleStore(
+            config.getCacheDirectory().resolve(BUNDLE_DIRECTORY_NAME),
+            config.getBundleVersions());
+        mModExceptionFilter = new ModExceptionFilter(config);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final ServerConfig config = new ServerConfig(ConfigLoader.loadConfig(args, true));
+        final SyncServer server = new SyncServer(config);
+
+        final ManifestWatcher watcher = new ManifestWatcher(
+            server,
+            config.getPackRoot(),
+            PackFingerprint.SERVED_TREES,
+            config.getCacheDirectory().resolve(FileStateIndex.DEFAULT_INDEX_FILE_NAME),
+            config.getWatchSettleTime());
+        Files.createDirectories(config.getCacheDirectory());
+        watcher.scan();
+        server.start();
+        watcher.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            watcher.close();
+            server.close();
+        }, "shutdown"));
+    }
+
+    /**
+     * Makes a manifest the one served to clients. Everything clients are served from it is prepared before it
+     * replaces the previous manifest, so requests see either the old or the new pack but never a mix of the two.
+     * Requests which are already being answered finish with the previous manifest. The jars of server-only and
+     * dev-only mods are left out (see {@link ModExceptionFilter}).
+     *
+     * @param manifest the manifest of the files currently in the pack root (never {@code null})
+     * @throws IOException if a file could not be read or the fingerprint file could not be written
+     */
+    public void publish(final PackManifest manifest) throws IOException {
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+
+        final Path packRoot = mConfig.getPackRoot();
+        final PackManifest servedManifest;
+        synchronized (mPublishedPack) {
+            servedManifest = mModExceptionFilter.filter(packRoot, manifest);
+            mPublishedPack.set(PublishedPack.create(
+                packRoot,
+                servedManifest,
+                mConfig.getBlockSizePolicy(),
+                mVariantCache,
+                mBundleStore,
+                mPublishedPack.get()));
+            PackFingerprint.write(packRoot, servedManifest.getFingerprint());
+        }
+        sLogger.info("Published fingerprint {}", servedManifest.getFingerprint());
+    }
+
+    /**
+     * Starts accepting connections. A manifest must have been {@link #publish(PackManifest) published} first.
+     *
+     * @throws IOException if the server socket could not be opened
+     */
+    public synchronized void start() throws IOException {
+        Preconditions.checkState(mPublishedPack.get() != null, "A manifest must be published before starting");
+        Preconditions.checkState(mServerChannel == null, "The server has already been started");
+
+        final RequestHandler requestHandler = new RequestHandler(mPublishedPack::get);
+        final EgressScheduler scheduler =
+            new EgressScheduler(mConfig.getMaxActiveClients(), mConfig.getMaxEgressRate());
+        final List<EventLoop> eventLoops = new ArrayList<>();
+        for (int i = 0; i < mConfig.getIoThreads(); i++) {
+            final EventLoop eventLoop = new EventLoop(requestHandler, scheduler);
+            eventLoops.add(eventLoop);
+            new Thread(eventLoop, "event-loop-" + i).start();
+        }
+        mEventLoops = ImmutableList.copyOf(eventLoops);
+
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        mServerChannel.bind(new InetSocketAddress(mConfig.getPort()), 1024);
+
+        mAcceptorThread = new Thread(this::acceptConnections, "acceptor");
+        mAcceptorThread.start();
+        sLogger.info("Listening on port {} with {} event loops", getPort(), mEventLoops.size());
+    }
+
+    /**
+     * @return the port the server is listening on, useful when it was configured to pick any free port
+     */
+    public synchronized int getPort() {
+        Preconditions.checkState(mServerChannel != null, "The server has not been started");
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    public synchronized void close() {
+        if (mServerChannel == null) {
+            return;
+        }
+
+        try {
+            mServerChannel.close();
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to close the server socket", exception);
+        }
+        for (final EventLoop eventLoop : mEventLoops) {
+            eventLoop.shutdown();
+        }
+        sLogger.info("Stopped");
+    }
+
+    private void acceptConnections() {
+        int nextEventLoop = 0;
+        while (mServerChannel.isOpen()) {
+            try {
+                final SocketChannel channel = mServerChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                mEventLoops.get(nextEventLoop).register(channel);
+                nextEventLoop = (nextEventLoop + 1) % mEventLoops.size();
+            } catch (final AsynchronousCloseException exception) {
+                return;
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to accept a connection", exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpacksuite.sync.common.ManifestEntry;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk cache of precompressed variants of served files. Variants are keyed by the content hash of the file, so a
+ * file which did not change between pack versions is never compressed again and the cost of compression is paid once
+ * per release rather than once per client.
+ * <br><br>
+ * A variant is only kept if it is noticeably smaller than the file. For files which do not compress (jars, images) a
+ * marker is stored instead so they are not compressed again on the next publish.
+ */
+final class VariantCache {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * The encodings variants are built in.
+     */
+    private static final List<ContentEncoding> ENCODINGS = ImmutableList.of(ContentEncoding.ZSTD, ContentEncoding.GZIP);
+
+    /**
+     * A variant must be at most this fraction of the file's size to be worth sending.
+     */
+    private static final double MAX_VARIANT_RATIO = 0.9;
+
+    private static final String SKIP_MARKER_SUFFIX = ".skip";
+
+    private final Path mDirectory;
+
+    /**
+     * @param directory the directory to keep variants in, it is created if needed (never {@code null})
+     */
+    VariantCache(final Path directory) {
+        mDirectory = Preconditions.checkNotNull(directory, "directory cannot be null");
+    }
+
+    /**
+     * Makes sure every file in a manifest has its variants built, then removes the variants of files which are no
+     * longer served.
+     *
+     * @param packRoot the root directory of the pack (never {@code null})
+     * @param manifest the manifest being published (never {@code null})
+     * @return the variants of each file keyed by path, files without any variant are left out
+     * @throws IOException if a file could not be compressed or the cache could not be written
+     */
+    Map<String, Map<ContentEncoding, Variant>> prepare(final Path packRoot, final PackManifest manifest)
+        throws IOException {
+
+        Preconditions.checkNotNull(packRoot, "packRoot cannot be null");
+        Preconditions.checkNotNull(manifest, "manifest cannot be null");
+
+        for (final ContentEncoding encoding : ENCODINGS) {
+            Files.createDirectories(getEncodingDirectory(encoding));
+        }
+
+        final Map<String, Map<ContentEncoding, Variant>> variants = new ConcurrentHashMap<>();
+        try {
+            manifest.getTrees().values().stream()
+                .flatMap(tree -> tree.getEntries().stream())
+                .parallel()
+                .forEach(entry -> {
+                    try {
+                        final Map<ContentEncoding, Variant> fileVariants = new EnumMap<>(ContentEncoding.class);
+                        for (final ContentEncoding encoding : ENCODINGS) {
+                            final Variant variant = getOrCreate(packRoot, entry, encoding);
+                            if (variant != null) {
+                                fileVariants.put(encoding, variant);
+                            }
+                        }
+                        if (!fileVariants.isEmpty()) {
+                            variants.put(entry.getPath(), Maps.immutableEnumMap(fileVariants));
+                        }
+                    } catch (final IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+        } catch (final UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+
+        removeUnreferenced(manifest);
+        return ImmutableMap.copyOf(variants);
+    }
+
+    /**
+     * @return the cached variant, or {@code null} if the file does not compress well in this encoding
+     */
+    private Variant getOrCreate(final Path packRoot, final ManifestEntry entry, final ContentEncoding encoding)
+        throws IOException {
+
+        final Path variantFile = getEncodingDirectory(encoding).resolve(entry.getHash().toString());
+        final Path skipMarker = variantFile.resolveSibling(variantFile.getFileName() + SKIP_MARKER_SUFFIX);
+        if (Files.exists(skipMarker)) {
+            return null;
+        }
+        if (Files.exists(variantFile)) {
+            return new Variant(encoding, variantFile, Files.size(variantFile));
+        }
+
+        final Path temporaryFile = Files.createTempFile(variantFile.getParent(), entry.getHash().toString(), null);
+        try {
+            try (OutputStream output =
+                     encoding.encode(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+
+                Files.copy(packRoot.resolve(entry.getPath()), output);
+            }
+
+            final long variantSize = Files.size(temporaryFile);
+            if (variantSize > entry.getSize() * MAX_VARIANT_RATIO) {
+                Files.write(skipMarker, new byte[0]);
+                return null;
+            }
+            Files.move(temporaryFile, variantFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            sLogger.debug("Built {} variant of '{}' ({} of {} bytes)", encoding, entry.getPath(), variantSize,
+                entry.getSize());
+            return new Variant(encoding, variantFile, variantSize);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private void removeUnreferenced(final PackManifest manifest) throws IOException {
+        final Set<String> servedHashes = manifest.getTrees().values().stream()
+            .flatMap(tree -> tree.getEntries().stream())
+            .map(entry -> entry.getHash().toString())
+            .collect(Collectors.toSet());
+
+        for (final ContentEncoding encoding : ENCODINGS) {
+            final List<Path> cachedFiles;
+            try (Stream<Path> files = Files.list(getEncodingDirectory(encoding))) {
+                cachedFiles = files.collect(Collectors.toList());
+            }
+            for (final Path cachedFile : cachedFiles) {
+                final String name = cachedFile.getFileName().toString();
+                if (!servedHashes.contains(name.replace(SKIP_MARKER_SUFFIX, ""))) {
+                    Files.deleteIfExists(cachedFile);
+                }
+            }
+        }
+    }
+
+    private Path getEncodingDirectory(final ContentEncoding encoding) {
+        return mDirectory.resolve(encoding.name().toLowerCase());
+    }
+
+    /**
+     * A precompressed copy of a served file.
+     */
+    static final class Variant {
+        private final ContentEncoding mEncoding;
+        private final Path mFile;
+        private final long mLength;
+
+        Variant(final ContentEncoding encoding, final Path file, final long length) {
+            mEncoding = encoding;
+            mFile = file;
+            mLength = length;
+        }
+
+        ContentEncoding getEncoding() {
+            return mEncoding;
+        }
+
+        Path getFile() {
+            return mFile;
+        }
+
+        long getLength() {
+            return mLength;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the admission queue and token buckets of {@link EgressScheduler} the way connections do.
+ */
+class EgressSchedulerTest {
+    private static final long EGRESS_RATE = 4 * 1024 * 1024;
+    private static final long WRITE_SIZE = 64 * 1024;
+
+    @Test
+    void admitsQueuedClientsInOrder() throws UnknownHostException {
+        final EgressScheduler scheduler = new EgressScheduler(1, 0);
+        final EgressScheduler.Client first = scheduler.register(address(1));
+        final EgressScheduler.Client second = scheduler.register(address(2));
+        final EgressScheduler.Client third = scheduler.register(address(3));
+
+        assertTrue(scheduler.requestAdmission(first));
+        assertFalse(scheduler.requestAdmission(second));
+        assertFalse(scheduler.requestAdmission(third));
+        assertEquals(0, scheduler.getClientsAhead(second));
+        assertEquals(1, scheduler.getClientsAhead(third));
+        assertTrue(scheduler.getEstimatedWait(third).compareTo(scheduler.getEstimatedWait(second)) > 0);
+
+        scheduler.release(first);
+
+        assertTrue(scheduler.isAdmitted(second));
+        assertFalse(scheduler.isAdmitted(third));
+        assertEquals(0, scheduler.getClientsAhead(third));
+    }
+
+    @Test
+    void connectionsFromOneAddressShareAClient() throws UnknownHostException {
+        final EgressScheduler scheduler = new EgressScheduler(1, 0);
+        final EgressScheduler.Client client = scheduler.register(address(1));
+        assertSame(client, scheduler.register(address(1)));
+        final EgressScheduler.Client other = scheduler.register(address(2));
+
+        assertTrue(scheduler.requestAdmission(client));
+        assertFalse(scheduler.requestAdmission(other));
+
+        scheduler.release(client);
+
+        assertTrue(scheduler.isAdmitted(client));
+        assertFalse(scheduler.requestAdmission(other));
+
+        scheduler.release(client);
+
+        assertTrue(scheduler.isAdmitted(other));
+    }
+
+    @Test
+    void evictsIdleClientForQueuedClient() throws InterruptedException, UnknownHostException {
+        final EgressScheduler scheduler = new EgressScheduler(1, 0, Duration.ofMillis(50));
+        final EgressScheduler.Client idle = scheduler.register(address(1));
+        final EgressScheduler.Client queued = scheduler.register(address(2));
+        assertTrue(scheduler.requestAdmission(idle));
+        assertFalse(scheduler.requestAdmission(queued));
+
+        Thread.sleep(100);
+
+        assertTrue(scheduler.requestAdmission(queued));
+        assertFalse(scheduler.isAdmitted(idle));
+        assertFalse(scheduler.requestAdmission(idle));
+        assertEquals(0, scheduler.getClientsAhead(idle));
+    }
+
+    @Test
+    void keepsClientWhichMakesProgress() throws InterruptedException, UnknownHostException {
+        final EgressScheduler scheduler = new EgressScheduler(1, 0, Duration.ofMillis(200));
+        final EgressScheduler.Client busy = scheduler.register(address(1));
+        final EgressScheduler.Client queued = scheduler.register(address(2));
+        assertTrue(scheduler.requestAdmission(busy));
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < deadline) {
+            scheduler.recordProgress(busy);
+            assertFalse(scheduler.requestAdmission(queued));
+            Thread.sleep(20);
+        }
+
+        assertTrue(scheduler.isAdmitted(busy));
+    }
+
+    @Test
+    void sharesEgressRateEquallyBetweenAddresses() throws InterruptedException, UnknownHostException {
+        final EgressScheduler scheduler = new EgressScheduler(0, EGRESS_RATE);
+        // The first client writes on two connections, which must not earn it a larger share
+        final EgressScheduler.Client twoConnections = scheduler.register(address(1));
+        scheduler.register(address(1));
+        final EgressScheduler.Client oneConnection = scheduler.register(address(2));
+
+        long twoConnectionsBytes = 0;
+        long oneConnectionBytes = 0;
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)) {
+            twoConnectionsBytes += scheduler.acquire(twoConnections, WRITE_SIZE);
+            twoConnectionsBytes += scheduler.acquire(twoConnections, WRITE_SIZE);
+            oneConnectionBytes += scheduler.acquire(oneConnection, WRITE_SIZE);
+            Thread.sleep(1);
+        }
+        final double elapsedSeconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        final double ratio = (double) twoConnectionsBytes / oneConnectionBytes;
+        assertTrue(ratio > 0.75 && ratio < 1.33, "Unequal shares " + twoConnectionsBytes + " / " + oneConnectionBytes);
+        // Allow for the buckets filling up before both clients count as busy
+        final double allowedBytes = EGRESS_RATE * elapsedSeconds + EGRESS_RATE / 2.0;
+        assertTrue(twoConnectionsBytes + oneConnectionBytes <= allowedBytes, "Exceeded the egress rate");
+    }
+
+    private static InetAddress address(final int host) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) host});
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import com.coryjreid.modpacksuite.sync.common.PackFingerprint;
+import com.coryjreid.modpacksuite.sync.common.PackManifest;
+import com.coryjreid.modpacksuite.sync.common.index.FileStateIndex;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs a {@link ManifestWatcher} against a real pack on disk and checks what the {@link SyncServer} publishes.
+ */
+class ManifestWatcherTest {
+    private static final List<String> TREES = ImmutableList.of("config");
+    private static final Duration SETTLE_TIME = Duration.ofMillis(100);
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path mTemporaryDirectory;
+
+    private Path mPackRoot;
+    private Path mIndexDirectory;
+    private ManifestWatcher mWatcher;
+
+    @BeforeEach
+    void startWatcher() throws IOException {
+        mPackRoot = Files.createDirectories(mTemporaryDirectory.resolve("pack"));
+        mIndexDirectory = Files.createDirectories(mTemporaryDirectory.resolve("index"));
+        final Path cacheDirectory = Files.createDirectories(mTemporaryDirectory.resolve("cache"));
+        write("config/forge.toml", "a = 1");
+
+        final SyncServer server = new SyncServer(new ServerConfig(ConfigFactory.parseMap(ImmutableMap.of(
+            "minecraftInstanceRoot", mPackRoot.toString(),
+            "serverPort", 0,
+            "cacheDirectory", cacheDirectory.toString()))));
+        mWatcher = new ManifestWatcher(
+            server,
+            mPackRoot,
+            TREES,
+            mIndexDirectory.resolve(FileStateIndex.DEFAULT_INDEX_FILE_NAME),
+            SETTLE_TIME);
+        mWatcher.scan();
+        mWatcher.start();
+    }
+
+    @AfterEach
+    void stopWatcher() {
+        mWatcher.close();
+    }
+
+    @Test
+    void publishesEdit() throws Exception {
+        assertEquals(Optional.of(expectedFingerprint()), readFingerprint());
+
+        write("config/jei/jei.toml", "b = 2");
+
+        awaitFingerprint(expectedFingerprint());
+    }
+
+    @Test
+    void retriesBatchWhichFailedToPublish() throws Exception {
+        final HashCode scannedFingerprint = expectedFingerprint();
+        // Without its directory the index cannot be saved, which fails the batch before anything is published
+        Files.delete(mIndexDirectory.resolve(FileStateIndex.DEFAULT_INDEX_FILE_NAME));
+        Files.delete(mIndexDirectory);
+
+        write("config/jei/jei.toml", "b = 2");
+        Thread.sleep(5 * SETTLE_TIME.toMillis());
+        assertEquals(Optional.of(scannedFingerprint), readFingerprint());
+
+        // No further file changes, the failed batch alone has to be tried again
+        Files.createDirectories(mIndexDirectory);
+        final HashCode editedFingerprint = expectedFingerprint();
+        assertNotEquals(scannedFingerprint, editedFingerprint);
+        awaitFingerprint(editedFingerprint);
+    }
+
+    private void awaitFingerprint(final HashCode expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!readFingerprint().equals(Optional.of(expected)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(SETTLE_TIME.toMillis() / 2);
+        }
+        assertEquals(Optional.of(expected), readFingerprint());
+    }
+
+    private HashCode expectedFingerprint() throws IOException {
+        return PackManifest.build(mPackRoot, TREES).getFingerprint();
+    }
+
+    private Optional<HashCode> readFingerprint() {
+        return PackFingerprint.read(mPackRoot.resolve(PackFingerprint.FILE_NAME));
+    }
+
+    private void write(final String path, final String contents) throws IOException {
+        final Path file = mPackRoot.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
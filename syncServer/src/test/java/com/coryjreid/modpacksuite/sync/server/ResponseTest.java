@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021  Cory J. Reid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.coryjreid.modpacksuite.sync.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.coryjreid.modpacksuite.sync.common.protocol.ContentEncoding;
+import com.coryjreid.modpacksuite.sync.common.protocol.Protocol;
+import com.coryjreid.modpacksuite.sync.common.protocol.ResponseStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes responses the way a connection does and reads them back the way a client does (see {@link Protocol}).
+ */
+class ResponseTest {
+    @TempDir
+    Path mTemporaryDirectory;
+
+    @Test
+    void bufferResponseRoundTrips() throws IOException {
+        final byte[] body = randomBytes(1000, 1);
+
+        final DecodedResponse decoded = writeAndDecode(Response.ok(42, ByteBuffer.wrap(body)), Long.MAX_VALUE);
+
+        assertEquals(42, decoded.mRequestId);
+        assertEquals(ResponseStatus.OK, decoded.mStatus);
+        assertArrayEquals(body, decoded.mBody);
+    }
+
+    @Test
+    void responseWrittenInBoundedStepsRoundTrips() throws IOException {
+        final byte[] prefix = {ContentEncoding.ZSTD.getCode()};
+        final byte[] contents = randomBytes(10_000, 2);
+        final Path file = Files.write(mTemporaryDirectory.resolve("file.bin"), contents);
+
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        final Response response = Response.ok(7, ByteBuffer.wrap(prefix), channel, 100, 5000);
+        final DecodedResponse decoded = writeAndDecode(response, 7);
+
+        assertEquals(7, decoded.mRequestId);
+        assertEquals(ResponseStatus.OK, decoded.mStatus);
+        assertEquals(prefix.length + 5000, decoded.mBody.length);
+        assertEquals(prefix[0], decoded.mBody[0]);
+        assertArrayEquals(
+            Arrays.copyOfRange(contents, 100, 5100),
+            Arrays.copyOfRange(decoded.mBody, prefix.length, decoded.mBody.length));
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void errorResponseCarriesItsMessage() throws IOException {
+        final Response response = Response.error(-1, ResponseStatus.NOT_FOUND, "No such file 'mods/a.jar'");
+        assertFalse(response.isOk());
+
+        final DecodedResponse decoded = writeAndDecode(response, Long.MAX_VALUE);
+
+        assertEquals(-1, decoded.mRequestId);
+        assertEquals(ResponseStatus.NOT_FOUND, decoded.mStatus);
+        assertEquals("No such file 'mods/a.jar'", new String(decoded.mBody, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a response at most {@code maxBytesPerStep} bytes at a time and decodes what was written.
+     */
+    private static DecodedResponse writeAndDecode(final Response response, final long maxBytesPerStep)
+        throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final WritableByteChannel channel = Channels.newChannel(bytes);
+        try {
+            while (!response.isWritten()) {
+                final long written = response.writeTo(channel, maxBytesPerStep);
+                assertTrue(written > 0 && written <= maxBytesPerStep, "wrote " + written + " bytes");
+            }
+        } finally {
+            response.close();
+        }
+
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final int requestId = input.readInt();
+        final ResponseStatus status = ResponseStatus.fromCode(input.readByte()).get();
+        final byte[] body = new byte[Math.toIntExact(input.readLong())];
+        input.readFully(body);
+        assertEquals(-1, input.read(), "bytes left after the body");
+        assertEquals(Protocol.RESPONSE_HEADER_SIZE + body.length, bytes.size());
+        return new DecodedResponse(requestId, status, body);
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static final class DecodedResponse {
+        private final int mRequestId;
+        private final ResponseStatus mStatus;
+        private final byte[] mBody;
+
+        private DecodedResponse(final int requestId, final ResponseStatus status, final byte[] body) {
+            mRequestId = requestId;
+            mStatus = status;
+            mBody = body;
+        }
+    }
+}